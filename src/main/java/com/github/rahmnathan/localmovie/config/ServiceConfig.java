@@ -10,7 +10,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.validation.annotation.Validated;
 
 import java.time.temporal.ChronoUnit;
-import java.util.Set;
+import java.util.*;
 
 @Data
 @Configuration
@@ -28,6 +28,17 @@ public class ServiceConfig {
     private OpenSubtitlesConfig opensubtitles;
     private OllamaConfig ollama;
     private boolean forceConvert;
+    private StreamConfig stream = new StreamConfig();
+    private CatalogCacheConfig catalogCache = new CatalogCacheConfig();
+    private SearchConfig search = new SearchConfig();
+    private PosterCacheConfig posterCache = new PosterCacheConfig();
+    private PosterStoreConfig posterStore = new PosterStoreConfig();
+    private ScanConfig scan = new ScanConfig();
+    private IngestConfig ingest = new IngestConfig();
+    private MetadataCacheConfig metadataCache = new MetadataCacheConfig();
+    private JobTrackerConfig jobTracker = new JobTrackerConfig();
+    private EventStreamConfig eventStream = new EventStreamConfig();
+    private SyncConfig sync = new SyncConfig();
 
     @Data
     public static class MediaRepositoryMonitorConfig {
@@ -38,11 +49,328 @@ public class ServiceConfig {
     @Data
     public static class MediaEventMonitorConfig {
         private int concurrentConversionLimit = 3;
+        /**
+         * NATIVE uses filesystem notifications (inotify). Keep POLLING for NFS and SMB mounts, which don't deliver
+         * notifications for changes made by other hosts.
+         */
+        private WatcherMode watcher = WatcherMode.POLLING;
+        /**
+         * Quiet period after the last event for a path before it is handled, repeated events restart it.
+         */
+        private long debounceMs = 2000;
+        /**
+         * Interval between size and modification time checks of a created file that is still being written.
+         */
+        private long stabilityCheckMs = 3000;
+        private int eventWorkers = 2;
+        private int eventQueueCapacity = 1000;
     }
 
     @Data
     public static class ConversionServiceConfig {
         private boolean enabled;
+        private ConversionExecutorType executor = ConversionExecutorType.KUBERNETES;
+        /**
+         * ffmpeg binary run by the local executor.
+         */
+        private String ffmpegPath = "ffmpeg";
+        /**
+         * Scheduling priority of local conversions, so streaming and scanning keep the CPU when they need it.
+         */
+        private int niceness = 10;
+        /**
+         * Processors each local conversion gets, which caps how many of them run at once.
+         */
+        private int threadsPerConversion = 4;
+        /**
+         * ffprobe binary run by the local executor.
+         */
+        private String ffprobePath = "ffprobe";
+        /**
+         * Probe inputs so streams that already play everywhere are copied rather than re-encoded.
+         */
+        private boolean probeEnabled = true;
+        /**
+         * How long probing, and measuring loudness for two-pass normalization, may take before a conversion launches.
+         */
+        private int analysisTimeoutSeconds = 300;
+        /**
+         * Entry of the profile catalog conversions use.
+         */
+        private String profile = "default";
+        private Map<String, TranscodeProfile> profiles = new LinkedHashMap<>(Map.of("default", new TranscodeProfile()));
+        private ConversionSchedulingConfig scheduling = new ConversionSchedulingConfig();
+        private ConversionSegmentationConfig segmentation = new ConversionSegmentationConfig();
+
+        public TranscodeProfile getActiveProfile() {
+            return Optional.ofNullable(profiles.get(profile)).orElseGet(TranscodeProfile::new);
+        }
+    }
+
+    /**
+     * Queued conversions run by priority class, and within a class the shortest estimated encode first. Waiting moves
+     * conversions up, so large and bulk conversions still run while new ones keep arriving.
+     */
+    @Data
+    public static class ConversionSchedulingConfig {
+        /**
+         * How long a queued conversion waits before it is scheduled with the next higher priority class.
+         */
+        private long classPromotionMinutes = 720;
+        /**
+         * Encode time is estimated as the input's duration, or longer for inputs with a higher bitrate than this.
+         */
+        private long referenceBitrateKbps = 10000;
+        /**
+         * Seconds taken off a queued conversion's estimated encode time per second it waits, when ordering its class.
+         */
+        private double agingRate = 1.0;
+        /**
+         * Claimed conversions the executor still doesn't know about after this long are queued again.
+         */
+        private long launchTimeoutMinutes = 15;
+        /**
+         * How long one scan may spend analyzing the conversions it claimed, less than launchTimeoutMinutes. Those not
+         * analyzed by then are queued again for the next scan.
+         */
+        private long scanAnalysisMinutes = 10;
+    }
+
+    /**
+     * Long inputs that need their video encoded can be split at keyframes into segments encoded by parallel jobs, then
+     * joined without re-encoding. Only the Kubernetes executor runs segments. A segmented conversion counts once against
+     * the concurrent conversion limit while its segments run, so it can take up to maxSegments jobs of the cluster.
+     */
+    @Data
+    public static class ConversionSegmentationConfig {
+        private boolean enabled = false;
+        /**
+         * Shorter inputs are encoded by a single job.
+         */
+        private long minimumDurationMinutes = 60;
+        /**
+         * Target length of each segment.
+         */
+        private long segmentMinutes = 15;
+        private int maxSegments = 8;
+        /**
+         * How many times a segment is launched before its conversion fails.
+         */
+        private int maxAttempts = 3;
+    }
+
+    @Data
+    public static class TranscodeProfile {
+        /**
+         * Hardware encoders such as h264_nvenc or h264_qsv can be used on nodes that have them.
+         */
+        private String videoEncoder = "libx264";
+        /**
+         * Leave unset for encoders that don't take a preset.
+         */
+        private String preset = "medium";
+        /**
+         * Leave unset for encoders that don't take a CRF, and tune them with extraVideoOptions instead.
+         */
+        private Integer crf = 18;
+        private List<String> extraVideoOptions = new ArrayList<>();
+        /**
+         * H.264 profile and level the output targets. Sources already within them are copied.
+         */
+        private String videoProfile = "high";
+        private String videoLevel = "4.1";
+        private String audioBitrate = "192k";
+        private int audioChannels = 2;
+        /**
+         * Copy AAC audio that already fits the channel limit, leaving its loudness as it is.
+         */
+        private boolean copyCompatibleAudio = true;
+        private LoudnormMode loudnorm = LoudnormMode.SINGLE_PASS;
+        /**
+         * EBU R128 targets: integrated loudness in LUFS, true peak in dBTP and loudness range in LU.
+         */
+        private double integratedLoudness = -16;
+        private double truePeak = -1.5;
+        private double loudnessRange = 7;
+    }
+
+    @Data
+    public static class StreamConfig {
+        /**
+         * CHUNKED answers every range request with a bounded region, FULL_RANGE sends the whole requested range
+         * with sendfile/transferTo.
+         */
+        private StreamMode mode = StreamMode.CHUNKED;
+        private long initialChunkBytes = 4L * 1024 * 1024;
+        private long minChunkBytes = 1024L * 1024;
+        private long maxChunkBytes = 32L * 1024 * 1024;
+        /**
+         * Chunks are sized so a client at its measured throughput fetches one in roughly this many seconds.
+         */
+        private double targetChunkSeconds = 2;
+        private int sessionIdleSeconds = 30;
+    }
+
+    @Data
+    public static class CatalogCacheConfig {
+        private boolean enabled = true;
+        private long maximumSize = 1000;
+        /**
+         * Upper bound on staleness for catalog changes made by other replicas.
+         */
+        private long ttlMinutes = 10;
+    }
+
+    @Data
+    public static class SearchConfig {
+        /**
+         * Number of ranked matches considered before type, path and genre filters are applied.
+         */
+        private int maxResults = 1000;
+        /**
+         * Minimum pg_trgm word similarity for a title to match despite typos.
+         */
+        private double similarityThreshold = 0.4;
+    }
+
+    @Data
+    public static class PosterCacheConfig {
+        private boolean enabled = true;
+        /**
+         * Direct memory reserved for cached poster bytes, least recently used posters are evicted beyond this.
+         */
+        private long maximumBytes = 64L * 1024 * 1024;
+        /**
+         * Media files whose poster content hash is remembered, each entry is a few hundred bytes of heap.
+         */
+        private long maximumMediaFiles = 50_000;
+        /**
+         * Upper bound on staleness for posters replaced through other replicas.
+         */
+        private long ttlMinutes = 60;
+    }
+
+    @Data
+    public static class PosterStoreConfig {
+        /**
+         * How long an unreferenced poster is kept after it was last stored. Must exceed the metadata cache TTL, cached
+         * OMDb responses keep pointing at the poster they stored.
+         */
+        private long orphanGraceMinutes = 1440;
+    }
+
+    @Data
+    public static class ScanConfig {
+        /**
+         * Diff the media roots against the file state stored in the database instead of querying per file.
+         */
+        private boolean incremental = true;
+        /**
+         * Remove media that disappeared while the service was down. Media roots that can't be fully read or are empty are
+         * left alone.
+         */
+        private boolean reconcileRemovals = true;
+    }
+
+    @Data
+    public static class IngestConfig {
+        /**
+         * Virtual threads fetching metadata for new media. OMDb throughput is capped by the "omdb" rate limiter.
+         */
+        private int metadataConcurrency = 8;
+        /**
+         * Capacity of each stage queue, a full queue blocks the stage feeding it.
+         */
+        private int queueCapacity = 100;
+        private int batchSize = 50;
+        /**
+         * How long the writer waits for a batch to fill before saving what it has.
+         */
+        private long flushIntervalMs = 1000;
+    }
+
+    @Data
+    public static class MetadataCacheConfig {
+        private boolean enabled = true;
+        /**
+         * Heap reserved for cached OMDb responses, most of which is their poster bytes.
+         */
+        private long maximumBytes = 32L * 1024 * 1024;
+        private long ttlMinutes = 360;
+        /**
+         * How long a title OMDb doesn't know is remembered, kept below the metadata retry delay.
+         */
+        private long notFoundTtlMinutes = 30;
+    }
+
+    @Data
+    public static class JobTrackerConfig {
+        /**
+         * Watch conversion jobs and their pods instead of asking the API server for each running job.
+         */
+        private boolean enabled = true;
+        /**
+         * How often the informers replay their caches to the handlers, covering any missed watch event.
+         */
+        private long resyncMinutes = 10;
+    }
+
+    @Data
+    public static class EventStreamConfig {
+        /**
+         * Clients reconnect once their stream times out, resuming from the last event they received.
+         */
+        private long timeoutMinutes = 30;
+        /**
+         * Events replayed to a client resuming from its cursor. Clients further behind are told to reload the catalog.
+         */
+        private int maxReplayEvents = 1000;
+        /**
+         * How far back each poll for events recorded by other replicas looks, covering transactions that committed late.
+         */
+        private long pollOverlapSeconds = 60;
+        /**
+         * Events waiting to be sent to a slow client. A client further behind has its stream closed and resumes from
+         * the last event it received.
+         */
+        private int maxPendingEvents = 500;
+    }
+
+    @Data
+    public static class SyncConfig {
+        /**
+         * Changes returned by one sync. Clients further behind are told to reload the catalog.
+         */
+        private int maxChanges = 1000;
+        /**
+         * How far before its token each sync looks, covering transactions that committed late. Changes in this window
+         * are returned again, which clients apply idempotently.
+         */
+        private long overlapSeconds = 60;
+    }
+
+    public enum LoudnormMode {
+        OFF,
+        SINGLE_PASS,
+        /**
+         * Measures the input's loudness first, so the second pass can normalize it linearly.
+         */
+        TWO_PASS
+    }
+
+    public enum ConversionExecutorType {
+        KUBERNETES,
+        LOCAL
+    }
+
+    public enum WatcherMode {
+        NATIVE,
+        POLLING
+    }
+
+    public enum StreamMode {
+        CHUNKED,
+        FULL_RANGE
     }
 
     @Data
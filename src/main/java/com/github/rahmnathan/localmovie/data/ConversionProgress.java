@@ -0,0 +1,18 @@
+package com.github.rahmnathan.localmovie.data;
+
+import java.time.Instant;
+
+/**
+ * Latest progress reported by a running conversion. Values ffmpeg hasn't reported yet are null.
+ */
+public record ConversionProgress(String jobId,
+                                 String inputFile,
+                                 Double percentComplete,
+                                 Long etaSeconds,
+                                 Long encodedSeconds,
+                                 Long durationSeconds,
+                                 Double speed,
+                                 Double fps,
+                                 Double bitrateKbps,
+                                 Instant updated) {
+}
@@ -0,0 +1,9 @@
+package com.github.rahmnathan.localmovie.data;
+
+import java.time.LocalDateTime;
+
+/**
+ * A media file in a user's history and when the user's view of it was last written.
+ */
+public record HistoryEntry(String mediaFileId, LocalDateTime updated) {
+}
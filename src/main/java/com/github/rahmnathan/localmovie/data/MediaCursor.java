@@ -0,0 +1,67 @@
+package com.github.rahmnathan.localmovie.data;
+
+import com.github.rahmnathan.localmovie.media.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Opaque continuation token for cursor pagination. It records the order it was issued for together with the sort
+ * value and mediaFileId of the last row returned, so the next page can seek past that row instead of using an offset.
+ */
+public record MediaCursor(String order, String mediaFileId, String sortValue) {
+    private static final String SEPARATOR = "\n";
+    private static final String VALUE_PREFIX = "v";
+
+    public static MediaCursor of(String order, String mediaFileId, Object sortValue) {
+        return new MediaCursor(order, mediaFileId, sortValue == null ? null : sortValue.toString());
+    }
+
+    public String encode() {
+        // The sort value goes last so a separator inside of it can't shift the other fields
+        String raw = String.join(SEPARATOR, order, mediaFileId, sortValue == null ? "" : VALUE_PREFIX + sortValue);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static MediaCursor decode(String token) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(SEPARATOR, 3);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("Malformed cursor.");
+        }
+
+        if (parts.length != 3 || parts[0].isEmpty() || parts[1].isEmpty()) {
+            throw new InvalidCursorException("Malformed cursor.");
+        }
+
+        return new MediaCursor(parts[0], parts[1], parts[2].isEmpty() ? null : parts[2].substring(VALUE_PREFIX.length()));
+    }
+
+    public MediaCursor requireOrder(String expectedOrder) {
+        if (!order.equals(expectedOrder)) {
+            throw new InvalidCursorException("Cursor was issued for order '" + order + "' but the request uses '" + expectedOrder + "'.");
+        }
+        return this;
+    }
+
+    public Object sortValueAs(Class<?> type) {
+        if (sortValue == null) {
+            return null;
+        }
+
+        try {
+            if (type == LocalDateTime.class) {
+                return LocalDateTime.parse(sortValue);
+            } else if (type == Integer.class) {
+                return Integer.valueOf(sortValue);
+            }
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new InvalidCursorException("Malformed cursor value.");
+        }
+
+        return sortValue;
+    }
+}
@@ -9,7 +9,7 @@ import java.time.LocalDateTime;
 import java.util.Set;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class MediaFileDto {
     private Long id;
     private String parentPath;
@@ -24,6 +24,9 @@ public class MediaFileDto {
     private boolean streamable;
     private boolean favorite;
     private MediaFileType mediaFileType;
+    private int childCount;
+    private int episodeCount;
+    private LocalDateTime latestAdded;
     private MediaDto media;
     private ParentMediaDto parent;
 
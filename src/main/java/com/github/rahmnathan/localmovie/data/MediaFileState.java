@@ -0,0 +1,13 @@
+package com.github.rahmnathan.localmovie.data;
+
+import java.util.Objects;
+
+/**
+ * What the database knows about a media file on disk, loaded in bulk by the startup scan.
+ */
+public record MediaFileState(String path, String absolutePath, Long fileSize, Long lastModified) {
+
+    public boolean matches(Long fileSize, Long lastModified) {
+        return Objects.equals(this.fileSize, fileSize) && Objects.equals(this.lastModified, lastModified);
+    }
+}
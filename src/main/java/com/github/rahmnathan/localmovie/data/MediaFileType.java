@@ -66,6 +66,17 @@ public enum MediaFileType {
                 .findFirst();
     }
 
+    /**
+     * The type of the media files directly below one of this type, null when nothing is.
+     */
+    public MediaFileType getChildType() {
+        return switch (this) {
+            case SERIES -> SEASON;
+            case SEASON -> EPISODE;
+            default -> null;
+        };
+    }
+
     public void extractPathElements(String path, MediaPath.MediaPathBuilder builder) throws InvalidMediaException {
         builder.mediaType(mediaType);
         builder.streamable(streamable);
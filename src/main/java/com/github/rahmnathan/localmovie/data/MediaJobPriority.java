@@ -0,0 +1,16 @@
+package com.github.rahmnathan.localmovie.data;
+
+public enum MediaJobPriority {
+    /**
+     * Asked for by a user who is waiting to watch it.
+     */
+    REQUESTED,
+    /**
+     * Found by the directory monitor.
+     */
+    NEW_ARRIVAL,
+    /**
+     * Re-encoding media that already plays.
+     */
+    RECONVERSION
+}
@@ -6,23 +6,36 @@ import lombok.Getter;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Function;
 
 @Getter
 public enum MediaOrder {
-    DATE_ADDED("added", QMediaFile.mediaFile.created.desc()),
-    RATING("rating", QMediaFile.mediaFile.media.imdbRating.desc()),
-    RELEASE_YEAR("year", QMediaFile.mediaFile.media.releaseYear.desc()),
-    SEASONS_EPISODES("season-episode", QMediaFile.mediaFile.media.number.asc()),
-    TITLE("title", QMediaFile.mediaFile.fileName.asc());
+    DATE_ADDED("added", QMediaFile.mediaFile.created.desc(), MediaFileDto::getCreated, false),
+    RATING("rating", QMediaFile.mediaFile.media.imdbRating.desc(), dto -> dto.getMedia() == null ? null : dto.getMedia().getImdbRating(), true),
+    RELEASE_YEAR("year", QMediaFile.mediaFile.media.releaseYear.desc(), dto -> dto.getMedia() == null ? null : dto.getMedia().getReleaseYear(), true),
+    // Search results are ranked by MediaSearchService, without a search this falls back to title order
+    RELEVANCE("relevance", QMediaFile.mediaFile.fileName.asc(), MediaFileDto::getFileName, false),
+    SEASONS_EPISODES("season-episode", QMediaFile.mediaFile.media.number.asc(), dto -> dto.getMedia() == null ? null : dto.getMedia().getNumber(), true),
+    TITLE("title", QMediaFile.mediaFile.fileName.asc(), MediaFileDto::getFileName, false);
 
     private final String key;
     private final OrderSpecifier<?> orderSpecifier;
+    /**
+     * Reads the value this order sorts by from a returned row, used to build continuation cursors.
+     */
+    private final Function<MediaFileDto, Object> sortValue;
+    /**
+     * Whether rows can lack the sort value. File names and creation dates are always set when a media file is saved.
+     */
+    private final boolean nullable;
 
     private static final Map<String, MediaOrder> lookup = new HashMap<>();
 
-    MediaOrder(String key, OrderSpecifier<?> orderSpecifier) {
+    MediaOrder(String key, OrderSpecifier<?> orderSpecifier, Function<MediaFileDto, Object> sortValue, boolean nullable) {
         this.orderSpecifier = orderSpecifier;
         this.key = key;
+        this.sortValue = sortValue;
+        this.nullable = nullable;
     }
 
     static {
@@ -0,0 +1,10 @@
+package com.github.rahmnathan.localmovie.data;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * One page of media files and, in cursor mode, the cursor of the page after it.
+ */
+public record MediaPage(List<MediaFileDto> mediaFiles, Optional<String> nextCursor) {
+}
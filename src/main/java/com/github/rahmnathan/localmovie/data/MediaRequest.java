@@ -29,6 +29,17 @@ public class MediaRequest {
     @Size(max = 20)
     private String client;
     private Boolean includeDetails;
+    /**
+     * Opts into cursor pagination: empty for the first page, afterwards the Next-Cursor of the previous response.
+     * The page field is ignored and no count is computed in this mode.
+     */
+    @Size(max = 512)
+    private String cursor;
+    /**
+     * Size of the signed poster URLs in the response: thumbnail, medium or full. Full when absent.
+     */
+    @Size(max = 20)
+    private String posterSize;
 
     public MediaRequest(String path, String parentId, int page, int pageSize, String order, String q, String genre, String type) {
         this(path, parentId, page, pageSize, order, q, genre, type, null, null);
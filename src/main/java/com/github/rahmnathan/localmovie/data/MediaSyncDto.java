@@ -0,0 +1,31 @@
+package com.github.rahmnathan.localmovie.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * The library changes since a client's last sync. Deletes are applied first, each removing the media file at the
+ * path and everything below it. An upsert replaces whatever the client holds at its path.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class MediaSyncDto {
+    /**
+     * Passed as since on the next sync. Event stream ids are tokens too, so clients can switch between the two.
+     */
+    private String token;
+    /**
+     * The client is too far behind, or has never synced, and reloads the catalog before syncing from the token.
+     */
+    private boolean resync;
+    @Builder.Default
+    private List<MediaFileDto> upserts = List.of();
+    @Builder.Default
+    private List<String> deletes = List.of();
+}
@@ -0,0 +1,35 @@
+package com.github.rahmnathan.localmovie.data;
+
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+public enum PosterSize {
+    THUMBNAIL("thumbnail", 185, 278),
+    MEDIUM("medium", 342, 513),
+    FULL("full", 500, 750);
+
+    private final String key;
+    private final int maxWidth;
+    private final int maxHeight;
+
+    private static final Map<String, PosterSize> lookup = new HashMap<>();
+
+    PosterSize(String key, int maxWidth, int maxHeight) {
+        this.key = key;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+    }
+
+    static {
+        for (PosterSize posterSize : PosterSize.values()) {
+            lookup.put(posterSize.getKey(), posterSize);
+        }
+    }
+
+    public static PosterSize lookup(String key) {
+        return key == null ? FULL : lookup.getOrDefault(key.toLowerCase(), FULL);
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.rahmnathan.localmovie.data.transformer;
 
+import com.github.rahmnathan.localmovie.data.MediaEventDto;
 import com.github.rahmnathan.localmovie.data.MediaFileDto;
 import com.github.rahmnathan.localmovie.persistence.entity.*;
 import lombok.experimental.UtilityClass;
@@ -25,6 +26,9 @@ public class MediaFileTransformer {
         builder.path(mediaFile.getPath());
         builder.streamable(mediaFile.getStreamable());
         builder.mediaFileType(mediaFile.getMediaFileType());
+        builder.childCount(mediaFile.getChildCount());
+        builder.episodeCount(mediaFile.getEpisodeCount());
+        builder.latestAdded(mediaFile.getLatestAdded());
 
         Media media = mediaFile.getMedia();
         if(media != null) {
@@ -60,7 +64,17 @@ public class MediaFileTransformer {
         return builder.build();
     }
 
-    private static MediaFileDto.MediaViewDto toMediaViewDto(MediaView mediaView) {
+    public static MediaEventDto toMediaEventDto(MediaFileEvent event) {
+        return MediaEventDto.builder()
+                .id(event.getId())
+                .timestamp(event.getTimestamp())
+                .relativePath(event.getRelativePath())
+                .event(event.getEvent())
+                .mediaFile(event.getMediaFile() != null ? toMediaFileDto(event.getMediaFile(), null) : null)
+                .build();
+    }
+
+    public static MediaFileDto.MediaViewDto toMediaViewDto(MediaView mediaView) {
         MediaFileDto.MediaViewDto.MediaViewDtoBuilder mediaViewDto = MediaFileDto.MediaViewDto.builder();
         mediaViewDto.id(mediaView.getId());
         mediaViewDto.position(mediaView.getPosition());
@@ -17,6 +17,7 @@ import java.util.UUID;
 public class MediaFileService {
     private final MediaPersistenceService persistenceService;
     private final MediaService mediaService;
+    private final PathLocks pathLocks = new PathLocks();
 
     @Transactional
     public MediaFile loadMediaFile(MediaPath path) {
@@ -26,23 +27,29 @@ public class MediaFileService {
             return mediaFile.get();
         }
 
-        return loadNewMediaFile(path);
+        // Creating a path only waits on callers creating the same path, until this transaction commits the new row.
+        // Parents are created under their own lock, so unrelated series load in parallel while episodes of one season
+        // still share a single season row.
+        return pathLocks.withLock(path.getRelativePath(), () -> loadNewMediaFile(path));
     }
 
     private MediaFile loadNewMediaFile(MediaPath path) {
+        Optional<MediaFile> savedWhileWaiting = persistenceService.getMediaFileByPath(path);
+        if (savedWhileWaiting.isPresent()) {
+            return savedWhileWaiting.get();
+        }
+
         MediaFile mediaFile = MediaFile.forPath(path)
                 .media(mediaService.loadMedia(path))
                 .mediaFileId(UUID.randomUUID().toString())
                 .build();
 
-        synchronized (persistenceService) {
-            MediaPath parentPath = path.getParentPath();
-            if (parentPath != null) {
-                MediaFile parent = loadMediaFile(parentPath);
-                mediaFile.setParent(parent);
-            }
-
-            return persistenceService.saveMediaFile(mediaFile);
+        MediaPath parentPath = path.getParentPath();
+        if (parentPath != null) {
+            MediaFile parent = loadMediaFile(parentPath);
+            mediaFile.setParent(parent);
         }
+
+        return persistenceService.saveMediaFile(mediaFile);
     }
 }
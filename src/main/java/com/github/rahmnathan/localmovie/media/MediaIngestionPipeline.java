@@ -0,0 +1,239 @@
+package com.github.rahmnathan.localmovie.media;
+
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.MediaPath;
+import com.github.rahmnathan.localmovie.persistence.entity.Media;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaFile;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaFileRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Ingests new media in stages connected by bounded queues: discovered paths wait for a metadata fetcher, fetched
+ * media files wait for the writer, and the writer saves them in batches. A full queue blocks the stage feeding it, so
+ * a large import moves at the pace of the OMDb rate limit without piling up work in memory.
+ */
+@Slf4j
+@Component
+public class MediaIngestionPipeline {
+    private static final MediaPath END_OF_PATHS = MediaPath.builder().build();
+    private static final PendingMediaFile END_OF_FILES = new PendingMediaFile(null, null);
+
+    private final MediaService mediaService;
+    private final MediaFileService mediaFileService;
+    private final MediaFileRepository mediaFileRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ServiceConfig.IngestConfig config;
+
+    private final BlockingQueue<MediaPath> metadataQueue;
+    private final BlockingQueue<PendingMediaFile> persistQueue;
+    private final Timer metadataTimer;
+    private final Timer persistTimer;
+    private final Counter savedCounter;
+    private final Counter failedCounter;
+
+    public MediaIngestionPipeline(MediaService mediaService,
+                                  MediaFileService mediaFileService,
+                                  MediaFileRepository mediaFileRepository,
+                                  PlatformTransactionManager transactionManager,
+                                  ServiceConfig serviceConfig,
+                                  MeterRegistry registry) {
+        this.mediaService = mediaService;
+        this.mediaFileService = mediaFileService;
+        this.mediaFileRepository = mediaFileRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.config = serviceConfig.getIngest();
+
+        this.metadataQueue = new ArrayBlockingQueue<>(config.getQueueCapacity());
+        this.persistQueue = new ArrayBlockingQueue<>(config.getQueueCapacity());
+        registry.gauge("localmovies.ingest.queue", Tags.of("stage", "metadata"), metadataQueue, Queue::size);
+        registry.gauge("localmovies.ingest.queue", Tags.of("stage", "persist"), persistQueue, Queue::size);
+        this.metadataTimer = registry.timer("localmovies.ingest.stage", "stage", "metadata");
+        this.persistTimer = registry.timer("localmovies.ingest.stage", "stage", "persist");
+        this.savedCounter = registry.counter("localmovies.ingest.media", "result", "saved");
+        this.failedCounter = registry.counter("localmovies.ingest.media", "result", "failed");
+    }
+
+    /**
+     * Fetches metadata for and saves the given paths, returning how many media files were saved.
+     */
+    public synchronized int ingest(Collection<MediaPath> mediaPaths) {
+        // Children reference their parent row, so each directory depth is saved before the next one starts
+        Map<Integer, List<MediaPath>> waves = mediaPaths.stream()
+                .collect(Collectors.groupingBy(MediaIngestionPipeline::depth, TreeMap::new, Collectors.toList()));
+
+        int saved = 0;
+        for (List<MediaPath> wave : waves.values()) {
+            saved += ingestWave(wave);
+        }
+
+        return saved;
+    }
+
+    private int ingestWave(List<MediaPath> wave) {
+        int fetchers = Math.max(1, Math.min(config.getMetadataConcurrency(), wave.size()));
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            List<Future<?>> fetcherFutures = new ArrayList<>();
+            for (int i = 0; i < fetchers; i++) {
+                fetcherFutures.add(executor.submit(this::fetchMetadata));
+            }
+            Future<Integer> writerFuture = executor.submit(this::persistBatches);
+
+            for (MediaPath mediaPath : wave) {
+                metadataQueue.put(mediaPath);
+            }
+            for (int i = 0; i < fetchers; i++) {
+                metadataQueue.put(END_OF_PATHS);
+            }
+            for (Future<?> fetcherFuture : fetcherFutures) {
+                fetcherFuture.get();
+            }
+
+            persistQueue.put(END_OF_FILES);
+            return writerFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while ingesting media.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Media ingestion failed.", e.getCause());
+        } finally {
+            // A wave that failed part way leaves stages waiting for input that won't come
+            executor.shutdownNow();
+            executor.close();
+        }
+    }
+
+    private Void fetchMetadata() throws InterruptedException {
+        while (true) {
+            MediaPath mediaPath = metadataQueue.take();
+            if (mediaPath == END_OF_PATHS) {
+                return null;
+            }
+
+            try {
+                MediaFile mediaFile = metadataTimer.recordCallable(() -> MediaFile.forPath(mediaPath)
+                        .media(mediaService.loadMedia(mediaPath))
+                        .build());
+                persistQueue.put(new PendingMediaFile(mediaPath, mediaFile));
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                log.error("Failed to load metadata for {}", mediaPath, e);
+                failedCounter.increment();
+            }
+        }
+    }
+
+    private int persistBatches() throws InterruptedException {
+        int saved = 0;
+        List<PendingMediaFile> batch = new ArrayList<>(config.getBatchSize());
+
+        while (true) {
+            PendingMediaFile pending = persistQueue.poll(config.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+            if (pending == END_OF_FILES) {
+                return saved + flush(batch);
+            }
+
+            if (pending != null) {
+                batch.add(pending);
+            }
+
+            // Metadata arrives at the rate limit, so partial batches are saved rather than held back
+            if (batch.size() >= config.getBatchSize() || (pending == null && !batch.isEmpty())) {
+                saved += flush(batch);
+            }
+        }
+    }
+
+    private int flush(List<PendingMediaFile> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        int saved;
+        try {
+            saved = persistTimer.record(() -> transactionTemplate.execute(status -> saveAll(batch)));
+        } catch (Exception e) {
+            log.warn("Failed to save batch of {} media files, saving individually.", batch.size(), e);
+            saved = (int) batch.stream()
+                    .filter(this::saveIndividually)
+                    .count();
+        }
+
+        failedCounter.increment(batch.size() - saved);
+        savedCounter.increment(saved);
+        batch.clear();
+        return saved;
+    }
+
+    private int saveAll(List<PendingMediaFile> batch) {
+        Set<String> parentPaths = batch.stream()
+                .map(pending -> pending.mediaPath().getParentPath())
+                .filter(Objects::nonNull)
+                .map(MediaPath::getRelativePath)
+                .collect(Collectors.toSet());
+        Map<String, MediaFile> parents = parentPaths.isEmpty() ? Map.of() : mediaFileRepository.findAllByPathIn(parentPaths).stream()
+                .collect(Collectors.toMap(MediaFile::getPath, Function.identity()));
+
+        List<MediaFile> mediaFiles = batch.stream()
+                .map(pending -> withParent(pending, parents))
+                .toList();
+        mediaFileRepository.saveAll(mediaFiles);
+        return mediaFiles.size();
+    }
+
+    private boolean saveIndividually(PendingMediaFile pending) {
+        try {
+            PendingMediaFile rebuilt = new PendingMediaFile(pending.mediaPath(), rebuild(pending));
+            transactionTemplate.executeWithoutResult(status -> mediaFileRepository.save(withParent(rebuilt, Map.of())));
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to save media - {}", pending.mediaPath(), e);
+            return false;
+        }
+    }
+
+    private MediaFile withParent(PendingMediaFile pending, Map<String, MediaFile> parents) {
+        MediaPath parentPath = pending.mediaPath().getParentPath();
+        if (parentPath != null) {
+            MediaFile parent = parents.get(parentPath.getRelativePath());
+            // Parents outside of this import, or ones that failed to save, are loaded the same way events load them
+            pending.mediaFile().setParent(parent != null ? parent : mediaFileService.loadMediaFile(parentPath));
+        }
+
+        return pending.mediaFile();
+    }
+
+    /**
+     * The failed batch assigned ids to its entities, so saving them again would merge rows that were never written.
+     */
+    private static MediaFile rebuild(PendingMediaFile pending) {
+        Media media = pending.mediaFile().getMedia();
+        Media copy = media.cloneToPojo();
+        copy.setImdbId(media.getImdbId());
+        copy.setNumber(media.getNumber());
+        return MediaFile.forPath(pending.mediaPath())
+                .media(copy)
+                .build();
+    }
+
+    private static int depth(MediaPath mediaPath) {
+        return mediaPath.getRelativePath().split("/").length;
+    }
+
+    private record PendingMediaFile(MediaPath mediaPath, MediaFile mediaFile) {
+    }
+}
@@ -1,9 +1,13 @@
 package com.github.rahmnathan.localmovie.media;
 
 import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.MediaFileState;
+import com.github.rahmnathan.localmovie.data.MediaFileType;
 import com.github.rahmnathan.localmovie.data.MediaPath;
+import com.github.rahmnathan.localmovie.media.event.MediaEventService;
 import com.github.rahmnathan.localmovie.media.exception.InvalidMediaException;
 import com.github.rahmnathan.localmovie.media.subtitle.SubtitleJobService;
+import com.github.rahmnathan.localmovie.persistence.CatalogCache;
 import com.github.rahmnathan.localmovie.persistence.entity.MediaFile;
 import com.github.rahmnathan.localmovie.persistence.repository.MediaFileRepository;
 import com.github.rahmnathan.localmovie.persistence.repository.MediaJobRepository;
@@ -19,13 +23,18 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
-import java.util.UUID;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static com.github.rahmnathan.localmovie.data.MediaPath.MEDIA_ROOT_FOLDER;
@@ -35,47 +44,194 @@ import static com.github.rahmnathan.localmovie.media.event.MediaEventMonitor.ACT
 @Service
 @RequiredArgsConstructor
 public class MediaInitializer {
-    private final MediaFileService mediaFileService;
     private final MediaFileRepository mediaFileRepository;
     private final MediaJobRepository jobRepository;
     private final ServiceConfig serviceConfig;
     private final MeterRegistry meterRegistry;
     private final MediaService dataService;
     private final SubtitleJobService subtitleJobService;
+    private final CatalogCache catalogCache;
+    private final MediaEventService mediaEventService;
+    private final MediaIngestionPipeline ingestionPipeline;
 
     // Hold onto this for testing
     private ForkJoinTask<?> fileInitializationTask;
 
     @EventListener(ApplicationReadyEvent.class)
     public void initializeFileList() {
-        try (ForkJoinPool customThreadPool = new ForkJoinPool(16)) {
+        ForkJoinPool customThreadPool = new ForkJoinPool(16);
+        try {
             fileInitializationTask = customThreadPool.submit(() -> {
                 long startTime = System.currentTimeMillis();
 
-                serviceConfig.getMediaPaths().stream()
-                        .parallel()
-                        .flatMap(this::streamDirectoryTree)
-                        .filter(path -> path.contains(MEDIA_ROOT_FOLDER))
-                        .flatMap(this::listValidMediaPaths)
-                        .filter(mediaPath -> !mediaPath.isIgnore())
-                        .filter(mediaPath -> !dataService.existsInDatabase(mediaPath.getRelativePath()))
-                        .filter(mediaPath -> !isActiveConversion(mediaPath))
-                        .map(this::buildMediaFile)
-                        .filter(Objects::nonNull)
-                        .forEach(media -> {
-                            try {
-                                mediaFileRepository.save(media);
-                            } catch (Exception e) {
-                                log.error("Failed to save media.", e);
-                            }});
+                if (serviceConfig.getScan().isIncremental()) {
+                    scanIncremental();
+                } else {
+                    scanFull();
+                }
 
+                recountDirectories();
+                catalogCache.invalidate();
                 log.info("File list initialized.");
 
                 meterRegistry.timer("localmovies.file-list-initialization").record(System.currentTimeMillis() - startTime, TimeUnit.MILLISECONDS);
 
                 queueSubtitlesForExistingMedia();
             });
+            // Closing the pool while the scan waits on the ingestion pipeline would interrupt it, so it's only shut
+            // down once the scan is done
+            fileInitializationTask.quietlyJoin();
+        } finally {
+            customThreadPool.shutdown();
+        }
+    }
+
+    private void scanFull() {
+        List<MediaPath> newPaths = serviceConfig.getMediaPaths().stream()
+                .parallel()
+                .flatMap(path -> streamDirectoryTree(path, new AtomicBoolean()))
+                .filter(path -> path.contains(MEDIA_ROOT_FOLDER))
+                .flatMap(path -> listValidMediaPaths(path, new AtomicBoolean()))
+                .filter(mediaPath -> !mediaPath.isIgnore())
+                .filter(mediaPath -> !dataService.existsInDatabase(mediaPath.getRelativePath()))
+                .filter(mediaPath -> !isActiveConversion(mediaPath))
+                .toList();
+
+        ingestionPipeline.ingest(newPaths);
+    }
+
+    /**
+     * Loads the stored path, size and modification time of every media file once and diffs the media roots against
+     * it, so only new, changed and removed entries touch the database.
+     */
+    private void scanIncremental() {
+        Map<String, MediaFileState> knownFiles = mediaFileRepository.findAllFileStates().stream()
+                .collect(Collectors.toMap(MediaFileState::path, Function.identity()));
+        Set<String> activeConversions = jobRepository.findAllByStatusIn(ACTIVE_STATUSES).stream()
+                .flatMap(job -> Stream.of(job.getInputFile(), job.getOutputFile()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+
+        Set<String> scannedPaths = ConcurrentHashMap.newKeySet();
+        Set<String> reconcilableRoots = ConcurrentHashMap.newKeySet();
+        Queue<MediaPath> newPaths = new ConcurrentLinkedQueue<>();
+        AtomicInteger changed = new AtomicInteger();
+
+        serviceConfig.getMediaPaths().stream()
+                .parallel()
+                .forEach(root -> {
+                    AtomicBoolean scanFailed = new AtomicBoolean();
+                    AtomicInteger entries = new AtomicInteger();
+                    streamDirectoryTree(root, scanFailed)
+                            .filter(path -> path.contains(MEDIA_ROOT_FOLDER))
+                            .flatMap(path -> listValidMediaPaths(path, scanFailed))
+                            .forEach(mediaPath -> {
+                                entries.incrementAndGet();
+                                scannedPaths.add(mediaPath.getRelativePath());
+                                if (mediaPath.isIgnore() || activeConversions.contains(mediaPath.getAbsolutePath())) {
+                                    return;
+                                }
+
+                                MediaFileState knownFile = knownFiles.get(mediaPath.getRelativePath());
+                                if (knownFile == null) {
+                                    newPaths.add(mediaPath);
+                                } else if (updateFileState(mediaPath, knownFile)) {
+                                    changed.incrementAndGet();
+                                }
+                            });
+
+                    // An empty or partly unreadable root is more likely unmounted than emptied, so its media is kept
+                    if (scanFailed.get() || entries.get() == 0) {
+                        log.warn("Skipping removal of missing media under {}, it could not be fully scanned.", root);
+                    } else {
+                        reconcilableRoots.add(root);
+                    }
+                });
+
+        int added = ingestionPipeline.ingest(newPaths);
+
+        int removed = 0;
+        if (serviceConfig.getScan().isReconcileRemovals()) {
+            removed = removeMissingMedia(knownFiles, scannedPaths, activeConversions, reconcilableRoots);
+        }
+
+        log.info("Incremental scan of {} known files - added: {} changed: {} removed: {}", knownFiles.size(), added, changed.get(), removed);
+    }
+
+    private boolean updateFileState(MediaPath mediaPath, MediaFileState knownFile) {
+        File file = new File(mediaPath.getAbsolutePath());
+        if (!file.isFile()) {
+            return false;
+        }
+
+        long fileSize = file.length();
+        long lastModified = file.lastModified();
+        if (knownFile.matches(fileSize, lastModified)) {
+            return false;
+        }
+
+        // Rows stored before file state was tracked are filled in once without counting as a change
+        boolean changed = knownFile.fileSize() != null;
+        if (changed) {
+            log.info("Media file changed on disk - {}", mediaPath.getRelativePath());
+        }
+
+        mediaFileRepository.updateFileState(mediaPath.getRelativePath(), fileSize, lastModified);
+        return changed;
+    }
+
+    /**
+     * Removes known media that wasn't found, only under media roots that were fully scanned.
+     */
+    private int removeMissingMedia(Map<String, MediaFileState> knownFiles, Set<String> scannedPaths, Set<String> activeConversions, Set<String> reconcilableRoots) {
+        if (reconcilableRoots.isEmpty()) {
+            return 0;
         }
+
+        Set<String> missingPaths = knownFiles.values().stream()
+                .filter(knownFile -> !scannedPaths.contains(knownFile.path()))
+                .filter(knownFile -> !activeConversions.contains(knownFile.absolutePath()))
+                .filter(knownFile -> isUnderRoot(knownFile.absolutePath(), reconcilableRoots))
+                .map(MediaFileState::path)
+                .collect(Collectors.toSet());
+
+        int removed = 0;
+        for (String path : missingPaths) {
+            // Removing a directory removes everything below it
+            String parentPath = new File(path).getParent();
+            if (parentPath != null && missingPaths.contains(parentPath)) {
+                continue;
+            }
+
+            MediaFileState knownFile = knownFiles.get(path);
+            MediaPath mediaPath = MediaPath.safeParse(knownFile.absolutePath() != null ? knownFile.absolutePath() : path);
+            if (mediaPath == null) {
+                continue;
+            }
+
+            try {
+                mediaEventService.handleDeleteEvent(mediaPath);
+                removed++;
+            } catch (Exception e) {
+                log.error("Failed to remove missing media - {}", path, e);
+            }
+        }
+
+        return removed;
+    }
+
+    private static boolean isUnderRoot(String absolutePath, Set<String> roots) {
+        return absolutePath != null && roots.stream().anyMatch(root -> Paths.get(absolutePath).startsWith(Paths.get(root)));
+    }
+
+    /**
+     * Scans add media without going through the event service, so the directories are recounted once they're done.
+     */
+    private void recountDirectories() {
+        LocalDateTime updated = LocalDateTime.now();
+        int seasons = mediaFileRepository.recountDirectories(MediaFileType.SEASON.name(), updated);
+        int series = mediaFileRepository.recountDirectories(MediaFileType.SERIES.name(), updated);
+        log.info("Recounted {} seasons and {} series.", seasons, series);
     }
 
     private void queueSubtitlesForExistingMedia() {
@@ -102,22 +258,7 @@ public class MediaInitializer {
         meterRegistry.timer("localmovies.subtitle-initialization").record(System.currentTimeMillis() - startTime, TimeUnit.MILLISECONDS);
     }
 
-    private MediaFile buildMediaFile(MediaPath path) {
-        MediaFile mediaFile = MediaFile.forPath(path)
-                .media(dataService.loadMedia(path))
-                .mediaFileId(UUID.randomUUID().toString())
-                .build();
-
-        MediaPath parentPath = path.getParentPath();
-        if (parentPath != null) {
-            MediaFile parent = mediaFileService.loadMediaFile(parentPath);
-            mediaFile.setParent(parent);
-        }
-
-        return mediaFile;
-    }
-
-    private Stream<String> streamDirectoryTree(String path) {
+    private Stream<String> streamDirectoryTree(String path, AtomicBoolean walkFailed) {
         Set<String> paths = new HashSet<>();
         try {
             Files.walkFileTree(Paths.get(path), new SimpleFileVisitor<>() {
@@ -131,14 +272,21 @@ public class MediaInitializer {
             });
         } catch (IOException e) {
             log.error("Failure registering directory in directory monitor", e);
+            walkFailed.set(true);
         }
 
         return paths.parallelStream();
     }
 
-    private Stream<MediaPath> listValidMediaPaths(String absolutePath) {
+    private Stream<MediaPath> listValidMediaPaths(String absolutePath, AtomicBoolean listFailed) {
         log.info("Listing files at - {}", absolutePath);
-        File[] files = Optional.ofNullable(new File(absolutePath).listFiles()).orElse(new File[0]);
+        File[] files = new File(absolutePath).listFiles();
+        if (files == null) {
+            log.error("Failed to list files at - {}", absolutePath);
+            listFailed.set(true);
+            return Stream.empty();
+        }
+
         log.info("Found {} files.", files.length);
         return Set.of(files).parallelStream()
                 .map(file -> {
@@ -2,7 +2,7 @@ package com.github.rahmnathan.localmovie.media;
 
 import com.github.rahmnathan.localmovie.data.MediaPath;
 import com.github.rahmnathan.localmovie.media.exception.InvalidMediaException;
-import com.github.rahmnathan.localmovie.media.omdb.MediaProvider;
+import com.github.rahmnathan.localmovie.media.omdb.MediaMetadataCache;
 import com.github.rahmnathan.localmovie.media.omdb.MediaProviderException;
 import com.github.rahmnathan.localmovie.media.omdb.MediaType;
 import com.github.rahmnathan.localmovie.persistence.MediaPersistenceService;
@@ -17,7 +17,7 @@ import org.springframework.transaction.annotation.Transactional;
 @AllArgsConstructor
 public class MediaService {
     private final MediaPersistenceService persistenceService;
-    private final MediaProvider mediaProvider;
+    private final MediaMetadataCache metadataCache;
 
     @Transactional
     public Media loadMedia(MediaPath path) {
@@ -40,12 +40,12 @@ public class MediaService {
         }
 
         return switch (path.getMediaType()) {
-            case MOVIE -> mediaProvider.getMovie(path.getTitle(), path.getReleaseYear());
-            case SERIES -> mediaProvider.getSeries(path.getTitle(), path.getReleaseYear());
+            case MOVIE -> metadataCache.getMovie(path.getTitle(), path.getReleaseYear());
+            case SERIES -> metadataCache.getSeries(path.getTitle(), path.getReleaseYear());
             case SEASON -> loadSeriesParentInfo(path);
             case EPISODE -> {
                 try {
-                    yield mediaProvider.getEpisode(path.getSeriesPath().getTitle(), path.getSeasonNumber(), path.getEpisodeNumber());
+                    yield metadataCache.getEpisode(path.getSeriesPath().getTitle(), path.getSeasonNumber(), path.getEpisodeNumber());
                 } catch (MediaProviderException e) {
                     log.error("Failed to load episode from MediaProvider.", e);
                     yield loadSeriesParentInfo(path);
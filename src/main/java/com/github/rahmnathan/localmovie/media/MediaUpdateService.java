@@ -2,6 +2,8 @@ package com.github.rahmnathan.localmovie.media;
 
 import com.github.rahmnathan.localmovie.data.MediaPath;
 import com.github.rahmnathan.localmovie.media.exception.InvalidMediaException;
+import com.github.rahmnathan.localmovie.persistence.CatalogCache;
+import com.github.rahmnathan.localmovie.persistence.PosterCache;
 import com.github.rahmnathan.localmovie.persistence.entity.Media;
 import com.github.rahmnathan.localmovie.persistence.entity.MediaFile;
 import com.github.rahmnathan.localmovie.persistence.repository.MediaFileRepository;
@@ -20,6 +22,8 @@ public class MediaUpdateService {
     private final MediaFileRepository mediaFileRepository;
     private final MediaRepository mediaRepository;
     private final MediaService mediaService;
+    private final CatalogCache catalogCache;
+    private final PosterCache posterCache;
 
     public void updateMedia(String path) throws InvalidMediaException {
         MediaFile mediaFile = mediaFileRepository.findByPath(path).orElseThrow();
@@ -30,5 +34,7 @@ public class MediaUpdateService {
         mediaFileRepository.save(mediaFile);
 
         mediaRepository.delete(oldMedia);
+        catalogCache.invalidate();
+        posterCache.invalidate(mediaFile.getMediaFileId());
     }
 }
@@ -0,0 +1,58 @@
+package com.github.rahmnathan.localmovie.media;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * One lock per relative path, held while a caller works on that path. Inside a transaction the lock is held until the
+ * transaction completes, so the next caller sees the rows the previous one committed. Locks are dropped once nobody
+ * holds or waits on them, so the map only grows with the number of paths being created at the same time.
+ */
+public class PathLocks {
+    private final Map<String, PathLock> locks = new ConcurrentHashMap<>();
+
+    public <T> T withLock(String path, Supplier<T> action) {
+        PathLock pathLock = locks.compute(path, (key, existing) -> {
+            PathLock lock = existing == null ? new PathLock() : existing;
+            lock.users++;
+            return lock;
+        });
+
+        pathLock.lock.lock();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            try {
+                return action.get();
+            } finally {
+                release(path, pathLock);
+            }
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                release(path, pathLock);
+            }
+        });
+        return action.get();
+    }
+
+    private void release(String path, PathLock pathLock) {
+        pathLock.lock.unlock();
+        locks.computeIfPresent(path, (key, lock) -> --lock.users == 0 ? null : lock);
+    }
+
+    int size() {
+        return locks.size();
+    }
+
+    private static class PathLock {
+        private final ReentrantLock lock = new ReentrantLock();
+        // Only read and written inside ConcurrentHashMap.compute for this path
+        private int users;
+    }
+}
@@ -3,6 +3,7 @@ package com.github.rahmnathan.localmovie.media.event;
 import com.github.rahmnathan.localmovie.config.ServiceConfig;
 import com.github.rahmnathan.localmovie.data.MediaPath;
 import com.github.rahmnathan.localmovie.media.event.files.DirectoryMonitorObserver;
+import com.github.rahmnathan.localmovie.data.MediaJobPriority;
 import com.github.rahmnathan.localmovie.data.MediaJobStatus;
 import com.github.rahmnathan.localmovie.media.exception.InvalidMediaException;
 import com.github.rahmnathan.localmovie.persistence.entity.MediaJob;
@@ -64,7 +65,7 @@ public class MediaEventMonitor implements DirectoryMonitorObserver {
                     return;
                 }
 
-                waitForWriteComplete(file);
+                // FileEventDispatcher only hands over created files once they stopped changing
                 if (path.isStreamable() && serviceConfig.getConversionService().isEnabled()) {
                     Path outputPath = Paths.get(path.getDestinationPath());
                     if (Files.exists(outputPath)) {
@@ -96,6 +97,8 @@ public class MediaEventMonitor implements DirectoryMonitorObserver {
                 .outputFile(path.getDestinationPath())
                 .jobId(jobId)
                 .status(MediaJobStatus.QUEUED.name())
+                .priority(MediaJobPriority.NEW_ARRIVAL)
+                .inputSize(new File(path.getAbsolutePath()).length())
                 .build();
 
         mediaJobRepository.save(mediaJob);
@@ -120,22 +123,4 @@ public class MediaEventMonitor implements DirectoryMonitorObserver {
             mediaJobRepository.deleteAll(completedOutputJobs);
         }
     }
-
-    private void waitForWriteComplete(File file) {
-        while (true) {
-            long beforeLastModified = file.lastModified();
-
-            try {
-                Thread.sleep(3000);
-            } catch (InterruptedException e) {
-                log.error("Thread interrupted waiting for file write to complete.", e);
-                Thread.currentThread().interrupt();
-            }
-
-            long afterLastModified = file.lastModified();
-            if (beforeLastModified == afterLastModified) {
-                return;
-            }
-        }
-    }
 }
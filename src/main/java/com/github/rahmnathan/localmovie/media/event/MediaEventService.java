@@ -1,6 +1,7 @@
 package com.github.rahmnathan.localmovie.media.event;
 
 import com.github.rahmnathan.localmovie.data.MediaPath;
+import com.github.rahmnathan.localmovie.data.transformer.MediaFileTransformer;
 import com.github.rahmnathan.localmovie.media.MediaFileService;
 import com.github.rahmnathan.localmovie.media.exception.InvalidMediaException;
 import com.github.rahmnathan.localmovie.media.subtitle.SubtitleJobService;
@@ -9,6 +10,7 @@ import com.github.rahmnathan.localmovie.persistence.entity.MediaFile;
 import com.github.rahmnathan.localmovie.persistence.entity.MediaFileEvent;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -17,10 +19,10 @@ import org.springframework.transaction.annotation.Transactional;
 @Transactional
 @AllArgsConstructor
 public class MediaEventService {
-    private final PushNotificationService notificationHandler;
     private final MediaPersistenceService persistenceService;
     private final MediaFileService mediaFileService;
     private final SubtitleJobService subtitleJobService;
+    private final ApplicationEventPublisher eventPublisher;
 
     public void handleCreateEvent(MediaPath path) throws InvalidMediaException {
         log.info("Adding CREATE event to repository.");
@@ -31,6 +33,7 @@ public class MediaEventService {
         MediaFile mediaFile = mediaFileService.loadMediaFile(path);
         MediaFileEvent event = new MediaFileEvent(MediaEventType.ENTRY_CREATE.getMovieEventString(), mediaFile, path.getRelativePath());
         persistenceService.saveEvent(event);
+        eventPublisher.publishEvent(new MediaFileEventSaved(MediaFileTransformer.toMediaEventDto(event)));
 
         // Queue subtitle fetch for streamable media with IMDB ID
         // This is separate from the regular media job processing because the subtitle API has limits
@@ -41,7 +44,8 @@ public class MediaEventService {
             }
         }
 
-        notificationHandler.sendPushNotifications(mediaFile.getMedia().getTitle(), mediaFile.getMediaFileId());
+        // Last, as it locks the directories above until the transaction commits
+        persistenceService.recountDirectoriesAbove(path.getRelativePath());
     }
 
     public void handleDeleteEvent(MediaPath path) {
@@ -58,5 +62,8 @@ public class MediaEventService {
 
         MediaFileEvent event = new MediaFileEvent(MediaEventType.ENTRY_DELETE.getMovieEventString(), relativePath);
         persistenceService.saveEvent(event);
+        eventPublisher.publishEvent(new MediaFileEventSaved(MediaFileTransformer.toMediaEventDto(event)));
+
+        persistenceService.recountDirectoriesAbove(relativePath);
     }
 }
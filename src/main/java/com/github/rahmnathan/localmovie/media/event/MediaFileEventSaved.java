@@ -0,0 +1,9 @@
+package com.github.rahmnathan.localmovie.media.event;
+
+import com.github.rahmnathan.localmovie.data.MediaEventDto;
+
+/**
+ * Published when a media file was added to or removed from the library, delivered once the change has committed.
+ */
+public record MediaFileEventSaved(MediaEventDto event) {
+}
@@ -1,6 +1,7 @@
 package com.github.rahmnathan.localmovie.media.event;
 
 import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.MediaFileDto;
 import com.github.rahmnathan.localmovie.web.SecurityService;
 import com.google.firebase.messaging.FirebaseMessaging;
 import com.google.firebase.messaging.FirebaseMessagingException;
@@ -10,6 +11,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 @Slf4j
 @Service
@@ -20,6 +22,18 @@ public class PushNotificationService {
     private final SecurityService securityService;
     private FirebaseMessaging firebaseApp;
 
+    /**
+     * Announces media files added to the library, once the change has committed.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMediaFileEvent(MediaFileEventSaved saved) {
+        MediaFileDto mediaFile = saved.event().getMediaFile();
+        if (MediaEventType.ENTRY_CREATE.getMovieEventString().equals(saved.event().getEvent())
+                && mediaFile != null && mediaFile.getMedia() != null) {
+            sendPushNotifications(mediaFile.getMedia().getTitle(), mediaFile.getMediaFileId());
+        }
+    }
+
     void sendPushNotifications(String title, String mediaFileId) {
         if (serviceConfig.isNotificationsEnabled()) {
             log.info("Sending notification of new movie: {} to {} clients", title, MOVIE_TOPIC);
@@ -1,51 +1,68 @@
 package com.github.rahmnathan.localmovie.media.event.files;
 
 import com.github.rahmnathan.localmovie.config.ServiceConfig;
-import lombok.AllArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.monitor.FileAlterationListener;
-import org.apache.commons.io.monitor.FileAlterationMonitor;
-import org.apache.commons.io.monitor.FileAlterationObserver;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Set;
 
 @Slf4j
 @Service
-@AllArgsConstructor
+@RequiredArgsConstructor
 @ConditionalOnProperty(name = "service.directoryMonitor.enabled", havingValue = "true")
 public class DirectoryMonitor {
     private final Set<DirectoryMonitorObserver> observers;
     private final ServiceConfig config;
+    private final MeterRegistry meterRegistry;
+
+    private FileEventDispatcher dispatcher;
+    private DirectoryWatcher watcher;
 
     @EventListener(ApplicationReadyEvent.class)
     public void init() {
-        log.info("Starting Recursive Watcher Service with {} observers.", observers.size());
+        ServiceConfig.MediaEventMonitorConfig monitorConfig = config.getDirectoryMonitor();
+        log.info("Starting {} directory watcher with {} observers.", monitorConfig.getWatcher(), observers.size());
+
+        dispatcher = new FileEventDispatcher(observers, monitorConfig, meterRegistry);
+        List<Path> roots = config.getMediaPaths().stream().map(Paths::get).toList();
 
-        FileAlterationMonitor monitor = new FileAlterationMonitor();
-        FileAlterationListener listener = new DirectoryMonitorListener(monitor, observers);
+        try {
+            watcher = createWatcher(monitorConfig.getWatcher());
+            watcher.start(roots);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to start directory watcher.", e);
+        }
+    }
 
-        config.getMediaPaths().stream().map(Paths::get).forEach(p -> {
+    private DirectoryWatcher createWatcher(ServiceConfig.WatcherMode mode) throws IOException {
+        if (mode == ServiceConfig.WatcherMode.NATIVE) {
             try {
-                log.info("registering {} in watcher service", p);
-                FileAlterationObserver observer = FileAlterationObserver.builder()
-                        .setPath(p)
-                        .get();
-                observer.addListener(listener);
-                monitor.addObserver(observer);
-            } catch (Exception e) {
-                log.error("Failed to register {} in watcher service", p, e);
+                return new NativeDirectoryWatcher(dispatcher);
+            } catch (IOException | UnsupportedOperationException e) {
+                log.warn("Native file watching is unavailable, falling back to polling.", e);
             }
-        });
+        }
 
-        try {
-            monitor.start();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        return new PollingDirectoryWatcher(dispatcher);
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+        }
+        if (dispatcher != null) {
+            dispatcher.close();
         }
     }
-}
\ No newline at end of file
+}
@@ -2,27 +2,22 @@ package com.github.rahmnathan.localmovie.media.event.files;
 
 import com.github.rahmnathan.localmovie.media.event.MediaJobArtifacts;
 import org.apache.commons.io.monitor.FileAlterationListener;
-import org.apache.commons.io.monitor.FileAlterationMonitor;
 import org.apache.commons.io.monitor.FileAlterationObserver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.nio.file.WatchEvent;
-import java.util.Set;
-import java.util.concurrent.CompletableFuture;
 
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
 
 public class DirectoryMonitorListener implements FileAlterationListener {
     private final Logger logger = LoggerFactory.getLogger(DirectoryMonitorListener.class);
-    private final Set<DirectoryMonitorObserver> observers;
-    private final FileAlterationMonitor monitor;
+    private final FileEventDispatcher dispatcher;
 
-    public DirectoryMonitorListener(FileAlterationMonitor monitor, Set<DirectoryMonitorObserver> observers) {
-        this.monitor = monitor;
-        this.observers = observers;
+    public DirectoryMonitorListener(FileEventDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
     }
 
     @Override
@@ -37,10 +32,8 @@ public class DirectoryMonitorListener implements FileAlterationListener {
             return;
         }
 
+        // The root observer already walks new directories, so no observer of their own is needed
         notifyObservers(ENTRY_CREATE, file);
-        FileAlterationObserver observer = new FileAlterationObserver(file);
-        observer.addListener(this);
-        monitor.addObserver(observer);
     }
 
     @Override
@@ -88,14 +81,8 @@ public class DirectoryMonitorListener implements FileAlterationListener {
         // no-op
     }
 
-    private void notifyObservers(WatchEvent.Kind event, File file) {
+    private void notifyObservers(WatchEvent.Kind<?> event, File file) {
         logger.info("Detected media event {} at path {}", event, file);
-        observers.forEach(observer -> CompletableFuture.runAsync(() -> {
-            try {
-                observer.directoryModified(event, file);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-        }));
+        dispatcher.submit(event, file);
     }
 }
@@ -0,0 +1,14 @@
+package com.github.rahmnathan.localmovie.media.event.files;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * Watches the media roots recursively and submits create and delete events to a {@link FileEventDispatcher}.
+ */
+public interface DirectoryWatcher extends Closeable {
+
+    void start(Collection<Path> roots) throws IOException;
+}
@@ -0,0 +1,161 @@
+package com.github.rahmnathan.localmovie.media.event.files;
+
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands file events to the observers once the path has settled. Events for a path are debounced and the latest one
+ * wins, a directory delete absorbs pending events beneath it, and created files are only dispatched once their size and
+ * modification time stop changing. Waiting happens on a scheduler rather than on sleeping threads, and observers run on
+ * a bounded pool of their own so a large copy can't starve other work.
+ */
+@Slf4j
+public class FileEventDispatcher implements AutoCloseable {
+    private final Set<DirectoryMonitorObserver> observers;
+    private final ServiceConfig.MediaEventMonitorConfig config;
+    private final Map<Path, PendingEvent> pending = new ConcurrentHashMap<>();
+    private final AtomicLong generations = new AtomicLong();
+    private final ScheduledExecutorService scheduler;
+    private final ThreadPoolExecutor executor;
+    private final Counter dispatchedCounter;
+    private final Counter coalescedCounter;
+
+    public FileEventDispatcher(Set<DirectoryMonitorObserver> observers, ServiceConfig.MediaEventMonitorConfig config, MeterRegistry registry) {
+        this.observers = observers;
+        this.config = config;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("file-event-scheduler").daemon().factory());
+        // Callers run dispatches themselves once the queue is full, which holds back further stability checks
+        this.executor = new ThreadPoolExecutor(config.getEventWorkers(), config.getEventWorkers(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getEventQueueCapacity()),
+                Thread.ofPlatform().name("file-event-", 0).daemon().factory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        registry.gauge("localmovies.file-events.pending", pending, Map::size);
+        registry.gauge("localmovies.file-events.queue", executor.getQueue(), BlockingQueue::size);
+        this.dispatchedCounter = registry.counter("localmovies.file-events", "result", "dispatched");
+        this.coalescedCounter = registry.counter("localmovies.file-events", "result", "coalesced");
+    }
+
+    public void submit(WatchEvent.Kind<?> kind, File file) {
+        Path path = file.toPath().toAbsolutePath().normalize();
+
+        synchronized (pending) {
+            if (hasPendingDeleteAbove(path)) {
+                log.debug("Coalesced {} at {} into a pending directory delete", kind, path);
+                coalescedCounter.increment();
+                return;
+            }
+
+            if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+                cancelPendingBeneath(path);
+            }
+
+            long generation = generations.incrementAndGet();
+            PendingEvent event = new PendingEvent(kind, file, generation, schedule(path, generation, config.getDebounceMs()), FileState.of(file));
+            PendingEvent replaced = pending.put(path, event);
+            if (replaced != null) {
+                replaced.check().cancel(false);
+                coalescedCounter.increment();
+            }
+        }
+    }
+
+    private ScheduledFuture<?> schedule(Path path, long generation, long delayMs) {
+        return scheduler.schedule(() -> settle(path, generation), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void settle(Path path, long generation) {
+        PendingEvent event;
+        synchronized (pending) {
+            event = pending.get(path);
+            // A newer event for the path restarted the debounce, or a directory delete absorbed this one
+            if (event == null || event.generation() != generation) {
+                return;
+            }
+
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && event.file().isFile()) {
+                FileState state = FileState.of(event.file());
+                if (!state.equals(event.lastState())) {
+                    // Still being written, look again once the next interval has passed
+                    pending.put(path, event.withState(state, schedule(path, generation, config.getStabilityCheckMs())));
+                    return;
+                }
+            }
+
+            pending.remove(path);
+        }
+
+        executor.execute(() -> dispatch(event));
+    }
+
+    private void dispatch(PendingEvent event) {
+        log.info("Dispatching media event {} at path {}", event.kind(), event.file());
+        dispatchedCounter.increment();
+
+        for (DirectoryMonitorObserver observer : observers) {
+            try {
+                observer.directoryModified(event.kind(), event.file());
+            } catch (Exception e) {
+                log.error("Failed to handle media event {} at path {}", event.kind(), event.file(), e);
+            }
+        }
+    }
+
+    private boolean hasPendingDeleteAbove(Path path) {
+        for (Path parent = path.getParent(); parent != null; parent = parent.getParent()) {
+            PendingEvent event = pending.get(parent);
+            if (event != null && event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void cancelPendingBeneath(Path path) {
+        pending.entrySet().removeIf(entry -> {
+            if (!entry.getKey().startsWith(path) || entry.getKey().equals(path)) {
+                return false;
+            }
+
+            entry.getValue().check().cancel(false);
+            coalescedCounter.increment();
+            return true;
+        });
+    }
+
+    int pendingEvents() {
+        return pending.size();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        executor.shutdown();
+    }
+
+    private record PendingEvent(WatchEvent.Kind<?> kind, File file, long generation, ScheduledFuture<?> check, FileState lastState) {
+
+        PendingEvent withState(FileState state, ScheduledFuture<?> next) {
+            return new PendingEvent(kind, file, generation, next, state);
+        }
+    }
+
+    private record FileState(long size, long lastModified) {
+
+        static FileState of(File file) {
+            return new FileState(file.length(), file.lastModified());
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.github.rahmnathan.localmovie.media.event.files;
+
+import com.github.rahmnathan.localmovie.media.event.MediaJobArtifacts;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the media roots with the platform {@link WatchService} (inotify on Linux), so an idle library costs no I/O.
+ * Every directory is registered individually, new directories are registered as they appear, and the entries of each
+ * watched directory are remembered so a dropped batch of events can be recovered by rescanning only the directory
+ * that overflowed.
+ */
+@Slf4j
+public class NativeDirectoryWatcher implements DirectoryWatcher {
+    private final FileEventDispatcher dispatcher;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+    private final Map<Path, Set<Path>> entries = new ConcurrentHashMap<>();
+    private final Thread thread;
+
+    public NativeDirectoryWatcher(FileEventDispatcher dispatcher) throws IOException {
+        this.dispatcher = dispatcher;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.thread = Thread.ofPlatform().name("native-directory-watcher").daemon().unstarted(this::processEvents);
+    }
+
+    @Override
+    public void start(Collection<Path> roots) {
+        roots.forEach(root -> {
+            try {
+                log.info("registering {} in native watcher", root);
+                registerTree(root, false);
+            } catch (IOException e) {
+                log.error("Failed to register {} in native watcher", root, e);
+            }
+        });
+
+        thread.start();
+    }
+
+    private void processEvents() {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path directory = directories.get(key);
+            if (directory != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    handle(directory, event);
+                }
+            }
+
+            if (!key.reset()) {
+                directories.remove(key);
+            }
+        }
+    }
+
+    private void handle(Path directory, WatchEvent<?> event) {
+        if (event.kind() == OVERFLOW) {
+            log.warn("Watch events for {} overflowed, rescanning it", directory);
+            rescan(directory);
+            return;
+        }
+
+        Path path = directory.resolve((Path) event.context());
+        if (MediaJobArtifacts.isSubtitleSyncArtifact(path.toFile())) {
+            log.debug("Ignoring background media job artifact {}", path);
+            return;
+        }
+
+        if (event.kind() == ENTRY_CREATE) {
+            entries.computeIfAbsent(directory, key -> ConcurrentHashMap.newKeySet()).add(path);
+            dispatcher.submit(ENTRY_CREATE, path.toFile());
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                // Entries created before the directory was registered produce no events of their own
+                registerNewTree(path);
+            }
+        } else if (event.kind() == ENTRY_DELETE) {
+            Optional.ofNullable(entries.get(directory)).ifPresent(known -> known.remove(path));
+            forgetTree(path);
+            dispatcher.submit(ENTRY_DELETE, path.toFile());
+        }
+    }
+
+    private void registerNewTree(Path directory) {
+        try {
+            registerTree(directory, true);
+        } catch (IOException e) {
+            log.error("Failed to register new directory {}", directory, e);
+        }
+    }
+
+    private void registerTree(Path root, boolean submitEntries) throws IOException {
+        try (Stream<Path> tree = Files.walk(root)) {
+            tree.filter(path -> !MediaJobArtifacts.isSubtitleSyncArtifact(path.toFile()))
+                    .forEach(path -> {
+                        if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                            register(path);
+                        }
+                        if (!path.equals(root)) {
+                            entries.computeIfAbsent(path.getParent(), key -> ConcurrentHashMap.newKeySet()).add(path);
+                            if (submitEntries) {
+                                dispatcher.submit(ENTRY_CREATE, path.toFile());
+                            }
+                        }
+                    });
+        }
+    }
+
+    private void register(Path directory) {
+        try {
+            directories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE), directory);
+            entries.computeIfAbsent(directory, key -> ConcurrentHashMap.newKeySet());
+        } catch (IOException e) {
+            log.error("Failed to watch directory {}", directory, e);
+        }
+    }
+
+    /**
+     * Diffs the directory's entries on disk against the ones remembered for it and submits the differences. Known
+     * subdirectories have keys of their own, which report their own overflow.
+     */
+    void rescan(Path directory) {
+        Set<Path> known = entries.computeIfAbsent(directory, key -> ConcurrentHashMap.newKeySet());
+        Set<Path> current = new HashSet<>();
+        try (Stream<Path> listing = Files.list(directory)) {
+            listing.filter(path -> !MediaJobArtifacts.isSubtitleSyncArtifact(path.toFile()))
+                    .forEach(current::add);
+        } catch (IOException e) {
+            log.error("Failed to rescan {}", directory, e);
+            return;
+        }
+
+        for (Path removed : new ArrayList<>(known)) {
+            if (!current.contains(removed)) {
+                known.remove(removed);
+                forgetTree(removed);
+                dispatcher.submit(ENTRY_DELETE, removed.toFile());
+            }
+        }
+
+        for (Path path : current) {
+            if (known.add(path)) {
+                dispatcher.submit(ENTRY_CREATE, path.toFile());
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    registerNewTree(path);
+                }
+            }
+        }
+    }
+
+    private void forgetTree(Path root) {
+        entries.keySet().removeIf(directory -> directory.startsWith(root));
+        directories.entrySet().removeIf(entry -> {
+            if (!entry.getValue().startsWith(root)) {
+                return false;
+            }
+
+            entry.getKey().cancel();
+            return true;
+        });
+    }
+
+    int watchedDirectories() {
+        return directories.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        watchService.close();
+    }
+}
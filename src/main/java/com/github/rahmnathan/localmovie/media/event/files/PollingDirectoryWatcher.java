@@ -0,0 +1,54 @@
+package com.github.rahmnathan.localmovie.media.event.files;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.monitor.FileAlterationMonitor;
+import org.apache.commons.io.monitor.FileAlterationObserver;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * Re-lists the media roots on an interval. Works on any filesystem, including network mounts that don't deliver
+ * change notifications, at the cost of walking the whole tree every poll.
+ */
+@Slf4j
+public class PollingDirectoryWatcher implements DirectoryWatcher {
+    private final FileAlterationMonitor monitor = new FileAlterationMonitor();
+    private final DirectoryMonitorListener listener;
+
+    public PollingDirectoryWatcher(FileEventDispatcher dispatcher) {
+        this.listener = new DirectoryMonitorListener(dispatcher);
+    }
+
+    @Override
+    public void start(Collection<Path> roots) throws IOException {
+        roots.forEach(root -> {
+            try {
+                log.info("registering {} in polling watcher", root);
+                FileAlterationObserver observer = FileAlterationObserver.builder()
+                        .setPath(root)
+                        .get();
+                observer.addListener(listener);
+                monitor.addObserver(observer);
+            } catch (Exception e) {
+                log.error("Failed to register {} in polling watcher", root, e);
+            }
+        });
+
+        try {
+            monitor.start();
+        } catch (Exception e) {
+            throw new IOException("Failed to start polling watcher.", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            monitor.stop();
+        } catch (Exception e) {
+            log.warn("Failed to stop polling watcher.", e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.rahmnathan.localmovie.media.job;
+
+import com.github.rahmnathan.localmovie.data.ConversionProgress;
+import com.github.rahmnathan.localmovie.data.MediaJobStatus;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaJob;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Runs ffmpeg conversions for {@link MediaJobService}, which drives the same job status transitions whichever backend
+ * is configured. Backends publish a {@link ConversionJobFinishedEvent} when they learn a conversion has finished.
+ */
+public interface ConversionExecutor {
+
+    enum AnalysisTool {
+        FFMPEG,
+        FFPROBE
+    }
+
+    void launch(MediaJob mediaJob, File outputFile, TranscodePlan plan) throws IOException;
+
+    /**
+     * Runs a short ffprobe or ffmpeg analysis of a media file and returns everything it printed, failing if it exits
+     * unsuccessfully or runs past the timeout.
+     */
+    String analyze(AnalysisTool tool, List<String> arguments, Duration timeout) throws IOException;
+
+    /**
+     * Empty while the backend can't tell how the conversion is doing.
+     */
+    Optional<MediaJobStatus> getStatus(String jobId) throws IOException;
+
+    /**
+     * Releases whatever the backend holds for a finished conversion.
+     */
+    void cleanUp(String jobId) throws IOException;
+
+    /**
+     * Reads the latest progress of the given running jobs, keyed by jobId. Jobs that have reported nothing yet are
+     * left out, and state kept for jobs no longer passed in is dropped.
+     */
+    Map<String, ConversionProgress> readProgress(Collection<MediaJob> runningJobs);
+
+    /**
+     * How many conversions can run at once, given the configured limit.
+     */
+    default int concurrencyLimit(int configuredLimit) {
+        return configuredLimit;
+    }
+
+    /**
+     * Whether segments of a conversion can run on other workers, which is what encoding in segments is for.
+     */
+    default boolean supportsSegments() {
+        return false;
+    }
+}
@@ -0,0 +1,9 @@
+package com.github.rahmnathan.localmovie.media.job;
+
+import com.github.rahmnathan.localmovie.data.MediaJobStatus;
+
+/**
+ * Published when the conversion of a file reaches a final status.
+ */
+public record ConversionJobFinishedEvent(String jobId, MediaJobStatus status) {
+}
@@ -0,0 +1,195 @@
+package com.github.rahmnathan.localmovie.media.job;
+
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.MediaJobStatus;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.batch.v1.Job;
+import io.fabric8.kubernetes.api.model.batch.v1.JobStatus;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps conversion jobs and their pods in shared informer caches, fed by a single watch per resource type. Status and
+ * pod lookups are answered from memory and a {@link ConversionJobFinishedEvent} is published as soon as a job succeeds
+ * or fails, rather than waiting for the next status poll to ask the API server about every running job.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "service.conversion-service.executor", havingValue = "kubernetes", matchIfMissing = true)
+public class ConversionJobTracker {
+    private static final String APP_LABEL = "app";
+    private static final String FFMPEG_APP = "ffmpeg";
+    private static final String JOB_ID_LABEL = "jobId";
+    private static final String JOB_NAME_LABEL = "job-name";
+
+    private final KubernetesClient kubernetesClient;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ServiceConfig.JobTrackerConfig config;
+
+    private volatile SharedIndexInformer<Job> jobInformer;
+    private volatile SharedIndexInformer<Pod> podInformer;
+
+    public ConversionJobTracker(KubernetesClient kubernetesClient,
+                                ApplicationEventPublisher eventPublisher,
+                                ServiceConfig serviceConfig) {
+        this.kubernetesClient = kubernetesClient;
+        this.eventPublisher = eventPublisher;
+        this.config = serviceConfig.getJobTracker();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() throws IOException {
+        if (!config.isEnabled() || jobInformer != null) {
+            return;
+        }
+
+        String namespace = getNamespace();
+        long resyncMillis = Duration.ofMinutes(config.getResyncMinutes()).toMillis();
+
+        SharedIndexInformer<Job> jobs = kubernetesClient.batch().v1().jobs()
+                .inNamespace(namespace)
+                .withLabel(APP_LABEL, FFMPEG_APP)
+                .runnableInformer(resyncMillis);
+        jobs.addIndexers(Map.of(JOB_ID_LABEL, job -> labelValues(job, JOB_ID_LABEL)));
+        jobs.addEventHandler(new JobStatusHandler());
+
+        SharedIndexInformer<Pod> pods = kubernetesClient.pods()
+                .inNamespace(namespace)
+                .withLabel(JOB_NAME_LABEL)
+                .runnableInformer(resyncMillis);
+        pods.addIndexers(Map.of(JOB_NAME_LABEL, pod -> labelValues(pod, JOB_NAME_LABEL)));
+
+        // Until both caches have synced, lookups go to the API server as before
+        jobs.start().whenComplete((ignored, e) -> logStarted("job", e));
+        pods.start().whenComplete((ignored, e) -> logStarted("pod", e));
+
+        this.jobInformer = jobs;
+        this.podInformer = pods;
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (jobInformer != null) {
+            jobInformer.close();
+            podInformer.close();
+            jobInformer = null;
+            podInformer = null;
+        }
+    }
+
+    public boolean isSynced() {
+        SharedIndexInformer<Job> jobs = jobInformer;
+        SharedIndexInformer<Pod> pods = podInformer;
+        return jobs != null && pods != null && jobs.hasSynced() && pods.hasSynced();
+    }
+
+    public Optional<Job> findJob(String jobId) {
+        return jobInformer.getIndexer().byIndex(JOB_ID_LABEL, jobId).stream().findFirst();
+    }
+
+    public Optional<Pod> findRunningPod(String jobName) {
+        return podInformer.getIndexer().byIndex(JOB_NAME_LABEL, jobName).stream()
+                .filter(pod -> "running".equalsIgnoreCase(Optional.ofNullable(pod.getStatus())
+                        .map(status -> status.getPhase())
+                        .orElse(null)))
+                .findAny();
+    }
+
+    static Optional<MediaJobStatus> statusOf(Job job) {
+        JobStatus jobStatus = job.getStatus();
+        if (jobStatus == null) {
+            return Optional.empty();
+        }
+
+        if (jobStatus.getSucceeded() != null && jobStatus.getSucceeded() > 0) {
+            return Optional.of(MediaJobStatus.SUCCEEDED);
+        } else if (jobStatus.getFailed() != null && jobStatus.getFailed() > 0) {
+            return Optional.of(MediaJobStatus.FAILED);
+        } else if (jobStatus.getActive() != null && jobStatus.getActive() > 0) {
+            return Optional.of(MediaJobStatus.RUNNING);
+        }
+
+        return Optional.empty();
+    }
+
+    private void logStarted(String resource, Throwable e) {
+        if (e != null) {
+            log.warn("Failed to start conversion {} informer, falling back to API lookups.", resource, e);
+        } else {
+            log.info("Conversion {} informer synced.", resource);
+        }
+    }
+
+    private static List<String> labelValues(HasMetadata resource, String label) {
+        Map<String, String> labels = resource.getMetadata().getLabels();
+        if (labels == null || !labels.containsKey(label)) {
+            return List.of();
+        }
+
+        return List.of(labels.get(label));
+    }
+
+    private String getNamespace() throws IOException {
+        Path namespaceFile = Paths.get("/var/run/secrets/kubernetes.io/serviceaccount/namespace");
+        if (namespaceFile.toFile().exists()) {
+            return Files.readString(namespaceFile).trim();
+        }
+
+        return "localmovies";
+    }
+
+    private class JobStatusHandler implements ResourceEventHandler<Job> {
+
+        @Override
+        public void onAdd(Job job) {
+            publishIfFinished(job);
+        }
+
+        /**
+         * Also called on every resync, so a finished job that was missed is picked up again. Handling the event is
+         * idempotent because only a job still marked running is finished.
+         */
+        @Override
+        public void onUpdate(Job oldJob, Job newJob) {
+            publishIfFinished(newJob);
+        }
+
+        @Override
+        public void onDelete(Job job, boolean deletedFinalStateUnknown) {
+            // Finished jobs are deleted once their output has been moved into place
+        }
+
+        private void publishIfFinished(Job job) {
+            List<String> jobIds = labelValues(job, JOB_ID_LABEL);
+            Optional<MediaJobStatus> status = statusOf(job).filter(value -> value == MediaJobStatus.SUCCEEDED || value == MediaJobStatus.FAILED);
+            if (jobIds.isEmpty() || status.isEmpty()) {
+                return;
+            }
+
+            try {
+                eventPublisher.publishEvent(new ConversionJobFinishedEvent(jobIds.getFirst(), status.get()));
+            } catch (RuntimeException e) {
+                // Keep the informer's handler thread alive, the status poll retries this job
+                log.error("Failed to handle finished conversion job {}", job.getMetadata().getName(), e);
+            }
+        }
+    }
+}
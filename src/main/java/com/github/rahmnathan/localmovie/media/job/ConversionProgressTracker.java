@@ -0,0 +1,102 @@
+package com.github.rahmnathan.localmovie.media.job;
+
+import com.github.rahmnathan.localmovie.data.ConversionProgress;
+import com.github.rahmnathan.localmovie.data.MediaJobStatus;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaJobRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.github.rahmnathan.localmovie.web.filter.LoggingFilter.X_CORRELATION_ID;
+
+/**
+ * Publishes the progress of running conversions, as read by the {@link ConversionExecutor}. Every instance keeps its
+ * own view, so the admin API answers the same on each replica.
+ */
+@Slf4j
+@Component
+public class ConversionProgressTracker {
+    private static final String JOB_ID_METRIC_TAG = "jobId";
+
+    private final MediaJobRepository mediaJobRepository;
+    private final ConversionExecutor conversionExecutor;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, ConversionProgress> progress = new ConcurrentHashMap<>();
+    private final Map<String, List<Gauge>> gauges = new HashMap<>();
+
+    public ConversionProgressTracker(MediaJobRepository mediaJobRepository,
+                                     ConversionExecutor conversionExecutor,
+                                     MeterRegistry meterRegistry) {
+        this.mediaJobRepository = mediaJobRepository;
+        this.conversionExecutor = conversionExecutor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Runs at the rate ffmpeg reports progress, see the -stats_period conversions are launched with.
+     */
+    @Scheduled(fixedDelay = 30000L)
+    public synchronized void refreshProgress() {
+        long startTime = System.currentTimeMillis();
+        MDC.put(X_CORRELATION_ID, UUID.randomUUID().toString());
+
+        // A conversion encoded in segments has no job of its own to read until its segments are joined
+        Map<String, ConversionProgress> latest = conversionExecutor.readProgress(
+                mediaJobRepository.findAllByStatusOrderByCreatedAsc(MediaJobStatus.RUNNING.name()).stream()
+                        .filter(mediaJob -> !mediaJob.isSegmented() || mediaJob.isStitchLaunched())
+                        .toList());
+
+        progress.keySet().retainAll(latest.keySet());
+        progress.putAll(latest);
+
+        gauges.keySet().removeIf(jobId -> {
+            if (latest.containsKey(jobId)) {
+                return false;
+            }
+
+            gauges.get(jobId).forEach(meterRegistry::remove);
+            return true;
+        });
+        latest.keySet().forEach(jobId -> gauges.computeIfAbsent(jobId, this::registerGauges));
+
+        MDC.clear();
+        meterRegistry.timer("localmovies.record-etas").record(System.currentTimeMillis() - startTime, TimeUnit.MILLISECONDS);
+    }
+
+    public List<ConversionProgress> getProgress() {
+        return progress.values().stream()
+                .sorted(Comparator.comparing(ConversionProgress::jobId))
+                .toList();
+    }
+
+    private List<Gauge> registerGauges(String jobId) {
+        return List.of(
+                Gauge.builder("localmovies.conversion.progress", progress,
+                                values -> value(values.get(jobId), ConversionProgress::percentComplete))
+                        .tag(JOB_ID_METRIC_TAG, jobId)
+                        .baseUnit("percent")
+                        .register(meterRegistry),
+                Gauge.builder("localmovies.conversion.eta", progress,
+                                values -> value(values.get(jobId), ConversionProgress::etaSeconds))
+                        .tag(JOB_ID_METRIC_TAG, jobId)
+                        .baseUnit("seconds")
+                        .register(meterRegistry));
+    }
+
+    private static double value(ConversionProgress progress, Function<ConversionProgress, ? extends Number> field) {
+        if (progress == null) {
+            return Double.NaN;
+        }
+
+        Number value = field.apply(progress);
+        return value == null ? Double.NaN : value.doubleValue();
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.rahmnathan.localmovie.media.job;
+
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.MediaJobStatus;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaJob;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaJobRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Hands queued conversions to the replicas launching them. Claiming is short and serialized by a database lock, so
+ * replicas can't exceed the concurrency limit together, while the slower analysis and launch that follow run on every
+ * replica at once.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ConversionScheduler {
+    private static final long CLAIM_LOCK_KEY = "media-job-claim".hashCode();
+
+    private final MediaJobRepository mediaJobRepository;
+    private final ServiceConfig serviceConfig;
+
+    /**
+     * Marks the queued jobs to run next as running, up to the free conversion slots, and returns them for launching.
+     */
+    @Transactional
+    public List<MediaJob> claimQueuedJobs(int concurrencyLimit) {
+        mediaJobRepository.lockClaims(CLAIM_LOCK_KEY);
+
+        int freeSlots = concurrencyLimit - mediaJobRepository.countAllByStatus(MediaJobStatus.RUNNING.name());
+        if (freeSlots <= 0) {
+            return List.of();
+        }
+
+        ServiceConfig.ConversionSchedulingConfig scheduling = serviceConfig.getConversionService().getScheduling();
+        List<MediaJob> mediaJobs = mediaJobRepository.lockQueuedJobs(
+                Math.max(1, scheduling.getClassPromotionMinutes()) * 60,
+                scheduling.getReferenceBitrateKbps() * 1000,
+                scheduling.getAgingRate(),
+                LocalDateTime.now(),
+                freeSlots);
+
+        mediaJobs.forEach(mediaJob -> {
+            log.info("Claimed {} conversion for jobId: {}", mediaJob.getPriority(), mediaJob.getJobId());
+            mediaJob.setStatus(MediaJobStatus.RUNNING.name());
+        });
+        mediaJobRepository.saveAll(mediaJobs);
+        return mediaJobs;
+    }
+}
@@ -0,0 +1,168 @@
+package com.github.rahmnathan.localmovie.media.job;
+
+import com.github.rahmnathan.localmovie.data.ConversionProgress;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Follows the output of one ffmpeg conversion as it is read, a chunk at a time. Progress comes from the key/value
+ * blocks written by {@code -progress pipe:1}, falling back to the periodic stats line, and the total duration from the
+ * input banner. Reading a line twice leaves the same state behind, so overlapping log windows need no de-duplication.
+ * Gauges and the admin API read the progress while the next chunk is parsed, so access is synchronized.
+ */
+class FfmpegProgressParser {
+    private static final Pattern TIMESTAMPED_LINE = Pattern.compile("^(\\d{4}-\\d{2}-\\d{2}T\\S+Z) (.*)$");
+    private static final Pattern DURATION_PATTERN = Pattern.compile("Duration:\\s*(\\d{2}:\\d{2}:\\d{2}(?:\\.\\d+)?)");
+    private static final Pattern STATS_PATTERN = Pattern.compile("(\\w+)=\\s*(\\S+)");
+
+    private final Map<String, String> block = new HashMap<>();
+
+    private Duration totalDuration;
+    private Duration encoded;
+    private Double speed;
+    private Double fps;
+    private Double bitrateKbps;
+    private Instant updated;
+    private String lastTimestamp;
+
+    synchronized void accept(String log) {
+        if (log != null) {
+            log.lines().forEach(this::acceptLine);
+        }
+    }
+
+    /**
+     * Timestamp of the last line read that carried one, to continue reading the log from.
+     */
+    synchronized Optional<String> lastTimestamp() {
+        return Optional.ofNullable(lastTimestamp);
+    }
+
+    synchronized Optional<Duration> eta() {
+        if (totalDuration == null || encoded == null || speed == null || speed <= 0) {
+            return Optional.empty();
+        }
+
+        long remainingMediaSeconds = totalDuration.toSeconds() - encoded.toSeconds();
+        if (remainingMediaSeconds <= 0) {
+            return Optional.of(Duration.ZERO);
+        }
+
+        return Optional.of(Duration.ofSeconds(Math.round(remainingMediaSeconds / speed)));
+    }
+
+    synchronized Optional<Double> percentComplete() {
+        if (totalDuration == null || encoded == null || totalDuration.isZero()) {
+            return Optional.empty();
+        }
+
+        return Optional.of(Math.min(100.0, 100.0 * encoded.toMillis() / totalDuration.toMillis()));
+    }
+
+    synchronized ConversionProgress toProgress(String jobId, String inputFile) {
+        return new ConversionProgress(
+                jobId,
+                inputFile,
+                percentComplete().orElse(null),
+                eta().map(Duration::toSeconds).orElse(null),
+                encoded == null ? null : encoded.toSeconds(),
+                totalDuration == null ? null : totalDuration.toSeconds(),
+                speed,
+                fps,
+                bitrateKbps,
+                updated);
+    }
+
+    private void acceptLine(String line) {
+        Matcher timestampMatcher = TIMESTAMPED_LINE.matcher(line);
+        if (timestampMatcher.matches()) {
+            lastTimestamp = timestampMatcher.group(1);
+            line = timestampMatcher.group(2);
+        }
+        line = line.strip();
+
+        if (totalDuration == null) {
+            Matcher durationMatcher = DURATION_PATTERN.matcher(line);
+            if (durationMatcher.find()) {
+                totalDuration = parseTimestamp(durationMatcher.group(1));
+                return;
+            }
+        }
+
+        int separator = line.indexOf('=');
+        if (separator <= 0) {
+            return;
+        }
+
+        if (separator == line.lastIndexOf('=')) {
+            // One key per line is the -progress output, a block ends with its progress key
+            String key = line.substring(0, separator);
+            if ("progress".equals(key)) {
+                apply(block);
+                block.clear();
+            } else {
+                block.put(key, line.substring(separator + 1).strip());
+            }
+        } else if (line.contains("time=")) {
+            Map<String, String> stats = new HashMap<>();
+            Matcher statsMatcher = STATS_PATTERN.matcher(line);
+            while (statsMatcher.find()) {
+                stats.put(statsMatcher.group(1), statsMatcher.group(2));
+            }
+            stats.put("out_time", stats.remove("time"));
+            apply(stats);
+        }
+    }
+
+    private void apply(Map<String, String> values) {
+        Duration outTime = parseTimestamp(values.get("out_time"));
+        if (outTime == null) {
+            return;
+        }
+
+        encoded = outTime;
+        speed = parseNumber(values.get("speed"), "x");
+        fps = parseNumber(values.get("fps"), "");
+        bitrateKbps = parseNumber(values.get("bitrate"), "kbits/s");
+        updated = Instant.now();
+    }
+
+    private static Double parseNumber(String value, String unit) {
+        if (value == null || !value.endsWith(unit)) {
+            return null;
+        }
+
+        try {
+            return Double.parseDouble(value.substring(0, value.length() - unit.length()).strip());
+        } catch (NumberFormatException e) {
+            // ffmpeg reports N/A until it has a value
+            return null;
+        }
+    }
+
+    private static Duration parseTimestamp(String timestamp) {
+        if (timestamp == null || !timestamp.matches("\\d+:\\d{2}:\\d{2}(?:\\.\\d+)?")) {
+            return null;
+        }
+
+        String[] timeAndFraction = timestamp.split("\\.", 2);
+        String[] time = timeAndFraction[0].split(":");
+
+        Duration duration = Duration.ofHours(Long.parseLong(time[0]))
+                .plusMinutes(Long.parseLong(time[1]))
+                .plusSeconds(Long.parseLong(time[2]));
+
+        if (timeAndFraction.length == 2) {
+            String nanos = (timeAndFraction[1] + "000000000").substring(0, 9);
+            duration = duration.plusNanos(Long.parseLong(nanos));
+        }
+
+        return duration;
+    }
+}
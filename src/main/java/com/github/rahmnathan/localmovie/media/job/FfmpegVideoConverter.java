@@ -1,12 +1,13 @@
 package com.github.rahmnathan.localmovie.media.job;
 
-import com.github.rahmnathan.localmovie.data.MediaPath;
 import io.fabric8.kubernetes.api.model.*;
 import io.fabric8.kubernetes.api.model.batch.v1.Job;
 import io.fabric8.kubernetes.api.model.batch.v1.JobBuilder;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientTimeoutException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
@@ -14,12 +15,14 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
- * FFmpeg-based video converter with EBU R128 loudness normalization.
+ * Runs FFmpeg in Kubernetes, conversions as jobs and input analysis as short-lived pods.
  *
- * Produces Chromecast-compatible output:
+ * Produces Chromecast-compatible output as planned by the {@link TranscodePlanner}:
  * - Video: H.264 High Profile Level 4.1 (compatible with all Chromecast generations)
  * - Audio: AAC stereo with loudnorm filter for consistent volume levels
  * - Container: MP4 with faststart for streaming
@@ -27,70 +30,23 @@ import java.util.*;
 @Slf4j
 @Component
 @RequiredArgsConstructor
+@ConditionalOnProperty(name = "service.conversion-service.executor", havingValue = "kubernetes", matchIfMissing = true)
 public class FfmpegVideoConverter {
 
     private static final String JOB_ID_LABEL = "jobId";
+    private static final String FFMPEG_IMAGE = "linuxserver/ffmpeg:latest";
 
     private final KubernetesClient kubernetesClient;
 
-    public void launchVideoConverter(File inputFile, File outputFile) throws IOException {
+    public void launchVideoConverter(String jobId, File inputFile, File outputFile, TranscodePlan plan) throws IOException {
         String namespace = getNamespace();
-
-        Optional<Pod> localmoviesPodOptional = kubernetesClient.pods().inNamespace(namespace).list().getItems().stream()
-                .filter(pod -> "localmovies".equalsIgnoreCase(labelValue(pod, "app")))
-                .findAny();
-
-        if (localmoviesPodOptional.isEmpty()) {
-            throw new IOException("Could not find localmovies pod to copy volume mounts from");
-        }
+        MediaVolumes mediaVolumes = findMediaVolumes(namespace);
 
         String podName = "ffmpeg-" + UUID.randomUUID();
 
         log.info("Creating FFmpeg job with name: {}", podName);
 
-        // FFmpeg arguments for Chromecast-compatible output with loudness normalization
-        // Video: H.264 High Profile Level 4.1 (works on ALL Chromecasts)
-        // Audio: AAC stereo with EBU R128 loudness normalization
-        List<String> args = List.of(
-                "-nostats",
-                "-stats_period", "30",
-                "-progress", "pipe:1",
-                "-i", inputFile.getAbsolutePath(),
-                // Video encoding - H.264 High Profile Level 4.1 for maximum compatibility
-                "-c:v", "libx264",
-                "-profile:v", "high",
-                "-level:v", "4.1",
-                "-pix_fmt", "yuv420p",
-                "-crf", "18",
-                "-preset", "medium",
-                // Audio encoding with loudness normalization
-                // loudnorm: EBU R128 standard for broadcast loudness
-                // I=-16: Target integrated loudness (-16 LUFS, good for streaming)
-                // TP=-1.5: True peak limit to prevent clipping
-                // LRA=7: Loudness range - lower value = more compression of dynamic range
-                "-c:a", "aac",
-                "-b:a", "192k",
-                "-ac", "2",
-                "-af", "loudnorm=I=-16:TP=-1.5:LRA=7",
-                // Container options
-                "-movflags", "+faststart",
-                "-f", "mp4",
-                // Overwrite output file if exists
-                "-y",
-                outputFile.getAbsolutePath()
-        );
-
-        List<Volume> volumes = localmoviesPodOptional.get().getSpec().getVolumes().stream()
-                .filter(volume -> volume.getName().startsWith("media"))
-                .toList();
-
-        List<VolumeMount> volumeMounts = localmoviesPodOptional.get().getSpec().getContainers().stream()
-                .filter(container -> "localmovies".equalsIgnoreCase(container.getName()))
-                .findAny()
-                .orElseThrow(() -> new IOException("Could not find localmovies container to copy volume mounts from"))
-                .getVolumeMounts().stream()
-                .filter(volumeMount -> volumeMount.getName().startsWith("media"))
-                .toList();
+        List<String> args = plan.arguments(inputFile, outputFile, List.of());
 
         ResourceRequirements resources = new ResourceRequirements(
                 new ArrayList<>(),
@@ -106,7 +62,7 @@ public class FfmpegVideoConverter {
                     .withName(podName)
                     .withLabels(Map.of(
                             "app", "ffmpeg",
-                            JOB_ID_LABEL, transformPath(inputFile.getAbsolutePath()))
+                            JOB_ID_LABEL, jobId)
                     )
                 .endMetadata()
                 .withNewSpec()
@@ -115,12 +71,12 @@ public class FfmpegVideoConverter {
                         .withNewSpec()
                             .addNewContainer()
                                 .withName(podName)
-                                .withImage("linuxserver/ffmpeg:latest")
+                                .withImage(FFMPEG_IMAGE)
                                 .withArgs(args)
-                                .withVolumeMounts(volumeMounts)
+                                .withVolumeMounts(mediaVolumes.volumeMounts())
                                 .withResources(resources)
                             .endContainer()
-                            .withVolumes(volumes)
+                            .withVolumes(mediaVolumes.volumes())
                             .withRestartPolicy("Never")
                         .endSpec()
                     .endTemplate()
@@ -130,6 +86,85 @@ public class FfmpegVideoConverter {
         kubernetesClient.batch().v1().jobs().inNamespace(namespace).resource(job).create();
     }
 
+    /**
+     * Runs ffprobe or ffmpeg in a bare pod with the media volumes mounted, waits for it to finish and returns its log.
+     * The service image doesn't ship the ffmpeg tools, and a job's retries and tracking aren't worth it for a run
+     * that takes seconds.
+     */
+    public String runAnalysis(String command, List<String> args, Duration timeout) throws IOException {
+        String namespace = getNamespace();
+        MediaVolumes mediaVolumes = findMediaVolumes(namespace);
+        String podName = command + "-" + UUID.randomUUID();
+
+        ResourceRequirements resources = new ResourceRequirements(
+                new ArrayList<>(),
+                Map.of("cpu", Quantity.parse("2"),
+                        "memory", Quantity.parse("1Gi")),
+                Map.of("cpu", Quantity.parse("1"),
+                        "memory", Quantity.parse("256Mi"))
+        );
+
+        Pod pod = new PodBuilder()
+                .withNewMetadata()
+                    .withName(podName)
+                    .withLabels(Map.of("app", "ffmpeg-analysis"))
+                .endMetadata()
+                .withNewSpec()
+                    .addNewContainer()
+                        .withName(command)
+                        .withImage(FFMPEG_IMAGE)
+                        .withCommand(command)
+                        .withArgs(args)
+                        .withVolumeMounts(mediaVolumes.volumeMounts())
+                        .withResources(resources)
+                    .endContainer()
+                    .withVolumes(mediaVolumes.volumes())
+                    .withRestartPolicy("Never")
+                .endSpec()
+                .build();
+
+        var podResource = kubernetesClient.pods().inNamespace(namespace).resource(pod);
+        podResource.create();
+        try {
+            Pod finished = podResource.waitUntilCondition(current -> current != null && current.getStatus() != null
+                    && Set.of("Succeeded", "Failed").contains(current.getStatus().getPhase()), timeout.toMillis(), TimeUnit.MILLISECONDS);
+            String output = podResource.getLog();
+            if (!"Succeeded".equals(finished.getStatus().getPhase())) {
+                throw new IOException("Analysis pod " + podName + " failed: " + output);
+            }
+
+            return output;
+        } catch (KubernetesClientTimeoutException e) {
+            throw new IOException("Analysis pod " + podName + " did not finish within " + timeout, e);
+        } finally {
+            podResource.delete();
+        }
+    }
+
+    private MediaVolumes findMediaVolumes(String namespace) throws IOException {
+        Optional<Pod> localmoviesPodOptional = kubernetesClient.pods().inNamespace(namespace).list().getItems().stream()
+                .filter(pod -> "localmovies".equalsIgnoreCase(labelValue(pod, "app")))
+                .findAny();
+
+        if (localmoviesPodOptional.isEmpty()) {
+            throw new IOException("Could not find localmovies pod to copy volume mounts from");
+        }
+
+        List<Volume> volumes = localmoviesPodOptional.get().getSpec().getVolumes().stream()
+                .filter(volume -> volume.getName().startsWith("media"))
+                .toList();
+
+        List<VolumeMount> volumeMounts = localmoviesPodOptional.get().getSpec().getContainers().stream()
+                .filter(container -> "localmovies".equalsIgnoreCase(container.getName()))
+                .findAny()
+                .orElseThrow(() -> new IOException("Could not find localmovies container to copy volume mounts from"))
+                .getVolumeMounts().stream()
+                .filter(volumeMount -> volumeMount.getName().startsWith("media"))
+                .toList();
+
+        return new MediaVolumes(volumes, volumeMounts);
+    }
+
     private String getNamespace() throws IOException {
         Path namespaceFile = Paths.get("/var/run/secrets/kubernetes.io/serviceaccount/namespace");
         if (namespaceFile.toFile().exists()) {
@@ -146,7 +181,6 @@ public class FfmpegVideoConverter {
         return pod.getMetadata().getLabels().get(label);
     }
 
-    private String transformPath(String path) {
-        return path.split(MediaPath.MEDIA_ROOT_FOLDER)[1].replaceAll("[^A-Za-z0-9]", "-");
+    private record MediaVolumes(List<Volume> volumes, List<VolumeMount> volumeMounts) {
     }
 }
@@ -0,0 +1,104 @@
+package com.github.rahmnathan.localmovie.media.job;
+
+import com.github.rahmnathan.localmovie.data.ConversionProgress;
+import com.github.rahmnathan.localmovie.data.MediaJobStatus;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converts in Kubernetes jobs. Finished jobs are reported by the {@link ConversionJobTracker}, and progress is read
+ * from the pod log written since the previous read, rather than downloading the whole log of a multi-hour encode.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "service.conversion-service.executor", havingValue = "kubernetes", matchIfMissing = true)
+public class KubernetesConversionExecutor implements ConversionExecutor {
+    /**
+     * Enough of the log to hold ffmpeg's input banner and its total duration.
+     */
+    private static final int LOG_HEAD_BYTES = 32 * 1024;
+    /**
+     * Enough lines for the last complete progress block when a pod is first seen.
+     */
+    private static final int LOG_TAIL_LINES = 50;
+
+    private final FfmpegVideoConverter videoConverter;
+    private final KubernetesService kubernetesService;
+    private final Map<String, PodLog> podLogs = new ConcurrentHashMap<>();
+
+    @Override
+    public void launch(MediaJob mediaJob, File outputFile, TranscodePlan plan) throws IOException {
+        videoConverter.launchVideoConverter(mediaJob.getJobId(), new File(mediaJob.getInputFile()), outputFile, plan);
+    }
+
+    @Override
+    public boolean supportsSegments() {
+        return true;
+    }
+
+    @Override
+    public String analyze(AnalysisTool tool, List<String> arguments, Duration timeout) throws IOException {
+        return videoConverter.runAnalysis(tool.name().toLowerCase(), arguments, timeout);
+    }
+
+    @Override
+    public Optional<MediaJobStatus> getStatus(String jobId) throws IOException {
+        return kubernetesService.getJobStatus(jobId);
+    }
+
+    @Override
+    public void cleanUp(String jobId) throws IOException {
+        kubernetesService.deleteJob(jobId);
+    }
+
+    @Override
+    public Map<String, ConversionProgress> readProgress(Collection<MediaJob> runningJobs) {
+        Map<String, MediaJob> jobs = new HashMap<>();
+        runningJobs.forEach(mediaJob -> jobs.putIfAbsent(mediaJob.getJobId(), mediaJob));
+        podLogs.keySet().retainAll(jobs.keySet());
+
+        Map<String, ConversionProgress> progress = new HashMap<>();
+        for (MediaJob mediaJob : jobs.values()) {
+            try {
+                readPodLog(mediaJob.getJobId())
+                        .ifPresent(parser -> progress.put(mediaJob.getJobId(), parser.toProgress(mediaJob.getJobId(), mediaJob.getInputFile())));
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to read conversion progress for jobId: {}", mediaJob.getJobId(), e);
+            }
+        }
+
+        return progress;
+    }
+
+    private Optional<FfmpegProgressParser> readPodLog(String jobId) throws IOException {
+        Optional<String> podName = kubernetesService.findRunningPodName(jobId);
+        if (podName.isEmpty()) {
+            return Optional.ofNullable(podLogs.get(jobId)).map(PodLog::parser);
+        }
+
+        // A retried job runs in a new pod that starts its log, and its encode, from the beginning
+        PodLog podLog = podLogs.get(jobId);
+        if (podLog == null || !podName.get().equals(podLog.podName())) {
+            podLog = new PodLog(podName.get(), new FfmpegProgressParser());
+            podLog.parser().accept(kubernetesService.getLogHead(podName.get(), LOG_HEAD_BYTES));
+            podLogs.put(jobId, podLog);
+        }
+
+        String sinceTime = podLog.parser().lastTimestamp().orElse(null);
+        podLog.parser().accept(kubernetesService.getLogSince(podName.get(), sinceTime, LOG_TAIL_LINES));
+        return Optional.of(podLog.parser());
+    }
+
+    private record PodLog(String podName, FfmpegProgressParser parser) {
+    }
+}
@@ -3,69 +3,41 @@ package com.github.rahmnathan.localmovie.media.job;
 import com.github.rahmnathan.localmovie.data.MediaJobStatus;
 import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.api.model.batch.v1.Job;
-import io.fabric8.kubernetes.api.model.batch.v1.JobStatus;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.Duration;
-import java.util.List;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Service for managing Kubernetes jobs for video conversion.
- * Handles job status checking, deletion, and ETA extraction.
+ * Handles job status checking, deletion, and reading conversion logs. Jobs and pods are read from the
+ * {@link ConversionJobTracker} caches once they have synced.
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
+@ConditionalOnProperty(name = "service.conversion-service.executor", havingValue = "kubernetes", matchIfMissing = true)
 public class KubernetesService {
 
     private final KubernetesClient kubernetesClient;
+    private final ConversionJobTracker jobTracker;
 
     private static final String JOB_NAME = "job-name";
     private static final String JOB_ID_LABEL = "jobId";
 
-    private static final Pattern FFMPEG_DURATION_PATTERN = Pattern.compile("Duration:\\s*(\\d{2}:\\d{2}:\\d{2}(?:\\.\\d+)?)");
-    private static final Pattern FFMPEG_PROGRESS_TIME_PATTERN = Pattern.compile("(?m)^out_time=(\\d{2}:\\d{2}:\\d{2}(?:\\.\\d+)?)");
-    private static final Pattern FFMPEG_STATS_TIME_PATTERN = Pattern.compile("time=(\\d{2}:\\d{2}:\\d{2}(?:\\.\\d+)?)");
-    private static final Pattern FFMPEG_SPEED_PATTERN = Pattern.compile("(?m)(?:^|\\s)speed=\\s*([0-9.]+)x");
-
     public Optional<MediaJobStatus> getJobStatus(String jobId) throws IOException {
-        Optional<JobStatus> jobStatusOptional = kubernetesClient.batch().v1().jobs().inNamespace(getNamespace())
-                .withLabel(JOB_ID_LABEL, jobId).list().getItems()
-                .stream()
-                .findFirst()
-                .map(Job::getStatus);
-
-        if (jobStatusOptional.isPresent()) {
-
-            JobStatus jobStatus = jobStatusOptional.get();
-
-            if (jobStatus.getSucceeded() != null && jobStatus.getSucceeded() > 0) {
-                return Optional.of(MediaJobStatus.SUCCEEDED);
-            } else if (jobStatus.getFailed() != null && jobStatus.getFailed() > 0) {
-                return Optional.of(MediaJobStatus.FAILED);
-            } else if (jobStatus.getActive() != null && jobStatus.getActive() > 0) {
-                return Optional.of(MediaJobStatus.RUNNING);
-            }
-        }
-
-        return Optional.empty();
+        return findJob(jobId).flatMap(ConversionJobTracker::statusOf);
     }
 
     public void deleteJob(String jobId) throws IOException {
-        Optional<Job> jobOptional = kubernetesClient.batch().v1().jobs()
-                .inNamespace(getNamespace())
-                .withLabel(JOB_ID_LABEL, jobId).list().getItems().stream()
-                .findAny();
+        Optional<Job> jobOptional = findJob(jobId);
 
         if(jobOptional.isPresent()) {
             kubernetesClient.batch().v1().jobs().inNamespace(getNamespace()).resource(jobOptional.get()).delete();
@@ -74,122 +46,72 @@ public class KubernetesService {
         }
     }
 
-    public Optional<Duration> getETA(String jobId) throws IOException {
-        return getETA(jobId, null);
-    }
-
-    public Optional<Duration> getETA(String jobId, Long durationSeconds) throws IOException {
-        String namespace = getNamespace();
+    public Optional<String> findRunningPodName(String jobId) throws IOException {
+        Optional<Job> jobOptional = findJob(jobId);
 
-        // Lookup job by jobId
-        List<Job> jobList = kubernetesClient.batch().v1().jobs()
-                .inNamespace(namespace)
-                .withLabel(JOB_ID_LABEL, jobId)
-                .list()
-                .getItems();
-
-        if (jobList.isEmpty()) {
+        if (jobOptional.isEmpty()) {
             log.warn("No Kubernetes jobs for jobId: {}", jobId);
             return Optional.empty();
         }
 
-        String jobName = jobList.getFirst().getMetadata().getName();
-
-        // Find running pod associated with job
-        Optional<Pod> podOptional = kubernetesClient.pods()
-                .inNamespace(namespace)
-                .withLabel(JOB_NAME, jobName)
-                .list().getItems().stream()
-                .filter(pod -> "running".equalsIgnoreCase(Optional.ofNullable(pod.getStatus())
-                        .map(status -> status.getPhase())
-                        .orElse(null)))
-                .findAny();
+        Optional<Pod> podOptional = findRunningPod(jobOptional.get().getMetadata().getName());
 
         if (podOptional.isEmpty()) {
             log.warn("No running pod for jobId: {}", jobId);
             return Optional.empty();
         }
 
-        String podName = podOptional.get().getMetadata().getName();
+        return Optional.of(podOptional.get().getMetadata().getName());
+    }
 
-        String podLog = kubernetesClient.pods()
-                .inNamespace(namespace)
+    /**
+     * Reads the start of a pod log, where ffmpeg describes its input.
+     */
+    public String getLogHead(String podName, int limitBytes) throws IOException {
+        return kubernetesClient.pods()
+                .inNamespace(getNamespace())
                 .withName(podName)
+                .limitBytes(limitBytes)
                 .getLog();
-
-        return parseETA(podLog, durationSeconds);
     }
 
-    Optional<Duration> parseETA(String podLog, Long durationSeconds) {
-        Optional<Duration> totalDuration = Optional.ofNullable(durationSeconds)
-                .filter(value -> value > 0)
-                .map(Duration::ofSeconds)
-                .or(() -> parseFfmpegTotalDuration(podLog));
-
-        if (totalDuration.isEmpty()) {
-            return Optional.empty();
-        }
-
-        Optional<Duration> encodedDuration = parseFfmpegEncodedDuration(podLog);
-        Optional<Double> speed = parseFfmpegSpeed(podLog);
-        if (encodedDuration.isEmpty() || speed.isEmpty() || speed.get() <= 0) {
-            return Optional.empty();
-        }
-
-        long remainingMediaSeconds = totalDuration.get().toSeconds() - encodedDuration.get().toSeconds();
-        if (remainingMediaSeconds <= 0) {
-            return Optional.of(Duration.ZERO);
-        }
-
-        return Optional.of(Duration.ofSeconds(Math.round(remainingMediaSeconds / speed.get())));
-    }
-
-    private Optional<Duration> parseFfmpegEncodedDuration(String podLog) {
-        Matcher progressMatcher = FFMPEG_PROGRESS_TIME_PATTERN.matcher(podLog);
-        String encodedTime = null;
-        while (progressMatcher.find()) {
-            encodedTime = progressMatcher.group(1);
-        }
-
-        if (encodedTime == null) {
-            Matcher statsMatcher = FFMPEG_STATS_TIME_PATTERN.matcher(podLog);
-            while (statsMatcher.find()) {
-                encodedTime = statsMatcher.group(1);
-            }
-        }
-
-        return encodedTime == null ? Optional.empty() : Optional.of(parseTimestamp(encodedTime));
-    }
+    /**
+     * Reads timestamped pod log lines written since the given timestamp, or the last few lines without one.
+     */
+    public String getLogSince(String podName, String sinceTime, int tailLines) throws IOException {
+        var podLog = kubernetesClient.pods()
+                .inNamespace(getNamespace())
+                .withName(podName)
+                .usingTimestamps();
 
-    private Optional<Duration> parseFfmpegTotalDuration(String podLog) {
-        Matcher durationMatcher = FFMPEG_DURATION_PATTERN.matcher(podLog);
-        return durationMatcher.find() ? Optional.of(parseTimestamp(durationMatcher.group(1))) : Optional.empty();
+        return sinceTime == null ? podLog.tailingLines(tailLines).getLog() : podLog.sinceTime(sinceTime).getLog();
     }
 
-    private Optional<Double> parseFfmpegSpeed(String podLog) {
-        Matcher speedMatcher = FFMPEG_SPEED_PATTERN.matcher(podLog);
-        Double speed = null;
-        while (speedMatcher.find()) {
-            speed = Double.parseDouble(speedMatcher.group(1));
+    private Optional<Job> findJob(String jobId) throws IOException {
+        if (jobTracker.isSynced()) {
+            return jobTracker.findJob(jobId);
         }
 
-        return Optional.ofNullable(speed);
+        return kubernetesClient.batch().v1().jobs()
+                .inNamespace(getNamespace())
+                .withLabel(JOB_ID_LABEL, jobId)
+                .list().getItems().stream()
+                .findFirst();
     }
 
-    private Duration parseTimestamp(String timestamp) {
-        String[] timeAndFraction = timestamp.split("\\.", 2);
-        String[] time = timeAndFraction[0].split(":");
-
-        Duration duration = Duration.ofHours(Long.parseLong(time[0]))
-                .plusMinutes(Long.parseLong(time[1]))
-                .plusSeconds(Long.parseLong(time[2]));
-
-        if (timeAndFraction.length == 2) {
-            String nanos = (timeAndFraction[1] + "000000000").substring(0, 9);
-            duration = duration.plusNanos(Long.parseLong(nanos));
+    private Optional<Pod> findRunningPod(String jobName) throws IOException {
+        if (jobTracker.isSynced()) {
+            return jobTracker.findRunningPod(jobName);
         }
 
-        return duration;
+        return kubernetesClient.pods()
+                .inNamespace(getNamespace())
+                .withLabel(JOB_NAME, jobName)
+                .list().getItems().stream()
+                .filter(pod -> "running".equalsIgnoreCase(Optional.ofNullable(pod.getStatus())
+                        .map(status -> status.getPhase())
+                        .orElse(null)))
+                .findAny();
     }
 
     private String getNamespace() throws IOException {
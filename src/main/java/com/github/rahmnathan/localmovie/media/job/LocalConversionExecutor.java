@@ -0,0 +1,219 @@
+package com.github.rahmnathan.localmovie.media.job;
+
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.ConversionProgress;
+import com.github.rahmnathan.localmovie.data.MediaJobStatus;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaJob;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts with an ffmpeg process on this host, for deployments without a Kubernetes cluster. Concurrency is sized
+ * from the processors the JVM sees, which follow the container's CPU quota, and each process is limited to its share
+ * of them and started with a lower scheduling priority. Progress is parsed from the process output as it is written.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "service.conversion-service.executor", havingValue = "local")
+public class LocalConversionExecutor implements ConversionExecutor {
+    private static final int FAILURE_LOG_LINES = 20;
+
+    private final ServiceConfig.ConversionServiceConfig config;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int availableProcessors = Runtime.getRuntime().availableProcessors();
+    private final Optional<Path> nice = findOnPath("nice");
+    private final Map<String, LocalConversion> conversions = new ConcurrentHashMap<>();
+
+    public LocalConversionExecutor(ServiceConfig serviceConfig, ApplicationEventPublisher eventPublisher) {
+        this.config = serviceConfig.getConversionService();
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Override
+    public void launch(MediaJob mediaJob, File outputFile, TranscodePlan plan) throws IOException {
+        String jobId = mediaJob.getJobId();
+        LocalConversion running = conversions.get(jobId);
+        if (running != null && running.process().isAlive()) {
+            throw new IOException("A conversion is already running for jobId: " + jobId);
+        }
+
+        int threads = Math.min(config.getThreadsPerConversion(), availableProcessors);
+        List<String> command = niceCommand(config.getFfmpegPath());
+        command.addAll(plan.arguments(new File(mediaJob.getInputFile()), outputFile,
+                List.of("-threads", String.valueOf(threads))));
+
+        log.info("Starting local ffmpeg conversion for jobId: {}", jobId);
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .start();
+
+        LocalConversion conversion = new LocalConversion(process, new FfmpegProgressParser(), new ArrayDeque<>());
+        conversions.put(jobId, conversion);
+        Thread.ofVirtual().name("ffmpeg-" + jobId).start(() -> followOutput(jobId, conversion));
+    }
+
+    @Override
+    public String analyze(AnalysisTool tool, List<String> arguments, Duration timeout) throws IOException {
+        List<String> command = niceCommand(tool == AnalysisTool.FFPROBE ? config.getFfprobePath() : config.getFfmpegPath());
+        command.addAll(arguments);
+
+        // Written to a file so a chatty process can't block on a full pipe while this waits for it
+        Path output = Files.createTempFile("localmovies-analysis", ".log");
+        try {
+            Process process = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(output.toFile())
+                    .start();
+
+            if (!process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+                throw new IOException(tool + " did not finish within " + timeout);
+            }
+
+            String result = Files.readString(output);
+            if (process.exitValue() != 0) {
+                throw new IOException(tool + " exited with " + process.exitValue() + ": " + result);
+            }
+
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running " + tool, e);
+        } finally {
+            Files.deleteIfExists(output);
+        }
+    }
+
+    @Override
+    public Optional<MediaJobStatus> getStatus(String jobId) {
+        LocalConversion conversion = conversions.get(jobId);
+        if (conversion == null) {
+            // Either still being planned, or lost in a restart (see shutdown()). Like a Kubernetes job that doesn't
+            // exist, it is queued again once it has been claimed for longer than launchTimeoutMinutes.
+            log.debug("No local conversion process for jobId: {}", jobId);
+            return Optional.empty();
+        }
+
+        return Optional.of(statusOf(conversion.process()));
+    }
+
+    @Override
+    public void cleanUp(String jobId) {
+        LocalConversion conversion = conversions.remove(jobId);
+        if (conversion != null && conversion.process().isAlive()) {
+            conversion.process().destroy();
+        }
+    }
+
+    @Override
+    public Map<String, ConversionProgress> readProgress(Collection<MediaJob> runningJobs) {
+        Map<String, ConversionProgress> progress = new HashMap<>();
+        for (MediaJob mediaJob : runningJobs) {
+            LocalConversion conversion = conversions.get(mediaJob.getJobId());
+            if (conversion != null) {
+                progress.put(mediaJob.getJobId(), conversion.parser().toProgress(mediaJob.getJobId(), mediaJob.getInputFile()));
+            }
+        }
+
+        return progress;
+    }
+
+    @Override
+    public int concurrencyLimit(int configuredLimit) {
+        return concurrencyLimit(configuredLimit, availableProcessors, config.getThreadsPerConversion());
+    }
+
+    static int concurrencyLimit(int configuredLimit, int availableProcessors, int threadsPerConversion) {
+        int processorLimit = Math.max(1, availableProcessors / Math.max(1, threadsPerConversion));
+        return Math.min(configuredLimit, processorLimit);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        conversions.values().stream()
+                .map(LocalConversion::process)
+                .filter(Process::isAlive)
+                .forEach(Process::destroy);
+    }
+
+    private void followOutput(String jobId, LocalConversion conversion) {
+        try (BufferedReader reader = conversion.process().inputReader()) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                conversion.parser().accept(line);
+                if (conversion.output().size() == FAILURE_LOG_LINES) {
+                    conversion.output().removeFirst();
+                }
+                conversion.output().addLast(line);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to read ffmpeg output for jobId: {}", jobId, e);
+        }
+
+        // Reading fails rather than ending when the process is destroyed, so its exit is always waited for
+        try {
+            conversion.process().waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        MediaJobStatus status = statusOf(conversion.process());
+        if (status == MediaJobStatus.FAILED) {
+            log.warn("ffmpeg exited with {} for jobId: {}\n{}", conversion.process().exitValue(), jobId,
+                    String.join("\n", conversion.output()));
+        }
+
+        try {
+            eventPublisher.publishEvent(new ConversionJobFinishedEvent(jobId, status));
+        } catch (RuntimeException e) {
+            // The status poll retries this job
+            log.error("Failed to handle finished conversion for jobId: {}", jobId, e);
+        }
+    }
+
+    private List<String> niceCommand(String executable) {
+        List<String> command = new ArrayList<>();
+        if (config.getNiceness() > 0 && nice.isPresent()) {
+            command.addAll(List.of(nice.get().toString(), "-n", String.valueOf(config.getNiceness())));
+        }
+        command.add(executable);
+        return command;
+    }
+
+    private static MediaJobStatus statusOf(Process process) {
+        if (process.isAlive()) {
+            return MediaJobStatus.RUNNING;
+        }
+
+        return process.exitValue() == 0 ? MediaJobStatus.SUCCEEDED : MediaJobStatus.FAILED;
+    }
+
+    private static Optional<Path> findOnPath(String command) {
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return Optional.empty();
+        }
+
+        return Arrays.stream(path.split(File.pathSeparator))
+                .map(directory -> Path.of(directory, command))
+                .filter(Files::isExecutable)
+                .findFirst();
+    }
+
+    private record LocalConversion(Process process, FfmpegProgressParser parser, Deque<String> output) {
+    }
+}
@@ -6,13 +6,14 @@ import com.github.rahmnathan.localmovie.media.event.MediaEventService;
 import com.github.rahmnathan.localmovie.data.MediaJobStatus;
 import com.github.rahmnathan.localmovie.media.exception.InvalidMediaException;
 import com.github.rahmnathan.localmovie.persistence.entity.MediaJob;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaJobSegment;
 import com.github.rahmnathan.localmovie.persistence.repository.MediaJobRepository;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Metrics;
-import io.micrometer.core.instrument.Tag;
 import lombok.extern.slf4j.Slf4j;
 import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
 import org.slf4j.MDC;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -23,6 +24,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -35,75 +39,84 @@ public class MediaJobService {
     private final AtomicInteger queuedConversionGauge = Metrics.gauge("localmovie.conversions.queued", new AtomicInteger(0));
     private final AtomicInteger activeConversionGauge = Metrics.gauge("localmovie.conversions.active", new AtomicInteger(0));
 
-    private static final String JOB_ID_METRIC_TAG = "jobId";
-
     private final MediaJobRepository mediaJobRepository;
-    private final KubernetesService kubernetesService;
+    private final ConversionExecutor conversionExecutor;
+    private final TranscodePlanner transcodePlanner;
+    private final ConversionScheduler conversionScheduler;
+    private final SegmentedConversionService segmentedConversionService;
     private final MediaEventService mediaEventService;
     private final MeterRegistry meterRegistry;
     private final ServiceConfig serviceConfig;
-    private final FfmpegVideoConverter videoConverter;
 
     public MediaJobService(MediaJobRepository mediaJobRepository,
-                           KubernetesService kubernetesService,
+                           ConversionExecutor conversionExecutor,
+                           TranscodePlanner transcodePlanner,
+                           ConversionScheduler conversionScheduler,
+                           SegmentedConversionService segmentedConversionService,
                            MediaEventService mediaEventService,
                            MeterRegistry meterRegistry,
-                           ServiceConfig serviceConfig,
-                           FfmpegVideoConverter videoConverter) {
+                           ServiceConfig serviceConfig) {
         this.mediaJobRepository = mediaJobRepository;
-        this.kubernetesService = kubernetesService;
+        this.conversionExecutor = conversionExecutor;
+        this.transcodePlanner = transcodePlanner;
+        this.conversionScheduler = conversionScheduler;
+        this.segmentedConversionService = segmentedConversionService;
         this.mediaEventService = mediaEventService;
         this.meterRegistry = meterRegistry;
         this.serviceConfig = serviceConfig;
-        this.videoConverter = videoConverter;
     }
 
     @EventListener(ApplicationReadyEvent.class)
     public void init() {
-        log.info("Number of concurrent video conversions allowed: {}", serviceConfig.getDirectoryMonitor().getConcurrentConversionLimit());
+        log.info("Number of concurrent video conversions allowed: {}", getConcurrentConversionLimit());
     }
 
+    /**
+     * Runs on every replica, each launching the jobs it claims.
+     */
     @Scheduled(fixedDelay = 30000L)
-    @SchedulerLock(name = "scan-queued-jobs-lock")
     public void scanQueuedJobs() {
         long startTime = System.currentTimeMillis();
         MDC.put(X_CORRELATION_ID, UUID.randomUUID().toString());
 
-        int runningCount = mediaJobRepository.countAllByStatus(MediaJobStatus.RUNNING.name());
-        int queuedCount = mediaJobRepository.countAllByStatus(MediaJobStatus.QUEUED.name());
-
-        if (runningCount > 0 || queuedCount > 0) {
-            log.info("Found {} active conversions and {} queued conversions.", runningCount, queuedCount);
-        }
-
-        // Launch new conversions, if applicable
-        if (runningCount < serviceConfig.getDirectoryMonitor().getConcurrentConversionLimit() && queuedCount > 0) {
-
-            int jobsToLaunch = Math.min(serviceConfig.getDirectoryMonitor().getConcurrentConversionLimit() - runningCount, queuedCount);
-            List<MediaJob> mediaJobList = mediaJobRepository.findAllByStatusOrderByCreatedAsc(MediaJobStatus.QUEUED.name()).stream()
-                    .limit(jobsToLaunch)
-                    .toList();
-
+        List<MediaJob> mediaJobList = conversionScheduler.claimQueuedJobs(getConcurrentConversionLimit());
+        if (!mediaJobList.isEmpty()) {
             log.info("Launching {} new conversions.", mediaJobList.size());
+        }
 
-            mediaJobList.forEach(mediaJob -> mediaJob.setStatus(MediaJobStatus.RUNNING.name()));
-
-            for (MediaJob mediaJob : mediaJobList) {
-                try {
-                    launchVideoConverter(mediaJob);
-                } catch (IOException e) {
-                    log.error("Failed to launch video conversion for jobId: {}", mediaJob.getJobId(), e);
-                    mediaJob.setStatus(MediaJobStatus.FAILED.name());
+        // Analysis runs before each launch, bounded so claims waiting their turn aren't requeued as lost meanwhile
+        Instant analysisDeadline = Instant.now().plus(Duration.ofMinutes(
+                serviceConfig.getConversionService().getScheduling().getScanAnalysisMinutes()));
+        for (MediaJob mediaJob : mediaJobList) {
+            try {
+                if (Instant.now().isAfter(analysisDeadline)) {
+                    log.info("Out of analysis time, queueing conversion for jobId: {} for the next scan.", mediaJob.getJobId());
+                    mediaJob.setStatus(MediaJobStatus.QUEUED.name());
+                    mediaJobRepository.save(mediaJob);
+                    continue;
                 }
-            }
 
-            mediaJobRepository.saveAll(mediaJobList);
+                // Restarts the launch timeout, the claim may have waited for the conversions launched before it
+                mediaJob.setUpdated(LocalDateTime.now());
+                mediaJob = mediaJobRepository.save(mediaJob);
+                launchVideoConverter(mediaJob, analysisDeadline);
+            } catch (OptimisticLockingFailureException e) {
+                log.debug("Job {} was requeued while waiting to launch.", mediaJob.getJobId());
+            } catch (IOException e) {
+                log.error("Failed to launch video conversion for jobId: {}", mediaJob.getJobId(), e);
+                mediaJob.setStatus(MediaJobStatus.FAILED.name());
+                mediaJobRepository.save(mediaJob);
+            }
         }
 
         MDC.clear();
         meterRegistry.timer("localmovies.scan-queued-jobs").record(System.currentTimeMillis() - startTime, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Reconciles running jobs with the conversion executor. Finished jobs are normally handled as soon as the executor
+     * reports them, this catches any that were missed.
+     */
     @Scheduled(fixedDelay = 30000L)
     @SchedulerLock(name = "update-job-status-lock")
     public void updateJobStatus() throws IOException {
@@ -115,47 +128,24 @@ public class MediaJobService {
         List<MediaJob> mediaJobs = mediaJobRepository.findAllByStatusOrderByCreatedAsc(MediaJobStatus.RUNNING.name());
 
         for(MediaJob mediaJob : mediaJobs) {
-            Optional<MediaJobStatus> jobStatus = kubernetesService.getJobStatus(mediaJob.getJobId());
-
-            if(jobStatus.isEmpty()) {
-                log.warn("Could not find status for kubernetes job with jobId: {}", mediaJob.getJobId());
+            if (mediaJob.isSegmented() && !mediaJob.isStitchLaunched()) {
+                updateSegmentStatus(mediaJob);
                 continue;
             }
 
-            mediaJob.setStatus(jobStatus.get().name());
+            Optional<MediaJobStatus> jobStatus = conversionExecutor.getStatus(mediaJob.getJobId());
 
-            if (jobStatus.get() == MediaJobStatus.SUCCEEDED) {
-                log.info("Found completed job for input file: {}", mediaJob.getInputFile());
-                kubernetesService.deleteJob(mediaJob.getJobId());
-                File stagingOutputFile = getStagingOutputFile(mediaJob);
-                if (!stagingOutputFile.exists()) {
-                    log.warn("Conversion succeeded but staging output file does not exist: {}", stagingOutputFile);
-                    mediaJob.setStatus(MediaJobStatus.FAILED.name());
-                    continue;
-                }
+            if(jobStatus.isEmpty()) {
+                log.warn("Could not find status for conversion with jobId: {}", mediaJob.getJobId());
+                requeueIfLost(mediaJob);
+                continue;
+            }
 
-                Files.move(stagingOutputFile.toPath(), Path.of(mediaJob.getOutputFile()), StandardCopyOption.REPLACE_EXISTING);
-                File inputFile = new File(mediaJob.getInputFile());
-                if(inputFile.exists()) {
-                    Files.delete(inputFile.toPath());
-                }
-                try {
-                    mediaEventService.handleCreateEvent(MediaPath.parse(mediaJob.getOutputFile()));
-                } catch (InvalidMediaException e) {
-                    log.info("Failed to handle create event for output file: {}", mediaJob.getOutputFile());
-                }
-            } else if (jobStatus.get() == MediaJobStatus.FAILED) {
-                log.warn("Found failed job for input file: {}", mediaJob.getInputFile());
-                kubernetesService.deleteJob(mediaJob.getJobId());
-                File stagingOutputFile = getStagingOutputFile(mediaJob);
-                if(stagingOutputFile.exists()) {
-                    Files.delete(stagingOutputFile.toPath());
-                }
+            if (jobStatus.get() != MediaJobStatus.RUNNING) {
+                finishJob(mediaJob, jobStatus.get());
             }
         }
 
-        mediaJobRepository.saveAll(mediaJobs);
-
         int runningCount = mediaJobRepository.countAllByStatus(MediaJobStatus.RUNNING.name());
         activeConversionGauge.set(runningCount);
         int queuedCount = mediaJobRepository.countAllByStatus(MediaJobStatus.QUEUED.name());
@@ -165,32 +155,196 @@ public class MediaJobService {
         meterRegistry.timer("localmovies.update-job-status").record(System.currentTimeMillis() - startTime, TimeUnit.MILLISECONDS);
     }
 
-    @Scheduled(fixedDelay = 30000L)
-    @SchedulerLock(name = "record-etas-lock")
-    public void extractAndRecordETAs() throws IOException {
-        long startTime = System.currentTimeMillis();
+    @EventListener
+    public void onConversionJobFinished(ConversionJobFinishedEvent event) throws IOException {
         MDC.put(X_CORRELATION_ID, UUID.randomUUID().toString());
+        try {
+            Optional<MediaJob> mediaJob = mediaJobRepository.findFirstByJobIdAndStatus(event.jobId(), MediaJobStatus.RUNNING.name());
+            if (mediaJob.isPresent()) {
+                finishJob(mediaJob.get(), event.status());
+                return;
+            }
 
-        List<MediaJob> mediaJobs = mediaJobRepository.findAllByStatusOrderByCreatedAsc(MediaJobStatus.RUNNING.name());
-        for (MediaJob mediaJob : mediaJobs) {
-            kubernetesService.getETA(mediaJob.getJobId()).ifPresent(value -> meterRegistry.timer("conversion.time.left", List.of(Tag.of(JOB_ID_METRIC_TAG, mediaJob.getJobId()))).record(value));
+            Optional<MediaJobSegment> segment = segmentedConversionService.findRunningSegment(event.jobId());
+            if (segment.isPresent()) {
+                finishSegment(segment.get(), event.status());
+            }
+        } finally {
+            MDC.clear();
         }
+    }
 
-        MDC.clear();
-        meterRegistry.timer("localmovies.record-etas").record(System.currentTimeMillis() - startTime, TimeUnit.MILLISECONDS);
+    /**
+     * A replica that stops between claiming a job and launching it leaves the job running with nothing converting it.
+     */
+    private void requeueIfLost(MediaJob mediaJob) {
+        long launchTimeoutMinutes = serviceConfig.getConversionService().getScheduling().getLaunchTimeoutMinutes();
+        if (mediaJob.getUpdated() == null || mediaJob.getUpdated().isAfter(LocalDateTime.now().minusMinutes(launchTimeoutMinutes))) {
+            return;
+        }
+
+        if (mediaJob.isSegmented()) {
+            // The segments are already encoded, only joining them has to run again
+            log.warn("Joining segments for jobId: {} was launched {} but never started, launching it again.", mediaJob.getJobId(), mediaJob.getUpdated());
+            mediaJob.setStitchLaunched(false);
+        } else {
+            log.warn("Conversion for jobId: {} was claimed {} but never started, queueing it again.", mediaJob.getJobId(), mediaJob.getUpdated());
+            mediaJob.setStatus(MediaJobStatus.QUEUED.name());
+        }
+        try {
+            mediaJobRepository.save(mediaJob);
+        } catch (OptimisticLockingFailureException e) {
+            log.debug("Job {} changed while requeueing it.", mediaJob.getJobId());
+        }
+    }
+
+    private void finishJob(MediaJob mediaJob, MediaJobStatus jobStatus) throws IOException {
+        mediaJob.setStatus(jobStatus.name());
+        try {
+            // Every replica's informer and the status poll can see the same job finish, the version check lets only
+            // one of them move the output
+            mediaJob = mediaJobRepository.save(mediaJob);
+        } catch (OptimisticLockingFailureException e) {
+            log.debug("Job {} was already finished elsewhere.", mediaJob.getJobId());
+            return;
+        }
+
+        // Until its segments are joined, a segmented conversion has no job of its own to clean up
+        boolean hasExecutorJob = !mediaJob.isSegmented() || mediaJob.isStitchLaunched();
+        if (mediaJob.isSegmented()) {
+            segmentedConversionService.discard(mediaJob);
+        }
+
+        if (jobStatus == MediaJobStatus.SUCCEEDED) {
+            log.info("Found completed job for input file: {}", mediaJob.getInputFile());
+            if (hasExecutorJob) {
+                conversionExecutor.cleanUp(mediaJob.getJobId());
+            }
+            File stagingOutputFile = getStagingOutputFile(mediaJob);
+            if (!stagingOutputFile.exists()) {
+                log.warn("Conversion succeeded but staging output file does not exist: {}", stagingOutputFile);
+                mediaJob.setStatus(MediaJobStatus.FAILED.name());
+                mediaJobRepository.save(mediaJob);
+                return;
+            }
+
+            try {
+                Files.move(stagingOutputFile.toPath(), Path.of(mediaJob.getOutputFile()), StandardCopyOption.REPLACE_EXISTING);
+                File inputFile = new File(mediaJob.getInputFile());
+                if(inputFile.exists()) {
+                    Files.delete(inputFile.toPath());
+                }
+            } catch (IOException e) {
+                // The job is no longer running, so nothing would retry the move
+                mediaJob.setStatus(MediaJobStatus.FAILED.name());
+                mediaJobRepository.save(mediaJob);
+                throw e;
+            }
+            try {
+                mediaEventService.handleCreateEvent(MediaPath.parse(mediaJob.getOutputFile()));
+            } catch (InvalidMediaException e) {
+                log.info("Failed to handle create event for output file: {}", mediaJob.getOutputFile());
+            }
+        } else if (jobStatus == MediaJobStatus.FAILED) {
+            log.warn("Found failed job for input file: {}", mediaJob.getInputFile());
+            if (hasExecutorJob) {
+                conversionExecutor.cleanUp(mediaJob.getJobId());
+            }
+            File stagingOutputFile = getStagingOutputFile(mediaJob);
+            if(stagingOutputFile.exists()) {
+                Files.delete(stagingOutputFile.toPath());
+            }
+        }
     }
 
-    public void launchVideoConverter(MediaJob mediaJob) throws IOException {
+    public void launchVideoConverter(MediaJob mediaJob, Instant analysisDeadline) throws IOException {
         log.info("Launching video conversion for jobId: {}", mediaJob.getJobId());
 
-        File inputFile = new File(mediaJob.getInputFile());
         File outputFile = getStagingOutputFile(mediaJob);
 
         if (Files.exists(outputFile.toPath())) {
             Files.delete(outputFile.toPath());
         }
 
-        videoConverter.launchVideoConverter(inputFile, outputFile);
+        TranscodePlan plan = transcodePlanner.plan(new File(mediaJob.getInputFile()), segmentedConversionService.getSegmentDirectory(mediaJob),
+                analysisDeadline);
+        if (plan.isSegmented()) {
+            segmentedConversionService.launch(mediaJob, plan);
+            return;
+        }
+
+        conversionExecutor.launch(mediaJob, outputFile, plan);
+    }
+
+    /**
+     * Reconciles the running segments of a conversion with the conversion executor, then joins them if they are all
+     * encoded.
+     */
+    private void updateSegmentStatus(MediaJob mediaJob) throws IOException {
+        for (MediaJobSegment segment : segmentedConversionService.findRunningSegments(mediaJob)) {
+            Optional<MediaJobStatus> segmentStatus = conversionExecutor.getStatus(segment.getJobId());
+            if (segmentStatus.isEmpty() && segmentedConversionService.isLost(segment)) {
+                log.warn("Segment conversion with jobId: {} was launched {} but never started.", segment.getJobId(), segment.getUpdated());
+                segmentedConversionService.finishSegment(mediaJob, segment, MediaJobStatus.FAILED);
+            } else if (segmentStatus.isPresent() && segmentStatus.get() != MediaJobStatus.RUNNING) {
+                segmentedConversionService.finishSegment(mediaJob, segment, segmentStatus.get());
+            }
+        }
+
+        mediaJobRepository.findById(mediaJob.getId()).ifPresent(this::advanceSegments);
+    }
+
+    private void finishSegment(MediaJobSegment segment, MediaJobStatus status) throws IOException {
+        Optional<MediaJob> mediaJob = mediaJobRepository.findById(segment.getMediaJobId())
+                .filter(job -> MediaJobStatus.RUNNING.name().equals(job.getStatus()));
+        if (mediaJob.isEmpty() || !segmentedConversionService.finishSegment(mediaJob.get(), segment, status)) {
+            return;
+        }
+
+        mediaJobRepository.findById(mediaJob.get().getId()).ifPresent(this::advanceSegments);
+    }
+
+    /**
+     * Fails the conversion once a segment has run out of attempts, and joins the segments once they are all encoded.
+     */
+    private void advanceSegments(MediaJob mediaJob) {
+        if (!MediaJobStatus.RUNNING.name().equals(mediaJob.getStatus()) || mediaJob.isStitchLaunched()) {
+            return;
+        }
+
+        try {
+            switch (segmentedConversionService.getSegmentsStatus(mediaJob)) {
+                case FAILED -> finishJob(mediaJob, MediaJobStatus.FAILED);
+                case SUCCEEDED -> launchStitch(mediaJob);
+                default -> log.debug("Segments of jobId: {} are still running.", mediaJob.getJobId());
+            }
+        } catch (IOException e) {
+            log.error("Failed to advance segmented conversion for jobId: {}", mediaJob.getJobId(), e);
+        }
+    }
+
+    private void launchStitch(MediaJob mediaJob) throws IOException {
+        mediaJob.setStitchLaunched(true);
+        try {
+            // Each segment finishing on another replica can find the segments done, only one of them joins them
+            mediaJob = mediaJobRepository.save(mediaJob);
+        } catch (OptimisticLockingFailureException e) {
+            log.debug("Segments of job {} are already being joined elsewhere.", mediaJob.getJobId());
+            return;
+        }
+
+        log.info("Joining segments for jobId: {}", mediaJob.getJobId());
+        try {
+            TranscodePlan plan = segmentedConversionService.prepareStitch(mediaJob);
+            conversionExecutor.launch(mediaJob, getStagingOutputFile(mediaJob), plan);
+        } catch (IOException e) {
+            log.error("Failed to launch joining segments for jobId: {}", mediaJob.getJobId(), e);
+            finishJob(mediaJob, MediaJobStatus.FAILED);
+        }
+    }
+
+    private int getConcurrentConversionLimit() {
+        return conversionExecutor.concurrencyLimit(serviceConfig.getDirectoryMonitor().getConcurrentConversionLimit());
     }
 
     private File getStagingOutputFile(MediaJob mediaJob) {
@@ -0,0 +1,55 @@
+package com.github.rahmnathan.localmovie.media.job;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The streams ffprobe reports for a media file, as much of them as transcode planning needs.
+ *
+ * @param durationSeconds null when the container doesn't report one
+ */
+record MediaProbe(List<Stream> streams, Double durationSeconds) {
+
+    static MediaProbe parse(JsonNode ffprobeOutput) {
+        List<Stream> streams = new ArrayList<>();
+        for (JsonNode stream : ffprobeOutput.path("streams")) {
+            streams.add(new Stream(
+                    stream.path("index").asInt(),
+                    stream.path("codec_type").asText(null),
+                    stream.path("codec_name").asText(null),
+                    stream.path("profile").asText(null),
+                    stream.hasNonNull("level") ? stream.get("level").asInt() : null,
+                    stream.path("pix_fmt").asText(null),
+                    stream.hasNonNull("channels") ? stream.get("channels").asInt() : null,
+                    stream.path("disposition").path("attached_pic").asInt() == 1));
+        }
+
+        JsonNode duration = ffprobeOutput.path("format").path("duration");
+        return new MediaProbe(streams, duration.isMissingNode() || duration.isNull() ? null : duration.asDouble());
+    }
+
+    /**
+     * Cover art is stored as a video stream, so it's skipped when looking for the feature.
+     */
+    Optional<Stream> video() {
+        return streams.stream()
+                .filter(stream -> "video".equals(stream.codecType()) && !stream.attachedPicture())
+                .findFirst();
+    }
+
+    Optional<Stream> audio() {
+        return streams.stream()
+                .filter(stream -> "audio".equals(stream.codecType()))
+                .findFirst();
+    }
+
+    /**
+     * @param level H.264 levels are reported multiplied by ten, 41 for level 4.1
+     */
+    record Stream(int index, String codecType, String codecName, String profile, Integer level, String pixelFormat,
+                  Integer channels, boolean attachedPicture) {
+    }
+}
@@ -0,0 +1,209 @@
+package com.github.rahmnathan.localmovie.media.job;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.MediaJobStatus;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaJob;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaJobSegment;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaJobRepository;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaJobSegmentRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps track of the segments a long conversion is encoded in. Every segment runs as its own conversion, so they spread
+ * over as many workers as are free, and a failed segment is retried on its own rather than restarting the conversion.
+ * {@link MediaJobService} joins the segments once they have all been encoded.
+ */
+@Slf4j
+@Service
+public class SegmentedConversionService {
+    private final MediaJobRepository mediaJobRepository;
+    private final MediaJobSegmentRepository segmentRepository;
+    private final ConversionExecutor conversionExecutor;
+    private final MeterRegistry meterRegistry;
+    private final ServiceConfig serviceConfig;
+    private final ObjectMapper objectMapper;
+
+    public SegmentedConversionService(MediaJobRepository mediaJobRepository,
+                                      MediaJobSegmentRepository segmentRepository,
+                                      ConversionExecutor conversionExecutor,
+                                      MeterRegistry meterRegistry,
+                                      ServiceConfig serviceConfig,
+                                      ObjectProvider<ObjectMapper> objectMapperProvider) {
+        this.mediaJobRepository = mediaJobRepository;
+        this.segmentRepository = segmentRepository;
+        this.conversionExecutor = conversionExecutor;
+        this.meterRegistry = meterRegistry;
+        this.serviceConfig = serviceConfig;
+        this.objectMapper = objectMapperProvider.getIfAvailable(ObjectMapper::new);
+    }
+
+    public File getSegmentDirectory(MediaJob mediaJob) {
+        return new File(mediaJob.getOutputFile() + ".segments~");
+    }
+
+    /**
+     * Records the segments and the plan joining them, then launches every segment. Segments that fail to launch are
+     * retried once they are found lost.
+     */
+    public void launch(MediaJob mediaJob, TranscodePlan plan) throws IOException {
+        Files.createDirectories(getSegmentDirectory(mediaJob).toPath());
+        TranscodePlan stitchPlan = new TranscodePlan(plan.mode(), plan.inputOptions(), plan.outputOptions(), List.of());
+        String serializedStitchPlan = objectMapper.writeValueAsString(stitchPlan);
+
+        List<MediaJobSegment> segments = new ArrayList<>();
+        for (TranscodePlan.Segment segment : plan.segments()) {
+            segments.add(segmentRepository.save(MediaJobSegment.builder()
+                    .mediaJobId(mediaJob.getId())
+                    .segmentIndex(segment.index())
+                    .jobId(segmentJobId(mediaJob, segment.index(), 1))
+                    .status(MediaJobStatus.RUNNING.name())
+                    .attempts(1)
+                    .outputFile(segment.outputFile().getAbsolutePath())
+                    .plan(objectMapper.writeValueAsString(segment.plan()))
+                    .build()));
+        }
+
+        mediaJob.setStitchPlan(serializedStitchPlan);
+        mediaJob.setStitchLaunched(false);
+        mediaJobRepository.save(mediaJob);
+
+        log.info("Launching {} segments for jobId: {}", segments.size(), mediaJob.getJobId());
+        for (MediaJobSegment segment : segments) {
+            launchSegment(mediaJob, segment);
+        }
+    }
+
+    public Optional<MediaJobSegment> findRunningSegment(String jobId) {
+        return segmentRepository.findFirstByJobIdAndStatus(jobId, MediaJobStatus.RUNNING.name());
+    }
+
+    public List<MediaJobSegment> findRunningSegments(MediaJob mediaJob) {
+        return segmentRepository.findAllByMediaJobIdOrderBySegmentIndexAsc(mediaJob.getId()).stream()
+                .filter(segment -> MediaJobStatus.RUNNING.name().equals(segment.getStatus()))
+                .toList();
+    }
+
+    /**
+     * A segment the executor doesn't know about long after it was launched is treated as failed.
+     */
+    public boolean isLost(MediaJobSegment segment) {
+        long launchTimeoutMinutes = serviceConfig.getConversionService().getScheduling().getLaunchTimeoutMinutes();
+        return segment.getUpdated() != null && segment.getUpdated().isBefore(LocalDateTime.now().minusMinutes(launchTimeoutMinutes));
+    }
+
+    /**
+     * Records how a segment's conversion ended, launching it again under a new jobId while it has attempts left.
+     *
+     * @return false when the segment was already finished elsewhere
+     */
+    public boolean finishSegment(MediaJob mediaJob, MediaJobSegment segment, MediaJobStatus status) throws IOException {
+        String finishedJobId = segment.getJobId();
+        boolean retry = status == MediaJobStatus.FAILED
+                && segment.getAttempts() < serviceConfig.getConversionService().getSegmentation().getMaxAttempts();
+
+        if (retry) {
+            segment.setAttempts(segment.getAttempts() + 1);
+            segment.setJobId(segmentJobId(mediaJob, segment.getSegmentIndex(), segment.getAttempts()));
+        } else {
+            segment.setStatus(status.name());
+        }
+
+        try {
+            segment = segmentRepository.save(segment);
+        } catch (OptimisticLockingFailureException e) {
+            log.debug("Segment {} was already finished elsewhere.", finishedJobId);
+            return false;
+        }
+
+        conversionExecutor.cleanUp(finishedJobId);
+        meterRegistry.counter("localmovies.conversions.segments", "status", status.name().toLowerCase()).increment();
+        if (retry) {
+            log.warn("Segment {} of jobId: {} failed, launching attempt {}.", segment.getSegmentIndex(), mediaJob.getJobId(), segment.getAttempts());
+            launchSegment(mediaJob, segment);
+        }
+
+        return true;
+    }
+
+    /**
+     * SUCCEEDED once every segment has been encoded, FAILED once any has run out of attempts, and RUNNING otherwise.
+     */
+    public MediaJobStatus getSegmentsStatus(MediaJob mediaJob) {
+        List<MediaJobSegment> segments = segmentRepository.findAllByMediaJobIdOrderBySegmentIndexAsc(mediaJob.getId());
+        if (segments.isEmpty() || segments.stream().anyMatch(segment -> MediaJobStatus.FAILED.name().equals(segment.getStatus()))) {
+            return MediaJobStatus.FAILED;
+        }
+
+        boolean succeeded = segments.stream().allMatch(segment -> MediaJobStatus.SUCCEEDED.name().equals(segment.getStatus()));
+        return succeeded ? MediaJobStatus.SUCCEEDED : MediaJobStatus.RUNNING;
+    }
+
+    /**
+     * Writes the list of encoded segments for the concat demuxer and returns the plan joining them.
+     */
+    public TranscodePlan prepareStitch(MediaJob mediaJob) throws IOException {
+        String segmentList = segmentRepository.findAllByMediaJobIdOrderBySegmentIndexAsc(mediaJob.getId()).stream()
+                .map(segment -> "file '" + segment.getOutputFile().replace("'", "'\\''") + "'")
+                .collect(Collectors.joining("\n", "", "\n"));
+        Files.writeString(TranscodePlanner.segmentListFile(getSegmentDirectory(mediaJob)).toPath(), segmentList);
+
+        return objectMapper.readValue(mediaJob.getStitchPlan(), TranscodePlan.class);
+    }
+
+    /**
+     * Stops whatever segments are still running and removes their records and outputs.
+     */
+    public void discard(MediaJob mediaJob) {
+        for (MediaJobSegment segment : segmentRepository.findAllByMediaJobIdOrderBySegmentIndexAsc(mediaJob.getId())) {
+            if (MediaJobStatus.RUNNING.name().equals(segment.getStatus())) {
+                try {
+                    conversionExecutor.cleanUp(segment.getJobId());
+                } catch (IOException e) {
+                    log.warn("Failed to clean up segment conversion with jobId: {}", segment.getJobId(), e);
+                }
+            }
+            segmentRepository.delete(segment);
+        }
+
+        try {
+            FileSystemUtils.deleteRecursively(getSegmentDirectory(mediaJob).toPath());
+        } catch (IOException e) {
+            log.warn("Failed to delete segment directory for jobId: {}", mediaJob.getJobId(), e);
+        }
+    }
+
+    private void launchSegment(MediaJob mediaJob, MediaJobSegment segment) {
+        // Segments are converted like any other job, under their own jobId
+        MediaJob segmentJob = MediaJob.builder()
+                .jobId(segment.getJobId())
+                .inputFile(mediaJob.getInputFile())
+                .outputFile(segment.getOutputFile())
+                .build();
+
+        try {
+            TranscodePlan plan = objectMapper.readValue(segment.getPlan(), TranscodePlan.class);
+            conversionExecutor.launch(segmentJob, new File(segment.getOutputFile()), plan);
+        } catch (IOException e) {
+            log.error("Failed to launch segment conversion with jobId: {}", segment.getJobId(), e);
+        }
+    }
+
+    private static String segmentJobId(MediaJob mediaJob, int index, int attempt) {
+        return "%s-s%d-%d".formatted(mediaJob.getJobId(), index, attempt);
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.rahmnathan.localmovie.media.job;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * How a conversion treats its input's streams, chosen by the {@link TranscodePlanner} before it launches.
+ *
+ * @param inputOptions  ffmpeg options ahead of the input file, such as where to start reading
+ * @param outputOptions ffmpeg options between the input and the output file, selecting and encoding the streams
+ * @param segments      parts of the input encoded by their own conversions first, when the plan's own arguments stitch
+ *                      their outputs together
+ */
+public record TranscodePlan(Mode mode, List<String> inputOptions, List<String> outputOptions, List<Segment> segments) {
+
+    public TranscodePlan(Mode mode, List<String> outputOptions) {
+        this(mode, List.of(), outputOptions, List.of());
+    }
+
+    public enum Mode {
+        /**
+         * Both streams are copied into an MP4 container.
+         */
+        REMUX,
+        /**
+         * The video is copied and the audio re-encoded.
+         */
+        AUDIO_TRANSCODE,
+        TRANSCODE
+    }
+
+    @JsonIgnore
+    public boolean isSegmented() {
+        return !segments.isEmpty();
+    }
+
+    /**
+     * Arguments for running the plan, shared by every {@link ConversionExecutor}. Executor options are added ahead of
+     * the plan's output options.
+     */
+    public List<String> arguments(File inputFile, File outputFile, List<String> executorOptions) {
+        List<String> args = new ArrayList<>(List.of(
+                "-nostats",
+                "-stats_period", "30",
+                "-progress", "pipe:1"));
+        args.addAll(inputOptions);
+        args.addAll(List.of("-i", inputFile.getAbsolutePath()));
+        args.addAll(executorOptions);
+        args.addAll(outputOptions);
+        args.addAll(List.of(
+                // Container options
+                "-movflags", "+faststart",
+                "-f", "mp4",
+                // Overwrite output file if exists
+                "-y",
+                outputFile.getAbsolutePath()));
+
+        return args;
+    }
+
+    public record Segment(int index, File outputFile, TranscodePlan plan) {
+    }
+}
@@ -0,0 +1,403 @@
+package com.github.rahmnathan.localmovie.media.job;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Decides per stream whether a conversion has to encode or can copy. Most libraries are already H.264 with AAC audio
+ * in a container Chromecasts won't play, and copying those streams into MP4 takes seconds where re-encoding takes
+ * hours and loses quality. Inputs that can't be probed are encoded in full with the active profile.
+ */
+@Slf4j
+@Component
+public class TranscodePlanner {
+    private static final List<String> VIDEO_PROFILES = List.of("baseline", "main", "high");
+    /**
+     * How far past an even split to look for a keyframe to split at.
+     */
+    private static final int KEYFRAME_SEARCH_SECONDS = 15;
+
+    private final ServiceConfig.ConversionServiceConfig config;
+    private final ConversionExecutor conversionExecutor;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public TranscodePlanner(ServiceConfig serviceConfig, ConversionExecutor conversionExecutor, MeterRegistry meterRegistry,
+                            ObjectProvider<ObjectMapper> objectMapperProvider) {
+        this(serviceConfig, conversionExecutor, meterRegistry, objectMapperProvider.getIfAvailable(ObjectMapper::new));
+    }
+
+    TranscodePlanner(ServiceConfig serviceConfig, ConversionExecutor conversionExecutor, MeterRegistry meterRegistry,
+                     ObjectMapper objectMapper) {
+        this.config = serviceConfig.getConversionService();
+        this.conversionExecutor = conversionExecutor;
+        this.meterRegistry = meterRegistry;
+        this.objectMapper = objectMapper;
+    }
+
+    public TranscodePlan plan(File inputFile) {
+        return plan(inputFile, null);
+    }
+
+    /**
+     * @param segmentDirectory where segment outputs are written when the input is long enough to be encoded in
+     *                         segments, null to always encode in one job
+     */
+    public TranscodePlan plan(File inputFile, File segmentDirectory) {
+        return plan(inputFile, segmentDirectory, null);
+    }
+
+    /**
+     * @param analysisDeadline when the analyses have to be done by, their timeouts are cut short to meet it. Null for
+     *                         no deadline.
+     */
+    public TranscodePlan plan(File inputFile, File segmentDirectory, Instant analysisDeadline) {
+        ServiceConfig.TranscodeProfile profile = config.getActiveProfile();
+        MediaProbe probe = probe(inputFile, analysisDeadline).orElse(null);
+
+        String audioFilter = copiesAudio(probe, profile) ? null : loudnormFilter(inputFile, probe, profile, analysisDeadline);
+        TranscodePlan plan = plan(probe, profile, audioFilter);
+        int segments = segmentDirectory == null ? 1 : segments(plan, probe);
+        if (segments > 1) {
+            List<Double> boundaries = keyframeBoundaries(inputFile, probe.durationSeconds(), segments, analysisDeadline);
+            plan = segmentedPlan(probe, profile, audioFilter, boundaries, segmentDirectory);
+        }
+
+        log.info("Planned {} with profile {} in {} segments for input file: {}", plan.mode(), config.getProfile(),
+                Math.max(1, plan.segments().size()), inputFile);
+        meterRegistry.counter("localmovies.conversions.planned", "mode", plan.mode().name().toLowerCase()).increment();
+        return plan;
+    }
+
+    /**
+     * @param probe       null when the input couldn't be probed, leaving stream selection to ffmpeg
+     * @param audioFilter applied when the audio is encoded
+     */
+    static TranscodePlan plan(MediaProbe probe, ServiceConfig.TranscodeProfile profile, String audioFilter) {
+        Optional<MediaProbe.Stream> video = probe == null ? Optional.empty() : probe.video();
+        Optional<MediaProbe.Stream> audio = probe == null ? Optional.empty() : probe.audio();
+        boolean copyVideo = copiesVideo(probe, profile);
+        boolean copyAudio = copiesAudio(probe, profile);
+
+        // Subtitle and data streams don't fit in MP4, so only the feature and its first audio track are kept
+        List<String> options = new ArrayList<>();
+        video.ifPresent(stream -> options.addAll(List.of("-map", "0:" + stream.index())));
+        audio.ifPresent(stream -> options.addAll(List.of("-map", "0:" + stream.index())));
+
+        if (copyVideo) {
+            options.addAll(List.of("-c:v", "copy"));
+        } else {
+            options.addAll(videoOptions(profile));
+        }
+
+        boolean hasAudio = probe == null || audio.isPresent();
+        if (copyAudio) {
+            options.addAll(List.of("-c:a", "copy"));
+        } else if (hasAudio) {
+            options.addAll(audioOptions(profile, audioFilter));
+        }
+
+        TranscodePlan.Mode mode;
+        if (!copyVideo) {
+            mode = TranscodePlan.Mode.TRANSCODE;
+        } else if (copyAudio || !hasAudio) {
+            mode = TranscodePlan.Mode.REMUX;
+        } else {
+            mode = TranscodePlan.Mode.AUDIO_TRANSCODE;
+        }
+
+        return new TranscodePlan(mode, List.copyOf(options));
+    }
+
+    /**
+     * Segments encode video only. Joining them copies the video, and the audio is taken from the input in the same
+     * pass, so AAC priming doesn't leave gaps at the segment boundaries.
+     *
+     * @param boundaries where each segment after the first starts, in seconds
+     */
+    static TranscodePlan segmentedPlan(MediaProbe probe, ServiceConfig.TranscodeProfile profile, String audioFilter,
+                                       List<Double> boundaries, File segmentDirectory) {
+        MediaProbe.Stream video = probe.video().orElseThrow();
+        List<TranscodePlan.Segment> segments = new ArrayList<>();
+        for (int index = 0; index <= boundaries.size(); index++) {
+            double start = index == 0 ? 0 : boundaries.get(index - 1);
+            List<String> inputOptions = index == 0 ? List.of() : List.of("-ss", seconds(start));
+
+            List<String> outputOptions = new ArrayList<>();
+            if (index < boundaries.size()) {
+                outputOptions.addAll(List.of("-t", seconds(boundaries.get(index) - start)));
+            }
+            outputOptions.addAll(List.of("-map", "0:" + video.index()));
+            outputOptions.addAll(videoOptions(profile));
+
+            File outputFile = new File(segmentDirectory, "segment-%03d.mp4".formatted(index));
+            segments.add(new TranscodePlan.Segment(index, outputFile,
+                    new TranscodePlan(TranscodePlan.Mode.TRANSCODE, inputOptions, List.copyOf(outputOptions), List.of())));
+        }
+
+        // The joined segments are the first input and the original the second
+        List<String> outputOptions = new ArrayList<>(List.of("-map", "0:v:0"));
+        Optional<MediaProbe.Stream> audio = probe.audio();
+        audio.ifPresent(stream -> outputOptions.addAll(List.of("-map", "1:" + stream.index())));
+        outputOptions.addAll(List.of("-c:v", "copy"));
+        if (copiesAudio(probe, profile)) {
+            outputOptions.addAll(List.of("-c:a", "copy"));
+        } else if (audio.isPresent()) {
+            outputOptions.addAll(audioOptions(profile, audioFilter));
+        }
+
+        List<String> inputOptions = List.of("-f", "concat", "-safe", "0", "-i", segmentListFile(segmentDirectory).getAbsolutePath());
+        return new TranscodePlan(TranscodePlan.Mode.TRANSCODE, inputOptions, List.copyOf(outputOptions), List.copyOf(segments));
+    }
+
+    /**
+     * The concat list a segmented plan joins, written once every segment has been encoded.
+     */
+    public static File segmentListFile(File segmentDirectory) {
+        return new File(segmentDirectory, "segments.txt");
+    }
+
+    static boolean copiesVideo(MediaProbe probe, ServiceConfig.TranscodeProfile profile) {
+        Optional<MediaProbe.Stream> video = probe == null ? Optional.empty() : probe.video();
+        if (video.isEmpty() || !"h264".equals(video.get().codecName()) || !"yuv420p".equals(video.get().pixelFormat())) {
+            return false;
+        }
+
+        int sourceProfile = videoProfileRank(video.get().profile());
+        int targetProfile = profile.getVideoProfile() == null ? VIDEO_PROFILES.size() - 1 : videoProfileRank(profile.getVideoProfile());
+        if (sourceProfile < 0 || sourceProfile > targetProfile) {
+            return false;
+        }
+
+        if (profile.getVideoLevel() == null) {
+            return true;
+        }
+
+        Integer level = video.get().level();
+        return level != null && level > 0 && level <= Math.round(Double.parseDouble(profile.getVideoLevel()) * 10);
+    }
+
+    static boolean copiesAudio(MediaProbe probe, ServiceConfig.TranscodeProfile profile) {
+        Optional<MediaProbe.Stream> audio = probe == null ? Optional.empty() : probe.audio();
+        return profile.isCopyCompatibleAudio()
+                && audio.isPresent()
+                && "aac".equals(audio.get().codecName())
+                && audio.get().channels() != null
+                && audio.get().channels() <= profile.getAudioChannels();
+    }
+
+    private Optional<MediaProbe> probe(File inputFile, Instant analysisDeadline) {
+        if (!config.isProbeEnabled()) {
+            return Optional.empty();
+        }
+
+        try {
+            String output = conversionExecutor.analyze(ConversionExecutor.AnalysisTool.FFPROBE,
+                    List.of("-v", "error", "-print_format", "json", "-show_streams", "-show_format", inputFile.getAbsolutePath()),
+                    analysisTimeout(analysisDeadline));
+            return jsonObject(output, false).map(MediaProbe::parse);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to probe input file: {}, encoding it in full.", inputFile, e);
+            return Optional.empty();
+        }
+    }
+
+    private int segments(TranscodePlan plan, MediaProbe probe) {
+        ServiceConfig.ConversionSegmentationConfig segmentation = config.getSegmentation();
+        if (!segmentation.isEnabled() || !conversionExecutor.supportsSegments() || plan.mode() != TranscodePlan.Mode.TRANSCODE
+                || probe == null || probe.video().isEmpty() || probe.durationSeconds() == null
+                || probe.durationSeconds() < segmentation.getMinimumDurationMinutes() * 60) {
+            return 1;
+        }
+
+        long segments = (long) Math.ceil(probe.durationSeconds() / Math.max(1, segmentation.getSegmentMinutes() * 60));
+        return (int) Math.clamp(segments, 1, Math.max(1, segmentation.getMaxSegments()));
+    }
+
+    /**
+     * Splits the input evenly, moving each split forward to the next keyframe so no segment has to decode frames it
+     * doesn't keep. Splits with no keyframe found nearby stay where they are, which costs decoding but not accuracy.
+     */
+    private List<Double> keyframeBoundaries(File inputFile, double durationSeconds, int segments, Instant analysisDeadline) {
+        List<Double> targets = new ArrayList<>();
+        for (int index = 1; index < segments; index++) {
+            targets.add(durationSeconds * index / segments);
+        }
+
+        String intervals = String.join(",", targets.stream().map(target -> seconds(target) + "%+" + KEYFRAME_SEARCH_SECONDS).toList());
+        List<Double> keyframes = new ArrayList<>();
+        try {
+            String output = conversionExecutor.analyze(ConversionExecutor.AnalysisTool.FFPROBE,
+                    List.of("-v", "error", "-select_streams", "v:0", "-read_intervals", intervals,
+                            "-show_entries", "packet=pts_time,flags", "-of", "csv=p=0", inputFile.getAbsolutePath()),
+                    analysisTimeout(analysisDeadline));
+            keyframes.addAll(keyframes(output));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to find keyframes in input file: {}, splitting it evenly.", inputFile, e);
+        }
+
+        List<Double> boundaries = new ArrayList<>();
+        for (double target : targets) {
+            double boundary = keyframes.stream()
+                    .filter(keyframe -> keyframe >= target && keyframe < target + KEYFRAME_SEARCH_SECONDS)
+                    .min(Double::compare)
+                    .orElse(target);
+            if (boundaries.isEmpty() || boundary > boundaries.getLast()) {
+                boundaries.add(boundary);
+            }
+        }
+        return boundaries;
+    }
+
+    /**
+     * Reads the keyframe timestamps from ffprobe's packet listing, lines such as {@code 912.537000,K__}.
+     */
+    static List<Double> keyframes(String output) {
+        if (output == null) {
+            return List.of();
+        }
+
+        List<Double> keyframes = new ArrayList<>();
+        for (String line : output.split("\\R")) {
+            String[] fields = line.trim().split(",");
+            if (fields.length >= 2 && fields[1].startsWith("K")) {
+                try {
+                    keyframes.add(Double.parseDouble(fields[0]));
+                } catch (NumberFormatException e) {
+                    // Packets without a timestamp are listed as N/A
+                }
+            }
+        }
+        return keyframes;
+    }
+
+    /**
+     * Two-pass normalization measures the input first, so the encode can apply one linear gain instead of the dynamic
+     * compression a single pass falls back to.
+     */
+    private String loudnormFilter(File inputFile, MediaProbe probe, ServiceConfig.TranscodeProfile profile, Instant analysisDeadline) {
+        String target = "loudnorm=I=%s:TP=%s:LRA=%s".formatted(format(profile.getIntegratedLoudness()),
+                format(profile.getTruePeak()), format(profile.getLoudnessRange()));
+
+        return switch (profile.getLoudnorm()) {
+            case OFF -> null;
+            case SINGLE_PASS -> target;
+            case TWO_PASS -> measureLoudness(inputFile, probe, target, analysisDeadline)
+                    .map(measured -> target + ":measured_I=%s:measured_TP=%s:measured_LRA=%s:measured_thresh=%s:offset=%s:linear=true"
+                            .formatted(measured.path("input_i").asText(), measured.path("input_tp").asText(),
+                                    measured.path("input_lra").asText(), measured.path("input_thresh").asText(),
+                                    measured.path("target_offset").asText()))
+                    .orElse(target);
+        };
+    }
+
+    private Optional<JsonNode> measureLoudness(File inputFile, MediaProbe probe, String target, Instant analysisDeadline) {
+        List<String> args = new ArrayList<>(List.of("-hide_banner", "-nostats", "-i", inputFile.getAbsolutePath()));
+        Optional.ofNullable(probe)
+                .flatMap(MediaProbe::audio)
+                .ifPresent(audio -> args.addAll(List.of("-map", "0:" + audio.index())));
+        args.addAll(List.of("-vn", "-af", target + ":print_format=json", "-f", "null", "-"));
+
+        try {
+            String output = conversionExecutor.analyze(ConversionExecutor.AnalysisTool.FFMPEG, args, analysisTimeout(analysisDeadline));
+            // Silent input measures as -inf, which loudnorm won't take back
+            return jsonObject(output, true)
+                    .filter(measured -> measured.path("input_i").isTextual())
+                    .filter(measured -> !measured.path("input_i").asText().contains("inf"));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to measure loudness of input file: {}, normalizing in a single pass.", inputFile, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Analysis output mixes ffmpeg's log with the JSON it prints, ffprobe's document comes first and the loudnorm
+     * measurement last.
+     */
+    private Optional<JsonNode> jsonObject(String output, boolean last) throws IOException {
+        if (output == null) {
+            return Optional.empty();
+        }
+
+        int start = last ? output.lastIndexOf('{') : output.indexOf('{');
+        int end = output.lastIndexOf('}');
+        if (start < 0 || end < start) {
+            return Optional.empty();
+        }
+
+        return Optional.of(objectMapper.readTree(output.substring(start, end + 1)));
+    }
+
+    private Duration analysisTimeout(Instant analysisDeadline) {
+        Duration timeout = Duration.ofSeconds(config.getAnalysisTimeoutSeconds());
+        if (analysisDeadline == null) {
+            return timeout;
+        }
+
+        // An analysis past the deadline still gets a moment, failing it falls back like any other failed analysis
+        Duration remaining = Duration.between(Instant.now(), analysisDeadline);
+        return remaining.compareTo(timeout) < 0 ? Duration.ofSeconds(Math.max(1, remaining.toSeconds())) : timeout;
+    }
+
+    private static List<String> videoOptions(ServiceConfig.TranscodeProfile profile) {
+        List<String> options = new ArrayList<>(List.of("-c:v", profile.getVideoEncoder()));
+        if (profile.getVideoProfile() != null) {
+            options.addAll(List.of("-profile:v", profile.getVideoProfile()));
+        }
+        if (profile.getVideoLevel() != null) {
+            options.addAll(List.of("-level:v", profile.getVideoLevel()));
+        }
+        options.addAll(List.of("-pix_fmt", "yuv420p"));
+        if (profile.getCrf() != null) {
+            options.addAll(List.of("-crf", String.valueOf(profile.getCrf())));
+        }
+        if (profile.getPreset() != null) {
+            options.addAll(List.of("-preset", profile.getPreset()));
+        }
+        options.addAll(profile.getExtraVideoOptions());
+        return options;
+    }
+
+    private static List<String> audioOptions(ServiceConfig.TranscodeProfile profile, String audioFilter) {
+        List<String> options = new ArrayList<>(List.of(
+                "-c:a", "aac",
+                "-b:a", profile.getAudioBitrate(),
+                "-ac", String.valueOf(profile.getAudioChannels())));
+        if (audioFilter != null) {
+            options.addAll(List.of("-af", audioFilter));
+        }
+        return options;
+    }
+
+    private static int videoProfileRank(String videoProfile) {
+        if (videoProfile == null) {
+            return -1;
+        }
+
+        String normalized = videoProfile.toLowerCase(Locale.ROOT).replace("constrained ", "");
+        return VIDEO_PROFILES.indexOf(normalized);
+    }
+
+    private static String seconds(double value) {
+        return BigDecimal.valueOf(value).setScale(6, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+    }
+
+    private static String format(double value) {
+        return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+}
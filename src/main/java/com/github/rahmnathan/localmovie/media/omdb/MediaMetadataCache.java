@@ -0,0 +1,154 @@
+package com.github.rahmnathan.localmovie.media.omdb;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.persistence.entity.Media;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaImage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Caches OMDb lookups in front of {@link MediaProvider}. Concurrent lookups of the same title share one request, and
+ * titles OMDb doesn't know are remembered for a shorter while, so every season and episode of a series reuses a
+ * single series lookup. Failures other than "not found" aren't cached.
+ */
+@Slf4j
+@Component
+public class MediaMetadataCache {
+    private static final int ENTRY_OVERHEAD_BYTES = 1024;
+
+    private final MediaProvider mediaProvider;
+    private final ServiceConfig.MetadataCacheConfig config;
+    private final AsyncCache<MetadataKey, CachedMedia> metadata;
+
+    public MediaMetadataCache(MediaProvider mediaProvider, ServiceConfig serviceConfig, MeterRegistry registry) {
+        this.mediaProvider = mediaProvider;
+        this.config = serviceConfig.getMetadataCache();
+
+        Duration ttl = Duration.ofMinutes(config.getTtlMinutes());
+        Duration notFoundTtl = Duration.ofMinutes(config.getNotFoundTtlMinutes());
+        this.metadata = Caffeine.newBuilder()
+                .maximumWeight(config.getMaximumBytes())
+                .weigher((MetadataKey key, CachedMedia cached) -> cached.weight())
+                .expireAfter(Expiry.creating((MetadataKey key, CachedMedia cached) -> cached.found() ? ttl : notFoundTtl))
+                .recordStats()
+                .buildAsync();
+
+        CaffeineCacheMetrics.monitor(registry, metadata, "omdb-metadata");
+    }
+
+    public Media getMovie(String title, String year) throws MediaProviderException {
+        return get(MetadataKey.of(MediaType.MOVIE, title, year, null, null), () -> mediaProvider.getMovie(title, year));
+    }
+
+    public Media getSeries(String title, String year) throws MediaProviderException {
+        return get(MetadataKey.of(MediaType.SERIES, title, year, null, null), () -> mediaProvider.getSeries(title, year));
+    }
+
+    public Media getEpisode(String seriesTitle, Integer seasonNumber, Integer episodeNumber) throws MediaProviderException {
+        return get(MetadataKey.of(MediaType.EPISODE, seriesTitle, null, seasonNumber, episodeNumber),
+                () -> mediaProvider.getEpisode(seriesTitle, seasonNumber, episodeNumber));
+    }
+
+    private Media get(MetadataKey key, MediaLoader loader) throws MediaProviderException {
+        if (!config.isEnabled()) {
+            return loader.load();
+        }
+
+        CompletableFuture<CachedMedia> cached = metadata.getIfPresent(key);
+        if (cached == null) {
+            // The first caller loads on its own thread, so a slow lookup never blocks unrelated keys inside the cache
+            CompletableFuture<CachedMedia> loading = new CompletableFuture<>();
+            cached = metadata.asMap().putIfAbsent(key, loading);
+            if (cached == null) {
+                cached = loading;
+                load(key, loader, loading);
+            }
+        }
+
+        CachedMedia result = join(cached);
+        if (!result.found()) {
+            throw new MediaNotFoundException("Media not found.");
+        }
+
+        return copy(result.media());
+    }
+
+    private void load(MetadataKey key, MediaLoader loader, CompletableFuture<CachedMedia> loading) {
+        try {
+            loading.complete(new CachedMedia(loader.load()));
+        } catch (MediaNotFoundException e) {
+            log.debug("OMDb has no match for {}", key);
+            loading.complete(new CachedMedia(null));
+        } catch (Exception e) {
+            // Failed futures are dropped by the cache, so the next lookup tries again
+            loading.completeExceptionally(e);
+        }
+    }
+
+    private static CachedMedia join(CompletableFuture<CachedMedia> cached) throws MediaProviderException {
+        try {
+            return cached.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof MediaProviderException mediaProviderException) {
+                throw mediaProviderException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Callers attach the returned media to their own media file, so each gets a fresh copy sharing the stored poster.
+     */
+    private static Media copy(Media media) {
+        Media copy = media.cloneToPojo();
+        copy.setImdbId(media.getImdbId());
+        copy.setNumber(media.getNumber());
+        return copy;
+    }
+
+    @FunctionalInterface
+    private interface MediaLoader {
+        Media load() throws MediaProviderException;
+    }
+
+    private record MetadataKey(MediaType mediaType, String title, String year, Integer seasonNumber, Integer episodeNumber) {
+
+        static MetadataKey of(MediaType mediaType, String title, String year, Integer seasonNumber, Integer episodeNumber) {
+            String normalizedTitle = title == null ? null : title.trim().toLowerCase(Locale.ROOT);
+            return new MetadataKey(mediaType, normalizedTitle, year, seasonNumber, episodeNumber);
+        }
+    }
+
+    private record CachedMedia(Media media) {
+
+        boolean found() {
+            return media != null;
+        }
+
+        int weight() {
+            MediaImage image = media == null ? null : media.getImage();
+            if (image == null) {
+                return ENTRY_OVERHEAD_BYTES;
+            }
+
+            return ENTRY_OVERHEAD_BYTES + length(image.getImage()) + length(image.getThumbnail()) + length(image.getMedium());
+        }
+
+        private static int length(byte[] bytes) {
+            return bytes == null ? 0 : bytes.length;
+        }
+    }
+}
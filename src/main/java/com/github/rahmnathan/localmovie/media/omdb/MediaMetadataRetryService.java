@@ -4,6 +4,8 @@ import com.github.rahmnathan.localmovie.config.ServiceConfig;
 import com.github.rahmnathan.localmovie.data.MediaPath;
 import com.github.rahmnathan.localmovie.media.exception.InvalidMediaException;
 import com.github.rahmnathan.localmovie.media.subtitle.SubtitleJobService;
+import com.github.rahmnathan.localmovie.persistence.CatalogCache;
+import com.github.rahmnathan.localmovie.persistence.PosterCache;
 import com.github.rahmnathan.localmovie.persistence.entity.Media;
 import com.github.rahmnathan.localmovie.persistence.entity.MediaFile;
 import com.github.rahmnathan.localmovie.persistence.repository.MediaFileRepository;
@@ -32,10 +34,12 @@ public class MediaMetadataRetryService {
 
     private final MediaFileRepository mediaFileRepository;
     private final MediaRepository mediaRepository;
-    private final MediaProvider mediaProvider;
+    private final MediaMetadataCache metadataCache;
     private final SubtitleJobService subtitleJobService;
     private final ServiceConfig serviceConfig;
     private final MeterRegistry meterRegistry;
+    private final CatalogCache catalogCache;
+    private final PosterCache posterCache;
 
     @Scheduled(fixedDelayString = "${service.omdb.retryDelayMs:3600000}")
     @SchedulerLock(name = "retry-missing-imdb-ids-lock", lockAtMostFor = "PT30M")
@@ -93,6 +97,8 @@ public class MediaMetadataRetryService {
             mediaFile.setMedia(newMedia);
             mediaFileRepository.save(mediaFile);
             mediaRepository.delete(oldMedia);
+            catalogCache.invalidate();
+            posterCache.invalidate(mediaFile.getMediaFileId());
 
             log.info("Successfully fetched IMDB ID {} for: {}", newMedia.getImdbId(), absolutePath);
 
@@ -116,8 +122,8 @@ public class MediaMetadataRetryService {
 
         try {
             return switch (path.getMediaType()) {
-                case MOVIE -> mediaProvider.getMovie(path.getTitle(), path.getReleaseYear());
-                case SERIES -> mediaProvider.getSeries(path.getTitle(), path.getReleaseYear());
+                case MOVIE -> metadataCache.getMovie(path.getTitle(), path.getReleaseYear());
+                case SERIES -> metadataCache.getSeries(path.getTitle(), path.getReleaseYear());
                 case SEASON, EPISODE -> fetchSeriesImdbId(path);
             };
         } catch (MediaProviderException e) {
@@ -128,14 +134,13 @@ public class MediaMetadataRetryService {
 
     private Media fetchSeriesImdbId(MediaPath path) {
         try {
-            Media seriesMedia = mediaProvider.getSeries(path.getSeriesPath().getTitle(), path.getSeriesPath().getReleaseYear());
             if (path.getMediaType() == MediaType.EPISODE) {
-                Media episodeMedia = mediaProvider.getEpisode(
+                return metadataCache.getEpisode(
                         path.getSeriesPath().getTitle(),
                         path.getSeasonNumber(),
                         path.getEpisodeNumber());
-                return episodeMedia;
             }
+            Media seriesMedia = metadataCache.getSeries(path.getSeriesPath().getTitle(), path.getSeriesPath().getReleaseYear());
             seriesMedia.setNumber(path.getSeasonNumber());
             seriesMedia.setTitle("Season " + path.getSeasonNumber());
             seriesMedia.setMediaType(path.getMediaType());
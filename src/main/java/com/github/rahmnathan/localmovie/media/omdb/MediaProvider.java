@@ -1,8 +1,10 @@
 package com.github.rahmnathan.localmovie.media.omdb;
 
 import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.media.poster.PosterStore;
 import com.github.rahmnathan.localmovie.persistence.entity.Media;
-import com.github.rahmnathan.localmovie.persistence.entity.MediaImage;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
 import jakarta.ws.rs.client.Client;
 import jakarta.ws.rs.client.ClientBuilder;
 import jakarta.ws.rs.core.Response;
@@ -12,6 +14,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import java.io.Closeable;
+import java.util.function.Supplier;
 
 @Component
 public class MediaProvider implements Closeable {
@@ -21,9 +24,13 @@ public class MediaProvider implements Closeable {
     private final Client client;
     private final OmdbApi omdbApi;
     private final ServiceConfig serviceConfig;
+    private final PosterStore posterStore;
+    private final RateLimiter rateLimiter;
 
-    public MediaProvider(ServiceConfig serviceConfig) {
+    public MediaProvider(ServiceConfig serviceConfig, PosterStore posterStore, RateLimiterRegistry rateLimiterRegistry) {
         this.serviceConfig = serviceConfig;
+        this.posterStore = posterStore;
+        this.rateLimiter = rateLimiterRegistry.rateLimiter("omdb");
         this.client = ClientBuilder.newBuilder().build();
 
         ResteasyWebTarget target = (ResteasyWebTarget) client.target(OMDB_URL);
@@ -33,7 +40,7 @@ public class MediaProvider implements Closeable {
     public Media getMovie(String title, String year) throws MediaProviderException {
         logger.debug("Request for movie: {}", title);
 
-        OmdbResponse response = omdbApi.getMedia(title, year, "movie", serviceConfig.getOmdb().getApiKey());
+        OmdbResponse response = rateLimited(() -> omdbApi.getMedia(title, year, "movie", serviceConfig.getOmdb().getApiKey()));
 
         Media media = buildMedia(response, title, null, MediaType.MOVIE);
         logger.debug("Movie response: {}", media);
@@ -43,7 +50,7 @@ public class MediaProvider implements Closeable {
     public Media getSeries(String title, String year) throws MediaProviderException {
         logger.debug("Received request for series: {}", title);
 
-        OmdbResponse response = omdbApi.getMedia(title, year, "series", serviceConfig.getOmdb().getApiKey());
+        OmdbResponse response = rateLimited(() -> omdbApi.getMedia(title, year, "series", serviceConfig.getOmdb().getApiKey()));
 
         Media media = buildMedia(response, title, null, MediaType.SERIES);
         logger.debug("Series response: {}", media);
@@ -53,13 +60,24 @@ public class MediaProvider implements Closeable {
     public Media getEpisode(String seriesTitle, Integer seasonNumber, Integer episodeNumber) throws MediaProviderException {
         logger.debug("Received request for episode. Series: {} season number: {} episode number: {}", seriesTitle, seasonNumber, episodeNumber);
 
-        OmdbResponse response = omdbApi.getEpisode(seriesTitle, seasonNumber, episodeNumber, "episode", serviceConfig.getOmdb().getApiKey());
+        OmdbResponse response = rateLimited(() -> omdbApi.getEpisode(seriesTitle, seasonNumber, episodeNumber, "episode", serviceConfig.getOmdb().getApiKey()));
 
         Media media = buildMedia(response, seriesTitle, episodeNumber, MediaType.EPISODE);
         logger.debug("Episode response: {}", media);
         return media;
     }
 
+    /**
+     * Every caller shares the "omdb" rate limiter, so a bulk import waits for permits instead of exhausting the API key.
+     */
+    private OmdbResponse rateLimited(Supplier<OmdbResponse> call) throws MediaProviderException {
+        if (!rateLimiter.acquirePermission()) {
+            throw new MediaProviderException("Timed out waiting for an OMDb rate limit permit.");
+        }
+
+        return call.get();
+    }
+
     private Media buildMedia(OmdbResponse response, String requestedTitle, Integer number, MediaType mediaType) throws MediaProviderException {
         if (response == null || !response.isSuccess()) {
             throw new MediaNotFoundException("Media not found.");
@@ -93,8 +111,7 @@ public class MediaProvider implements Closeable {
         if (response.hasPoster()) {
             byte[] posterData = fetchPoster(response.getPoster());
             if (posterData != null) {
-                MediaImage mediaImage = new MediaImage(posterData, result);
-                result.setImage(mediaImage);
+                result.setImage(posterStore.store(posterData));
             }
         }
 
@@ -0,0 +1,101 @@
+package com.github.rahmnathan.localmovie.media.poster;
+
+import com.github.rahmnathan.localmovie.data.PosterSize;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaImage;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaImageRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Produces the reduced poster renditions once, when an image is stored, so poster requests never resize on the fly.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PosterRenditionService {
+    private static final int BACKFILL_BATCH_SIZE = 50;
+
+    private final MediaImageRepository mediaImageRepository;
+
+    public void applyRenditions(MediaImage mediaImage) {
+        byte[] image = mediaImage.getImage();
+        if (image == null) {
+            return;
+        }
+
+        try {
+            mediaImage.setThumbnail(resize(image, PosterSize.THUMBNAIL));
+            mediaImage.setMedium(resize(image, PosterSize.MEDIUM));
+        } catch (IOException e) {
+            // Serve the stored image at every size rather than retrying an unreadable image forever
+            log.warn("Failed to render poster sizes for image {}", mediaImage.getId(), e);
+            mediaImage.setThumbnail(image);
+            mediaImage.setMedium(image);
+        }
+    }
+
+    /**
+     * Renders images stored before poster sizes existed, a batch at a time.
+     */
+    @Scheduled(fixedDelay = 60000L)
+    @SchedulerLock(name = "poster-rendition-backfill-lock")
+    @Transactional
+    public void backfillRenditions() {
+        List<MediaImage> mediaImages = mediaImageRepository.findTop50ByThumbnailIsNullAndImageIsNotNull();
+        if (mediaImages.isEmpty()) {
+            return;
+        }
+
+        mediaImages.forEach(this::applyRenditions);
+        mediaImageRepository.saveAll(mediaImages);
+        log.info("Rendered poster sizes for {} stored images", mediaImages.size());
+    }
+
+    public byte[] resize(byte[] originalBytes, PosterSize size) throws IOException {
+        BufferedImage original = ImageIO.read(new ByteArrayInputStream(originalBytes));
+        if (original == null) {
+            throw new IOException("Unable to read image");
+        }
+
+        int originalWidth = original.getWidth();
+        int originalHeight = original.getHeight();
+
+        // If already small enough, return original
+        if (originalWidth <= size.getMaxWidth() && originalHeight <= size.getMaxHeight()) {
+            return originalBytes;
+        }
+
+        // Calculate new dimensions maintaining aspect ratio
+        double widthRatio = (double) size.getMaxWidth() / originalWidth;
+        double heightRatio = (double) size.getMaxHeight() / originalHeight;
+        double ratio = Math.min(widthRatio, heightRatio);
+
+        int newWidth = (int) (originalWidth * ratio);
+        int newHeight = (int) (originalHeight * ratio);
+
+        // Create resized image
+        BufferedImage resized = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = resized.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(original, 0, 0, newWidth, newHeight, null);
+        g.dispose();
+
+        // Write to JPEG with good quality
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(resized, "jpg", output);
+        return output.toByteArray();
+    }
+}
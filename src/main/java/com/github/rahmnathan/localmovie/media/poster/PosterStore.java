@@ -0,0 +1,90 @@
+package com.github.rahmnathan.localmovie.media.poster;
+
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaImage;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaImageRepository;
+import lombok.extern.slf4j.Slf4j;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Stores each unique poster once, keyed by the SHA-256 of its bytes. Media showing the same poster, like the seasons
+ * and episodes of a series, reference the same row, and rows no media references anymore are removed.
+ */
+@Slf4j
+@Service
+public class PosterStore {
+    private final MediaImageRepository mediaImageRepository;
+    private final PosterRenditionService posterRenditionService;
+    private final ServiceConfig.PosterStoreConfig config;
+    private final TransactionTemplate transactionTemplate;
+
+    public PosterStore(MediaImageRepository mediaImageRepository,
+                       PosterRenditionService posterRenditionService,
+                       ServiceConfig serviceConfig,
+                       PlatformTransactionManager transactionManager) {
+        this.mediaImageRepository = mediaImageRepository;
+        this.posterRenditionService = posterRenditionService;
+        this.config = serviceConfig.getPosterStore();
+        // Posters are committed on their own, so a duplicate insert never rolls back the caller's transaction
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Returns the stored image with the same bytes, storing it with its renditions if it's new.
+     */
+    public MediaImage store(byte[] image) {
+        String contentHash = contentHash(image);
+        try {
+            return transactionTemplate.execute(status -> findOrCreate(contentHash, image));
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Poster {} was stored concurrently", contentHash);
+            return transactionTemplate.execute(status -> mediaImageRepository.findByContentHash(contentHash).orElseThrow());
+        }
+    }
+
+    private MediaImage findOrCreate(String contentHash, byte[] image) {
+        Optional<MediaImage> existing = mediaImageRepository.findByContentHash(contentHash);
+        if (existing.isPresent()) {
+            // Restarts the orphan grace period for callers holding on to this image before saving their media
+            mediaImageRepository.touch(existing.get().getId(), LocalDateTime.now());
+            return existing.get();
+        }
+
+        MediaImage mediaImage = new MediaImage(contentHash, image);
+        posterRenditionService.applyRenditions(mediaImage);
+        return mediaImageRepository.save(mediaImage);
+    }
+
+    @Scheduled(fixedDelay = 3600000L)
+    @SchedulerLock(name = "poster-store-gc-lock")
+    @Transactional
+    public void deleteUnreferencedPosters() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(config.getOrphanGraceMinutes());
+        int deleted = mediaImageRepository.deleteUnreferencedBefore(cutoff);
+        if (deleted > 0) {
+            log.info("Deleted {} unreferenced posters", deleted);
+        }
+    }
+
+    public static String contentHash(byte[] image) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(image));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.github.rahmnathan.localmovie.persistence;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.MediaFileDto;
+import com.github.rahmnathan.localmovie.data.MediaOrder;
+import com.github.rahmnathan.localmovie.data.MediaRequest;
+import com.github.rahmnathan.localmovie.data.MediaRequestType;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Caches user-independent catalog pages and counts. Keys carry a catalog version which is bumped whenever the
+ * catalog changes, so loads that raced with an invalidation can never be served afterwards.
+ */
+@Slf4j
+@Component
+public class CatalogCache {
+    private final ServiceConfig.CatalogCacheConfig config;
+    private final AtomicLong version = new AtomicLong();
+    private final Cache<CatalogKey, List<MediaFileDto>> pages;
+    private final Cache<CatalogKey, Long> counts;
+
+    public CatalogCache(ServiceConfig serviceConfig, MeterRegistry registry) {
+        this.config = serviceConfig.getCatalogCache();
+        this.pages = Caffeine.newBuilder()
+                .maximumSize(config.getMaximumSize())
+                .expireAfterWrite(Duration.ofMinutes(config.getTtlMinutes()))
+                .recordStats()
+                .build();
+        this.counts = Caffeine.newBuilder()
+                .maximumSize(config.getMaximumSize())
+                .expireAfterWrite(Duration.ofMinutes(config.getTtlMinutes()))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(registry, pages, "catalog-pages");
+        CaffeineCacheMetrics.monitor(registry, counts, "catalog-counts");
+    }
+
+    /**
+     * Returns copies of the cached page so callers are free to overlay user specific state on them.
+     */
+    public List<MediaFileDto> getPage(MediaRequest request, Supplier<List<MediaFileDto>> loader) {
+        if (!config.isEnabled()) {
+            return loader.get();
+        }
+
+        return pages.get(CatalogKey.of(version.get(), request), key -> List.copyOf(loader.get()))
+                .stream()
+                .map(dto -> dto.toBuilder().build())
+                .toList();
+    }
+
+    public long getCount(MediaRequest request, LongSupplier loader) {
+        if (!config.isEnabled()) {
+            return loader.getAsLong();
+        }
+
+        return counts.get(CatalogKey.of(version.get(), request), key -> loader.getAsLong());
+    }
+
+    public void invalidate() {
+        bumpVersion();
+
+        // Readers can repopulate the cache from the old snapshot until the writing transaction commits.
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    bumpVersion();
+                }
+            });
+        }
+    }
+
+    private void bumpVersion() {
+        long newVersion = version.incrementAndGet();
+        pages.invalidateAll();
+        counts.invalidateAll();
+        log.debug("Invalidated catalog cache - version {}", newVersion);
+    }
+
+    record CatalogKey(long version, MediaRequestType type, String parentId, String path, String genre, String q,
+                      MediaOrder order, int page, int pageSize, boolean includeDetails, String cursor) {
+
+        static CatalogKey of(long version, MediaRequest request) {
+            return new CatalogKey(
+                    version,
+                    MediaRequestType.lookup(request.getType()).orElse(null),
+                    textOrNull(request.getParentId()),
+                    textOrNull(request.getPath()),
+                    lowerCaseOrNull(request.getGenre()),
+                    lowerCaseOrNull(request.getQ()),
+                    StringUtils.hasText(request.getOrder()) ? MediaOrder.lookup(request.getOrder()) : null,
+                    request.getPage(),
+                    request.getPageSize(),
+                    request.getIncludeDetails() == null || request.getIncludeDetails(),
+                    request.getCursor()
+            );
+        }
+
+        // Genre and q are matched case-insensitively, everything else is compared verbatim.
+        private static String lowerCaseOrNull(String value) {
+            String text = textOrNull(value);
+            return text == null ? null : text.toLowerCase(Locale.ROOT);
+        }
+
+        private static String textOrNull(String value) {
+            return StringUtils.hasText(value) ? value : null;
+        }
+    }
+}
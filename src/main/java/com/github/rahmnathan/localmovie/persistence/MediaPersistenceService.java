@@ -1,18 +1,25 @@
 package com.github.rahmnathan.localmovie.persistence;
 
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
 import com.github.rahmnathan.localmovie.data.*;
 import com.github.rahmnathan.localmovie.data.transformer.MediaFileTransformer;
+import com.github.rahmnathan.localmovie.media.event.MediaEventType;
 import com.github.rahmnathan.localmovie.persistence.entity.*;
 import com.github.rahmnathan.localmovie.persistence.entity.QMediaFile;
 import com.github.rahmnathan.localmovie.persistence.repository.*;
 import com.google.common.annotations.VisibleForTesting;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.Ops;
 import com.querydsl.core.types.OrderSpecifier;
 import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.Expressions;
 import com.querydsl.jpa.impl.JPAQuery;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -22,6 +29,7 @@ import java.io.File;
 import java.time.LocalDateTime;
 import java.util.*;
 
+import static com.github.rahmnathan.localmovie.data.MediaOrder.RELEVANCE;
 import static com.github.rahmnathan.localmovie.data.MediaOrder.SEASONS_EPISODES;
 
 @Slf4j
@@ -36,6 +44,11 @@ public class MediaPersistenceService {
     private final MediaViewRepository mediaViewRepository;
     private final MediaFavoriteService mediaFavoriteService;
     private final SecurityUtils securityUtils;
+    private final PositionBuffer positionBuffer;
+    private final CatalogCache catalogCache;
+    private final PosterCache posterCache;
+    private final MediaSearchService mediaSearchService;
+    private final ServiceConfig serviceConfig;
 
     @PersistenceContext
     private EntityManager entityManager;
@@ -48,6 +61,10 @@ public class MediaPersistenceService {
 
     @Transactional
     public MediaFile saveMediaFile(MediaFile mediaFile) {
+        catalogCache.invalidate();
+        if (mediaFile.getMediaFileId() != null) {
+            posterCache.invalidate(mediaFile.getMediaFileId());
+        }
         return fileRepository.save(mediaFile);
     }
 
@@ -58,15 +75,38 @@ public class MediaPersistenceService {
 
     @Transactional
     public void deleteAllByRelativePath(String path) {
+        catalogCache.invalidate();
         eventRepository.deleteAllByRelativePath(path);
-        fileRepository.deleteByPath(path);
+        invalidatePosters(fileRepository.deleteByPath(path));
     }
 
     @Transactional
     public void deleteAllByRelativePathPrefix(String pathPrefix) {
         // Delete by prefix to handle directory renames - all children should be deleted too
+        catalogCache.invalidate();
         eventRepository.deleteAllByRelativePathStartingWith(pathPrefix);
-        fileRepository.deleteByPathStartingWith(pathPrefix);
+        invalidatePosters(fileRepository.deleteByPathStartingWith(pathPrefix));
+    }
+
+    private void invalidatePosters(List<MediaFile> deleted) {
+        deleted.stream()
+                .map(MediaFile::getMediaFileId)
+                .filter(Objects::nonNull)
+                .forEach(posterCache::invalidate);
+    }
+
+    /**
+     * Recounts the directories above the path, deepest first. Each is locked before it's recounted, so a change below
+     * it committed meanwhile by another transaction is counted too.
+     */
+    @Transactional
+    public void recountDirectoriesAbove(String relativePath) {
+        LocalDateTime updated = LocalDateTime.now();
+        for (String path = new File(relativePath).getParent(); path != null; path = new File(path).getParent()) {
+            if (fileRepository.lockByPath(path).isPresent()) {
+                fileRepository.recountDirectory(path, updated);
+            }
+        }
     }
 
     public Optional<MediaFile> findByMediaFileId(String id) {
@@ -101,30 +141,89 @@ public class MediaPersistenceService {
         return mediaImageRepository.getImageById(id);
     }
 
+    public Optional<PosterCache.Poster> getPoster(String id, PosterSize size) {
+        return posterCache.getPoster(id, size, () -> mediaImageRepository.getContentHashById(id),
+                contentHash -> loadPoster(contentHash, size));
+    }
+
+    private byte[] loadPoster(String contentHash, PosterSize size) {
+        byte[] rendition = switch (size) {
+            case THUMBNAIL -> mediaImageRepository.getThumbnailByContentHash(contentHash);
+            case MEDIUM -> mediaImageRepository.getMediumByContentHash(contentHash);
+            case FULL -> null;
+        };
+
+        // Images stored before poster sizes existed are served full size until the backfill renders them
+        return rendition != null ? rendition : mediaImageRepository.getImageByContentHash(contentHash);
+    }
+
     // ========== Media Events ==========
 
     public List<MediaFileEvent> getMediaFileEvents(LocalDateTime localDateTime, Pageable pageable) {
         return eventRepository.findAllByTimestampAfterOrderByTimestampAsc(localDateTime, pageable);
     }
 
+    public List<MediaEventDto> getMediaEventDtos(LocalDateTime localDateTime, Pageable pageable) {
+        return getMediaFileEvents(localDateTime, pageable).stream()
+                .map(MediaFileTransformer::toMediaEventDto)
+                .toList();
+    }
+
+    // ========== Sync ==========
+
+    /**
+     * The media files changed and the paths removed after the given time, or a resync when there are too many or the
+     * client has never synced.
+     */
+    public MediaSyncDto getMediaSync(LocalDateTime since, boolean includeDetails) {
+        LocalDateTime syncTime = LocalDateTime.now();
+        String token = syncTime.toString();
+        if (since == null) {
+            return MediaSyncDto.builder().token(token).resync(true).build();
+        }
+
+        ServiceConfig.SyncConfig config = serviceConfig.getSync();
+        LocalDateTime from = since.minusSeconds(config.getOverlapSeconds());
+        Pageable limit = PageRequest.of(0, config.getMaxChanges() + 1);
+
+        List<MediaFile> changed = fileRepository.findAllChangedSince(from, limit);
+        List<MediaFileEvent> deleted = eventRepository.findAllByEventAndTimestampAfterOrderByTimestampAsc(
+                MediaEventType.ENTRY_DELETE.getMovieEventString(), from, limit);
+        if (changed.size() + deleted.size() > config.getMaxChanges()) {
+            log.info("Client is more than {} changes behind, asking it to reload the catalog.", config.getMaxChanges());
+            return MediaSyncDto.builder().token(token).resync(true).build();
+        }
+
+        return MediaSyncDto.builder()
+                .token(token)
+                .upserts(toMediaFileDtos(changed, includeDetails))
+                .deletes(deleted.stream().map(MediaFileEvent::getRelativePath).distinct().toList())
+                .build();
+    }
+
     // ========== View/History Operations (delegated) ==========
 
-    @Transactional
     public void addView(String id, Double position, Double duration) {
         mediaViewService.addView(id, position, duration);
     }
 
-    @Transactional
     public void addView(String id, String userId, Double position, Double duration) {
         mediaViewService.addView(id, userId, position, duration);
     }
 
+    /**
+     * The duration players reported for the media file, when anyone has watched it.
+     */
+    public Optional<Double> getReportedDuration(String id) {
+        return Optional.ofNullable(mediaViewRepository.findMaxDurationByMediaFileId(id));
+    }
+
     public long countHistory() {
         return mediaViewService.countHistory();
     }
 
     public List<MediaFile> getHistory(MediaRequest request) {
-        return mediaViewService.getHistory(request);
+        return mediaViewService.getHistory(request).mediaFiles();
     }
 
     // ========== Favorite Operations (delegated) ==========
@@ -162,46 +261,86 @@ public class MediaPersistenceService {
             return countFavorites();
         }
 
-        JPAQuery<MediaFile> jpaQuery = new JPAQuery<>(entityManager);
-        QMediaFile qMediaFile = QMediaFile.mediaFile;
+        Optional<Long> childCount = countChildren(request, mediaRequestType);
+        if (childCount.isPresent()) {
+            return childCount.get();
+        }
 
-        List<Predicate> predicates = extractPredicates(request, qMediaFile, mediaRequestType);
+        return catalogCache.getCount(request, () -> {
+            JPAQuery<MediaFile> jpaQuery = new JPAQuery<>(entityManager);
+            QMediaFile qMediaFile = QMediaFile.mediaFile;
 
-        return jpaQuery.from(qMediaFile)
-                .where(predicates.toArray(new Predicate[0]))
-                .fetchCount();
+            List<Predicate> predicates = extractPredicates(request, qMediaFile, mediaRequestType, search(request));
+
+            return jpaQuery.from(qMediaFile)
+                    .where(predicates.toArray(new Predicate[0]))
+                    .fetchCount();
+        });
+    }
+
+    /**
+     * The requested page together with the cursor of the page after it, empty when the request isn't in cursor mode
+     * or the page was the last one.
+     */
+    public MediaPage getMediaPage(MediaRequest request) {
+        if (MediaRequestType.lookup(request.getType()).orElse(null) == MediaRequestType.HISTORY) {
+            MediaViewService.HistoryPage history = mediaViewService.getHistory(request);
+            List<MediaFileDto> mediaFiles = overlayUserState(toMediaFileDtos(history.mediaFiles(), includeDetails(request)));
+            return new MediaPage(mediaFiles, history.nextCursor().map(MediaCursor::encode));
+        }
+
+        List<MediaFileDto> mediaFiles = getMediaFileDtos(request);
+        return new MediaPage(mediaFiles, getNextCursor(request, mediaFiles));
     }
 
     public List<MediaFileDto> getMediaFileDtos(MediaRequest request) {
-        List<MediaFile> mediaFiles = getMediaFiles(request);
-        Set<String> mediaFileIds = mediaFiles.stream().map(MediaFile::getMediaFileId).collect(HashSet::new, HashSet::add, HashSet::addAll);
-        Set<String> favoriteIds = mediaFavoriteService.findFavoriteIdsForCurrentUser(mediaFileIds);
-        Map<String, MediaView> userViews = findCurrentUserViewsByMediaFileIds(
-                mediaFiles.stream().map(MediaFile::getMediaFileId).toList()
-        );
-        boolean includeDetails = request.getIncludeDetails() == null || request.getIncludeDetails();
+        MediaRequestType mediaRequestType = MediaRequestType.lookup(request.getType()).orElse(null);
+        boolean includeDetails = includeDetails(request);
+
+        // History and favorites are per-user lists, everything else is shared catalog data
+        List<MediaFileDto> mediaFiles = mediaRequestType == MediaRequestType.HISTORY || mediaRequestType == MediaRequestType.FAVORITES
+                ? toMediaFileDtos(getMediaFiles(request), includeDetails)
+                : catalogCache.getPage(request, () -> toMediaFileDtos(getMediaFiles(request), includeDetails));
+
+        return overlayUserState(mediaFiles);
+    }
+
+    private static boolean includeDetails(MediaRequest request) {
+        return request.getIncludeDetails() == null || request.getIncludeDetails();
+    }
 
+    private List<MediaFileDto> toMediaFileDtos(List<MediaFile> mediaFiles, boolean includeDetails) {
         return mediaFiles.stream()
-                .map(mediaFile -> {
-                    MediaFileDto dto = MediaFileTransformer.toMediaFileDto(
-                            mediaFile,
-                            userViews.get(mediaFile.getMediaFileId()),
-                            includeDetails
-                    );
-                    dto.setFavorite(favoriteIds.contains(mediaFile.getMediaFileId()));
-                    return dto;
-                })
+                .map(mediaFile -> MediaFileTransformer.toMediaFileDto(mediaFile, null, includeDetails))
                 .toList();
     }
 
+    private List<MediaFileDto> overlayUserState(List<MediaFileDto> mediaFiles) {
+        List<String> mediaFileIds = mediaFiles.stream().map(MediaFileDto::getMediaFileId).toList();
+        Set<String> favoriteIds = mediaFavoriteService.findFavoriteIdsForCurrentUser(new HashSet<>(mediaFileIds));
+        Map<String, MediaView> userViews = findCurrentUserViewsByMediaFileIds(mediaFileIds);
+
+        mediaFiles.forEach(dto -> {
+            MediaView userView = userViews.get(dto.getMediaFileId());
+            if (userView != null) {
+                dto.setMediaViews(Set.of(MediaFileTransformer.toMediaViewDto(userView)));
+            }
+            dto.setFavorite(favoriteIds.contains(dto.getMediaFileId()));
+        });
+
+        return mediaFiles;
+    }
+
     public Map<String, MediaView> findCurrentUserViewsByMediaFileIds(List<String> mediaFileIds) {
         if (mediaFileIds == null || mediaFileIds.isEmpty()) {
             return Map.of();
         }
 
-        return mediaViewRepository.findByMediaFileIdsAndUserId(mediaFileIds, securityUtils.getUsername())
+        String userId = securityUtils.getUsername();
+        Map<String, MediaView> views = mediaViewRepository.findByMediaFileIdsAndUserId(mediaFileIds, userId)
                 .stream()
                 .collect(HashMap::new, (map, view) -> map.put(view.getMediaFile().getMediaFileId(), view), HashMap::putAll);
+        return positionBuffer.applyPending(userId, views, mediaFileIds);
     }
 
     @VisibleForTesting
@@ -217,23 +356,126 @@ public class MediaPersistenceService {
         JPAQuery<MediaFile> jpaQuery = new JPAQuery<>(entityManager);
         QMediaFile qMediaFile = QMediaFile.mediaFile;
 
-        List<Predicate> predicates = extractPredicates(request, qMediaFile, mediaRequestType);
+        List<String> rankedIds = search(request);
+        List<Predicate> predicates = extractPredicates(request, qMediaFile, mediaRequestType, rankedIds);
+
+        MediaOrder mediaOrder = resolveOrder(request, mediaRequestType);
+        MediaCursor cursor = decodeCursor(request, mediaOrder);
+        if (rankedIds != null && mediaOrder == RELEVANCE) {
+            return executeRankedQuery(request, predicates, rankedIds, cursor);
+        }
+
+        if (cursor != null) {
+            predicates.add(keysetPredicate(qMediaFile, mediaOrder, cursor));
+        }
+
+        return executeQuery(request, jpaQuery, qMediaFile, predicates, mediaOrder.getOrderSpecifier());
+    }
+
+    /**
+     * Builds the continuation token for the catalog page following the given one. History cursors come from the page's
+     * view rows instead, see {@link MediaViewService#getHistory(MediaRequest)}.
+     */
+    private Optional<String> getNextCursor(MediaRequest request, List<MediaFileDto> mediaFiles) {
+        if (request.getCursor() == null || mediaFiles.isEmpty() || mediaFiles.size() < request.getPageSize()) {
+            return Optional.empty();
+        }
+
+        MediaRequestType mediaRequestType = MediaRequestType.lookup(request.getType()).orElse(null);
+        if (mediaRequestType == MediaRequestType.FAVORITES) {
+            return Optional.empty();
+        }
+
+        MediaFileDto last = mediaFiles.getLast();
+
+        MediaOrder mediaOrder = resolveOrder(request, mediaRequestType);
+        if (StringUtils.hasText(request.getQ()) && mediaOrder == RELEVANCE) {
+            // Ranks aren't stored anywhere, so relevance cursors carry the position within the ranked matches
+            MediaCursor cursor = decodeCursor(request, mediaOrder);
+            int position = cursor == null ? 0 : (Integer) cursor.sortValueAs(Integer.class);
+            return Optional.of(MediaCursor.of(RELEVANCE.getKey(), last.getMediaFileId(), position + mediaFiles.size()).encode());
+        }
+
+        return Optional.of(MediaCursor.of(mediaOrder.getKey(), last.getMediaFileId(), mediaOrder.getSortValue().apply(last)).encode());
+    }
 
-        OrderSpecifier<?> orderSpecifier;
+    private MediaOrder resolveOrder(MediaRequest request, MediaRequestType mediaRequestType) {
         if ((request.getPath() != null && request.getPath().split(File.separator).length > 1)
                 || mediaRequestType == MediaRequestType.SEASONS
                 || mediaRequestType == MediaRequestType.EPISODES) {
-            orderSpecifier = SEASONS_EPISODES.getOrderSpecifier();
+            return SEASONS_EPISODES;
         } else if (StringUtils.hasText(request.getOrder())) {
-            orderSpecifier = MediaOrder.lookup(request.getOrder()).getOrderSpecifier();
-        } else {
-            orderSpecifier = qMediaFile.fileName.asc();
+            return MediaOrder.lookup(request.getOrder());
+        } else if (StringUtils.hasText(request.getQ())) {
+            return RELEVANCE;
+        }
+
+        return MediaOrder.TITLE;
+    }
+
+    private MediaCursor decodeCursor(MediaRequest request, MediaOrder mediaOrder) {
+        if (!StringUtils.hasText(request.getCursor())) {
+            return null;
+        }
+
+        return MediaCursor.decode(request.getCursor()).requireOrder(mediaOrder.getKey());
+    }
+
+    /**
+     * Seeks past the cursor row in (sort value, mediaFileId) order. The leading range condition lets Postgres start
+     * the index scan at the cursor row. Nulls sort last for ascending and first for descending orders, so only
+     * ascending orders over nullable values have to pick them up after the cursor.
+     */
+    private Predicate keysetPredicate(QMediaFile qMediaFile, MediaOrder mediaOrder, MediaCursor cursor) {
+        OrderSpecifier<?> orderSpecifier = mediaOrder.getOrderSpecifier();
+        Expression<?> target = orderSpecifier.getTarget();
+        boolean ascending = orderSpecifier.isAscending();
+        BooleanExpression tieBreak = qMediaFile.mediaFileId.gt(cursor.mediaFileId());
+        BooleanExpression targetIsNull = Expressions.booleanOperation(Ops.IS_NULL, target);
+
+        Object sortValue = cursor.sortValueAs(target.getType());
+        if (sortValue == null) {
+            return ascending ? targetIsNull.and(tieBreak) : targetIsNull.and(tieBreak).or(targetIsNull.not());
+        }
+
+        Expression<?> value = Expressions.constant(sortValue);
+        BooleanExpression after = Expressions.booleanOperation(ascending ? Ops.GOE : Ops.LOE, target, value)
+                .and(Expressions.booleanOperation(ascending ? Ops.GT : Ops.LT, target, value).or(tieBreak));
+
+        return ascending && mediaOrder.isNullable() ? after.or(targetIsNull) : after;
+    }
+
+    /**
+     * The number of media files listed below a directory, read from the directory itself when the request doesn't
+     * filter them further. Only series and seasons keep a count.
+     */
+    private Optional<Long> countChildren(MediaRequest request, MediaRequestType mediaRequestType) {
+        if (StringUtils.hasText(request.getGenre()) || StringUtils.hasText(request.getQ())) {
+            return Optional.empty();
         }
 
-        return executeQuery(request, jpaQuery, qMediaFile, predicates, orderSpecifier);
+        Optional<MediaFile> directory = Optional.empty();
+        if (StringUtils.hasText(request.getParentId())) {
+            directory = fileRepository.findByMediaFileId(request.getParentId());
+        } else if (StringUtils.hasText(request.getPath())) {
+            directory = fileRepository.findByPath(request.getPath());
+        }
+
+        return directory
+                .filter(parent -> parent.getMediaFileType() != null && parent.getMediaFileType().getChildType() != null)
+                .filter(parent -> mediaRequestType == null || mediaRequestType.getType() == parent.getMediaFileType().getChildType())
+                .map(parent -> (long) parent.getChildCount());
+    }
+
+    /**
+     * Ranked ids of the media files matching the request's search text, or null when the request has none.
+     */
+    private List<String> search(MediaRequest request) {
+        return StringUtils.hasText(request.getQ()) ? mediaSearchService.search(request.getQ()) : null;
     }
 
-    private List<Predicate> extractPredicates(MediaRequest request, QMediaFile qMediaFile, MediaRequestType mediaRequestType) {
+    private List<Predicate> extractPredicates(MediaRequest request, QMediaFile qMediaFile, MediaRequestType mediaRequestType,
+                                              List<String> rankedIds) {
         List<Predicate> predicates = new ArrayList<>();
 
         if (mediaRequestType != null && mediaRequestType.getType() != null) {
@@ -250,10 +492,8 @@ public class MediaPersistenceService {
             predicates.add(qMediaFile.media.genre.containsIgnoreCase(request.getGenre()));
         }
 
-        if (StringUtils.hasText(request.getQ())) {
-            predicates.add(qMediaFile.media.genre.containsIgnoreCase(request.getQ())
-                    .or(qMediaFile.media.title.containsIgnoreCase(request.getQ()))
-                    .or(qMediaFile.media.actors.containsIgnoreCase(request.getQ())));
+        if (rankedIds != null) {
+            predicates.add(qMediaFile.mediaFileId.in(rankedIds));
         }
 
         return predicates;
@@ -268,7 +508,7 @@ public class MediaPersistenceService {
                 .select(qMediaFile.mediaFileId)
                 .orderBy(orderSpecifier, secondaryOrder)
                 .where(predicates.toArray(new Predicate[0]))
-                .offset((long) request.getPage() * request.getPageSize())
+                .offset(request.getCursor() == null ? (long) request.getPage() * request.getPageSize() : 0)
                 .limit(request.getPageSize())
                 .fetch();
 
@@ -284,4 +524,43 @@ public class MediaPersistenceService {
                 .orderBy(orderSpecifier, secondaryOrder)
                 .fetch();
     }
+
+    private List<MediaFile> executeRankedQuery(MediaRequest request, List<Predicate> predicates, List<String> rankedIds, MediaCursor cursor) {
+        QMediaFile qMediaFile = QMediaFile.mediaFile;
+
+        // The predicates restrict the query to the ranked ids, so the remaining filters only narrow the ranked matches
+        // down, the page is cut in rank order afterwards
+        Set<String> matchingIds = new HashSet<>(new JPAQuery<MediaFile>(entityManager).from(qMediaFile)
+                .select(qMediaFile.mediaFileId)
+                .where(predicates.toArray(new Predicate[0]))
+                .fetch());
+
+        List<String> ids = rankedIds.stream()
+                .filter(matchingIds::contains)
+                .skip(rankedOffset(request, cursor))
+                .limit(request.getPageSize())
+                .toList();
+
+        log.debug("Found {} ranked ids", ids.size());
+
+        Map<String, MediaFile> mediaFiles = new HashMap<>();
+        new JPAQuery<MediaFile>(entityManager).from(qMediaFile)
+                .where(qMediaFile.mediaFileId.in(ids))
+                .leftJoin(QMediaFile.mediaFile.media).fetchJoin()
+                .leftJoin(QMediaFile.mediaFile.parent).fetchJoin()
+                .fetch()
+                .forEach(mediaFile -> mediaFiles.put(mediaFile.getMediaFileId(), mediaFile));
+
+        return ids.stream()
+                .map(mediaFiles::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    private static long rankedOffset(MediaRequest request, MediaCursor cursor) {
+        if (cursor != null) {
+            return (Integer) cursor.sortValueAs(Integer.class);
+        }
+        return request.getCursor() == null ? (long) request.getPage() * request.getPageSize() : 0;
+    }
 }
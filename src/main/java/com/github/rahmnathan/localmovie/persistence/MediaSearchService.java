@@ -0,0 +1,83 @@
+package com.github.rahmnathan.localmovie.persistence;
+
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.google.common.annotations.VisibleForTesting;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves free-text search against the media search_vector and title trigram indexes. Every token is matched as a
+ * prefix so results show up while the user is still typing, and the trigram match keeps misspelled titles findable.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class MediaSearchService {
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final String SIMILARITY_THRESHOLD_QUERY = "SELECT set_config('pg_trgm.word_similarity_threshold', :threshold, true)";
+    private static final String SEARCH_QUERY = """
+            SELECT f.media_file_id
+            FROM media_file f
+                     JOIN media m ON m.id = f.media_id
+            WHERE m.search_vector @@ to_tsquery('simple', :tsQuery)
+               OR lower(m.title) %> lower(:q)
+            ORDER BY ts_rank(m.search_vector, to_tsquery('simple', :tsQuery)) + word_similarity(lower(:q), lower(m.title)) DESC,
+                     f.media_file_id
+            LIMIT :limit
+            """;
+
+    private final ServiceConfig serviceConfig;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Returns the ids of matching media files, best match first.
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> search(String q) {
+        String tsQuery = toPrefixTsQuery(q);
+        if (tsQuery.isEmpty()) {
+            return List.of();
+        }
+
+        ServiceConfig.SearchConfig searchConfig = serviceConfig.getSearch();
+        // Scoped to the current transaction, the pooled connection keeps the server default afterwards
+        entityManager.createNativeQuery(SIMILARITY_THRESHOLD_QUERY)
+                .setParameter("threshold", String.valueOf(searchConfig.getSimilarityThreshold()))
+                .getSingleResult();
+
+        List<String> mediaFileIds = entityManager.createNativeQuery(SEARCH_QUERY)
+                .setParameter("tsQuery", tsQuery)
+                .setParameter("q", q.strip())
+                .setParameter("limit", searchConfig.getMaxResults())
+                .getResultList();
+
+        log.debug("Search for '{}' matched {} media files", q, mediaFileIds.size());
+        return mediaFileIds;
+    }
+
+    @VisibleForTesting
+    static String toPrefixTsQuery(String q) {
+        if (q == null) {
+            return "";
+        }
+
+        // Only letters and digits survive, so the result is always valid to_tsquery syntax
+        return Arrays.stream(TOKEN_SEPARATOR.split(q.toLowerCase(Locale.ROOT)))
+                .filter(token -> !token.isEmpty())
+                .map(token -> token + ":*")
+                .collect(Collectors.joining(" & "));
+    }
+}
@@ -1,17 +1,19 @@
 package com.github.rahmnathan.localmovie.persistence;
 
+import com.github.rahmnathan.localmovie.data.HistoryEntry;
+import com.github.rahmnathan.localmovie.data.MediaCursor;
 import com.github.rahmnathan.localmovie.data.MediaRequest;
 import com.github.rahmnathan.localmovie.persistence.entity.MediaFile;
-import com.github.rahmnathan.localmovie.persistence.entity.MediaUser;
-import com.github.rahmnathan.localmovie.persistence.entity.MediaView;
 import com.github.rahmnathan.localmovie.persistence.repository.MediaFileRepository;
-import com.github.rahmnathan.localmovie.persistence.repository.MediaUserRepository;
 import com.github.rahmnathan.localmovie.persistence.repository.MediaViewRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
@@ -26,68 +28,74 @@ import java.util.Optional;
 public class MediaViewService {
     private static final double MILLISECONDS_TO_SECONDS = 1000.0;
     private static final double ASSUME_MILLISECONDS_THRESHOLD = 100_000.0;
+    private static final String HISTORY_CURSOR_ORDER = "history";
 
     private final MediaFileRepository fileRepository;
     private final MediaViewRepository mediaViewRepository;
-    private final MediaUserRepository userRepository;
     private final SecurityUtils securityUtils;
+    private final PositionBuffer positionBuffer;
 
-    @Transactional
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void addView(String id, Double position, Double duration) {
         addView(id, securityUtils.getUsername(), position, duration);
     }
 
-    @Transactional
+    /**
+     * Players report their position every few seconds, so positions are buffered and written in batches rather than
+     * one write per report.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void addView(String id, String userId, Double position, Double duration) {
-        Optional<MediaFile> mediaFileOptional = fileRepository.findByMediaFileId(id);
-        if (mediaFileOptional.isEmpty()) return;
-
-        MediaFile mediaFile = mediaFileOptional.get();
         String userName = userId != null ? userId : securityUtils.getUsername();
         Double normalizedPosition = normalizeToSeconds(position);
         Double normalizedDuration = normalizeToSeconds(duration);
-        log.info("Adding view for User: {} Path: {} Position: {} Duration: {}", userName, mediaFile.getPath(), normalizedPosition, normalizedDuration);
-
-        // Find existing view for this user
-        Optional<MediaView> existingView = mediaFile.getMediaViews().stream()
-                .filter(v -> v.getMediaUser().getUserId().equals(userName))
-                .findFirst();
-
-        if (existingView.isEmpty()) {
-            MediaUser mediaUser = userRepository.findByUserId(userName).orElse(new MediaUser(userName));
-            MediaView mediaView = new MediaView(mediaFile, mediaUser, normalizedPosition, normalizedDuration);
-            mediaFile.addMediaView(mediaView);
-            mediaUser.addMediaView(mediaView);
-            userRepository.save(mediaUser);
-            mediaViewRepository.save(mediaView);
-        } else {
-            MediaView mediaView = existingView.get();
-            mediaView.setPosition(normalizedPosition);
-            if (normalizedDuration != null && normalizedDuration > 0) {
-                mediaView.setDuration(normalizedDuration);
-            }
-        }
+        log.debug("Adding view for User: {} MediaFile: {} Position: {} Duration: {}", userName, id, normalizedPosition, normalizedDuration);
 
-        fileRepository.save(mediaFile);
+        positionBuffer.record(userName, id, normalizedPosition, normalizedDuration);
     }
 
     public long countHistory() {
+        positionBuffer.flush(securityUtils.getUsername());
         return mediaViewRepository.countRecentByUserId(securityUtils.getUsername(), LocalDateTime.now().minusMonths(6));
     }
 
-    public List<MediaFile> getHistory(MediaRequest request) {
-        List<String> ids = mediaViewRepository.findRecentMediaFileIdsByUserId(
-                securityUtils.getUsername(),
-                LocalDateTime.now().minusMonths(3),
-                PageRequest.of(request.getPage(), request.getPageSize())
-        );
+    /**
+     * A page of the user's history, ordered by when views were written. In cursor mode the next cursor is taken from
+     * the view rows the page was read from, since buffered positions may be newer than what the ordering saw.
+     */
+    public HistoryPage getHistory(MediaRequest request) {
+        // History is ordered by when views were written
+        positionBuffer.flush(securityUtils.getUsername());
+
+        List<HistoryEntry> entries;
+        if (StringUtils.hasText(request.getCursor())) {
+            MediaCursor cursor = MediaCursor.decode(request.getCursor()).requireOrder(HISTORY_CURSOR_ORDER);
+            entries = mediaViewRepository.findRecentByUserIdAfter(
+                    securityUtils.getUsername(),
+                    LocalDateTime.now().minusMonths(3),
+                    (LocalDateTime) cursor.sortValueAs(LocalDateTime.class),
+                    cursor.mediaFileId(),
+                    Limit.of(request.getPageSize())
+            );
+        } else {
+            entries = mediaViewRepository.findRecentByUserId(
+                    securityUtils.getUsername(),
+                    LocalDateTime.now().minusMonths(3),
+                    PageRequest.of(request.getCursor() == null ? request.getPage() : 0, request.getPageSize())
+            );
+        }
+
+        log.info("Found {} history ids", entries.size());
 
-        log.info("Found {} history ids", ids.size());
+        Optional<MediaCursor> nextCursor = request.getCursor() == null || entries.size() < request.getPageSize()
+                ? Optional.empty()
+                : Optional.of(MediaCursor.of(HISTORY_CURSOR_ORDER, entries.getLast().mediaFileId(), entries.getLast().updated()));
 
-        if (ids.isEmpty()) {
-            return List.of();
+        if (entries.isEmpty()) {
+            return new HistoryPage(List.of(), nextCursor);
         }
 
+        List<String> ids = entries.stream().map(HistoryEntry::mediaFileId).toList();
         List<MediaFile> files = fileRepository.findByMediaFileIdInWithMediaAndParent(ids);
         Map<String, MediaFile> byMediaFileId = new HashMap<>(files.size());
         for (MediaFile file : files) {
@@ -95,11 +103,11 @@ public class MediaViewService {
         }
 
         // Preserve history ordering by most recently viewed first.
-        return ids.stream()
+        List<MediaFile> mediaFiles = ids.stream()
                 .map(byMediaFileId::get)
                 .filter(java.util.Objects::nonNull)
                 .toList();
-
+        return new HistoryPage(mediaFiles, nextCursor);
     }
 
     private Double normalizeToSeconds(Double value) {
@@ -116,6 +124,7 @@ public class MediaViewService {
     public void clearHistory() {
         String username = securityUtils.getUsername();
         log.info("Clearing history for user: {}", username);
+        positionBuffer.discard(username);
         mediaViewRepository.deleteAllByUserId(username);
     }
 
@@ -123,6 +132,10 @@ public class MediaViewService {
     public void removeFromHistory(String mediaFileId) {
         String username = securityUtils.getUsername();
         log.info("Removing {} from history for user: {}", mediaFileId, username);
+        positionBuffer.discard(username, mediaFileId);
         mediaViewRepository.deleteByMediaFileIdAndUserId(mediaFileId, username);
     }
+
+    public record HistoryPage(List<MediaFile> mediaFiles, Optional<MediaCursor> nextCursor) {
+    }
 }
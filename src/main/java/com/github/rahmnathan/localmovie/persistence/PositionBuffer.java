@@ -0,0 +1,148 @@
+package com.github.rahmnathan.localmovie.persistence;
+
+import com.github.rahmnathan.localmovie.persistence.entity.MediaUser;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaView;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaUserRepository;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaViewRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Holds the playback positions players report every few seconds, keeping only the latest per user and media file, and
+ * writes them in one transaction on an interval and at shutdown. Reads of a user's views look here first, so they see
+ * positions that haven't been written yet.
+ */
+@Slf4j
+@Component
+public class PositionBuffer {
+    private final Map<Key, PendingPosition> pending = new ConcurrentHashMap<>();
+
+    private final MediaViewRepository mediaViewRepository;
+    private final MediaUserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter flushedCounter;
+
+    public PositionBuffer(MediaViewRepository mediaViewRepository,
+                          MediaUserRepository userRepository,
+                          MeterRegistry registry,
+                          PlatformTransactionManager transactionManager) {
+        this.mediaViewRepository = mediaViewRepository;
+        this.userRepository = userRepository;
+        // Reads flush from inside their read-only transactions, so positions are written in one of their own
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.flushedCounter = registry.counter("localmovies.positions.flushed");
+        registry.gauge("localmovies.positions.pending", pending, Map::size);
+    }
+
+    /**
+     * Replaces the user's pending position for the media file. A missing duration keeps the one reported before.
+     */
+    public void record(String userId, String mediaFileId, Double position, Double duration) {
+        pending.merge(new Key(userId, mediaFileId), new PendingPosition(position, duration, LocalDateTime.now()),
+                (previous, latest) -> latest.duration() != null && latest.duration() > 0 ? latest
+                        : new PendingPosition(latest.position(), previous.duration(), latest.updated()));
+    }
+
+    /**
+     * The given views of a user with their pending positions applied, including views not written yet. Views with a
+     * pending position are returned as copies.
+     */
+    public Map<String, MediaView> applyPending(String userId, Map<String, MediaView> views, Collection<String> mediaFileIds) {
+        if (pending.isEmpty()) {
+            return views;
+        }
+
+        Map<String, MediaView> result = new HashMap<>(views);
+        for (String mediaFileId : mediaFileIds) {
+            PendingPosition position = pending.get(new Key(userId, mediaFileId));
+            if (position != null) {
+                result.put(mediaFileId, position.applyTo(views.get(mediaFileId)));
+            }
+        }
+        return result;
+    }
+
+    @Scheduled(fixedDelay = 10000L)
+    public void flush() {
+        flush(key -> true);
+    }
+
+    /**
+     * Writes the user's pending positions, for reads that are ordered by when positions were written.
+     */
+    public void flush(String userId) {
+        flush(key -> Objects.equals(key.userId(), userId));
+    }
+
+    /**
+     * Drops the user's pending positions, so views they've removed aren't written back.
+     */
+    public void discard(String userId) {
+        pending.keySet().removeIf(key -> Objects.equals(key.userId(), userId));
+    }
+
+    public void discard(String userId, String mediaFileId) {
+        pending.remove(new Key(userId, mediaFileId));
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        log.info("Writing {} pending playback positions before shutdown.", pending.size());
+        flush();
+    }
+
+    private void flush(Predicate<Key> filter) {
+        Map<Key, PendingPosition> batch = pending.entrySet().stream()
+                .filter(entry -> filter.test(entry.getKey()))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> write(batch));
+        } catch (RuntimeException e) {
+            // Left pending, so the next flush tries again
+            log.warn("Failed to write {} playback positions.", batch.size(), e);
+            return;
+        }
+
+        // Positions reported while writing are kept for the next flush
+        batch.forEach(pending::remove);
+        flushedCounter.increment(batch.size());
+    }
+
+    private void write(Map<Key, PendingPosition> batch) {
+        Map<String, Long> mediaUserIds = new HashMap<>();
+        batch.forEach((key, position) -> {
+            Long mediaUserId = mediaUserIds.computeIfAbsent(key.userId(), userId -> userRepository.findByUserId(userId)
+                    .orElseGet(() -> userRepository.save(new MediaUser(userId)))
+                    .getId());
+            mediaViewRepository.upsertPosition(key.mediaFileId(), mediaUserId, position.position(), position.duration(), position.updated());
+        });
+    }
+
+    private record Key(String userId, String mediaFileId) {
+    }
+
+    private record PendingPosition(Double position, Double duration, LocalDateTime updated) {
+
+        MediaView applyTo(MediaView view) {
+            return (view != null ? view : new MediaView()).withPendingPosition(position, duration, updated);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.rahmnathan.localmovie.persistence;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.PosterSize;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Keeps recently served posters in direct buffers keyed by image content hash and size, so poster grids don't turn into
+ * one bytea round-trip per image and the cached bytes stay out of the garbage collected heap. Media sharing a poster
+ * share the cached bytes, only the small mediaFileId to content hash mapping is kept per media file.
+ */
+@Component
+public class PosterCache {
+    private final ServiceConfig.PosterCacheConfig config;
+    private final Cache<String, String> contentHashes;
+    private final Cache<PosterKey, Poster> posters;
+
+    public PosterCache(ServiceConfig serviceConfig, MeterRegistry registry) {
+        this.config = serviceConfig.getPosterCache();
+        this.contentHashes = Caffeine.newBuilder()
+                .maximumSize(config.getMaximumMediaFiles())
+                .expireAfterWrite(Duration.ofMinutes(config.getTtlMinutes()))
+                .recordStats()
+                .build();
+        this.posters = Caffeine.newBuilder()
+                .maximumWeight(config.getMaximumBytes())
+                .weigher((PosterKey key, Poster poster) -> poster.image().capacity())
+                .expireAfterWrite(Duration.ofMinutes(config.getTtlMinutes()))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(registry, contentHashes, "poster-hashes");
+        CaffeineCacheMetrics.monitor(registry, posters, "posters");
+    }
+
+    /**
+     * Missing posters aren't cached, so a poster added later shows up on the next request.
+     */
+    public Optional<Poster> getPoster(String mediaFileId, PosterSize size, Supplier<String> contentHashLoader,
+                                      Function<String, byte[]> imageLoader) {
+        if (!config.isEnabled()) {
+            return Optional.ofNullable(contentHashLoader.get())
+                    .map(imageLoader)
+                    .map(Poster::of);
+        }
+
+        String contentHash = contentHashes.getIfPresent(mediaFileId);
+        if (contentHash == null) {
+            contentHash = contentHashLoader.get();
+            if (contentHash == null) {
+                return Optional.empty();
+            }
+
+            contentHashes.put(mediaFileId, contentHash);
+        }
+
+        // Stored images never change, so cached bytes stay valid for as long as some media file shows them
+        PosterKey posterKey = new PosterKey(contentHash, size);
+        Poster poster = posters.getIfPresent(posterKey);
+        if (poster == null) {
+            byte[] image = imageLoader.apply(contentHash);
+            if (image == null) {
+                return Optional.empty();
+            }
+
+            poster = posters.asMap().computeIfAbsent(posterKey, key -> Poster.of(image));
+        }
+
+        return Optional.of(poster);
+    }
+
+    public void invalidate(String mediaFileId) {
+        contentHashes.invalidate(mediaFileId);
+
+        // Invalidated again after commit, for the same reason as CatalogCache#invalidate
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    contentHashes.invalidate(mediaFileId);
+                }
+            });
+        }
+    }
+
+    private record PosterKey(String contentHash, PosterSize size) {
+    }
+
+    public record Poster(String eTag, ByteBuffer image) {
+
+        public static Poster of(byte[] image) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(image.length);
+            buffer.put(image).flip();
+            return new Poster(contentHash(image), buffer.asReadOnlyBuffer());
+        }
+
+        public byte[] bytes() {
+            byte[] bytes = new byte[image.remaining()];
+            image.duplicate().get(bytes);
+            return bytes;
+        }
+
+        private static String contentHash(byte[] image) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(image);
+                return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available.", e);
+            }
+        }
+    }
+}
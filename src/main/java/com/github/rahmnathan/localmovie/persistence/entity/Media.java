@@ -25,8 +25,9 @@ public class Media implements Serializable {
 
     @Enumerated(value = EnumType.STRING)
     private MediaType mediaType;
+    // Shared with every media showing the same poster, unreferenced images are removed by PosterStore
     @JoinColumn
-    @OneToOne(cascade = CascadeType.ALL, fetch = FetchType.LAZY, orphanRemoval = true)
+    @ManyToOne(fetch = FetchType.LAZY)
     private MediaImage image;
     private String title;
     private String imdbRating;
@@ -96,7 +97,7 @@ public class Media implements Serializable {
     }
 
     public Media cloneToPojo() {
-        Media result = Media.builder()
+        return Media.builder()
                 .actors(actors)
                 .genre(genre)
                 .imdbRating(imdbRating)
@@ -105,12 +106,7 @@ public class Media implements Serializable {
                 .mediaType(mediaType)
                 .plot(plot)
                 .title(title)
+                .image(image)
                 .build();
-
-        if (image != null) {
-            result.setImage(new MediaImage(image.getImage(), result));
-        }
-
-        return result;
     }
 }
@@ -42,8 +42,23 @@ public class MediaFile implements Serializable {
     private String mediaFileId;
     private String absolutePath;
     private Boolean streamable;
+    /**
+     * Size and modification time (epoch millis) of a regular file when it was last scanned, null for directories.
+     */
+    private Long fileSize;
+    private Long lastModified;
     @Enumerated(value = EnumType.STRING)
     private MediaFileType mediaFileType;
+    /**
+     * What's below a directory, counted by the database as media is added and removed. Never written from here, so a
+     * stale copy saved later can't overwrite them.
+     */
+    @Column(insertable = false, updatable = false)
+    private int childCount;
+    @Column(insertable = false, updatable = false)
+    private int episodeCount;
+    @Column(insertable = false, updatable = false)
+    private LocalDateTime latestAdded;
 
     @OneToMany(mappedBy = "mediaFile", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @ToString.Exclude
@@ -90,7 +105,16 @@ public class MediaFile implements Serializable {
 
     public static MediaFileBuilder forPath(MediaPath path){
         File file = new File(path.getRelativePath());
-        return builder()
+        MediaFileBuilder builder = builder();
+        if (path.getAbsolutePath() != null) {
+            File absoluteFile = new File(path.getAbsolutePath());
+            if (absoluteFile.isFile()) {
+                builder.fileSize(absoluteFile.length())
+                        .lastModified(absoluteFile.lastModified());
+            }
+        }
+
+        return builder
                 .fileName(file.getName())
                 .mediaFileType(path.getMediaFileType())
                 .parentPath(file.getParent())
@@ -22,21 +22,30 @@ public class MediaImage implements Serializable {
     @SequenceGenerator(name="media_image_sequence_generator", sequenceName="MEDIA_IMAGE_SEQUENCE")
     private Long id;
 
+    /**
+     * Hex SHA-256 of the full image. Media rows showing the same poster share the row with this hash.
+     */
+    @Column(length = 64, unique = true, nullable = false)
+    private String contentHash;
+
     @JdbcTypeCode(Types.BINARY)
     private byte[] image;
 
+    @JdbcTypeCode(Types.BINARY)
+    private byte[] thumbnail;
+
+    @JdbcTypeCode(Types.BINARY)
+    private byte[] medium;
+
     private LocalDateTime created;
     private LocalDateTime updated;
 
-    @OneToOne(cascade = CascadeType.ALL)
-    private Media media;
-
     @Version
     private Long version;
 
-    public MediaImage(byte[] image, Media media) {
+    public MediaImage(String contentHash, byte[] image) {
+        this.contentHash = contentHash;
         this.image = image;
-        this.media = media;
     }
 
     @PrePersist
@@ -54,6 +63,7 @@ public class MediaImage implements Serializable {
     public String toString() {
         return "Media{" +
                 "id=" + id +
+                ", contentHash='" + contentHash + '\'' +
                 ", image='" + (image.length != 0) + '\'' +
                 ", created=" + created +
                 ", updated=" + updated +
@@ -1,5 +1,6 @@
 package com.github.rahmnathan.localmovie.persistence.entity;
 
+import com.github.rahmnathan.localmovie.data.MediaJobPriority;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -25,6 +26,20 @@ public class MediaJob {
     private String status;
     private String jobId;
 
+    @Enumerated(EnumType.STRING)
+    private MediaJobPriority priority;
+    /**
+     * Input size in bytes and duration when known, used to estimate how long the conversion takes.
+     */
+    private Long inputSize;
+    private Long durationSeconds;
+
+    /**
+     * The plan joining a conversion's segments, set while it is encoded in segments.
+     */
+    private String stitchPlan;
+    private boolean stitchLaunched;
+
     private LocalDateTime created;
     private LocalDateTime updated;
 
@@ -35,6 +50,9 @@ public class MediaJob {
     public void runPrePersist(){
         created = LocalDateTime.now();
         updated = LocalDateTime.now();
+        if (priority == null) {
+            priority = MediaJobPriority.NEW_ARRIVAL;
+        }
     }
 
     @PreUpdate
@@ -42,6 +60,10 @@ public class MediaJob {
         updated = LocalDateTime.now();
     }
 
+    public boolean isSegmented() {
+        return stitchPlan != null;
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(id);
@@ -0,0 +1,73 @@
+package com.github.rahmnathan.localmovie.persistence.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * A part of a {@link MediaJob}'s input encoded by its own conversion. Each attempt runs under a new jobId.
+ */
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "media_job_segment")
+public class MediaJobSegment {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO, generator = "media_job_segment_sequence_generator")
+    @SequenceGenerator(name = "media_job_segment_sequence_generator", sequenceName = "MEDIA_JOB_SEGMENT_SEQUENCE")
+    private Long id;
+
+    @Column(name = "media_job_id", nullable = false)
+    private Long mediaJobId;
+
+    @Column(name = "segment_index", nullable = false)
+    private Integer segmentIndex;
+
+    @Column(name = "job_id", nullable = false)
+    private String jobId;
+
+    @Column(nullable = false, length = 20)
+    private String status;
+
+    @Column(nullable = false)
+    private Integer attempts;
+
+    @Column(name = "output_file", nullable = false)
+    private String outputFile;
+
+    /**
+     * The segment's {@link com.github.rahmnathan.localmovie.media.job.TranscodePlan} as JSON.
+     */
+    @Column(nullable = false)
+    @ToString.Exclude
+    private String plan;
+
+    private LocalDateTime created;
+    private LocalDateTime updated;
+
+    @Version
+    private Long version;
+
+    @PrePersist
+    public void runPrePersist() {
+        created = LocalDateTime.now();
+        updated = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    public void runUpdated() {
+        updated = LocalDateTime.now();
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+}
@@ -42,6 +42,18 @@ public class MediaView implements Serializable {
         this.duration = duration;
     }
 
+    /**
+     * A detached copy of the view at a position that hasn't been written yet. A missing duration keeps the view's.
+     */
+    public MediaView withPendingPosition(Double position, Double duration, LocalDateTime updated) {
+        MediaView copy = new MediaView(mediaFile, mediaUser, position, duration != null && duration > 0 ? duration : this.duration);
+        copy.id = id;
+        copy.version = version;
+        copy.created = created != null ? created : updated;
+        copy.updated = updated;
+        return copy;
+    }
+
     @PrePersist
     public void setCreated(){
         created = LocalDateTime.now();
@@ -14,4 +14,5 @@ public interface MediaFileEventRepository extends JpaRepository<MediaFileEvent,
     void deleteAllByRelativePathStartingWith(String pathPrefix);
     List<MediaFileEvent> findAllByTimestampAfterOrderByTimestampAsc(LocalDateTime localDateTime, Pageable pageable);
     long countAllByTimestampAfter(LocalDateTime localDateTime);
+    List<MediaFileEvent> findAllByEventAndTimestampAfterOrderByTimestampAsc(String event, LocalDateTime localDateTime, Pageable pageable);
 }
@@ -1,24 +1,51 @@
 package com.github.rahmnathan.localmovie.persistence.repository;
 
+import com.github.rahmnathan.localmovie.data.MediaFileState;
 import com.github.rahmnathan.localmovie.persistence.entity.MediaFile;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
 @Repository
 public interface MediaFileRepository extends CrudRepository<MediaFile, String> {
+    // Episode counts add up the children's own, so directories are recounted from the bottom up
+    String RECOUNT_DIRECTORIES = "UPDATE media_file p SET child_count = a.child_count, episode_count = a.episode_count, " +
+           "latest_added = a.latest_added, updated = :updated " +
+           "FROM (SELECT d.id, COUNT(c.id) AS child_count, " +
+           "             COUNT(c.id) FILTER (WHERE c.media_file_type = 'EPISODE') + COALESCE(SUM(c.episode_count), 0) AS episode_count, " +
+           "             GREATEST(MAX(c.created), MAX(c.latest_added)) AS latest_added " +
+           "      FROM media_file d LEFT JOIN media_file c ON c.parent_path = d.path " +
+           "      WHERE ";
+    String RECOUNT_DIRECTORIES_END = " GROUP BY d.id) a " +
+           "WHERE p.id = a.id " +
+           "AND (p.child_count, p.episode_count, p.latest_added) IS DISTINCT FROM (a.child_count, a.episode_count, a.latest_added)";
+
     Optional<MediaFile> findByPath(String path);
+    List<MediaFile> findAllByPathIn(Collection<String> paths);
     boolean existsByPath(String path);
-    void deleteByPath(String path);
-    void deleteByPathStartingWith(String pathPrefix);
+    List<MediaFile> deleteByPath(String path);
+    List<MediaFile> deleteByPathStartingWith(String pathPrefix);
     Optional<MediaFile> findByMediaFileId(String id);
 
+    @Query("SELECT new com.github.rahmnathan.localmovie.data.MediaFileState(mf.path, mf.absolutePath, mf.fileSize, mf.lastModified) " +
+           "FROM MediaFile mf")
+    List<MediaFileState> findAllFileStates();
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE MediaFile mf SET mf.fileSize = :fileSize, mf.lastModified = :lastModified WHERE mf.path = :path")
+    void updateFileState(@Param("path") String path, @Param("fileSize") Long fileSize, @Param("lastModified") Long lastModified);
+
     @Query(value = "select m1 from MediaFile m1 " +
             "left join m1.mediaViews mv " +
             "left join mv.mediaUser mu on mu.userId = :userId " +
@@ -64,4 +91,36 @@ public interface MediaFileRepository extends CrudRepository<MediaFile, String> {
            "LEFT JOIN FETCH mf.parent " +
            "WHERE mf.mediaFileId IN :mediaFileIds")
     List<MediaFile> findByMediaFileIdInWithMediaAndParent(@Param("mediaFileIds") List<String> mediaFileIds);
+
+    /**
+     * Media files added or changed after the given time, including ones whose metadata alone was refreshed.
+     */
+    @Query("SELECT mf FROM MediaFile mf " +
+           "LEFT JOIN FETCH mf.media m " +
+           "LEFT JOIN FETCH mf.parent " +
+           "WHERE mf.updated > :since OR m.updated > :since " +
+           "ORDER BY mf.id ASC")
+    List<MediaFile> findAllChangedSince(@Param("since") LocalDateTime since, Pageable pageable);
+
+    /**
+     * Locks the media file at the path, so a recount of it sees the changes committed below it meanwhile.
+     */
+    @Query(value = "SELECT id FROM media_file WHERE path = :path FOR UPDATE", nativeQuery = true)
+    Optional<Long> lockByPath(@Param("path") String path);
+
+    /**
+     * Recounts what's directly below the directory from its children's own counts. Counts that didn't change aren't
+     * written, so the directory isn't reported as updated.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = RECOUNT_DIRECTORIES + "d.path = :path" + RECOUNT_DIRECTORIES_END, nativeQuery = true)
+    int recountDirectory(@Param("path") String path, @Param("updated") LocalDateTime updated);
+
+    /**
+     * Recounts every directory of the type, children's types first when recounting the whole library.
+     */
+    @Modifying(flushAutomatically = true)
+    @Transactional
+    @Query(value = RECOUNT_DIRECTORIES + "d.media_file_type = :mediaFileType" + RECOUNT_DIRECTORIES_END, nativeQuery = true)
+    int recountDirectories(@Param("mediaFileType") String mediaFileType, @Param("updated") LocalDateTime updated);
 }
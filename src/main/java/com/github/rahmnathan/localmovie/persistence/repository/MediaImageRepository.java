@@ -1,10 +1,15 @@
 package com.github.rahmnathan.localmovie.persistence.repository;
 
 import com.github.rahmnathan.localmovie.persistence.entity.MediaImage;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface MediaImageRepository extends CrudRepository<MediaImage, Long> {
 
@@ -17,4 +22,31 @@ public interface MediaImageRepository extends CrudRepository<MediaImage, Long> {
             "(select m2.image.id from Media m2 where m2.id = " +
             "(select m3.media.id from MediaFile m3 where m3.mediaFileId = :id))")
     byte[] getImageById(String id);
+
+    @Query(value = "select m.contentHash from MediaImage m where m.id = " +
+            "(select m2.image.id from Media m2 where m2.id = " +
+            "(select m3.media.id from MediaFile m3 where m3.mediaFileId = :id))")
+    String getContentHashById(String id);
+
+    @Query(value = "select m.image from MediaImage m where m.contentHash = :contentHash")
+    byte[] getImageByContentHash(String contentHash);
+
+    @Query(value = "select m.thumbnail from MediaImage m where m.contentHash = :contentHash")
+    byte[] getThumbnailByContentHash(String contentHash);
+
+    @Query(value = "select m.medium from MediaImage m where m.contentHash = :contentHash")
+    byte[] getMediumByContentHash(String contentHash);
+
+    Optional<MediaImage> findByContentHash(String contentHash);
+
+    @Modifying
+    @Query(value = "update MediaImage m set m.updated = :updated where m.id = :id")
+    void touch(Long id, LocalDateTime updated);
+
+    @Modifying
+    @Query(value = "DELETE FROM media_image i WHERE (i.updated IS NULL OR i.updated < :cutoff) " +
+            "AND NOT EXISTS (SELECT 1 FROM media m WHERE m.image_id = i.id)", nativeQuery = true)
+    int deleteUnreferencedBefore(LocalDateTime cutoff);
+
+    List<MediaImage> findTop50ByThumbnailIsNullAndImageIsNotNull();
 }
@@ -1,10 +1,14 @@
 package com.github.rahmnathan.localmovie.persistence.repository;
 
 import com.github.rahmnathan.localmovie.persistence.entity.MediaJob;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 @Repository
@@ -14,4 +18,30 @@ public interface MediaJobRepository extends CrudRepository<MediaJob, Long> {
     List<MediaJob> findAllByOutputFile(String outputFile);
     boolean existsByOutputFileAndStatusIn(String outputFile, Set<String> statuses);
     boolean existsByInputFileAndStatusIn(String inputFile, Set<String> statuses);
+    List<MediaJob> findAllByStatusIn(Set<String> statuses);
+    Optional<MediaJob> findFirstByJobIdAndStatus(String jobId, String status);
+    Optional<MediaJob> findFirstByInputFileAndStatus(String inputFile, String status);
+
+    /**
+     * Serializes claiming across replicas until the calling transaction ends, so they don't exceed the concurrency
+     * limit together.
+     */
+    @Query(value = "SELECT 1 FROM (SELECT pg_advisory_xact_lock(:key)) claim_lock", nativeQuery = true)
+    int lockClaims(@Param("key") long key);
+
+    /**
+     * Locks the queued jobs to run next, see {@link com.github.rahmnathan.localmovie.config.ServiceConfig.ConversionSchedulingConfig}.
+     * Rows another transaction holds, such as a priority change, are skipped rather than waited for.
+     */
+    @Query(value = "SELECT * FROM media_job WHERE status = 'QUEUED' " +
+            "ORDER BY GREATEST(0, CASE priority WHEN 'REQUESTED' THEN 0 WHEN 'NEW_ARRIVAL' THEN 1 ELSE 2 END " +
+            "- FLOOR(EXTRACT(EPOCH FROM (CAST(:now AS timestamp) - created)) / :classPromotionSeconds)), " +
+            "GREATEST(COALESCE(duration_seconds, 0), COALESCE(input_size, 0) * 8.0 / :referenceBitsPerSecond) " +
+            "- :agingRate * EXTRACT(EPOCH FROM (CAST(:now AS timestamp) - created)), created " +
+            "LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<MediaJob> lockQueuedJobs(@Param("classPromotionSeconds") long classPromotionSeconds,
+                                  @Param("referenceBitsPerSecond") long referenceBitsPerSecond,
+                                  @Param("agingRate") double agingRate,
+                                  @Param("now") LocalDateTime now,
+                                  @Param("limit") int limit);
 }
@@ -0,0 +1,15 @@
+package com.github.rahmnathan.localmovie.persistence.repository;
+
+import com.github.rahmnathan.localmovie.persistence.entity.MediaJobSegment;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface MediaJobSegmentRepository extends CrudRepository<MediaJobSegment, Long> {
+    List<MediaJobSegment> findAllByMediaJobIdOrderBySegmentIndexAsc(Long mediaJobId);
+    List<MediaJobSegment> findAllByStatus(String status);
+    Optional<MediaJobSegment> findFirstByJobIdAndStatus(String jobId, String status);
+}
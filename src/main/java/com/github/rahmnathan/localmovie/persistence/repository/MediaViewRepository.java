@@ -1,5 +1,6 @@
 package com.github.rahmnathan.localmovie.persistence.repository;
 
+import com.github.rahmnathan.localmovie.data.HistoryEntry;
 import com.github.rahmnathan.localmovie.persistence.entity.MediaView;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
@@ -22,6 +23,23 @@ public interface MediaViewRepository extends JpaRepository<MediaView, Long> {
     @Query("DELETE FROM MediaView mv WHERE mv.mediaFile.mediaFileId = :mediaFileId AND mv.mediaUser.userId = :userId")
     void deleteByMediaFileIdAndUserId(@Param("mediaFileId") String mediaFileId, @Param("userId") String userId);
 
+    /**
+     * Writes a user's position for a media file in one statement, creating the view on the first one. A missing
+     * duration keeps the one recorded before. Positions for media files that no longer exist are dropped.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO media_view (id, media_file_id, media_user_id, position, duration, created, updated, version) " +
+           "SELECT nextval('media_view_sequence'), mf.id, :mediaUserId, :position, :duration, :updated, :updated, 0 " +
+           "FROM media_file mf WHERE mf.media_file_id = :mediaFileId " +
+           "ON CONFLICT (media_file_id, media_user_id) DO UPDATE SET position = EXCLUDED.position, " +
+           "duration = CASE WHEN EXCLUDED.duration > 0 THEN EXCLUDED.duration ELSE media_view.duration END, " +
+           "updated = EXCLUDED.updated, version = media_view.version + 1", nativeQuery = true)
+    int upsertPosition(@Param("mediaFileId") String mediaFileId,
+                       @Param("mediaUserId") Long mediaUserId,
+                       @Param("position") Double position,
+                       @Param("duration") Double duration,
+                       @Param("updated") LocalDateTime updated);
+
     @Query("SELECT mv FROM MediaView mv " +
            "JOIN FETCH mv.mediaFile mf " +
            "LEFT JOIN FETCH mf.media " +
@@ -38,16 +56,31 @@ public interface MediaViewRepository extends JpaRepository<MediaView, Long> {
     List<MediaView> findByMediaFileIdsAndUserId(@Param("mediaFileIds") Collection<String> mediaFileIds,
                                                 @Param("userId") String userId);
 
+    @Query("SELECT MAX(mv.duration) FROM MediaView mv WHERE mv.mediaFile.mediaFileId = :mediaFileId")
+    Double findMaxDurationByMediaFileId(@Param("mediaFileId") String mediaFileId);
+
     @Query("SELECT COUNT(mv) FROM MediaView mv " +
            "WHERE mv.mediaUser.userId = :userId " +
            "AND mv.updated > :since")
     long countRecentByUserId(@Param("userId") String userId, @Param("since") LocalDateTime since);
 
-    @Query("SELECT mv.mediaFile.mediaFileId FROM MediaView mv " +
+    @Query("SELECT new com.github.rahmnathan.localmovie.data.HistoryEntry(mv.mediaFile.mediaFileId, mv.updated) FROM MediaView mv " +
            "WHERE mv.mediaUser.userId = :userId " +
            "AND mv.updated > :since " +
-           "ORDER BY mv.updated DESC")
-    List<String> findRecentMediaFileIdsByUserId(@Param("userId") String userId,
+           "ORDER BY mv.updated DESC, mv.mediaFile.mediaFileId ASC")
+    List<HistoryEntry> findRecentByUserId(@Param("userId") String userId,
                                                  @Param("since") LocalDateTime since,
                                                  org.springframework.data.domain.Pageable pageable);
+
+    @Query("SELECT new com.github.rahmnathan.localmovie.data.HistoryEntry(mv.mediaFile.mediaFileId, mv.updated) FROM MediaView mv " +
+           "WHERE mv.mediaUser.userId = :userId " +
+           "AND mv.updated > :since " +
+           "AND (mv.updated < :lastUpdated " +
+           "OR (mv.updated = :lastUpdated AND mv.mediaFile.mediaFileId > :lastMediaFileId)) " +
+           "ORDER BY mv.updated DESC, mv.mediaFile.mediaFileId ASC")
+    List<HistoryEntry> findRecentByUserIdAfter(@Param("userId") String userId,
+                                                     @Param("since") LocalDateTime since,
+                                                     @Param("lastUpdated") LocalDateTime lastUpdated,
+                                                     @Param("lastMediaFileId") String lastMediaFileId,
+                                                     org.springframework.data.domain.Limit limit);
 }
@@ -0,0 +1,211 @@
+package com.github.rahmnathan.localmovie.web;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.MediaEventDto;
+import com.github.rahmnathan.localmovie.media.event.MediaFileEventSaved;
+import com.github.rahmnathan.localmovie.persistence.MediaPersistenceService;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams library changes to connected clients as server-sent events, so they can patch their catalog instead of
+ * reloading it. Every event carries its timestamp as the event id, a client reconnecting with it is sent the events
+ * recorded since from the media file event table.
+ */
+@Slf4j
+@Component
+public class MediaEventStream {
+    static final String RESYNC_EVENT = "RESYNC";
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    private final MediaPersistenceService persistenceService;
+    private final SecurityService securityService;
+    private final ServiceConfig.EventStreamConfig config;
+    private volatile LocalDateTime lastPoll = LocalDateTime.now();
+
+    public MediaEventStream(MediaPersistenceService persistenceService,
+                            SecurityService securityService,
+                            ServiceConfig serviceConfig,
+                            MeterRegistry registry) {
+        this.persistenceService = persistenceService;
+        this.securityService = securityService;
+        this.config = serviceConfig.getEventStream();
+        registry.gauge("localmovies.events.subscribers", subscribers, List::size);
+    }
+
+    /**
+     * Opens a stream of library changes, first replaying the ones recorded after the given timestamp when there is one.
+     */
+    public SseEmitter subscribe(LocalDateTime since) {
+        SseEmitter emitter = newEmitter(Duration.ofMinutes(config.getTimeoutMinutes()).toMillis());
+        Subscriber subscriber = new Subscriber(emitter, newSender());
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+
+        if (since == null) {
+            subscribers.add(subscriber);
+        } else {
+            // Registered by the first task on its queue, so the replay is sent ahead of the changes committed meanwhile,
+            // which it may include as well
+            subscriber.enqueue(() -> {
+                subscribers.add(subscriber);
+                replay(subscriber, since);
+            });
+        }
+
+        return emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMediaFileEvent(MediaFileEventSaved saved) {
+        broadcast(saved.event());
+    }
+
+    /**
+     * Picks up changes recorded by other replicas, and keeps idle streams from being closed by proxies.
+     */
+    @Scheduled(fixedDelay = 10000L)
+    public void poll() {
+        LocalDateTime pollStart = LocalDateTime.now();
+        if (!subscribers.isEmpty()) {
+            LocalDateTime since = lastPoll.minusSeconds(config.getPollOverlapSeconds());
+            persistenceService.getMediaEventDtos(since, PageRequest.of(0, config.getMaxReplayEvents()))
+                    .forEach(this::broadcast);
+            subscribers.forEach(subscriber -> subscriber.enqueue(() -> send(subscriber, SseEmitter.event().comment("keep-alive"))));
+        }
+
+        lastPoll = pollStart;
+    }
+
+    SseEmitter newEmitter(long timeoutMillis) {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    /**
+     * Sends run on one thread per subscriber, so a slow client never holds up the thread that committed a change.
+     */
+    Executor newSender() {
+        ThreadPoolExecutor sender = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(config.getMaxPendingEvents()), Thread.ofVirtual().name("media-events-", 0).factory());
+        sender.allowCoreThreadTimeOut(true);
+        return sender;
+    }
+
+    private void replay(Subscriber subscriber, LocalDateTime since) {
+        List<MediaEventDto> events = persistenceService.getMediaEventDtos(since, PageRequest.of(0, config.getMaxReplayEvents() + 1));
+        if (events.size() > config.getMaxReplayEvents()) {
+            log.info("Client is more than {} events behind, asking it to reload the catalog.", config.getMaxReplayEvents());
+            send(subscriber, SseEmitter.event().name(RESYNC_EVENT).data(""));
+            return;
+        }
+
+        log.info("Replaying {} media events since {}", events.size(), since);
+        events.stream()
+                .filter(subscriber::markSent)
+                .map(this::addSignedPosterUrl)
+                .forEach(event -> send(subscriber, toSseEvent(event)));
+    }
+
+    private void broadcast(MediaEventDto event) {
+        if (event.getId() == null) {
+            return;
+        }
+
+        log.info("Sending {} event for {} to {} subscribers.", event.getEvent(), event.getRelativePath(), subscribers.size());
+        addSignedPosterUrl(event);
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.markSent(event)) {
+                subscriber.enqueue(() -> send(subscriber, toSseEvent(event)));
+            }
+        }
+    }
+
+    private MediaEventDto addSignedPosterUrl(MediaEventDto event) {
+        if (event.getMediaFile() != null) {
+            event.getMediaFile().setSignedUrls(securityService.generateSignedPosterUrl(event.getMediaFile().getMediaFileId()));
+        }
+        return event;
+    }
+
+    private static SseEmitter.SseEventBuilder toSseEvent(MediaEventDto event) {
+        return SseEmitter.event()
+                .id(event.getTimestamp().toString())
+                .name(event.getEvent())
+                .data(event, MediaType.APPLICATION_JSON);
+    }
+
+    private void send(Subscriber subscriber, SseEmitter.SseEventBuilder event) {
+        try {
+            subscriber.emitter().send(event);
+        } catch (IOException | IllegalStateException e) {
+            // The client went away, the emitter's callbacks unregister it
+            log.debug("Failed to send media event.", e);
+            unsubscribe(subscriber);
+            subscriber.emitter().completeWithError(e);
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        if (subscribers.remove(subscriber) && subscriber.sender() instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final Executor sender;
+        // Events reach a subscriber from its replay, when committed on this replica and through the poll
+        private final Cache<Long, Boolean> sentEventIds = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMinutes(10))
+                .build();
+
+        private Subscriber(SseEmitter emitter, Executor sender) {
+            this.emitter = emitter;
+            this.sender = sender;
+        }
+
+        SseEmitter emitter() {
+            return emitter;
+        }
+
+        Executor sender() {
+            return sender;
+        }
+
+        boolean markSent(MediaEventDto event) {
+            return sentEventIds.asMap().putIfAbsent(event.getId(), Boolean.TRUE) == null;
+        }
+
+        void enqueue(Runnable send) {
+            try {
+                sender.execute(send);
+            } catch (RejectedExecutionException e) {
+                log.info("Closing media event stream of a client more than {} events behind.", config.getMaxPendingEvents());
+                unsubscribe(this);
+                emitter.complete();
+            }
+        }
+    }
+}
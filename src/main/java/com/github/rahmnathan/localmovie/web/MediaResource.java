@@ -2,13 +2,19 @@ package com.github.rahmnathan.localmovie.web;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.github.rahmnathan.localmovie.data.MediaFileDto;
+import com.github.rahmnathan.localmovie.data.MediaPage;
+import com.github.rahmnathan.localmovie.data.PosterSize;
 import com.github.rahmnathan.localmovie.data.RecommendationDto;
 import com.github.rahmnathan.localmovie.data.SignedUrls;
 import com.github.rahmnathan.localmovie.data.transformer.MediaFileTransformer;
 import com.github.rahmnathan.localmovie.data.MediaRequest;
+import com.github.rahmnathan.localmovie.data.MediaSyncDto;
+import com.github.rahmnathan.localmovie.media.exception.InvalidCursorException;
 import com.github.rahmnathan.localmovie.media.recommendation.RecommendationService;
 import com.github.rahmnathan.localmovie.persistence.MediaPersistenceService;
 
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -22,12 +28,14 @@ import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.MediaType;
 import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @Slf4j
 @AllArgsConstructor
@@ -35,28 +43,60 @@ import org.springframework.web.bind.annotation.*;
 @RequestMapping(value = "/localmovie/v1/media")
 public class MediaResource {
     private static final String RESPONSE_HEADER_COUNT = "Count";
+    private static final String RESPONSE_HEADER_NEXT_CURSOR = "Next-Cursor";
     private final MediaPersistenceService persistenceService;
     private final SecurityService securityService;
     private final MediaSubtitleRepository subtitleRepository;
     private final MediaViewService mediaViewService;
     private final RecommendationService recommendationService;
+    private final MediaEventStream mediaEventStream;
 
     @PostMapping(produces= MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
     public List<MediaFileDto> getMedia(@RequestBody @Valid MediaRequest mediaRequest, HttpServletResponse response) {
         log.info("Received request: {}", mediaRequest.toString());
         handleDemoUser(mediaRequest);
 
-        if (mediaRequest.getPage() == 0) {
+        // Cursor clients scroll until Next-Cursor is absent, so they don't need the count
+        if (mediaRequest.getPage() == 0 && mediaRequest.getCursor() == null) {
             getMediaCount(mediaRequest, response);
         }
 
         log.info("Loading media files for webapp.");
-        List<MediaFileDto> mediaFiles = persistenceService.getMediaFileDtos(mediaRequest);
-        mediaFiles.forEach(this::addSignedPosterUrl);
+        MediaPage mediaPage = persistenceService.getMediaPage(mediaRequest);
+        mediaPage.nextCursor().ifPresent(cursor -> response.setHeader(RESPONSE_HEADER_NEXT_CURSOR, cursor));
+        List<MediaFileDto> mediaFiles = mediaPage.mediaFiles();
+        mediaFiles.forEach(mediaFile -> addSignedPosterUrl(mediaFile, mediaRequest.getPosterSize()));
         log.info("Returning media list. Size: {}", mediaFiles.size());
         return mediaFiles;
     }
 
+    /**
+     * Streams media files added to and removed from the library. Clients resume from the id of the last event they
+     * received, passed as Last-Event-ID when reconnecting or as since when opening a new stream.
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getEvents(@RequestParam(value = "since", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+                                @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        LocalDateTime cursor = lastEventId != null ? parseToken(lastEventId) : since;
+        log.info("Received media event stream request since - {}", cursor);
+        return mediaEventStream.subscribe(cursor);
+    }
+
+    /**
+     * The media files changed and removed since the token of the client's last sync, or the id of the last event it
+     * received from the event stream.
+     */
+    @GetMapping(value = "/sync", produces = MediaType.APPLICATION_JSON_VALUE)
+    public MediaSyncDto getSync(@RequestParam(value = "since", required = false) String since,
+                                @RequestParam(value = "includeDetails", defaultValue = "true") boolean includeDetails,
+                                @RequestParam(value = "posterSize", required = false) String posterSize) {
+        log.info("Received sync request since - {}", since);
+        MediaSyncDto sync = persistenceService.getMediaSync(since != null ? parseToken(since) : null, includeDetails);
+        sync.getUpserts().forEach(mediaFile -> addSignedPosterUrl(mediaFile, posterSize));
+        log.info("Returning sync. Upserts: {} Deletes: {} Resync: {}", sync.getUpserts().size(), sync.getDeletes().size(), sync.isResync());
+        return sync;
+    }
+
     @GetMapping(value = "/{mediaFileId}", produces= MediaType.APPLICATION_JSON_VALUE)
     public Optional<MediaFileDto> getMedia(@PathVariable("mediaFileId") String mediaFileId) {
         log.info("Received media request for id - {}", mediaFileId);
@@ -98,16 +138,17 @@ public class MediaResource {
     }
 
     @GetMapping(path = "/{mediaFileId}/poster")
-    public ResponseEntity<byte[]> getPoster(@PathVariable("mediaFileId") String id) {
-        log.info("Streaming poster - {}", id);
-        byte[] image = persistenceService.getMediaImageById(id);
-        if (image == null) {
-            return ResponseEntity.notFound().build();
-        }
-        return ResponseEntity.ok()
-                .header("Cache-Control", "public, max-age=86400") // Cache for 24 hours
-                .header("Content-Type", "image/jpeg")
-                .body(image);
+    public ResponseEntity<byte[]> getPoster(@PathVariable("mediaFileId") String id,
+                                            @RequestParam(value = "size", required = false) String size) {
+        log.info("Streaming poster - {} size - {}", id, size);
+        // The ETag is a content hash, so a matching If-None-Match is answered with 304 and no body
+        return persistenceService.getPoster(id, PosterSize.lookup(size))
+                .map(poster -> ResponseEntity.ok()
+                        .eTag(poster.eTag())
+                        .header("Cache-Control", "public, max-age=86400") // Cache for 24 hours
+                        .header("Content-Type", "image/jpeg")
+                        .body(poster.bytes()))
+                .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     @PostMapping(path = "/{mediaFileId}/favorite")
@@ -139,7 +180,7 @@ public class MediaResource {
     }
 
     @GetMapping(path = "/recommendations", produces = MediaType.APPLICATION_JSON_VALUE)
-    public List<RecommendationDto> getRecommendations() {
+    public List<RecommendationDto> getRecommendations(@RequestParam(value = "posterSize", required = false) String posterSize) {
         String userId = getUsername();
         log.info("Getting recommendations for user - {}", userId);
 
@@ -154,7 +195,7 @@ public class MediaResource {
                             rec.getMediaFile(),
                             userViews.get(rec.getMediaFile().getMediaFileId())
                     );
-                    addSignedPosterUrl(mediaFile);
+                    addSignedPosterUrl(mediaFile, posterSize);
                     return RecommendationDto.builder()
                             .mediaFile(mediaFile)
                             .reason(rec.getReason())
@@ -164,8 +205,21 @@ public class MediaResource {
                 .toList();
     }
 
+    private static LocalDateTime parseToken(String token) {
+        try {
+            return LocalDateTime.parse(token);
+        } catch (DateTimeParseException e) {
+            throw new InvalidCursorException("Malformed token.");
+        }
+    }
+
     private MediaFileDto addSignedPosterUrl(MediaFileDto mediaFile) {
-        mediaFile.setSignedUrls(securityService.generateSignedPosterUrl(mediaFile.getMediaFileId()));
+        return addSignedPosterUrl(mediaFile, null);
+    }
+
+    // Full size unless the client opts into a smaller rendition
+    private MediaFileDto addSignedPosterUrl(MediaFileDto mediaFile, String posterSize) {
+        mediaFile.setSignedUrls(securityService.generateSignedPosterUrl(mediaFile.getMediaFileId(), PosterSize.lookup(posterSize)));
         return mediaFile;
     }
 
@@ -1,60 +1,301 @@
 package com.github.rahmnathan.localmovie.web;
 
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
 import com.github.rahmnathan.localmovie.persistence.entity.MediaFile;
 import io.micrometer.core.instrument.*;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.support.ResourceRegion;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
 
 @Slf4j
 @Service
 @AllArgsConstructor
 public class MediaStreamingService {
-    private static final long CHUNK_SIZE = 1024 * 1024 * 4;
+    private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+    private static final String CRLF = "\r\n";
+    private static final long STREAM_TRANSFER_BYTES = 256 * 1024;
     private final MeterRegistry registry;
+    private final ServiceConfig serviceConfig;
+    private final StreamThroughputTracker throughputTracker;
 
-    public ResponseEntity<ResourceRegion> streamMediaFile(MediaFile mediaFile, HttpHeaders requestHeaders) {
-        String mediaName = mediaFile.getPath().replaceAll("[/.]", "-");
-        registry.summary("localmovies.streams.requests", "media_name", mediaName).record(1);
+    public boolean isFullRangeMode() {
+        return serviceConfig.getStream().getMode() == ServiceConfig.StreamMode.FULL_RANGE;
+    }
 
-        FileSystemResource videoResource = new FileSystemResource(Paths.get(mediaFile.getAbsolutePath()));
+    /**
+     * Writes one bounded region of the requested range, sized from the session's measured throughput. The write is
+     * timed here, so the next region is sized from what the link actually carried.
+     */
+    public void streamMediaFile(MediaFile mediaFile, HttpServletRequest request, HttpServletResponse response, String sessionKey) throws IOException {
+        recordStreamRequest(mediaFile);
+
+        Path file = Paths.get(mediaFile.getAbsolutePath());
         long contentLength = 0L;
         try {
-            contentLength = videoResource.contentLength();
+            contentLength = Files.size(file);
         } catch (IOException e) {
             log.error("Failed to load content-length.", e);
         }
 
-        ResourceRegion region = getResourceRegion(requestHeaders, contentLength, videoResource);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        String contentType = MediaTypeFactory.getMediaType(file.getFileName().toString()).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+        if (contentLength == 0) {
+            // An empty file has no satisfiable range, so it is answered whole
+            response.setStatus(HttpStatus.OK.value());
+            response.setContentType(contentType);
+            response.setContentLengthLong(0);
+            return;
+        }
+
+        List<HttpRange> ranges = parseRanges(request.getHeader(HttpHeaders.RANGE));
+        long start = ranges.isEmpty() ? 0 : ranges.getFirst().getRangeStart(contentLength);
+        if (start >= contentLength) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + contentLength);
+            response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+            return;
+        }
+
+        // No range requested means the first chunk
+        long end = ranges.isEmpty() ? contentLength - 1 : ranges.getFirst().getRangeEnd(contentLength);
+        long length = Math.min(throughputTracker.nextChunkSize(sessionKey), end - start + 1);
+
+        response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+        response.setContentType(contentType);
+        response.setHeader(HttpHeaders.CONTENT_RANGE, contentRange(start, start + length - 1, contentLength));
+        response.setContentLengthLong(length);
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return;
+        }
 
-        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
-                .contentType(MediaTypeFactory.getMediaType(videoResource).orElse(MediaType.APPLICATION_OCTET_STREAM))
-                .body(region);
+        long written = 0;
+        long writeStart = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            while (written < length) {
+                // Bounded transfers keep the count accurate when the client goes away mid-chunk
+                long transferred = channel.transferTo(start + written, Math.min(STREAM_TRANSFER_BYTES, length - written), target);
+                if (transferred <= 0) {
+                    throw new IOException("Media file ended before the requested range was sent.");
+                }
+                written += transferred;
+            }
+            response.flushBuffer();
+        } finally {
+            throughputTracker.recordTransfer(sessionKey, written, System.nanoTime() - writeStart);
+        }
     }
 
-    private ResourceRegion getResourceRegion(HttpHeaders requestHeaders, long contentLength, FileSystemResource videoResource) {
-        List<HttpRange> ranges = requestHeaders.getRange();
-        ResourceRegion region;
+    /**
+     * Writes the full requested range (or ranges) straight to the response. Single ranges are handed to the
+     * container's sendfile support when available and fall back to FileChannel.transferTo otherwise.
+     */
+    public void transferMediaFile(MediaFile mediaFile, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        recordStreamRequest(mediaFile);
+
+        Path file = Paths.get(mediaFile.getAbsolutePath());
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            log.error("Failed to read attributes of media file {}", mediaFile.getPath(), e);
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        long contentLength = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String eTag = buildETag(contentLength, lastModified);
+
+        if (new ServletWebRequest(request, response).checkNotModified(eTag, lastModified)) {
+            return;
+        }
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        MediaType contentType = MediaTypeFactory.getMediaType(file.getFileName().toString()).orElse(MediaType.APPLICATION_OCTET_STREAM);
+
+        List<HttpRange> ranges;
+        try {
+            ranges = resolveRanges(request, contentLength, eTag, lastModified);
+        } catch (IllegalArgumentException e) {
+            log.warn("Unsatisfiable range request for {} - {}", mediaFile.getPath(), e.getMessage());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + contentLength);
+            response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+            return;
+        }
 
         if (ranges.isEmpty()) {
-            // No range requested, send the first chunk
-            long rangeLength = Math.min(CHUNK_SIZE, contentLength);
-            region = new ResourceRegion(videoResource, 0, rangeLength);
+            response.setStatus(HttpStatus.OK.value());
+            response.setContentType(contentType.toString());
+            response.setContentLengthLong(contentLength);
+            transferRegion(request, response, file, 0, contentLength);
+        } else if (ranges.size() == 1) {
+            long start = ranges.getFirst().getRangeStart(contentLength);
+            long end = ranges.getFirst().getRangeEnd(contentLength);
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setContentType(contentType.toString());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, contentRange(start, end, contentLength));
+            response.setContentLengthLong(end - start + 1);
+            transferRegion(request, response, file, start, end - start + 1);
         } else {
-            // Handle requested range
-            HttpRange range = ranges.getFirst();
+            transferMultipartRegions(request, response, file, ranges, contentType, contentLength);
+        }
+    }
+
+    private void transferRegion(HttpServletRequest request, HttpServletResponse response, Path file, long start, long length) throws IOException {
+        if (HttpMethod.HEAD.matches(request.getMethod()) || length == 0) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTRIBUTE, start);
+            request.setAttribute(SENDFILE_END_ATTRIBUTE, start + length);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            transferTo(channel, start, length, Channels.newChannel(response.getOutputStream()));
+        }
+    }
+
+    private void transferMultipartRegions(HttpServletRequest request, HttpServletResponse response, Path file, List<HttpRange> ranges,
+                                          MediaType contentType, long contentLength) throws IOException {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        String closingBoundary = CRLF + "--" + boundary + "--" + CRLF;
+
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long responseLength = closingBoundary.length();
+        for (HttpRange range : ranges) {
             long start = range.getRangeStart(contentLength);
             long end = range.getRangeEnd(contentLength);
-            long rangeLength = Math.min(CHUNK_SIZE, end - start + 1);
-            region = new ResourceRegion(videoResource, start, rangeLength);
+            byte[] partHeader = (CRLF + "--" + boundary + CRLF +
+                    HttpHeaders.CONTENT_TYPE + ": " + contentType + CRLF +
+                    HttpHeaders.CONTENT_RANGE + ": " + contentRange(start, end, contentLength) + CRLF + CRLF)
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            responseLength += partHeader.length + end - start + 1;
+        }
+
+        response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(responseLength);
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return;
         }
-        return region;
+
+        ServletOutputStream outputStream = response.getOutputStream();
+        WritableByteChannel target = Channels.newChannel(outputStream);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int i = 0; i < ranges.size(); i++) {
+                long start = ranges.get(i).getRangeStart(contentLength);
+                long end = ranges.get(i).getRangeEnd(contentLength);
+                outputStream.write(partHeaders.get(i));
+                transferTo(channel, start, end - start + 1, target);
+            }
+        }
+        outputStream.write(closingBoundary.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void transferTo(FileChannel channel, long start, long length, WritableByteChannel target) throws IOException {
+        long position = start;
+        long remaining = length;
+        while (remaining > 0) {
+            long transferred = channel.transferTo(position, remaining, target);
+            if (transferred <= 0) {
+                throw new IOException("Media file ended before the requested range was sent.");
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+    }
+
+    private List<HttpRange> resolveRanges(HttpServletRequest request, long contentLength, String eTag, long lastModified) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (!StringUtils.hasText(rangeHeader) || !ifRangeMatches(request.getHeader(HttpHeaders.IF_RANGE), eTag, lastModified)) {
+            return List.of();
+        }
+
+        List<HttpRange> ranges = parseRanges(rangeHeader);
+        long requestedLength = 0;
+        for (HttpRange range : ranges) {
+            long start = range.getRangeStart(contentLength);
+            if (start >= contentLength) {
+                throw new IllegalArgumentException("Range start " + start + " exceeds content length " + contentLength);
+            }
+            requestedLength += range.getRangeEnd(contentLength) - start + 1;
+        }
+
+        if (ranges.size() > 1 && requestedLength > contentLength) {
+            throw new IllegalArgumentException("Requested ranges exceed content length " + contentLength);
+        }
+
+        return ranges;
+    }
+
+    private static List<HttpRange> parseRanges(String rangeHeader) {
+        try {
+            return HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            // A Range header that can't be parsed is ignored and the whole file sent, as RFC 9110 requires
+            log.debug("Ignoring malformed range header {} - {}", rangeHeader, e.getMessage());
+            return List.of();
+        }
+    }
+
+    private static boolean ifRangeMatches(String ifRange, String eTag, long lastModified) {
+        if (!StringUtils.hasText(ifRange)) {
+            return true;
+        }
+
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // Weak validators never satisfy If-Range, so only an exact strong match keeps the range.
+            return ifRange.equals(eTag);
+        }
+
+        try {
+            long ifRangeDate = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return ifRangeDate / 1000 == lastModified / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static String buildETag(long contentLength, long lastModified) {
+        return "\"" + Long.toHexString(contentLength) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+    private static String contentRange(long start, long end, long contentLength) {
+        return "bytes " + start + "-" + end + "/" + contentLength;
+    }
+
+    private void recordStreamRequest(MediaFile mediaFile) {
+        String mediaName = mediaFile.getPath().replaceAll("[/.]", "-");
+        registry.summary("localmovies.streams.requests", "media_name", mediaName).record(1);
     }
-}
\ No newline at end of file
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.rahmnathan.localmovie.data.PosterSize;
 import com.github.rahmnathan.localmovie.data.SignedUrls;
 import lombok.Builder;
 import lombok.Data;
@@ -73,6 +74,13 @@ public class SecurityService {
     }
 
     public SignedUrls generateSignedPosterUrl(String mediaFileId) {
+        return generateSignedPosterUrl(mediaFileId, PosterSize.FULL);
+    }
+
+    /**
+     * The size isn't part of the signature, any rendition of a poster is readable with the same grant.
+     */
+    public SignedUrls generateSignedPosterUrl(String mediaFileId, PosterSize size) {
         SignedRequest signedRequest = SignedRequest.builder()
                 .mediaFileId(mediaFileId)
                 .expires(ZonedDateTime.now().plusDays(1L).toEpochSecond())
@@ -85,7 +93,7 @@ public class SecurityService {
         }
 
         return SignedUrls.builder()
-                .poster(formatUrl(URL_PATTERN_POSTER, signedRequest))
+                .poster(formatPosterUrl(signedRequest, size))
                 .build();
     }
 
@@ -142,6 +150,11 @@ public class SecurityService {
         return Base64.getUrlEncoder().encodeToString(hmacOut);
     }
 
+    private String formatPosterUrl(SignedRequest signedRequest, PosterSize size) {
+        String url = formatUrl(URL_PATTERN_POSTER, signedRequest);
+        return size == PosterSize.FULL ? url : url + "&size=" + size.getKey();
+    }
+
     private String formatUrl(String urlPattern, SignedRequest signedRequest) {
         return String.format(urlPattern, signedRequest.getMediaFileId(), signedRequest.getExpires(), signedRequest.getSignature());
     }
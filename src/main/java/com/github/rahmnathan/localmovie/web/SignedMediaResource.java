@@ -1,16 +1,18 @@
 package com.github.rahmnathan.localmovie.web;
 
+import com.github.rahmnathan.localmovie.data.PosterSize;
 import com.github.rahmnathan.localmovie.persistence.MediaPersistenceService;
 import com.github.rahmnathan.localmovie.persistence.entity.MediaFile;
 import com.github.rahmnathan.localmovie.persistence.repository.MediaSubtitleRepository;
 import com.google.api.client.http.HttpStatusCodes;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.support.ResourceRegion;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.Optional;
 
 @Slf4j
@@ -18,7 +20,7 @@ import java.util.Optional;
 @CrossOrigin(
     origins = "*",
     allowedHeaders = "*",
-    exposedHeaders = {"Content-Range", "Accept-Ranges", "Content-Length", "Content-Type"},
+    exposedHeaders = {"Content-Range", "Accept-Ranges", "Content-Length", "Content-Type", "ETag", "Last-Modified"},
     methods = {RequestMethod.GET, RequestMethod.PATCH, RequestMethod.OPTIONS, RequestMethod.HEAD}
 )
 @RestController
@@ -30,10 +32,11 @@ public class SignedMediaResource {
     private final MediaSubtitleRepository subtitleRepository;
 
     @GetMapping(value = {"/{mediaFileId}/stream", "/{mediaFileId}/stream.mp4"})
-    public ResponseEntity<ResourceRegion> streamSecureVideo(@PathVariable String mediaFileId,
-                                                            @RequestParam(value = "expires", defaultValue = "0") long expires,
-                                                            @RequestParam(value = "sig") String signature,
-                                                            @RequestHeader HttpHeaders headers) {
+    public ResponseEntity<Void> streamSecureVideo(@PathVariable String mediaFileId,
+                                                  @RequestParam(value = "expires", defaultValue = "0") long expires,
+                                                  @RequestParam(value = "sig") String signature,
+                                                  HttpServletRequest request,
+                                                  HttpServletResponse response) throws IOException {
         log.info("Received streaming request - {}", mediaFileId);
 
         if (!securityService.authorizedRequest(mediaFileId, expires, signature)) {
@@ -47,28 +50,35 @@ public class SignedMediaResource {
             return ResponseEntity.notFound().build();
         }
 
-        return mediaStreamingService.streamMediaFile(mediaFilePath.get(), headers);
+        // The region has been written to the response, so there is no entity left for Spring to render.
+        if (mediaStreamingService.isFullRangeMode()) {
+            mediaStreamingService.transferMediaFile(mediaFilePath.get(), request, response);
+        } else {
+            mediaStreamingService.streamMediaFile(mediaFilePath.get(), request, response, signature);
+        }
+        return null;
     }
 
     @GetMapping(path = "/{mediaFileId}/poster")
     public ResponseEntity<byte[]> getPoster(@PathVariable String mediaFileId,
                                             @RequestParam(value = "expires", defaultValue = "0") long expires,
-                                            @RequestParam(value = "sig") String signature) {
-        log.info("Streaming poster - {}", mediaFileId);
+                                            @RequestParam(value = "sig") String signature,
+                                            @RequestParam(value = "size", required = false) String size) {
+        log.info("Streaming poster - {} size - {}", mediaFileId, size);
 
         if (!securityService.authorizedRequest(mediaFileId, expires, signature)) {
             log.warn("Unauthorized poster request for id.");
             return ResponseEntity.status(HttpStatusCodes.STATUS_CODE_UNAUTHORIZED).build();
         }
 
-        byte[] image = persistenceService.getMediaImageById(mediaFileId);
-        if (image == null) {
-            return ResponseEntity.notFound().build();
-        }
-        return ResponseEntity.ok()
-                .header("Cache-Control", "public, max-age=86400") // Cache for 24 hours
-                .header("Content-Type", "image/jpeg")
-                .body(image);
+        // Conditional requests are answered as in MediaResource#getPoster
+        return persistenceService.getPoster(mediaFileId, PosterSize.lookup(size))
+                .map(poster -> ResponseEntity.ok()
+                        .eTag(poster.eTag())
+                        .header("Cache-Control", "public, max-age=86400") // Cache for 24 hours
+                        .header("Content-Type", "image/jpeg")
+                        .body(poster.bytes()))
+                .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     @PatchMapping(path = "/{mediaFileId}/position/{position}")
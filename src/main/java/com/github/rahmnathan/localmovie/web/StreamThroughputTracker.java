@@ -0,0 +1,76 @@
+package com.github.rahmnathan.localmovie.web;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates the throughput of each signed stream session from how long its chunks take to write and sizes the next
+ * chunk so the client fetches it in about {@code targetChunkSeconds}.
+ */
+@Component
+public class StreamThroughputTracker {
+    private static final long CHUNK_ALIGNMENT = 256 * 1024;
+    private static final double SMOOTHING = 0.3;
+    private final ServiceConfig.StreamConfig streamConfig;
+    private final Cache<String, StreamSession> sessions;
+    private final DistributionSummary chunkSizes;
+    private final DistributionSummary throughput;
+
+    public StreamThroughputTracker(ServiceConfig serviceConfig, MeterRegistry registry) {
+        this.streamConfig = serviceConfig.getStream();
+        this.sessions = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofSeconds(streamConfig.getSessionIdleSeconds()).multipliedBy(10))
+                .maximumSize(10_000)
+                .build();
+        this.chunkSizes = DistributionSummary.builder("localmovies.streams.chunk-size")
+                .description("Size of the region served for each chunked stream request")
+                .baseUnit(BaseUnits.BYTES)
+                .publishPercentileHistogram()
+                .register(registry);
+        this.throughput = DistributionSummary.builder("localmovies.streams.throughput")
+                .description("Measured bytes per second of chunked stream sessions")
+                .baseUnit("bytes.per.second")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public long nextChunkSize(String sessionKey) {
+        long chunkBytes = sessions.get(sessionKey, key -> new StreamSession(clamp(streamConfig.getInitialChunkBytes()), 0)).chunkBytes();
+        chunkSizes.record(chunkBytes);
+        return chunkBytes;
+    }
+
+    /**
+     * Records the bytes actually written for a chunk and how long writing them took, including chunks cut short by
+     * the end of the file or by the client going away.
+     */
+    public void recordTransfer(String sessionKey, long bytesWritten, long elapsedNanos) {
+        // Small writes fit in the socket buffers and finish before the link has carried them
+        if (bytesWritten < streamConfig.getMinChunkBytes() || elapsedNanos <= 0) {
+            return;
+        }
+
+        double sample = bytesWritten * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        throughput.record(sample);
+        sessions.asMap().compute(sessionKey, (key, previous) -> {
+            double bytesPerSecond = previous == null || previous.bytesPerSecond() == 0 ? sample : SMOOTHING * sample + (1 - SMOOTHING) * previous.bytesPerSecond();
+            return new StreamSession(clamp((long) (bytesPerSecond * streamConfig.getTargetChunkSeconds())), bytesPerSecond);
+        });
+    }
+
+    private long clamp(long chunkBytes) {
+        long aligned = Math.max(CHUNK_ALIGNMENT, chunkBytes / CHUNK_ALIGNMENT * CHUNK_ALIGNMENT);
+        return Math.clamp(aligned, streamConfig.getMinChunkBytes(), streamConfig.getMaxChunkBytes());
+    }
+
+    private record StreamSession(long chunkBytes, double bytesPerSecond) {
+    }
+}
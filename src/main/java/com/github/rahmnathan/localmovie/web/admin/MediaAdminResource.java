@@ -1,17 +1,22 @@
 package com.github.rahmnathan.localmovie.web.admin;
 
 import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.ConversionProgress;
+import com.github.rahmnathan.localmovie.data.MediaJobPriority;
 import com.github.rahmnathan.localmovie.data.MediaJobStatus;
 import com.github.rahmnathan.localmovie.data.MediaPath;
 import com.github.rahmnathan.localmovie.data.MediaRequest;
+import com.github.rahmnathan.localmovie.data.PosterSize;
 import com.github.rahmnathan.localmovie.media.MediaUpdateService;
 import com.github.rahmnathan.localmovie.media.exception.InvalidMediaException;
+import com.github.rahmnathan.localmovie.media.job.ConversionProgressTracker;
+import com.github.rahmnathan.localmovie.media.poster.PosterRenditionService;
+import com.github.rahmnathan.localmovie.media.poster.PosterStore;
 import com.github.rahmnathan.localmovie.media.recommendation.RecommendationJobService;
 import com.github.rahmnathan.localmovie.media.subtitle.SubtitleJobService;
 import com.github.rahmnathan.localmovie.persistence.MediaPersistenceService;
 import com.github.rahmnathan.localmovie.persistence.entity.Media;
 import com.github.rahmnathan.localmovie.persistence.entity.MediaFile;
-import com.github.rahmnathan.localmovie.persistence.entity.MediaImage;
 import com.github.rahmnathan.localmovie.persistence.entity.MediaJob;
 import com.github.rahmnathan.localmovie.persistence.repository.MediaJobRepository;
 import io.swagger.v3.oas.annotations.Operation;
@@ -21,18 +26,16 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.imageio.ImageIO;
-import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
@@ -45,8 +48,6 @@ public class MediaAdminResource {
             MediaJobStatus.QUEUED.name(),
             MediaJobStatus.RUNNING.name()
     );
-    private static final int MAX_POSTER_WIDTH = 500;
-    private static final int MAX_POSTER_HEIGHT = 750;
 
     private final MediaUpdateService updateService;
     private final ServiceConfig serviceConfig;
@@ -54,6 +55,9 @@ public class MediaAdminResource {
     private final MediaPersistenceService persistenceService;
     private final SubtitleJobService subtitleJobService;
     private final MediaJobRepository mediaJobRepository;
+    private final PosterRenditionService posterRenditionService;
+    private final PosterStore posterStore;
+    private final ConversionProgressTracker progressTracker;
 
     @PostMapping(path = "/update", consumes = MediaType.APPLICATION_JSON_VALUE)
     public void updateMedia(@RequestBody MediaRequest mediaRequest) throws InvalidMediaException {
@@ -70,6 +74,14 @@ public class MediaAdminResource {
         serviceConfig.getConversionService().setEnabled(enabled);
     }
 
+    @Operation(
+            summary = "Conversion progress",
+            description = "Lists running video conversions with their progress and ETA, as last reported by ffmpeg.")
+    @GetMapping(path = "/conversions/progress", produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<ConversionProgress> getConversionProgress() {
+        return progressTracker.getProgress();
+    }
+
     @PostMapping(path = "/recommendations/refresh")
     public ResponseEntity<String> refreshRecommendations() {
         log.info("Manually triggering recommendations refresh");
@@ -148,9 +160,10 @@ public class MediaAdminResource {
 
     @Operation(
             summary = "Queue reconversion",
-            description = "Queues a video reconversion job for the given media file. The file will be re-encoded using the standard conversion settings.")
+            description = "Queues a video reconversion job for the given media file. The file will be re-encoded using the standard conversion settings. " +
+                    "Requesting a higher priority for a file that is already queued moves it up the queue.")
     @ApiResponses({
-            @ApiResponse(responseCode = "202", description = "Reconversion job queued"),
+            @ApiResponse(responseCode = "202", description = "Reconversion job queued, or its priority raised"),
             @ApiResponse(responseCode = "400", description = "Media is not streamable or path is invalid"),
             @ApiResponse(responseCode = "404", description = "Media file not found"),
             @ApiResponse(responseCode = "409", description = "A conversion job is already active for this file")
@@ -158,8 +171,10 @@ public class MediaAdminResource {
     @PostMapping(path = "/media/{mediaFileId}/reconvert")
     public ResponseEntity<Void> queueReconversion(
             @Parameter(description = "Media file UUID", required = true, example = "f168fb4a-4ee8-43ab-a323-8395c35c31bf")
-            @PathVariable("mediaFileId") String mediaFileId) {
-        log.info("Manually queueing reconversion - {}", mediaFileId);
+            @PathVariable("mediaFileId") String mediaFileId,
+            @Parameter(description = "Scheduling class, REQUESTED when someone is waiting to watch it")
+            @RequestParam(name = "priority", defaultValue = "RECONVERSION") MediaJobPriority priority) {
+        log.info("Manually queueing {} reconversion - {}", priority, mediaFileId);
 
         Optional<MediaFile> mediaFileOpt = persistenceService.findByMediaFileId(mediaFileId);
         if (mediaFileOpt.isEmpty()) {
@@ -177,6 +192,19 @@ public class MediaAdminResource {
             return ResponseEntity.badRequest().build();
         }
 
+        Optional<MediaJob> queuedJob = mediaJobRepository.findFirstByInputFileAndStatus(absolutePath, MediaJobStatus.QUEUED.name());
+        if (queuedJob.isPresent() && priority.compareTo(queuedJob.get().getPriority()) < 0) {
+            try {
+                queuedJob.get().setPriority(priority);
+                mediaJobRepository.save(queuedJob.get());
+                log.info("Raised queued conversion {} to {}", queuedJob.get().getJobId(), priority);
+                return ResponseEntity.accepted().build();
+            } catch (OptimisticLockingFailureException e) {
+                log.info("Conversion {} was claimed while raising its priority", queuedJob.get().getJobId());
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            }
+        }
+
         // Check if a conversion is already active for this file
         if (mediaJobRepository.existsByInputFileAndStatusIn(absolutePath, ACTIVE_STATUSES) ||
                 mediaJobRepository.existsByOutputFileAndStatusIn(absolutePath, ACTIVE_STATUSES)) {
@@ -199,10 +227,13 @@ public class MediaAdminResource {
                     .outputFile(destinationPath)
                     .jobId(jobId)
                     .status(MediaJobStatus.QUEUED.name())
+                    .priority(priority)
+                    .inputSize(new File(absolutePath).length())
+                    .durationSeconds(persistenceService.getReportedDuration(mediaFileId).map(Math::round).orElse(null))
                     .build();
 
             mediaJobRepository.save(mediaJob);
-            log.info("Queued reconversion job {} for {}", jobId, mediaFileId);
+            log.info("Queued {} reconversion job {} for {}", priority, jobId, mediaFileId);
 
             return ResponseEntity.accepted().build();
         } catch (InvalidMediaException e) {
@@ -296,17 +327,11 @@ public class MediaAdminResource {
         }
 
         try {
-            byte[] imageBytes = resizeImage(file.getBytes());
+            byte[] imageBytes = posterRenditionService.resize(file.getBytes(), PosterSize.FULL);
             log.info("Resized poster for {} - final size: {} bytes", mediaFileId, imageBytes.length);
 
-            MediaImage existingImage = media.getImage();
-            if (existingImage != null) {
-                existingImage.setImage(imageBytes);
-            } else {
-                MediaImage newImage = new MediaImage(imageBytes, media);
-                media.setImage(newImage);
-            }
-
+            // Other media may share the current poster, so the upload is stored as its own image
+            media.setImage(posterStore.store(imageBytes));
             persistenceService.saveMediaFile(mediaFile);
             log.info("Poster uploaded for {}", mediaFileId);
 
@@ -317,42 +342,6 @@ public class MediaAdminResource {
         }
     }
 
-    private byte[] resizeImage(byte[] originalBytes) throws IOException {
-        BufferedImage original = ImageIO.read(new ByteArrayInputStream(originalBytes));
-        if (original == null) {
-            throw new IOException("Unable to read image");
-        }
-
-        int originalWidth = original.getWidth();
-        int originalHeight = original.getHeight();
-
-        // If already small enough, return original
-        if (originalWidth <= MAX_POSTER_WIDTH && originalHeight <= MAX_POSTER_HEIGHT) {
-            return originalBytes;
-        }
-
-        // Calculate new dimensions maintaining aspect ratio
-        double widthRatio = (double) MAX_POSTER_WIDTH / originalWidth;
-        double heightRatio = (double) MAX_POSTER_HEIGHT / originalHeight;
-        double ratio = Math.min(widthRatio, heightRatio);
-
-        int newWidth = (int) (originalWidth * ratio);
-        int newHeight = (int) (originalHeight * ratio);
-
-        // Create resized image
-        BufferedImage resized = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = resized.createGraphics();
-        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-        g.drawImage(original, 0, 0, newWidth, newHeight, null);
-        g.dispose();
-
-        // Write to JPEG with good quality
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        ImageIO.write(resized, "jpg", output);
-        return output.toByteArray();
-    }
-
     @Data
     public static class MetadataUpdateRequest {
         private String title;
@@ -1,5 +1,6 @@
 package com.github.rahmnathan.localmovie.web.exception;
 
+import com.github.rahmnathan.localmovie.media.exception.InvalidCursorException;
 import com.github.rahmnathan.localmovie.media.exception.InvalidMediaException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
@@ -23,6 +24,14 @@ public class GlobalExceptionHandler {
                 .body(new ApiError(HttpStatus.BAD_REQUEST.value(), e.getMessage()));
     }
 
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<ApiError> handleInvalidCursor(InvalidCursorException e) {
+        log.warn("Invalid cursor: {}", e.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(new ApiError(HttpStatus.BAD_REQUEST.value(), e.getMessage()));
+    }
+
     @ExceptionHandler(NoSuchElementException.class)
     public ResponseEntity<ApiError> handleNotFound(NoSuchElementException e) {
         log.warn("Resource not found: {}", e.getMessage());
@@ -185,7 +185,7 @@ const HistoryCard = ({ group, playMedia, onRemove }) => {
             <div className="history-card__poster">
                 <LazyLoadImage
                     onError={(e) => { e.target.onerror = null; e.target.src = "noPicture.gif"; }}
-                    src={buildPosterUri(group.posterId)}
+                    src={buildPosterUri(group.posterId, 'thumbnail')}
                     alt={`${group.title} poster`}
                     effect="opacity"
                     threshold={100}
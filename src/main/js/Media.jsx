@@ -4,14 +4,25 @@ import { DetailedMediaView } from './DetailedMediaView.jsx';
 
 const posterBasePath = '/localmovie/v1/media/';
 
-export const buildPosterUri = function (id) {
+export const buildPosterUri = function (id, size) {
     if(id === null){
         return 'noPicture.gif';
     } else {
-        return window.location.origin + posterBasePath + encodeURIComponent(id) + '/poster';
+        const uri = window.location.origin + posterBasePath + encodeURIComponent(id) + '/poster';
+        return size ? uri + '?size=' + size : uri;
     }
 };
 
+// Widths match the renditions the server stores, the browser picks the smallest that fills the card
+export const buildPosterSrcSet = function (id) {
+    if(id === null){
+        return undefined;
+    }
+    return `${buildPosterUri(id, 'thumbnail')} 185w, ${buildPosterUri(id, 'medium')} 342w, ${buildPosterUri(id)} 500w`;
+};
+
+const posterSizes = '(max-width: 480px) 50vw, (max-width: 768px) 180px, 240px';
+
 // Map mediaFileType to the request type for navigation
 const getRequestType = (mediaFileType) => {
     switch(mediaFileType) {
@@ -175,8 +186,10 @@ const MediaComponent = (props) => {
             </button>
             <div className="media-card__poster-container">
                 <img
-                    onError={(e) => { e.target.onerror = null; e.target.src = 'noPicture.gif'; }}
-                    src={buildPosterUri(mediaFile.mediaFileId)}
+                    onError={(e) => { e.target.onerror = null; e.target.srcset = ''; e.target.src = 'noPicture.gif'; }}
+                    src={buildPosterUri(mediaFile.mediaFileId, 'medium')}
+                    srcSet={buildPosterSrcSet(mediaFile.mediaFileId)}
+                    sizes={posterSizes}
                     alt={`${title} (${year}) poster`}
                     className="media-card__poster"
                     loading="lazy"
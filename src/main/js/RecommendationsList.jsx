@@ -92,7 +92,7 @@ const RecommendationCard = ({ recommendation, playMedia, onDismiss, onMoreLikeTh
             <div className="recommendation-card__poster">
                 <LazyLoadImage
                     onError={(e) => { e.target.onerror = null; e.target.src = "noPicture.gif"; }}
-                    src={buildPosterUri(mediaFile.mediaFileId)}
+                    src={buildPosterUri(mediaFile.mediaFileId, 'thumbnail')}
                     alt={`${title} poster`}
                     effect="opacity"
                     threshold={100}
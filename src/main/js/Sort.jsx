@@ -14,6 +14,7 @@ export const Sort = ({ selectSort }) => {
                 <option value='year'>Year</option>
                 <option value='rating'>Rating</option>
                 <option value='added'>Date Added</option>
+                <option value='relevance'>Relevance</option>
             </select>
         </div>
     );
@@ -39,6 +39,7 @@ export const SORT_OPTIONS = [
     { value: 'year', label: 'Year' },
     { value: 'rating', label: 'Rating' },
     { value: 'added', label: 'Date Added' },
+    { value: 'relevance', label: 'Relevance' },
 ];
 
 // Genre options
@@ -0,0 +1,14 @@
+-- Full-text and trigram search over media metadata
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- 'simple' keeps names and titles unstemmed so prefix matching behaves predictably across languages
+ALTER TABLE media
+    ADD COLUMN search_vector tsvector GENERATED ALWAYS AS (
+        setweight(to_tsvector('simple', coalesce(title, '')), 'A') ||
+        setweight(to_tsvector('simple', coalesce(actors, '')), 'B') ||
+        setweight(to_tsvector('simple', coalesce(genre, '')), 'C')
+    ) STORED;
+
+CREATE INDEX idx_media_search_vector ON media USING gin (search_vector);
+
+CREATE INDEX idx_media_title_trgm ON media USING gin (lower(title) gin_trgm_ops);
@@ -0,0 +1,6 @@
+-- Serve cursor pages of the title and date added orders straight from an index scan
+CREATE INDEX IF NOT EXISTS idx_media_file_type_file_name
+    ON media_file (media_file_type, file_name, media_file_id);
+
+CREATE INDEX IF NOT EXISTS idx_media_file_type_created
+    ON media_file (media_file_type, created DESC, media_file_id);
@@ -0,0 +1,2 @@
+ALTER TABLE media_image ADD COLUMN IF NOT EXISTS thumbnail bytea;
+ALTER TABLE media_image ADD COLUMN IF NOT EXISTS medium bytea;
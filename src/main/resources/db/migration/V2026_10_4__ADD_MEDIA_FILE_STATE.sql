@@ -0,0 +1,2 @@
+ALTER TABLE media_file ADD COLUMN IF NOT EXISTS file_size BIGINT;
+ALTER TABLE media_file ADD COLUMN IF NOT EXISTS last_modified BIGINT;
@@ -0,0 +1,27 @@
+-- Media showing the same poster reference one media_image row keyed by the hash of its bytes
+ALTER TABLE media_image ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64);
+UPDATE media_image SET content_hash = encode(sha256(image), 'hex') WHERE image IS NOT NULL;
+
+ALTER TABLE media DROP CONSTRAINT IF EXISTS media_image_id_key;
+
+UPDATE media m
+SET image_id = canonical.id
+FROM media_image duplicate
+         JOIN (SELECT content_hash, min(id) AS id
+               FROM media_image
+               WHERE content_hash IS NOT NULL
+               GROUP BY content_hash) canonical ON canonical.content_hash = duplicate.content_hash
+WHERE m.image_id = duplicate.id
+  AND duplicate.id <> canonical.id;
+
+UPDATE media SET image_id = NULL
+WHERE image_id IN (SELECT id FROM media_image WHERE content_hash IS NULL);
+
+-- Images no longer belong to a single media row
+ALTER TABLE media_image DROP COLUMN IF EXISTS media_id;
+
+DELETE FROM media_image i WHERE NOT EXISTS (SELECT 1 FROM media m WHERE m.image_id = i.id);
+
+ALTER TABLE media_image ALTER COLUMN content_hash SET NOT NULL;
+CREATE UNIQUE INDEX IF NOT EXISTS idx_media_image_content_hash ON media_image (content_hash);
+CREATE INDEX IF NOT EXISTS idx_media_image_id ON media (image_id);
@@ -0,0 +1,6 @@
+-- Priority class and cost inputs for ordering the conversion queue
+ALTER TABLE media_job ADD COLUMN IF NOT EXISTS priority VARCHAR(20) NOT NULL DEFAULT 'NEW_ARRIVAL';
+ALTER TABLE media_job ADD COLUMN IF NOT EXISTS input_size BIGINT;
+ALTER TABLE media_job ADD COLUMN IF NOT EXISTS duration_seconds BIGINT;
+
+CREATE INDEX IF NOT EXISTS idx_media_job_status ON media_job (status);
@@ -0,0 +1,24 @@
+-- Segments of conversions encoded by parallel jobs, and the plan joining them
+CREATE SEQUENCE IF NOT EXISTS media_job_segment_sequence START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS media_job_segment (
+    id bigint NOT NULL,
+    media_job_id bigint NOT NULL,
+    segment_index INTEGER NOT NULL,
+    job_id VARCHAR(255) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    attempts INTEGER NOT NULL DEFAULT 1,
+    output_file VARCHAR(1000) NOT NULL,
+    plan TEXT NOT NULL,
+    created TIMESTAMP(6),
+    updated TIMESTAMP(6),
+    version bigint NOT NULL DEFAULT 0,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_media_job_segment_media_job FOREIGN KEY (media_job_id) REFERENCES media_job(id) ON DELETE CASCADE,
+    CONSTRAINT uq_media_job_segment_index UNIQUE (media_job_id, segment_index)
+);
+
+CREATE INDEX IF NOT EXISTS idx_media_job_segment_job_id ON media_job_segment (job_id);
+
+ALTER TABLE media_job ADD COLUMN IF NOT EXISTS stitch_plan TEXT;
+ALTER TABLE media_job ADD COLUMN IF NOT EXISTS stitch_launched BOOLEAN NOT NULL DEFAULT FALSE;
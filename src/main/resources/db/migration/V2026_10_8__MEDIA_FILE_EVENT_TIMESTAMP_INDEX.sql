@@ -0,0 +1,2 @@
+-- Event streams replay and poll the events recorded after a timestamp
+CREATE INDEX IF NOT EXISTS idx_media_file_event_timestamp ON media_file_event (timestamp);
@@ -0,0 +1,21 @@
+-- Directories keep counts of what's below them, maintained as media is added and removed
+ALTER TABLE media_file ADD COLUMN IF NOT EXISTS child_count INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE media_file ADD COLUMN IF NOT EXISTS episode_count INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE media_file ADD COLUMN IF NOT EXISTS latest_added TIMESTAMP(6);
+
+-- Seasons first, series add up their seasons' episode counts
+UPDATE media_file p SET child_count = a.child_count, episode_count = a.episode_count, latest_added = a.latest_added
+FROM (SELECT d.id, COUNT(c.id) AS child_count,
+             COUNT(c.id) FILTER (WHERE c.media_file_type = 'EPISODE') AS episode_count,
+             MAX(c.created) AS latest_added
+      FROM media_file d LEFT JOIN media_file c ON c.parent_path = d.path
+      WHERE d.media_file_type = 'SEASON' GROUP BY d.id) a
+WHERE p.id = a.id;
+
+UPDATE media_file p SET child_count = a.child_count, episode_count = a.episode_count, latest_added = a.latest_added
+FROM (SELECT d.id, COUNT(c.id) AS child_count,
+             COALESCE(SUM(c.episode_count), 0) AS episode_count,
+             GREATEST(MAX(c.created), MAX(c.latest_added)) AS latest_added
+      FROM media_file d LEFT JOIN media_file c ON c.parent_path = d.path
+      WHERE d.media_file_type = 'SERIES' GROUP BY d.id) a
+WHERE p.id = a.id;
@@ -0,0 +1,49 @@
+package com.github.rahmnathan.localmovie.data;
+
+import com.github.rahmnathan.localmovie.media.exception.InvalidCursorException;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MediaCursorTest {
+
+    @Test
+    void roundTripsSortValue() {
+        LocalDateTime created = LocalDateTime.of(2024, 5, 1, 12, 30, 15, 123456000);
+        MediaCursor cursor = MediaCursor.decode(MediaCursor.of("added", "id-1", created).encode());
+
+        assertEquals("added", cursor.order());
+        assertEquals("id-1", cursor.mediaFileId());
+        assertEquals(created, cursor.sortValueAs(LocalDateTime.class));
+    }
+
+    @Test
+    void distinguishesNullFromEmptySortValue() {
+        assertNull(MediaCursor.decode(MediaCursor.of("rating", "id-1", null).encode()).sortValue());
+        assertEquals("", MediaCursor.decode(MediaCursor.of("rating", "id-1", "").encode()).sortValue());
+    }
+
+    @Test
+    void keepsSeparatorsInsideSortValue() {
+        MediaCursor cursor = MediaCursor.decode(MediaCursor.of("title", "id-1", "Odd\nName.mkv").encode());
+
+        assertEquals("Odd\nName.mkv", cursor.sortValue());
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        assertThrows(InvalidCursorException.class, () -> MediaCursor.decode("not base64!"));
+        assertThrows(InvalidCursorException.class, () -> MediaCursor.decode("dGl0bGU"));
+        assertThrows(InvalidCursorException.class, () -> MediaCursor.of("season-episode", "id-1", "x").sortValueAs(Integer.class));
+    }
+
+    @Test
+    void rejectsCursorOfDifferentOrder() {
+        MediaCursor cursor = MediaCursor.of("title", "id-1", "300.mkv");
+
+        assertThrows(InvalidCursorException.class, () -> cursor.requireOrder("added"));
+        assertSame(cursor, cursor.requireOrder("title"));
+    }
+}
@@ -4,21 +4,34 @@ import com.github.rahmnathan.localmovie.BaseIntegrationTest;
 import com.github.rahmnathan.localmovie.data.MediaPath;
 import com.github.rahmnathan.localmovie.media.exception.InvalidMediaException;
 import com.github.rahmnathan.localmovie.persistence.entity.MediaFile;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaFileRepository;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 class MediaFileServiceTest extends BaseIntegrationTest {
     private final MediaFileService mediaFileService;
+    private final MediaFileRepository mediaFileRepository;
 
     @Autowired
-    MediaFileServiceTest(MediaFileService mediaFileService, MediaInitializer initializer) {
+    MediaFileServiceTest(MediaFileService mediaFileService, MediaFileRepository mediaFileRepository, MediaInitializer initializer) {
         this.mediaFileService = mediaFileService;
+        this.mediaFileRepository = mediaFileRepository;
 
         try {
             initializer.getInitializationFuture().get();
@@ -41,4 +54,23 @@ class MediaFileServiceTest extends BaseIntegrationTest {
         MediaFile mediaFile = mediaFileService.loadMediaFile(MediaPath.parse(path));
         assertNotNull(mediaFile);
     }
+
+    @Test
+    void concurrentLoadsOfANewPathShareOneRow() throws Exception {
+        MediaPath path = MediaPath.parse("/home/test/LocalMedia/Movies/Concurrent Load.mkv");
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<MediaFile>> loads = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                loads.add(executor.submit(() -> mediaFileService.loadMediaFile(path)));
+            }
+
+            Set<String> mediaFileIds = new HashSet<>();
+            for (Future<MediaFile> load : loads) {
+                mediaFileIds.add(load.get(30, TimeUnit.SECONDS).getMediaFileId());
+            }
+            assertEquals(1, mediaFileIds.size());
+        } finally {
+            mediaFileRepository.findByPath(path.getRelativePath()).ifPresent(mediaFileRepository::delete);
+        }
+    }
 }
@@ -0,0 +1,53 @@
+package com.github.rahmnathan.localmovie.media;
+
+import com.github.rahmnathan.localmovie.BaseIntegrationTest;
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.MediaPath;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaFileRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MediaIngestionPipelineIntegrationTest extends BaseIntegrationTest {
+    private static final String NEW_MOVIE = "Movies/Ingestion Pipeline.mkv";
+
+    private final MediaIngestionPipeline ingestionPipeline;
+    private final MediaFileRepository mediaFileRepository;
+    private final ServiceConfig.IngestConfig ingestConfig;
+
+    @Autowired
+    MediaIngestionPipelineIntegrationTest(MediaIngestionPipeline ingestionPipeline, MediaFileRepository mediaFileRepository,
+                                          ServiceConfig serviceConfig, MediaInitializer initializer) {
+        this.ingestionPipeline = ingestionPipeline;
+        this.mediaFileRepository = mediaFileRepository;
+        this.ingestConfig = serviceConfig.getIngest();
+
+        try {
+            initializer.getInitializationFuture().get();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void savesTheRestOfAFailedBatchIndividually() throws Exception {
+        // Holding the batch open until the end keeps both files in it, the existing path fails the whole batch
+        long flushIntervalMs = ingestConfig.getFlushIntervalMs();
+        ingestConfig.setFlushIntervalMs(60_000);
+        try {
+            int saved = ingestionPipeline.ingest(List.of(
+                    MediaPath.parse("src/test/resources/LocalMedia/Movies/300.mkv"),
+                    MediaPath.parse("src/test/resources/LocalMedia/" + NEW_MOVIE)));
+
+            assertEquals(1, saved);
+            assertTrue(mediaFileRepository.existsByPath(NEW_MOVIE));
+        } finally {
+            ingestConfig.setFlushIntervalMs(flushIntervalMs);
+            mediaFileRepository.findByPath(NEW_MOVIE).ifPresent(mediaFileRepository::delete);
+        }
+    }
+}
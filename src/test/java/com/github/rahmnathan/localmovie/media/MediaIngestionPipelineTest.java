@@ -0,0 +1,122 @@
+package com.github.rahmnathan.localmovie.media;
+
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.MediaPath;
+import com.github.rahmnathan.localmovie.persistence.entity.Media;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaFile;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaFileRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MediaIngestionPipelineTest {
+
+    @Mock
+    private MediaService mediaService;
+    @Mock
+    private MediaFileService mediaFileService;
+    @Mock
+    private MediaFileRepository mediaFileRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final ServiceConfig serviceConfig = new ServiceConfig();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private MediaIngestionPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        serviceConfig.getIngest().setBatchSize(2);
+        pipeline = new MediaIngestionPipeline(mediaService, mediaFileService, mediaFileRepository, transactionManager,
+                serviceConfig, registry);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void savesMediaInBatches() throws Exception {
+        when(mediaService.loadMedia(any())).thenReturn(new Media());
+        List<List<String>> batches = new ArrayList<>();
+        when(mediaFileRepository.saveAll(anyCollection())).thenAnswer(invocation -> {
+            Collection<MediaFile> mediaFiles = invocation.getArgument(0);
+            batches.add(mediaFiles.stream().map(MediaFile::getPath).toList());
+            return List.copyOf(mediaFiles);
+        });
+
+        int saved = pipeline.ingest(List.of(
+                MediaPath.parse("Movies/300.mkv"),
+                MediaPath.parse("Movies/Avatar.mkv"),
+                MediaPath.parse("Movies/Up.mkv")));
+
+        assertEquals(3, saved);
+        assertEquals(3, batches.stream().mapToInt(List::size).sum());
+        assertEquals(2, batches.stream().mapToInt(List::size).max().orElseThrow());
+        assertEquals(3.0, registry.counter("localmovies.ingest.media", "result", "saved").count());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void savesParentsBeforeTheirChildren() throws Exception {
+        when(mediaService.loadMedia(any())).thenReturn(new Media());
+        MediaFile series = MediaFile.forPath(MediaPath.parse("Series/Lost")).build();
+        when(mediaFileRepository.findAllByPathIn(anyCollection())).thenReturn(List.of(series));
+        when(mediaFileRepository.saveAll(anyCollection())).thenAnswer(invocation -> List.copyOf((Collection<MediaFile>) invocation.getArgument(0)));
+
+        pipeline.ingest(List.of(MediaPath.parse("Series/Lost/Season 1"), MediaPath.parse("Series/Lost")));
+
+        ArgumentCaptor<Collection<MediaFile>> saved = ArgumentCaptor.forClass(Collection.class);
+        InOrder inOrder = inOrder(mediaFileRepository);
+        inOrder.verify(mediaFileRepository, times(2)).saveAll(saved.capture());
+        assertEquals("Series/Lost", saved.getAllValues().get(0).iterator().next().getPath());
+
+        MediaFile season = saved.getAllValues().get(1).iterator().next();
+        assertEquals("Series/Lost/Season 1", season.getPath());
+        assertSame(series, season.getParent());
+        verifyNoInteractions(mediaFileService);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void skipsMediaThatFailsToLoad() throws Exception {
+        MediaPath failing = MediaPath.parse("Movies/300.mkv");
+        when(mediaService.loadMedia(any())).thenAnswer(invocation -> {
+            if (invocation.getArgument(0) == failing) {
+                throw new IllegalStateException("OMDb unavailable");
+            }
+            return new Media();
+        });
+        when(mediaFileRepository.saveAll(anyCollection())).thenAnswer(invocation -> List.copyOf((Collection<MediaFile>) invocation.getArgument(0)));
+
+        int saved = pipeline.ingest(List.of(failing, MediaPath.parse("Movies/Avatar.mkv")));
+
+        assertEquals(1, saved);
+        assertEquals(1.0, registry.counter("localmovies.ingest.media", "result", "failed").count());
+    }
+
+    @Test
+    void savesIndividuallyWhenABatchFails() throws Exception {
+        when(mediaService.loadMedia(any())).thenReturn(new Media());
+        when(mediaFileRepository.saveAll(anyCollection())).thenThrow(new IllegalStateException("constraint violation"));
+
+        int saved = pipeline.ingest(List.of(MediaPath.parse("Movies/300.mkv")));
+
+        assertEquals(1, saved);
+        verify(mediaFileRepository).save(any(MediaFile.class));
+    }
+}
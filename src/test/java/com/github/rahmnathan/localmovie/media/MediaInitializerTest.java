@@ -0,0 +1,198 @@
+package com.github.rahmnathan.localmovie.media;
+
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.MediaFileState;
+import com.github.rahmnathan.localmovie.data.MediaPath;
+import com.github.rahmnathan.localmovie.media.event.MediaEventService;
+import com.github.rahmnathan.localmovie.media.subtitle.SubtitleJobService;
+import com.github.rahmnathan.localmovie.persistence.CatalogCache;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaFileRepository;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaJobRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MediaInitializerTest {
+
+    @Mock
+    private MediaFileRepository mediaFileRepository;
+    @Mock
+    private MediaJobRepository jobRepository;
+    @Mock
+    private MediaService dataService;
+    @Mock
+    private SubtitleJobService subtitleJobService;
+    @Mock
+    private CatalogCache catalogCache;
+    @Mock
+    private MediaEventService mediaEventService;
+    @Mock
+    private MediaIngestionPipeline ingestionPipeline;
+
+    @TempDir
+    private Path tempDir;
+
+    private final ServiceConfig serviceConfig = new ServiceConfig();
+    private Path mediaRoot;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mediaRoot = Files.createDirectories(tempDir.resolve("LocalMedia"));
+        Files.createDirectories(mediaRoot.resolve("Movies"));
+        serviceConfig.setMediaPaths(Set.of(mediaRoot + File.separator));
+        serviceConfig.setOpensubtitles(new ServiceConfig.OpenSubtitlesConfig());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ingestsOnlyFilesMissingFromTheDatabase() throws Exception {
+        File known = createMovie("300.mkv");
+        createMovie("Avatar.mkv");
+        when(mediaFileRepository.findAllFileStates()).thenReturn(List.of(
+                new MediaFileState("Movies/300.mkv", known.getAbsolutePath(), known.length(), known.lastModified())));
+
+        initialize();
+
+        ArgumentCaptor<Collection<MediaPath>> ingested = ArgumentCaptor.forClass(Collection.class);
+        verify(ingestionPipeline).ingest(ingested.capture());
+        assertEquals(List.of("Movies/Avatar.mkv"), ingested.getValue().stream().map(MediaPath::getRelativePath).toList());
+        verify(mediaFileRepository, never()).updateFileState(anyString(), anyLong(), anyLong());
+        verify(mediaFileRepository, never()).existsByPath(anyString());
+    }
+
+    @Test
+    void updatesStateOfChangedFiles() throws Exception {
+        File known = createMovie("300.mkv");
+        when(mediaFileRepository.findAllFileStates()).thenReturn(List.of(
+                new MediaFileState("Movies/300.mkv", known.getAbsolutePath(), known.length() + 1, known.lastModified())));
+
+        initialize();
+
+        verify(mediaFileRepository).updateFileState("Movies/300.mkv", known.length(), known.lastModified());
+        verify(ingestionPipeline).ingest(argThat(Collection::isEmpty));
+    }
+
+    @Test
+    void removesMissingMediaOncePerTree() throws Exception {
+        File known = createMovie("300.mkv");
+        String seriesPath = mediaRoot.resolve("Series/Game of Thrones").toString();
+        when(mediaFileRepository.findAllFileStates()).thenReturn(List.of(
+                new MediaFileState("Movies/300.mkv", known.getAbsolutePath(), known.length(), known.lastModified()),
+                new MediaFileState("Series/Game of Thrones", seriesPath, null, null),
+                new MediaFileState("Series/Game of Thrones/Season 1", seriesPath + "/Season 1", null, null)));
+
+        initialize();
+
+        ArgumentCaptor<MediaPath> removed = ArgumentCaptor.forClass(MediaPath.class);
+        verify(mediaEventService).handleDeleteEvent(removed.capture());
+        assertEquals("Series/Game of Thrones", removed.getValue().getRelativePath());
+    }
+
+    @Test
+    void skipsRemovalWhenAMediaRootIsUnavailable() throws Exception {
+        serviceConfig.setMediaPaths(Set.of(mediaRoot + File.separator, tempDir.resolve("missing/LocalMedia") + File.separator));
+        when(mediaFileRepository.findAllFileStates()).thenReturn(List.of(
+                new MediaFileState("Movies/Avatar.mkv", mediaRoot.resolve("Movies/Avatar.mkv").toString(), 1L, 1L)));
+
+        initialize();
+
+        verifyNoInteractions(mediaEventService);
+    }
+
+    @Test
+    void keepsMediaOfAnEmptyRootWhileReconcilingTheOthers() throws Exception {
+        File known = createMovie("300.mkv");
+        Path emptyRoot = Files.createDirectories(tempDir.resolve("2/LocalMedia/Movies")).getParent();
+        serviceConfig.setMediaPaths(Set.of(mediaRoot + File.separator, emptyRoot + File.separator));
+        when(mediaFileRepository.findAllFileStates()).thenReturn(List.of(
+                new MediaFileState("Movies/300.mkv", known.getAbsolutePath(), known.length(), known.lastModified()),
+                new MediaFileState("Movies/Avatar.mkv", mediaRoot.resolve("Movies/Avatar.mkv").toString(), 1L, 1L),
+                new MediaFileState("Movies/Alien.mkv", emptyRoot.resolve("Movies/Alien.mkv").toString(), 1L, 1L)));
+
+        initialize();
+
+        ArgumentCaptor<MediaPath> removed = ArgumentCaptor.forClass(MediaPath.class);
+        verify(mediaEventService).handleDeleteEvent(removed.capture());
+        assertEquals("Movies/Avatar.mkv", removed.getValue().getRelativePath());
+    }
+
+    @Test
+    void skipsRemovalWhenNothingWasFound() throws Exception {
+        when(mediaFileRepository.findAllFileStates()).thenReturn(List.of(
+                new MediaFileState("Movies/Avatar.mkv", mediaRoot.resolve("Movies/Avatar.mkv").toString(), 1L, 1L)));
+
+        initialize();
+
+        verifyNoInteractions(mediaEventService);
+    }
+
+    @Test
+    void fullScanQueriesEachFile() throws Exception {
+        serviceConfig.getScan().setIncremental(false);
+        createMovie("300.mkv");
+        when(dataService.existsInDatabase("Movies/300.mkv")).thenReturn(true);
+
+        initialize();
+
+        verify(dataService).existsInDatabase("Movies/300.mkv");
+        verify(mediaFileRepository, never()).findAllFileStates();
+        verify(ingestionPipeline).ingest(List.of());
+    }
+
+    @Test
+    void scanIsNotInterruptedWhileWaitingOnIngestion() throws Exception {
+        createMovie("Avatar.mkv");
+        BlockingQueue<Integer> saved = new ArrayBlockingQueue<>(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        when(ingestionPipeline.ingest(any())).thenAnswer(invocation -> {
+            try {
+                return saved.take();
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+                throw e;
+            }
+        });
+        CompletableFuture.runAsync(() -> saved.add(1), CompletableFuture.delayedExecutor(500, TimeUnit.MILLISECONDS));
+
+        initialize();
+
+        assertFalse(interrupted.get());
+        verify(catalogCache).invalidate();
+    }
+
+    private File createMovie(String fileName) throws IOException {
+        return Files.writeString(mediaRoot.resolve("Movies").resolve(fileName), "movie").toFile();
+    }
+
+    private void initialize() throws Exception {
+        MediaInitializer initializer = new MediaInitializer(mediaFileRepository, jobRepository, serviceConfig,
+                new SimpleMeterRegistry(), dataService, subtitleJobService, catalogCache, mediaEventService, ingestionPipeline);
+        initializer.initializeFileList();
+        initializer.getInitializationFuture().get();
+    }
+}
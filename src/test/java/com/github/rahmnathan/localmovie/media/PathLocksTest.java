@@ -0,0 +1,93 @@
+package com.github.rahmnathan.localmovie.media;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathLocksTest {
+    private final PathLocks pathLocks = new PathLocks();
+
+    @Test
+    void serializesCallersOnTheSamePath() throws Exception {
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger maxInside = new AtomicInteger();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 50; i++) {
+                executor.submit(() -> pathLocks.withLock("Series/Lost", () -> {
+                    maxInside.accumulateAndGet(inside.incrementAndGet(), Math::max);
+                    Thread.yield();
+                    return inside.decrementAndGet();
+                }));
+            }
+        }
+
+        assertEquals(1, maxInside.get());
+        assertEquals(0, pathLocks.size());
+    }
+
+    @Test
+    void doesNotBlockOtherPaths() throws Exception {
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Boolean> holder = executor.submit(() -> pathLocks.withLock("Series/Lost", () -> {
+                holding.countDown();
+                try {
+                    return release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+            assertTrue(holding.await(5, TimeUnit.SECONDS));
+
+            String other = executor.submit(() -> pathLocks.withLock("Series/Dark", () -> "loaded")).get(5, TimeUnit.SECONDS);
+            assertEquals("loaded", other);
+
+            release.countDown();
+            assertTrue(holder.get());
+        }
+    }
+
+    @Test
+    void allowsNestedLocksOnTheSamePath() {
+        String result = pathLocks.withLock("Series/Lost", () -> pathLocks.withLock("Series/Lost", () -> "loaded"));
+
+        assertEquals("loaded", result);
+        assertEquals(0, pathLocks.size());
+    }
+
+    @Test
+    void holdsTheLockUntilTheTransactionCompletes() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            pathLocks.withLock("Series/Lost", () -> "loaded");
+            assertEquals(1, pathLocks.size());
+
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+            assertEquals(0, pathLocks.size());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void releasesTheLockWhenTheActionFails() {
+        assertThrows(IllegalStateException.class, () -> pathLocks.withLock("Series/Lost", () -> {
+            throw new IllegalStateException("OMDb unavailable");
+        }));
+
+        assertEquals(0, pathLocks.size());
+    }
+}
@@ -2,16 +2,20 @@ package com.github.rahmnathan.localmovie.media.event;
 
 import com.github.rahmnathan.localmovie.BaseIntegrationTest;
 import com.github.rahmnathan.localmovie.data.MediaPath;
+import com.github.rahmnathan.localmovie.data.MediaRequest;
 import com.github.rahmnathan.localmovie.media.MediaInitializer;
 import com.github.rahmnathan.localmovie.media.exception.InvalidMediaException;
 import com.github.rahmnathan.localmovie.persistence.MediaPersistenceService;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaFile;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Pageable;
 
 import java.time.LocalDateTime;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class MediaEventServiceTest extends BaseIntegrationTest {
@@ -44,4 +48,30 @@ class MediaEventServiceTest extends BaseIntegrationTest {
 
         assertFalse(mediaPersistenceService.getMediaFileByPath(MediaPath.parse("Movies/300.mkv")).isPresent());
     }
+
+    @Test
+    void directoryCountsFollowEpisodesAddedAndRemoved() throws InvalidMediaException {
+        String episode = "src/test/resources/LocalMedia/Series/Game of Thrones/Season 1/Episode 1.mkv";
+        assertCounts("Series/Game of Thrones", 1, 1);
+        assertCounts("Series/Game of Thrones/Season 1", 1, 1);
+
+        mediaEventService.handleDeleteEvent(MediaPath.parse(episode));
+        assertCounts("Series/Game of Thrones", 1, 0);
+        assertCounts("Series/Game of Thrones/Season 1", 0, 0);
+
+        mediaEventService.handleCreateEvent(MediaPath.parse(episode));
+        assertCounts("Series/Game of Thrones", 1, 1);
+        MediaFile season = assertCounts("Series/Game of Thrones/Season 1", 1, 1);
+        assertNotNull(season.getLatestAdded());
+
+        MediaRequest seasonsRequest = new MediaRequest(null, season.getParent().getMediaFileId(), 0, 100, null, null, null, "seasons");
+        assertEquals(1, mediaPersistenceService.countMediaFiles(seasonsRequest));
+    }
+
+    private MediaFile assertCounts(String path, int childCount, int episodeCount) throws InvalidMediaException {
+        MediaFile directory = mediaPersistenceService.getMediaFileByPath(MediaPath.parse(path)).orElseThrow();
+        assertEquals(childCount, directory.getChildCount(), path);
+        assertEquals(episodeCount, directory.getEpisodeCount(), path);
+        return directory;
+    }
 }
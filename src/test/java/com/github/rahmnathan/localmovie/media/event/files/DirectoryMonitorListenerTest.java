@@ -1,56 +1,53 @@
 package com.github.rahmnathan.localmovie.media.event.files;
 
-import org.apache.commons.io.monitor.FileAlterationMonitor;
-import org.apache.commons.io.monitor.FileAlterationObserver;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.nio.file.StandardWatchEventKinds;
-import java.util.Set;
 
-import static org.junit.jupiter.api.Assertions.assertTrue;
-import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 class DirectoryMonitorListenerTest {
 
     @Test
     void onDirectoryCreate_ignoresSubtitleSyncArtifacts() {
-        FileAlterationMonitor monitor = mock(FileAlterationMonitor.class);
-        DirectoryMonitorObserver observer = mock(DirectoryMonitorObserver.class);
-        DirectoryMonitorListener listener = new DirectoryMonitorListener(monitor, Set.of(observer));
+        FileEventDispatcher dispatcher = mock(FileEventDispatcher.class);
+        DirectoryMonitorListener listener = new DirectoryMonitorListener(dispatcher);
 
         listener.onDirectoryCreate(new File("/media/Movie/.subtitle-sync-abc123-456"));
 
-        verifyNoInteractions(observer);
-        verify(monitor, never()).addObserver(any(FileAlterationObserver.class));
+        verifyNoInteractions(dispatcher);
     }
 
     @Test
     void onFileCreate_ignoresFilesInsideSubtitleSyncArtifacts() {
-        FileAlterationMonitor monitor = mock(FileAlterationMonitor.class);
-        DirectoryMonitorObserver observer = mock(DirectoryMonitorObserver.class);
-        DirectoryMonitorListener listener = new DirectoryMonitorListener(monitor, Set.of(observer));
+        FileEventDispatcher dispatcher = mock(FileEventDispatcher.class);
+        DirectoryMonitorListener listener = new DirectoryMonitorListener(dispatcher);
 
         listener.onFileCreate(new File("/media/Movie/.subtitle-sync-abc123-456/input.vtt"));
 
-        verifyNoInteractions(observer);
-        verifyNoInteractions(monitor);
+        verifyNoInteractions(dispatcher);
     }
 
     @Test
-    void onDirectoryCreate_notifiesObserversForNormalDirectory() throws Exception {
-        FileAlterationMonitor monitor = mock(FileAlterationMonitor.class);
-        DirectoryMonitorObserver observer = mock(DirectoryMonitorObserver.class);
-        DirectoryMonitorListener listener = new DirectoryMonitorListener(monitor, Set.of(observer));
+    void onDirectoryCreate_dispatchesEventForNormalDirectory() {
+        FileEventDispatcher dispatcher = mock(FileEventDispatcher.class);
+        DirectoryMonitorListener listener = new DirectoryMonitorListener(dispatcher);
         File directory = new File("/media/Movie/Extras");
 
         listener.onDirectoryCreate(directory);
 
-        verify(observer, timeout(1000))
-                .directoryModified(StandardWatchEventKinds.ENTRY_CREATE, directory);
-        var observerCaptor = org.mockito.ArgumentCaptor.forClass(FileAlterationObserver.class);
-        verify(monitor).addObserver(observerCaptor.capture());
-        assertTrue(observerCaptor.getValue().getListeners().iterator().hasNext());
+        verify(dispatcher).submit(StandardWatchEventKinds.ENTRY_CREATE, directory);
+    }
+
+    @Test
+    void onFileDelete_dispatchesEvent() {
+        FileEventDispatcher dispatcher = mock(FileEventDispatcher.class);
+        DirectoryMonitorListener listener = new DirectoryMonitorListener(dispatcher);
+        File file = new File("/media/Movie/Avatar.mkv");
+
+        listener.onFileDelete(file);
+
+        verify(dispatcher).submit(StandardWatchEventKinds.ENTRY_DELETE, file);
     }
 }
@@ -0,0 +1,130 @@
+package com.github.rahmnathan.localmovie.media.event.files;
+
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileEventDispatcherTest {
+    private final List<String> dispatched = new CopyOnWriteArrayList<>();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private FileEventDispatcher dispatcher;
+
+    @TempDir
+    private Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = dispatcher(100, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.close();
+    }
+
+    @Test
+    void coalescesRepeatedEventsForAPath() throws Exception {
+        File movie = Files.writeString(tempDir.resolve("Avatar.mkv"), "movie").toFile();
+
+        dispatcher.submit(StandardWatchEventKinds.ENTRY_CREATE, movie);
+        dispatcher.submit(StandardWatchEventKinds.ENTRY_CREATE, movie);
+        dispatcher.submit(StandardWatchEventKinds.ENTRY_CREATE, movie);
+
+        awaitDispatched(1);
+        Thread.sleep(300);
+        assertEquals(List.of("ENTRY_CREATE Avatar.mkv"), dispatched);
+        assertEquals(2.0, registry.counter("localmovies.file-events", "result", "coalesced").count());
+    }
+
+    @Test
+    void latestEventForAPathWins() throws Exception {
+        File movie = tempDir.resolve("Avatar.mkv").toFile();
+
+        dispatcher.submit(StandardWatchEventKinds.ENTRY_CREATE, movie);
+        dispatcher.submit(StandardWatchEventKinds.ENTRY_DELETE, movie);
+
+        awaitDispatched(1);
+        assertEquals(List.of("ENTRY_DELETE Avatar.mkv"), dispatched);
+    }
+
+    @Test
+    void directoryDeleteAbsorbsEventsBeneathIt() throws Exception {
+        File series = tempDir.resolve("Lost").toFile();
+
+        dispatcher.submit(StandardWatchEventKinds.ENTRY_DELETE, new File(series, "Season 1/Episode 1.mkv"));
+        dispatcher.submit(StandardWatchEventKinds.ENTRY_DELETE, new File(series, "Season 1"));
+        dispatcher.submit(StandardWatchEventKinds.ENTRY_DELETE, series);
+        dispatcher.submit(StandardWatchEventKinds.ENTRY_DELETE, new File(series, "Season 2"));
+
+        awaitDispatched(1);
+        Thread.sleep(300);
+        assertEquals(List.of("ENTRY_DELETE Lost"), dispatched);
+    }
+
+    @Test
+    void waitsForCreatedFilesToStopChanging() throws Exception {
+        // Leaves room for the writes below to be delayed on a busy machine without the file looking settled
+        dispatcher.close();
+        dispatcher = dispatcher(100, 500);
+        Path movie = Files.writeString(tempDir.resolve("Avatar.mkv"), "m");
+        dispatcher.submit(StandardWatchEventKinds.ENTRY_CREATE, movie.toFile());
+
+        for (int i = 0; i < 6; i++) {
+            Thread.sleep(60);
+            Files.writeString(movie, "m", StandardOpenOption.APPEND);
+            assertTrue(dispatched.isEmpty());
+        }
+
+        awaitDispatched(1);
+        assertEquals(List.of("ENTRY_CREATE Avatar.mkv"), dispatched);
+        assertEquals(0, dispatcher.pendingEvents());
+    }
+
+    @Test
+    void keepsDispatchingWhenAnObserverFails() throws Exception {
+        dispatcher.close();
+        DirectoryMonitorObserver failing = (event, file) -> {
+            throw new IllegalStateException("database unavailable");
+        };
+        DirectoryMonitorObserver recording = (event, file) -> dispatched.add(event.name());
+        ServiceConfig.MediaEventMonitorConfig config = new ServiceConfig.MediaEventMonitorConfig();
+        config.setDebounceMs(10);
+        dispatcher = new FileEventDispatcher(Set.of(failing, recording), config, registry);
+
+        dispatcher.submit(StandardWatchEventKinds.ENTRY_DELETE, tempDir.resolve("a.mkv").toFile());
+        dispatcher.submit(StandardWatchEventKinds.ENTRY_DELETE, tempDir.resolve("b.mkv").toFile());
+
+        awaitDispatched(2);
+    }
+
+    private void awaitDispatched(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dispatched.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(count, dispatched.size(), () -> "Dispatched: " + dispatched);
+    }
+
+    private FileEventDispatcher dispatcher(long debounceMs, long stabilityCheckMs) {
+        ServiceConfig.MediaEventMonitorConfig config = new ServiceConfig.MediaEventMonitorConfig();
+        config.setDebounceMs(debounceMs);
+        config.setStabilityCheckMs(stabilityCheckMs);
+        DirectoryMonitorObserver observer = (event, file) -> dispatched.add(event.name() + " " + tempDir.relativize(file.toPath()));
+        return new FileEventDispatcher(Set.of(observer), config, registry);
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.rahmnathan.localmovie.media.event.files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+class NativeDirectoryWatcherTest {
+    private final FileEventDispatcher dispatcher = mock(FileEventDispatcher.class);
+    private NativeDirectoryWatcher watcher;
+
+    @TempDir
+    private Path root;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Files.createDirectories(root.resolve("Movies"));
+        watcher = new NativeDirectoryWatcher(dispatcher);
+        watcher.start(List.of(root));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        watcher.close();
+    }
+
+    @Test
+    void registersExistingDirectories() {
+        assertEquals(2, watcher.watchedDirectories());
+    }
+
+    @Test
+    void submitsCreatedAndDeletedFiles() throws Exception {
+        Path movie = Files.writeString(root.resolve("Movies/Avatar.mkv"), "movie");
+        verify(dispatcher, timeout(5000)).submit(ENTRY_CREATE, movie.toFile());
+
+        Files.delete(movie);
+        verify(dispatcher, timeout(5000)).submit(ENTRY_DELETE, movie.toFile());
+    }
+
+    @Test
+    void watchesNewDirectoriesAndTheirExistingEntries() throws Exception {
+        Path season = Files.createDirectories(root.resolve("Series/Lost/Season 1"));
+        Path episode = Files.writeString(season.resolve("Episode 1.mkv"), "episode");
+
+        verify(dispatcher, timeout(5000)).submit(ENTRY_CREATE, root.resolve("Series").toFile());
+        verify(dispatcher, timeout(5000).atLeastOnce()).submit(ENTRY_CREATE, episode.toFile());
+
+        Path episode2 = Files.writeString(season.resolve("Episode 2.mkv"), "episode");
+        verify(dispatcher, timeout(5000).atLeastOnce()).submit(ENTRY_CREATE, episode2.toFile());
+    }
+
+    @Test
+    void ignoresSubtitleSyncArtifacts() throws Exception {
+        Path artifact = Files.createDirectories(root.resolve("Movies/.subtitle-sync-abc123-456"));
+        Path movie = Files.writeString(root.resolve("Movies/Avatar.mkv"), "movie");
+
+        verify(dispatcher, timeout(5000)).submit(ENTRY_CREATE, movie.toFile());
+        verify(dispatcher, never()).submit(ENTRY_CREATE, artifact.toFile());
+    }
+
+    @Test
+    void rescanSubmitsChangesMissedByTheWatchService() throws Exception {
+        watcher.close();
+        Path removed = Files.writeString(root.resolve("Movies/300.mkv"), "movie");
+        watcher = new NativeDirectoryWatcher(dispatcher);
+        watcher.start(List.of(root));
+        Path added = root.resolve("Movies/Avatar.mkv");
+
+        watcher.close();
+        Files.delete(removed);
+        Files.writeString(added, "movie");
+        watcher.rescan(root.resolve("Movies"));
+
+        verify(dispatcher).submit(ENTRY_DELETE, removed.toFile());
+        verify(dispatcher).submit(ENTRY_CREATE, added.toFile());
+    }
+}
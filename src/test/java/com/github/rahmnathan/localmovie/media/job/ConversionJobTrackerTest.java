@@ -0,0 +1,111 @@
+package com.github.rahmnathan.localmovie.media.job;
+
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.MediaJobStatus;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.batch.v1.Job;
+import io.fabric8.kubernetes.api.model.batch.v1.JobBuilder;
+import io.fabric8.kubernetes.api.model.batch.v1.JobStatusBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.server.mock.EnableKubernetesMockClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@EnableKubernetesMockClient(crud = true)
+class ConversionJobTrackerTest {
+    private static final String NAMESPACE = "localmovies";
+
+    KubernetesClient client;
+
+    private final List<Object> published = new CopyOnWriteArrayList<>();
+    private ConversionJobTracker tracker;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ServiceConfig serviceConfig = new ServiceConfig();
+        tracker = new ConversionJobTracker(client, published::add, serviceConfig);
+        tracker.start();
+        awaitTrue(tracker::isSynced);
+    }
+
+    @AfterEach
+    void tearDown() {
+        tracker.stop();
+    }
+
+    @Test
+    void publishesFinishedJobsFromWatchEvents() throws Exception {
+        Job job = client.batch().v1().jobs().inNamespace(NAMESPACE).resource(job("ffmpeg-1", "Movies-300-mkv")).create();
+        awaitTrue(() -> tracker.findJob("Movies-300-mkv").isPresent());
+        assertTrue(published.isEmpty());
+
+        job.setStatus(new JobStatusBuilder().withSucceeded(1).build());
+        client.batch().v1().jobs().inNamespace(NAMESPACE).resource(job).updateStatus();
+
+        awaitTrue(() -> !published.isEmpty());
+        assertEquals(new ConversionJobFinishedEvent("Movies-300-mkv", MediaJobStatus.SUCCEEDED), published.getFirst());
+    }
+
+    @Test
+    void ignoresJobsThatAreNotConversions() throws Exception {
+        Job job = new JobBuilder(job("subtitle-sync-1", "Movies-300-mkv"))
+                .editMetadata().withLabels(Map.of("app", "subtitle-sync")).endMetadata()
+                .withNewStatus().withFailed(1).endStatus()
+                .build();
+        client.batch().v1().jobs().inNamespace(NAMESPACE).resource(job).create();
+        client.batch().v1().jobs().inNamespace(NAMESPACE).resource(job("ffmpeg-2", "Movies-Avatar-mkv")).create();
+
+        awaitTrue(() -> tracker.findJob("Movies-Avatar-mkv").isPresent());
+        assertTrue(tracker.findJob("Movies-300-mkv").isEmpty());
+        assertTrue(published.isEmpty());
+    }
+
+    @Test
+    void findsRunningPodOfJob() throws Exception {
+        client.pods().inNamespace(NAMESPACE).resource(pod("ffmpeg-1-abcde", "ffmpeg-1", "Pending")).create();
+        client.pods().inNamespace(NAMESPACE).resource(pod("ffmpeg-1-fghij", "ffmpeg-1", "Running")).create();
+
+        awaitTrue(() -> tracker.findRunningPod("ffmpeg-1").isPresent());
+        assertEquals("ffmpeg-1-fghij", tracker.findRunningPod("ffmpeg-1").orElseThrow().getMetadata().getName());
+        assertTrue(tracker.findRunningPod("ffmpeg-2").isEmpty());
+    }
+
+    private static Job job(String name, String jobId) {
+        return new JobBuilder()
+                .withNewMetadata()
+                    .withName(name)
+                    .withNamespace(NAMESPACE)
+                    .withLabels(Map.of("app", "ffmpeg", "jobId", jobId))
+                .endMetadata()
+                .build();
+    }
+
+    private static Pod pod(String name, String jobName, String phase) {
+        return new PodBuilder()
+                .withNewMetadata()
+                    .withName(name)
+                    .withNamespace(NAMESPACE)
+                    .withLabels(Map.of("job-name", jobName))
+                .endMetadata()
+                .withNewStatus().withPhase(phase).endStatus()
+                .build();
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.rahmnathan.localmovie.media.job;
+
+import com.github.rahmnathan.localmovie.data.ConversionProgress;
+import com.github.rahmnathan.localmovie.data.MediaJobStatus;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaJob;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaJobRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ConversionProgressTrackerTest {
+    private static final String RUNNING = MediaJobStatus.RUNNING.name();
+
+    @Mock
+    private MediaJobRepository mediaJobRepository;
+    @Mock
+    private ConversionExecutor conversionExecutor;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private ConversionProgressTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new ConversionProgressTracker(mediaJobRepository, conversionExecutor, registry);
+    }
+
+    @Test
+    void publishesProgressAsGauges() {
+        List<MediaJob> runningJobs = List.of(job("job-id"));
+        when(mediaJobRepository.findAllByStatusOrderByCreatedAsc(RUNNING)).thenReturn(runningJobs);
+        when(conversionExecutor.readProgress(runningJobs)).thenReturn(Map.of("job-id", progress("job-id", 66.5, 300L)));
+
+        tracker.refreshProgress();
+
+        assertThat(tracker.getProgress()).extracting(ConversionProgress::etaSeconds).containsExactly(300L);
+        assertThat(registry.get("localmovies.conversion.eta").tag("jobId", "job-id").gauge().value()).isEqualTo(300.0);
+        assertThat(registry.get("localmovies.conversion.progress").tag("jobId", "job-id").gauge().value()).isEqualTo(66.5);
+    }
+
+    @Test
+    void reportsUnknownValuesAsNaN() {
+        List<MediaJob> runningJobs = List.of(job("job-id"));
+        when(mediaJobRepository.findAllByStatusOrderByCreatedAsc(RUNNING)).thenReturn(runningJobs);
+        when(conversionExecutor.readProgress(runningJobs)).thenReturn(Map.of("job-id", progress("job-id", null, null)));
+
+        tracker.refreshProgress();
+
+        assertThat(registry.get("localmovies.conversion.eta").tag("jobId", "job-id").gauge().value()).isNaN();
+    }
+
+    @Test
+    void stopsTrackingFinishedJobs() {
+        List<MediaJob> runningJobs = List.of(job("job-id"));
+        when(mediaJobRepository.findAllByStatusOrderByCreatedAsc(RUNNING)).thenReturn(runningJobs, List.of());
+        when(conversionExecutor.readProgress(runningJobs)).thenReturn(Map.of("job-id", progress("job-id", 10.0, 600L)));
+        when(conversionExecutor.readProgress(List.of())).thenReturn(Map.of());
+
+        tracker.refreshProgress();
+        assertThat(registry.find("localmovies.conversion.eta").gauges()).hasSize(1);
+
+        tracker.refreshProgress();
+
+        assertThat(tracker.getProgress()).isEmpty();
+        assertThat(registry.find("localmovies.conversion.eta").gauges()).isEmpty();
+        assertThat(registry.find("localmovies.conversion.progress").gauges()).isEmpty();
+    }
+
+    @Test
+    void skipsSegmentedConversionsUntilTheirSegmentsAreJoined() {
+        MediaJob encoding = job("segmented-job-id");
+        encoding.setStitchPlan("{}");
+        MediaJob joining = job("joining-job-id");
+        joining.setStitchPlan("{}");
+        joining.setStitchLaunched(true);
+        when(mediaJobRepository.findAllByStatusOrderByCreatedAsc(RUNNING)).thenReturn(List.of(encoding, joining));
+        when(conversionExecutor.readProgress(List.of(joining))).thenReturn(Map.of("joining-job-id", progress("joining-job-id", 50.0, 60L)));
+
+        tracker.refreshProgress();
+
+        assertThat(tracker.getProgress()).extracting(ConversionProgress::jobId).containsExactly("joining-job-id");
+    }
+
+    private static ConversionProgress progress(String jobId, Double percentComplete, Long etaSeconds) {
+        return new ConversionProgress(jobId, "/media/Movies/" + jobId + ".mkv", percentComplete, etaSeconds,
+                null, null, null, null, null, Instant.now());
+    }
+
+    private static MediaJob job(String jobId) {
+        return MediaJob.builder()
+                .jobId(jobId)
+                .inputFile("/media/Movies/" + jobId + ".mkv")
+                .outputFile("/media/Movies/" + jobId + ".mp4")
+                .status(RUNNING)
+                .build();
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.rahmnathan.localmovie.media.job;
+
+import com.github.rahmnathan.localmovie.BaseIntegrationTest;
+import com.github.rahmnathan.localmovie.data.MediaJobPriority;
+import com.github.rahmnathan.localmovie.data.MediaJobStatus;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaJob;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaJobRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversionSchedulerTest extends BaseIntegrationTest {
+    private static final long GIGABYTE = 1024L * 1024 * 1024;
+
+    private final ConversionScheduler conversionScheduler;
+    private final MediaJobRepository jobRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    ConversionSchedulerTest(ConversionScheduler conversionScheduler, MediaJobRepository jobRepository, JdbcTemplate jdbcTemplate) {
+        this.conversionScheduler = conversionScheduler;
+        this.jobRepository = jobRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @BeforeEach
+    void setUp() {
+        jobRepository.deleteAll();
+    }
+
+    @Test
+    void claimsRequestedThenShortestJobsFirst() {
+        queue("bulk-episode", MediaJobPriority.RECONVERSION, GIGABYTE, 2700L, 0);
+        queue("large-remux", MediaJobPriority.NEW_ARRIVAL, 60 * GIGABYTE, 7200L, 0);
+        queue("episode", MediaJobPriority.NEW_ARRIVAL, 2 * GIGABYTE, null, 0);
+        queue("requested", MediaJobPriority.REQUESTED, 30 * GIGABYTE, null, 0);
+
+        assertEquals(List.of("requested", "episode"), claimedJobIds(2));
+        assertEquals(List.of("large-remux"), claimedJobIds(3));
+    }
+
+    @Test
+    void agingLetsLongWaitingJobsRun() {
+        queue("episode", MediaJobPriority.NEW_ARRIVAL, GIGABYTE, 2700L, 0);
+        queue("bulk-episode", MediaJobPriority.RECONVERSION, GIGABYTE, 2700L, 25);
+
+        assertEquals(List.of("bulk-episode"), claimedJobIds(1));
+    }
+
+    @Test
+    void claimsOnlyFreeSlots() {
+        queue("running", MediaJobPriority.NEW_ARRIVAL, GIGABYTE, null, 0);
+        assertEquals(List.of("running"), claimedJobIds(1));
+        queue("episode", MediaJobPriority.NEW_ARRIVAL, GIGABYTE, null, 0);
+
+        assertTrue(claimedJobIds(1).isEmpty());
+        assertEquals(MediaJobStatus.QUEUED.name(), jobRepository.findFirstByJobIdAndStatus("episode", MediaJobStatus.QUEUED.name())
+                .orElseThrow().getStatus());
+    }
+
+    private List<String> claimedJobIds(int concurrencyLimit) {
+        List<MediaJob> claimed = conversionScheduler.claimQueuedJobs(concurrencyLimit);
+        claimed.forEach(mediaJob -> assertEquals(MediaJobStatus.RUNNING.name(),
+                jobRepository.findById(mediaJob.getId()).orElseThrow().getStatus()));
+        return claimed.stream().map(MediaJob::getJobId).toList();
+    }
+
+    private void queue(String jobId, MediaJobPriority priority, long inputSize, Long durationSeconds, int hoursWaited) {
+        MediaJob mediaJob = jobRepository.save(MediaJob.builder()
+                .jobId(jobId)
+                .inputFile("/media/LocalMedia/Movies/" + jobId + ".mkv")
+                .outputFile("/media/LocalMedia/Movies/" + jobId + ".mp4")
+                .status(MediaJobStatus.QUEUED.name())
+                .priority(priority)
+                .inputSize(inputSize)
+                .durationSeconds(durationSeconds)
+                .build());
+        jdbcTemplate.update("UPDATE media_job SET created = ? WHERE id = ?",
+                LocalDateTime.now().minusHours(hoursWaited), mediaJob.getId());
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.rahmnathan.localmovie.media.job;
+
+import com.github.rahmnathan.localmovie.data.ConversionProgress;
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FfmpegProgressParserTest {
+    private static final String BANNER = """
+            Input #0, matroska,webm, from 'input.mkv':
+              Duration: 00:30:00.00, start: 0.000000, bitrate: 1000 kb/s
+            """;
+
+    private final FfmpegProgressParser parser = new FfmpegProgressParser();
+
+    @Test
+    void parsesFfmpegProgressEta() {
+        parser.accept(BANNER);
+        parser.accept("""
+                frame=100
+                fps=48.5
+                bitrate=1024.0kbits/s
+                out_time=00:10:00.000000
+                speed=2.00x
+                progress=continue
+                """);
+
+        assertThat(parser.eta()).contains(Duration.ofMinutes(10));
+        ConversionProgress progress = parser.toProgress("job-id", "input.mkv");
+        assertThat(progress.encodedSeconds()).isEqualTo(600L);
+        assertThat(progress.durationSeconds()).isEqualTo(1800L);
+        assertThat(progress.percentComplete()).isCloseTo(33.33, Offset.offset(0.01));
+        assertThat(progress.fps()).isEqualTo(48.5);
+        assertThat(progress.bitrateKbps()).isEqualTo(1024.0);
+        assertThat(progress.speed()).isEqualTo(2.0);
+    }
+
+    @Test
+    void parsesFfmpegStatsEta() {
+        parser.accept("  Duration: 00:20:00.00, start: 0.000000, bitrate: 1000 kb/s");
+        parser.accept("frame=100 fps=50 q=28.0 size=1024kB time=00:05:00.00 bitrate=1024.0kbits/s speed=1.5x");
+
+        assertThat(parser.eta()).contains(Duration.ofMinutes(10));
+        assertThat(parser.toProgress("job-id", "input.mkv").fps()).isEqualTo(50.0);
+    }
+
+    @Test
+    void waitsForTheEndOfAProgressBlock() {
+        parser.accept(BANNER);
+        parser.accept("""
+                out_time=00:10:00.000000
+                speed=2.00x
+                """);
+
+        assertThat(parser.eta()).isEmpty();
+
+        parser.accept("progress=continue");
+
+        assertThat(parser.eta()).contains(Duration.ofMinutes(10));
+    }
+
+    @Test
+    void readsOverlappingTimestampedChunks() {
+        parser.accept(BANNER);
+        parser.accept("""
+                2026-10-18T10:00:00.100000000Z out_time=00:10:00.000000
+                2026-10-18T10:00:00.200000000Z speed=2.00x
+                2026-10-18T10:00:00.300000000Z progress=continue
+                """);
+        assertThat(parser.lastTimestamp()).contains("2026-10-18T10:00:00.300000000Z");
+
+        // The log API only honours whole seconds, so the next read repeats the end of the previous one
+        parser.accept("""
+                2026-10-18T10:00:00.300000000Z progress=continue
+                2026-10-18T10:00:30.100000000Z out_time=00:20:00.000000
+                2026-10-18T10:00:30.200000000Z speed=  2x
+                2026-10-18T10:00:30.300000000Z progress=continue
+                """);
+
+        assertThat(parser.eta()).contains(Duration.ofMinutes(5));
+        assertThat(parser.lastTimestamp()).contains("2026-10-18T10:00:30.300000000Z");
+    }
+
+    @Test
+    void ignoresValuesFfmpegHasNotReportedYet() {
+        parser.accept(BANNER);
+        parser.accept("""
+                fps=0.00
+                bitrate=N/A
+                out_time=00:00:00.000000
+                speed=N/A
+                progress=continue
+                """);
+
+        ConversionProgress progress = parser.toProgress("job-id", "input.mkv");
+        assertThat(progress.percentComplete()).isEqualTo(0.0);
+        assertThat(progress.speed()).isNull();
+        assertThat(progress.bitrateKbps()).isNull();
+        assertThat(progress.etaSeconds()).isNull();
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.rahmnathan.localmovie.media.job;
+
+import com.github.rahmnathan.localmovie.data.ConversionProgress;
+import com.github.rahmnathan.localmovie.data.MediaJobStatus;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaJob;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class KubernetesConversionExecutorTest {
+
+    @Mock
+    private FfmpegVideoConverter videoConverter;
+    @Mock
+    private KubernetesService kubernetesService;
+
+    private KubernetesConversionExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = new KubernetesConversionExecutor(videoConverter, kubernetesService);
+    }
+
+    @Test
+    void launchesKubernetesJob() throws Exception {
+        File outputFile = new File("/media/Movies/job-id.mp4.partial~");
+
+        TranscodePlan plan = new TranscodePlan(TranscodePlan.Mode.REMUX, List.of("-c:v", "copy", "-c:a", "copy"));
+
+        executor.launch(job("job-id"), outputFile, plan);
+
+        verify(videoConverter).launchVideoConverter("job-id", new File("/media/Movies/job-id.mkv"), outputFile, plan);
+    }
+
+    @Test
+    void runsAnalysisInAPod() throws Exception {
+        when(videoConverter.runAnalysis("ffprobe", List.of("-show_streams"), Duration.ofMinutes(1))).thenReturn("{}");
+
+        assertThat(executor.analyze(ConversionExecutor.AnalysisTool.FFPROBE, List.of("-show_streams"), Duration.ofMinutes(1)))
+                .isEqualTo("{}");
+    }
+
+    @Test
+    void readsOnlyNewLogLinesAfterTheFirstRead() throws Exception {
+        when(kubernetesService.findRunningPodName("job-id")).thenReturn(Optional.of("ffmpeg-1-abcde"));
+        when(kubernetesService.getLogHead(eq("ffmpeg-1-abcde"), anyInt())).thenReturn("  Duration: 00:30:00.00, start: 0.000000");
+        when(kubernetesService.getLogSince(eq("ffmpeg-1-abcde"), isNull(), anyInt())).thenReturn("""
+                2026-10-18T10:00:00.100000000Z out_time=00:10:00.000000
+                2026-10-18T10:00:00.200000000Z speed=2.00x
+                2026-10-18T10:00:00.300000000Z progress=continue
+                """);
+        when(kubernetesService.getLogSince(eq("ffmpeg-1-abcde"), eq("2026-10-18T10:00:00.300000000Z"), anyInt())).thenReturn("""
+                2026-10-18T10:00:30.100000000Z out_time=00:20:00.000000
+                2026-10-18T10:00:30.200000000Z speed=2.00x
+                2026-10-18T10:00:30.300000000Z progress=continue
+                """);
+
+        assertThat(executor.readProgress(List.of(job("job-id"))).get("job-id").etaSeconds()).isEqualTo(600L);
+
+        ConversionProgress progress = executor.readProgress(List.of(job("job-id"))).get("job-id");
+
+        assertThat(progress.etaSeconds()).isEqualTo(300L);
+        assertThat(progress.inputFile()).isEqualTo("/media/Movies/job-id.mkv");
+        verify(kubernetesService, times(1)).getLogHead(eq("ffmpeg-1-abcde"), anyInt());
+    }
+
+    @Test
+    void restartsFromTheBeginningInANewPod() throws Exception {
+        when(kubernetesService.findRunningPodName("job-id")).thenReturn(Optional.of("ffmpeg-1-abcde"), Optional.of("ffmpeg-1-fghij"));
+        when(kubernetesService.getLogHead(anyString(), anyInt())).thenReturn("  Duration: 00:30:00.00, start: 0.000000");
+        when(kubernetesService.getLogSince(eq("ffmpeg-1-abcde"), isNull(), anyInt()))
+                .thenReturn("2026-10-18T10:00:00.100000000Z out_time=00:10:00.000000\n2026-10-18T10:00:00.300000000Z progress=continue");
+        when(kubernetesService.getLogSince(eq("ffmpeg-1-fghij"), isNull(), anyInt())).thenReturn("");
+
+        executor.readProgress(List.of(job("job-id")));
+        Map<String, ConversionProgress> progress = executor.readProgress(List.of(job("job-id")));
+
+        assertThat(progress.get("job-id").encodedSeconds()).isNull();
+    }
+
+    @Test
+    void leavesOutJobsWithoutARunningPod() throws Exception {
+        when(kubernetesService.findRunningPodName("job-id")).thenReturn(Optional.empty());
+
+        assertThat(executor.readProgress(List.of(job("job-id")))).isEmpty();
+    }
+
+    @Test
+    void cleansUpByDeletingTheJob() throws Exception {
+        when(kubernetesService.getJobStatus("job-id")).thenReturn(Optional.of(MediaJobStatus.SUCCEEDED));
+
+        assertThat(executor.getStatus("job-id")).contains(MediaJobStatus.SUCCEEDED);
+        executor.cleanUp("job-id");
+
+        verify(kubernetesService).deleteJob("job-id");
+    }
+
+    private static MediaJob job(String jobId) {
+        return MediaJob.builder()
+                .jobId(jobId)
+                .inputFile("/media/Movies/" + jobId + ".mkv")
+                .outputFile("/media/Movies/" + jobId + ".mp4")
+                .status(MediaJobStatus.RUNNING.name())
+                .build();
+    }
+}
@@ -1,52 +1,52 @@
 package com.github.rahmnathan.localmovie.media.job;
 
+import com.github.rahmnathan.localmovie.data.MediaJobStatus;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.batch.v1.Job;
+import io.fabric8.kubernetes.api.model.batch.v1.JobBuilder;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import org.junit.jupiter.api.Test;
 
-import java.time.Duration;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
 
 class KubernetesServiceTest {
 
-    private final KubernetesService kubernetesService = new KubernetesService(mock(KubernetesClient.class));
+    private final KubernetesClient kubernetesClient = mock(KubernetesClient.class);
+    private final ConversionJobTracker jobTracker = mock(ConversionJobTracker.class);
+    private final KubernetesService kubernetesService = new KubernetesService(kubernetesClient, jobTracker);
 
     @Test
-    void parsesFfmpegProgressEta() {
-        String podLog = """
-                frame=100
-                out_time=00:10:00.000000
-                speed=2.00x
-                progress=continue
-                """;
-
-        Optional<Duration> eta = kubernetesService.parseETA(podLog, 1800L);
-
-        assertThat(eta).contains(Duration.ofMinutes(10));
+    void readsJobStatusFromSyncedTracker() throws Exception {
+        Job job = new JobBuilder()
+                .withNewMetadata().withName("ffmpeg-1").endMetadata()
+                .withNewStatus().withSucceeded(1).endStatus()
+                .build();
+        when(jobTracker.isSynced()).thenReturn(true);
+        when(jobTracker.findJob("job-id")).thenReturn(Optional.of(job));
+
+        assertThat(kubernetesService.getJobStatus("job-id")).contains(MediaJobStatus.SUCCEEDED);
+        verifyNoInteractions(kubernetesClient);
     }
 
     @Test
-    void parsesFfmpegStatsEta() {
-        String podLog = "frame=100 fps=50 q=28.0 size=1024kB time=00:05:00.00 bitrate=1024.0kbits/s speed=1.5x";
-
-        Optional<Duration> eta = kubernetesService.parseETA(podLog, 1200L);
-
-        assertThat(eta).contains(Duration.ofMinutes(10));
-    }
-
-    @Test
-    void parsesFfmpegEtaFromLogDuration() {
-        String podLog = """
-                Input #0, matroska,webm, from 'input.mkv':
-                  Duration: 00:30:00.00, start: 0.000000, bitrate: 1000 kb/s
-                out_time=00:10:00.000000
-                speed=2.00x
-                """;
-
-        Optional<Duration> eta = kubernetesService.parseETA(podLog, null);
-
-        assertThat(eta).contains(Duration.ofMinutes(10));
+    void findsRunningPodNameFromSyncedTracker() throws Exception {
+        Job job = new JobBuilder()
+                .withNewMetadata().withName("ffmpeg-1").endMetadata()
+                .build();
+        Pod pod = new PodBuilder()
+                .withNewMetadata().withName("ffmpeg-1-abcde").endMetadata()
+                .build();
+        when(jobTracker.isSynced()).thenReturn(true);
+        when(jobTracker.findJob("job-id")).thenReturn(Optional.of(job));
+        when(jobTracker.findRunningPod("ffmpeg-1")).thenReturn(Optional.of(pod));
+
+        assertThat(kubernetesService.findRunningPodName("job-id")).contains("ffmpeg-1-abcde");
+        verifyNoInteractions(kubernetesClient);
     }
 }
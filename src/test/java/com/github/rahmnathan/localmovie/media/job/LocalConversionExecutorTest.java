@@ -0,0 +1,173 @@
+package com.github.rahmnathan.localmovie.media.job;
+
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.ConversionProgress;
+import com.github.rahmnathan.localmovie.data.MediaJobStatus;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaJob;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisabledOnOs(OS.WINDOWS)
+class LocalConversionExecutorTest {
+    private static final TranscodePlan PLAN = new TranscodePlan(TranscodePlan.Mode.REMUX, List.of("-c:v", "copy", "-c:a", "copy"));
+
+    @TempDir
+    private Path tempDir;
+
+    private final List<Object> published = new CopyOnWriteArrayList<>();
+    private final ServiceConfig serviceConfig = new ServiceConfig();
+    private LocalConversionExecutor executor;
+    private Path release;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        release = tempDir.resolve("release");
+        // Stands in for ffmpeg: reports progress, then waits to be released and exits with the code it is given
+        Path ffmpeg = tempDir.resolve("ffmpeg");
+        Files.writeString(ffmpeg, """
+                #!/bin/sh
+                for output; do :; done
+                echo "  Duration: 00:30:00.00, start: 0.000000, bitrate: 1000 kb/s" >&2
+                printf 'fps=24.0\\nout_time=00:10:00.000000\\nspeed=2.00x\\nprogress=continue\\n'
+                while [ ! -f "%s" ]; do sleep 0.05; done
+                echo converted > "$output"
+                exit $(cat "%s")
+                """.formatted(release, release));
+        assertTrue(ffmpeg.toFile().setExecutable(true));
+
+        serviceConfig.setConversionService(new ServiceConfig.ConversionServiceConfig());
+        serviceConfig.getConversionService().setFfmpegPath(ffmpeg.toString());
+        executor = new LocalConversionExecutor(serviceConfig, published::add);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void reportsProgressAndSuccess() throws Exception {
+        MediaJob mediaJob = job("job-id");
+        File outputFile = tempDir.resolve("output.mp4.partial~").toFile();
+
+        executor.launch(mediaJob, outputFile, PLAN);
+
+        awaitTrue(() -> executor.readProgress(List.of(mediaJob)).containsKey("job-id")
+                && executor.readProgress(List.of(mediaJob)).get("job-id").etaSeconds() != null);
+        ConversionProgress progress = executor.readProgress(List.of(mediaJob)).get("job-id");
+        assertEquals(600L, progress.etaSeconds());
+        assertEquals(24.0, progress.fps());
+        assertEquals(MediaJobStatus.RUNNING, executor.getStatus("job-id").orElseThrow());
+
+        Files.writeString(release, "0");
+
+        awaitTrue(() -> !published.isEmpty());
+        assertEquals(new ConversionJobFinishedEvent("job-id", MediaJobStatus.SUCCEEDED), published.getFirst());
+        assertEquals(MediaJobStatus.SUCCEEDED, executor.getStatus("job-id").orElseThrow());
+        assertEquals("converted", Files.readString(outputFile.toPath()).strip());
+    }
+
+    @Test
+    void reportsFailedProcess() throws Exception {
+        Files.writeString(release, "1");
+
+        executor.launch(job("job-id"), tempDir.resolve("output.mp4.partial~").toFile(), PLAN);
+
+        awaitTrue(() -> !published.isEmpty());
+        assertEquals(new ConversionJobFinishedEvent("job-id", MediaJobStatus.FAILED), published.getFirst());
+        assertEquals(MediaJobStatus.FAILED, executor.getStatus("job-id").orElseThrow());
+    }
+
+    @Test
+    void cleanUpStopsRunningProcess() throws Exception {
+        executor.launch(job("job-id"), tempDir.resolve("output.mp4.partial~").toFile(), PLAN);
+
+        executor.cleanUp("job-id");
+
+        awaitTrue(() -> !published.isEmpty());
+        assertEquals(new ConversionJobFinishedEvent("job-id", MediaJobStatus.FAILED), published.getFirst());
+        assertTrue(executor.readProgress(List.of(job("job-id"))).isEmpty());
+    }
+
+    @Test
+    void returnsAnalysisOutput() throws Exception {
+        Path ffprobe = script("ffprobe", """
+                #!/bin/sh
+                echo "probing $6" >&2
+                echo '{"streams": []}'
+                """);
+        serviceConfig.getConversionService().setFfprobePath(ffprobe.toString());
+
+        String output = executor.analyze(ConversionExecutor.AnalysisTool.FFPROBE,
+                List.of("-v", "error", "-print_format", "json", "-show_streams", "input.mkv"), Duration.ofSeconds(5));
+
+        assertTrue(output.contains("probing input.mkv"));
+        assertTrue(output.contains("{\"streams\": []}"));
+    }
+
+    @Test
+    void failsAnalysisThatExitsUnsuccessfully() throws Exception {
+        serviceConfig.getConversionService().setFfprobePath(script("ffprobe", "#!/bin/sh\nexit 1\n").toString());
+
+        assertThrows(IOException.class, () -> executor.analyze(ConversionExecutor.AnalysisTool.FFPROBE, List.of(), Duration.ofSeconds(5)));
+    }
+
+    @Test
+    void failsAnalysisThatRunsPastTheTimeout() throws Exception {
+        serviceConfig.getConversionService().setFfprobePath(script("ffprobe", "#!/bin/sh\nsleep 5\n").toString());
+
+        assertThrows(IOException.class, () -> executor.analyze(ConversionExecutor.AnalysisTool.FFPROBE, List.of(), Duration.ofMillis(200)));
+    }
+
+    @Test
+    void reportsNoStatusForUnknownJobs() {
+        // Claimed jobs that are still being planned, or were lost in a restart, are left to the launch timeout
+        assertTrue(executor.getStatus("unknown").isEmpty());
+    }
+
+    @Test
+    void limitsConcurrencyToAvailableProcessors() {
+        assertEquals(3, LocalConversionExecutor.concurrencyLimit(3, 16, 4));
+        assertEquals(2, LocalConversionExecutor.concurrencyLimit(3, 8, 4));
+        assertEquals(1, LocalConversionExecutor.concurrencyLimit(3, 2, 4));
+    }
+
+    private Path script(String name, String content) throws IOException {
+        Path script = tempDir.resolve(name);
+        Files.writeString(script, content);
+        assertTrue(script.toFile().setExecutable(true));
+        return script;
+    }
+
+    private MediaJob job(String jobId) {
+        return MediaJob.builder()
+                .jobId(jobId)
+                .inputFile(tempDir.resolve("input.mkv").toString())
+                .outputFile(tempDir.resolve("output.mp4").toString())
+                .status(MediaJobStatus.RUNNING.name())
+                .build();
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -1,28 +1,36 @@
 package com.github.rahmnathan.localmovie.media.job;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.rahmnathan.localmovie.BaseIntegrationTest;
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
 import com.github.rahmnathan.localmovie.media.MediaInitializer;
 import com.github.rahmnathan.localmovie.media.event.MediaEventService;
 import com.github.rahmnathan.localmovie.data.MediaJobStatus;
 import com.github.rahmnathan.localmovie.persistence.entity.MediaJob;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaJobSegment;
 import com.github.rahmnathan.localmovie.persistence.repository.MediaJobRepository;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaJobSegmentRepository;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.Duration;
-import java.time.temporal.ChronoUnit;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -39,11 +47,19 @@ class MediaJobServiceTest extends BaseIntegrationTest {
 
     private final MediaJobService mediaJobService;
     private final MediaJobRepository jobRepository;
+    private final MediaJobSegmentRepository segmentRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ServiceConfig serviceConfig;
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Autowired
-    MediaJobServiceTest(MediaJobService mediaJobService, MediaJobRepository jobRepository, MediaInitializer initializer) {
+    MediaJobServiceTest(MediaJobService mediaJobService, MediaJobRepository jobRepository, MediaJobSegmentRepository segmentRepository,
+                        JdbcTemplate jdbcTemplate, ServiceConfig serviceConfig, MediaInitializer initializer) {
         this.mediaJobService = mediaJobService;
         this.jobRepository = jobRepository;
+        this.segmentRepository = segmentRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.serviceConfig = serviceConfig;
 
         try {
             initializer.getInitializationFuture().get();
@@ -66,7 +82,7 @@ class MediaJobServiceTest extends BaseIntegrationTest {
         mediaJobService.scanQueuedJobs();
 
         ArgumentCaptor<File> outputCaptor = ArgumentCaptor.forClass(File.class);
-        verify(ffmpegVideoConverter).launchVideoConverter(any(), outputCaptor.capture());
+        verify(ffmpegVideoConverter).launchVideoConverter(any(), any(), outputCaptor.capture(), any());
         assertEquals("output-path.partial~", outputCaptor.getValue().getPath());
     }
 
@@ -82,7 +98,7 @@ class MediaJobServiceTest extends BaseIntegrationTest {
                 .build();
         jobRepository.save(mediaJob);
         doThrow(new IOException("Could not find localmovies pod"))
-                .when(ffmpegVideoConverter).launchVideoConverter(any(), any());
+                .when(ffmpegVideoConverter).launchVideoConverter(any(), any(), any(), any());
 
         mediaJobService.scanQueuedJobs();
 
@@ -95,6 +111,28 @@ class MediaJobServiceTest extends BaseIntegrationTest {
         assertEquals("existing", Files.readString(finalOutputFile));
     }
 
+    @Test
+    void testLaunchQueuedJob_requeuesJobsLeftOverAfterTheAnalysisTime() throws Exception {
+        MediaJob mediaJob = jobRepository.save(MediaJob.builder()
+                .inputFile("input-path")
+                .outputFile("output-path")
+                .jobId("late-job-id")
+                .status(MediaJobStatus.QUEUED.name())
+                .build());
+        ServiceConfig.ConversionSchedulingConfig scheduling = serviceConfig.getConversionService().getScheduling();
+        scheduling.setScanAnalysisMinutes(-1);
+
+        try {
+            mediaJobService.scanQueuedJobs();
+        } finally {
+            scheduling.setScanAnalysisMinutes(10);
+        }
+
+        verify(ffmpegVideoConverter, never()).launchVideoConverter(eq("late-job-id"), any(), any(), any());
+        assertEquals(MediaJobStatus.QUEUED.name(), jobRepository.findById(mediaJob.getId()).orElseThrow().getStatus());
+        jobRepository.delete(jobRepository.findById(mediaJob.getId()).orElseThrow());
+    }
+
     @Test
     void testUpdateJobStatus() throws Exception {
         Path inputFile = Files.createTempFile("localmovies-test-input-file", ".txt");
@@ -121,20 +159,148 @@ class MediaJobServiceTest extends BaseIntegrationTest {
     }
 
     @Test
-    void testRecordETAs() throws Exception {
+    void testUpdateJobStatusRequeuesLostJob() throws Exception {
+        MediaJob mediaJob = jobRepository.save(MediaJob.builder()
+                .inputFile("input-path")
+                .outputFile("output-path")
+                .jobId("lost-job-id")
+                .status(MediaJobStatus.RUNNING.name())
+                .build());
+        jdbcTemplate.update("UPDATE media_job SET updated = ? WHERE id = ?", LocalDateTime.now().minusHours(1), mediaJob.getId());
+        when(kubernetesService.getJobStatus("lost-job-id")).thenReturn(Optional.empty());
+
+        mediaJobService.updateJobStatus();
+
+        assertEquals(MediaJobStatus.QUEUED.name(), jobRepository.findById(mediaJob.getId()).orElseThrow().getStatus());
+        jobRepository.delete(jobRepository.findById(mediaJob.getId()).orElseThrow());
+    }
+
+    @Test
+    void testFinishedJobEventMovesOutputOnce() throws Exception {
+        Path inputFile = Files.createTempFile("localmovies-test-input-file", ".txt");
+        Path finalOutputFile = Files.createTempFile("localmovies-test-output-file", ".mp4");
+        Path stagingOutputFile = Path.of(finalOutputFile + ".partial~");
+        Files.writeString(stagingOutputFile, "converted");
+
         MediaJob mediaJob = MediaJob.builder()
-                .inputFile("/tmp/LocalMedia/localmovies-test-input-file.txt")
-                .outputFile("/tmp/LocalMedia/localmovies-test-input-file.txt")
-                .jobId("job-id2")
-                                .status(MediaJobStatus.RUNNING.name())
+                .inputFile(inputFile.toString())
+                .outputFile(finalOutputFile.toString())
+                .jobId("event-job-id")
+                .status(MediaJobStatus.RUNNING.name())
                 .build();
 
         jobRepository.save(mediaJob);
 
-        when(kubernetesService.getETA("job-id2")).thenReturn(Optional.of(Duration.of(1, ChronoUnit.MINUTES)));
+        ConversionJobFinishedEvent event = new ConversionJobFinishedEvent("event-job-id", MediaJobStatus.SUCCEEDED);
+        mediaJobService.onConversionJobFinished(event);
+        mediaJobService.onConversionJobFinished(event);
+
+        verify(kubernetesService, times(1)).deleteJob("event-job-id");
+        assertEquals("converted", Files.readString(finalOutputFile));
+        assertTrue(Files.notExists(stagingOutputFile));
+        assertTrue(Files.notExists(inputFile));
+        assertEquals(MediaJobStatus.SUCCEEDED.name(), jobRepository.findById(mediaJob.getId()).orElseThrow().getStatus());
+    }
 
-        mediaJobService.extractAndRecordETAs();
+    @Test
+    void testFailedJobEventRemovesStagingOutput() throws Exception {
+        Path finalOutputFile = Files.createTempFile("localmovies-test-output-file", ".mp4");
+        Path stagingOutputFile = Path.of(finalOutputFile + ".partial~");
+        Files.writeString(stagingOutputFile, "partial");
+
+        MediaJob mediaJob = MediaJob.builder()
+                .inputFile("input-path")
+                .outputFile(finalOutputFile.toString())
+                .jobId("failed-event-job-id")
+                .status(MediaJobStatus.RUNNING.name())
+                .build();
+
+        jobRepository.save(mediaJob);
+
+        mediaJobService.onConversionJobFinished(new ConversionJobFinishedEvent("failed-event-job-id", MediaJobStatus.FAILED));
+
+        verify(kubernetesService).deleteJob("failed-event-job-id");
+        assertTrue(Files.notExists(stagingOutputFile));
+        assertEquals(MediaJobStatus.FAILED.name(), jobRepository.findById(mediaJob.getId()).orElseThrow().getStatus());
+    }
+
+    @Test
+    void testSegmentsAreRetriedThenJoined() throws Exception {
+        Path inputFile = Files.createTempFile("localmovies-test-input-file", ".mkv");
+        Path finalOutputFile = Files.createTempFile("localmovies-test-output-file", ".mp4");
+        Path segmentDirectory = Files.createDirectories(Path.of(finalOutputFile + ".segments~"));
+        MediaJob mediaJob = segmentedJob("segmented-job-id", inputFile, finalOutputFile, 1);
+
+        mediaJobService.onConversionJobFinished(new ConversionJobFinishedEvent("segmented-job-id-s0-1", MediaJobStatus.FAILED));
+
+        verify(kubernetesService).deleteJob("segmented-job-id-s0-1");
+        verify(ffmpegVideoConverter).launchVideoConverter(eq("segmented-job-id-s0-2"), eq(inputFile.toFile()),
+                eq(segmentDirectory.resolve("segment-000.mp4").toFile()), any());
+
+        mediaJobService.onConversionJobFinished(new ConversionJobFinishedEvent("segmented-job-id-s0-2", MediaJobStatus.SUCCEEDED));
+        verify(ffmpegVideoConverter, never()).launchVideoConverter(eq("segmented-job-id"), any(), any(), any());
+        mediaJobService.onConversionJobFinished(new ConversionJobFinishedEvent("segmented-job-id-s1-1", MediaJobStatus.SUCCEEDED));
+
+        ArgumentCaptor<TranscodePlan> planCaptor = ArgumentCaptor.forClass(TranscodePlan.class);
+        verify(ffmpegVideoConverter).launchVideoConverter(eq("segmented-job-id"), eq(inputFile.toFile()),
+                eq(new File(finalOutputFile + ".partial~")), planCaptor.capture());
+        assertEquals("concat", planCaptor.getValue().inputOptions().get(1));
+        assertEquals("file '" + segmentDirectory.resolve("segment-000.mp4") + "'\nfile '" + segmentDirectory.resolve("segment-001.mp4") + "'\n",
+                Files.readString(segmentDirectory.resolve("segments.txt")));
+
+        Files.writeString(Path.of(finalOutputFile + ".partial~"), "joined");
+        mediaJobService.onConversionJobFinished(new ConversionJobFinishedEvent("segmented-job-id", MediaJobStatus.SUCCEEDED));
+
+        assertEquals("joined", Files.readString(finalOutputFile));
+        assertEquals(MediaJobStatus.SUCCEEDED.name(), jobRepository.findById(mediaJob.getId()).orElseThrow().getStatus());
+        assertTrue(segmentRepository.findAllByMediaJobIdOrderBySegmentIndexAsc(mediaJob.getId()).isEmpty());
+        assertTrue(Files.notExists(segmentDirectory));
+    }
+
+    @Test
+    void testSegmentOutOfAttemptsFailsTheConversion() throws Exception {
+        Path inputFile = Files.createTempFile("localmovies-test-input-file", ".mkv");
+        Path finalOutputFile = Files.createTempFile("localmovies-test-output-file", ".mp4");
+        Files.createDirectories(Path.of(finalOutputFile + ".segments~"));
+        MediaJob mediaJob = segmentedJob("exhausted-job-id", inputFile, finalOutputFile, 3);
+
+        mediaJobService.onConversionJobFinished(new ConversionJobFinishedEvent("exhausted-job-id-s0-3", MediaJobStatus.FAILED));
+
+        assertEquals(MediaJobStatus.FAILED.name(), jobRepository.findById(mediaJob.getId()).orElseThrow().getStatus());
+        // The segment still running is stopped
+        verify(kubernetesService).deleteJob("exhausted-job-id-s1-3");
+        verify(kubernetesService, never()).deleteJob("exhausted-job-id");
+        verify(ffmpegVideoConverter, never()).launchVideoConverter(any(), any(), any(), any());
+        assertTrue(segmentRepository.findAllByMediaJobIdOrderBySegmentIndexAsc(mediaJob.getId()).isEmpty());
+        assertTrue(Files.notExists(Path.of(finalOutputFile + ".segments~")));
+    }
+
+    private MediaJob segmentedJob(String jobId, Path inputFile, Path finalOutputFile, int attempts) throws Exception {
+        TranscodePlan stitchPlan = new TranscodePlan(TranscodePlan.Mode.TRANSCODE,
+                List.of("-f", "concat", "-safe", "0", "-i", finalOutputFile + ".segments~/segments.txt"),
+                List.of("-map", "0:v:0", "-map", "1:1", "-c:v", "copy", "-c:a", "copy"), List.of());
+        MediaJob mediaJob = jobRepository.save(MediaJob.builder()
+                .inputFile(inputFile.toString())
+                .outputFile(finalOutputFile.toString())
+                .jobId(jobId)
+                .status(MediaJobStatus.RUNNING.name())
+                .stitchPlan(objectMapper.writeValueAsString(stitchPlan))
+                .build());
+
+        for (int index = 0; index < 2; index++) {
+            TranscodePlan segmentPlan = new TranscodePlan(TranscodePlan.Mode.TRANSCODE, index == 0 ? List.of() : List.of("-ss", "900"),
+                    List.of("-map", "0:0", "-c:v", "libx264"), List.of());
+            segmentRepository.save(MediaJobSegment.builder()
+                    .mediaJobId(mediaJob.getId())
+                    .segmentIndex(index)
+                    .jobId(jobId + "-s" + index + "-" + attempts)
+                    .status(MediaJobStatus.RUNNING.name())
+                    .attempts(attempts)
+                    .outputFile(finalOutputFile + ".segments~/segment-%03d.mp4".formatted(index))
+                    .plan(objectMapper.writeValueAsString(segmentPlan))
+                    .build());
+        }
 
-        verify(kubernetesService).getETA("job-id2");
+        return mediaJob;
     }
 }
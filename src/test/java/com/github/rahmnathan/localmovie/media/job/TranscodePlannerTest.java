@@ -0,0 +1,247 @@
+package com.github.rahmnathan.localmovie.media.job;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TranscodePlannerTest {
+    private static final File INPUT_FILE = new File("/media/Movies/Avatar.mkv");
+
+    @Mock
+    private ConversionExecutor conversionExecutor;
+
+    private final ServiceConfig serviceConfig = new ServiceConfig();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private TranscodePlanner planner;
+
+    @BeforeEach
+    void setUp() {
+        serviceConfig.setConversionService(new ServiceConfig.ConversionServiceConfig());
+        planner = new TranscodePlanner(serviceConfig, conversionExecutor, meterRegistry, new ObjectMapper());
+    }
+
+    @Test
+    void remuxesCompatibleStreams() throws Exception {
+        probeReturns(videoStream(0, "h264", "High", 41, "yuv420p"), audioStream(1, "aac", 2));
+
+        TranscodePlan plan = planner.plan(INPUT_FILE);
+
+        assertThat(plan.mode()).isEqualTo(TranscodePlan.Mode.REMUX);
+        assertThat(plan.outputOptions()).containsExactly("-map", "0:0", "-map", "0:1", "-c:v", "copy", "-c:a", "copy");
+        assertThat(meterRegistry.counter("localmovies.conversions.planned", "mode", "remux").count()).isEqualTo(1);
+    }
+
+    @Test
+    void encodesOnlyIncompatibleAudio() throws Exception {
+        probeReturns(videoStream(0, "h264", "Main", 40, "yuv420p"), audioStream(1, "ac3", 6));
+
+        TranscodePlan plan = planner.plan(INPUT_FILE);
+
+        assertThat(plan.mode()).isEqualTo(TranscodePlan.Mode.AUDIO_TRANSCODE);
+        assertThat(plan.outputOptions()).containsExactly("-map", "0:0", "-map", "0:1", "-c:v", "copy",
+                "-c:a", "aac", "-b:a", "192k", "-ac", "2", "-af", "loudnorm=I=-16:TP=-1.5:LRA=7");
+    }
+
+    @Test
+    void encodesVideoBeyondTheProfileLevel() throws Exception {
+        probeReturns(videoStream(0, "h264", "High", 51, "yuv420p"), audioStream(1, "aac", 2));
+
+        TranscodePlan plan = planner.plan(INPUT_FILE);
+
+        assertThat(plan.mode()).isEqualTo(TranscodePlan.Mode.TRANSCODE);
+        assertThat(plan.outputOptions()).contains("libx264").endsWith("-c:a", "copy");
+    }
+
+    @Test
+    void encodesTenBitAndHevcVideo() throws Exception {
+        probeReturns(videoStream(0, "h264", "High 10", 41, "yuv420p10le"), audioStream(1, "aac", 2));
+        assertThat(planner.plan(INPUT_FILE).mode()).isEqualTo(TranscodePlan.Mode.TRANSCODE);
+
+        probeReturns(videoStream(0, "hevc", "Main", 120, "yuv420p"), audioStream(1, "aac", 2));
+        assertThat(planner.plan(INPUT_FILE).mode()).isEqualTo(TranscodePlan.Mode.TRANSCODE);
+    }
+
+    @Test
+    void skipsCoverArt() throws Exception {
+        probeReturns("""
+                {"index": 0, "codec_type": "video", "codec_name": "mjpeg", "disposition": {"attached_pic": 1}}""",
+                videoStream(1, "h264", "High", 41, "yuv420p"), audioStream(2, "aac", 2));
+
+        TranscodePlan plan = planner.plan(INPUT_FILE);
+
+        assertThat(plan.mode()).isEqualTo(TranscodePlan.Mode.REMUX);
+        assertThat(plan.outputOptions()).startsWith("-map", "0:1", "-map", "0:2");
+    }
+
+    @Test
+    void encodesEverythingWhenProbingFails() throws Exception {
+        when(conversionExecutor.analyze(eq(ConversionExecutor.AnalysisTool.FFPROBE), any(), any()))
+                .thenThrow(new IOException("Could not find localmovies pod"));
+
+        TranscodePlan plan = planner.plan(INPUT_FILE);
+
+        assertThat(plan.mode()).isEqualTo(TranscodePlan.Mode.TRANSCODE);
+        assertThat(plan.outputOptions()).containsExactly(
+                "-c:v", "libx264", "-profile:v", "high", "-level:v", "4.1", "-pix_fmt", "yuv420p", "-crf", "18", "-preset", "medium",
+                "-c:a", "aac", "-b:a", "192k", "-ac", "2", "-af", "loudnorm=I=-16:TP=-1.5:LRA=7");
+    }
+
+    @Test
+    void usesTheConfiguredProfile() throws Exception {
+        ServiceConfig.TranscodeProfile nvenc = new ServiceConfig.TranscodeProfile();
+        nvenc.setVideoEncoder("h264_nvenc");
+        nvenc.setPreset("p5");
+        nvenc.setCrf(null);
+        nvenc.setExtraVideoOptions(List.of("-cq", "21"));
+        nvenc.setLoudnorm(ServiceConfig.LoudnormMode.OFF);
+        serviceConfig.getConversionService().getProfiles().put("nvenc", nvenc);
+        serviceConfig.getConversionService().setProfile("nvenc");
+        serviceConfig.getConversionService().setProbeEnabled(false);
+
+        TranscodePlan plan = planner.plan(INPUT_FILE);
+
+        assertThat(plan.outputOptions()).containsExactly(
+                "-c:v", "h264_nvenc", "-profile:v", "high", "-level:v", "4.1", "-pix_fmt", "yuv420p", "-preset", "p5", "-cq", "21",
+                "-c:a", "aac", "-b:a", "192k", "-ac", "2");
+        verifyNoInteractions(conversionExecutor);
+    }
+
+    @Test
+    void appliesMeasuredLoudnessInTwoPassMode() throws Exception {
+        serviceConfig.getConversionService().getActiveProfile().setLoudnorm(ServiceConfig.LoudnormMode.TWO_PASS);
+        probeReturns(videoStream(0, "h264", "High", 41, "yuv420p"), audioStream(1, "dts", 6));
+        when(conversionExecutor.analyze(eq(ConversionExecutor.AnalysisTool.FFMPEG), any(), any())).thenReturn("""
+                Input #0, matroska,webm, from '/media/Movies/Avatar.mkv':
+                [Parsed_loudnorm_0 @ 0x55d5c1b0a6c0]\s
+                {
+                	"input_i" : "-27.61",
+                	"input_tp" : "-4.47",
+                	"input_lra" : "18.06",
+                	"input_thresh" : "-39.20",
+                	"output_i" : "-16.58",
+                	"output_tp" : "-1.50",
+                	"output_lra" : "14.78",
+                	"output_thresh" : "-27.71",
+                	"normalization_type" : "dynamic",
+                	"target_offset" : "0.58"
+                }
+                """);
+
+        TranscodePlan plan = planner.plan(INPUT_FILE);
+
+        assertThat(plan.mode()).isEqualTo(TranscodePlan.Mode.AUDIO_TRANSCODE);
+        assertThat(plan.outputOptions()).endsWith("-af", "loudnorm=I=-16:TP=-1.5:LRA=7:measured_I=-27.61:measured_TP=-4.47"
+                + ":measured_LRA=18.06:measured_thresh=-39.20:offset=0.58:linear=true");
+        verify(conversionExecutor).analyze(eq(ConversionExecutor.AnalysisTool.FFMPEG),
+                eq(List.of("-hide_banner", "-nostats", "-i", INPUT_FILE.getAbsolutePath(), "-map", "0:1", "-vn",
+                        "-af", "loudnorm=I=-16:TP=-1.5:LRA=7:print_format=json", "-f", "null", "-")), any());
+    }
+
+    @Test
+    void fallsBackToSinglePassWhenMeasuringFails() throws Exception {
+        serviceConfig.getConversionService().getActiveProfile().setLoudnorm(ServiceConfig.LoudnormMode.TWO_PASS);
+        probeReturns(videoStream(0, "h264", "High", 41, "yuv420p"), audioStream(1, "dts", 6));
+        when(conversionExecutor.analyze(eq(ConversionExecutor.AnalysisTool.FFMPEG), any(), any()))
+                .thenThrow(new IOException("ffmpeg did not finish within PT5M"));
+
+        assertThat(planner.plan(INPUT_FILE).outputOptions()).endsWith("-af", "loudnorm=I=-16:TP=-1.5:LRA=7");
+    }
+
+    @Test
+    void splitsLongTranscodesAtKeyframes() throws Exception {
+        serviceConfig.getConversionService().getSegmentation().setEnabled(true);
+        when(conversionExecutor.supportsSegments()).thenReturn(true);
+        probeReturnsWithDuration("3600.000000", videoStream(0, "hevc", "Main", 120, "yuv420p"), audioStream(1, "ac3", 6));
+        when(conversionExecutor.analyze(eq(ConversionExecutor.AnalysisTool.FFPROBE), argThat(args -> args.contains("-read_intervals")), any()))
+                .thenReturn("""
+                        899.500000,K__
+                        901.200000,___
+                        903.403000,K__
+                        1800.000000,K__
+                        2700.500000,___
+                        """);
+        File segmentDirectory = new File("/media/Movies/Avatar.mp4.segments~");
+
+        TranscodePlan plan = planner.plan(INPUT_FILE, segmentDirectory);
+
+        assertThat(plan.segments()).hasSize(4);
+        assertThat(plan.segments().get(0).plan().inputOptions()).isEmpty();
+        assertThat(plan.segments().get(0).plan().outputOptions()).startsWith("-t", "903.403", "-map", "0:0", "-c:v", "libx264")
+                .doesNotContain("-c:a");
+        assertThat(plan.segments().get(1).plan().inputOptions()).containsExactly("-ss", "903.403");
+        assertThat(plan.segments().get(1).plan().outputOptions()).startsWith("-t", "896.597");
+        // No keyframe close to the last split, so it stays where it is
+        assertThat(plan.segments().get(3).plan().inputOptions()).containsExactly("-ss", "2700");
+        assertThat(plan.segments().get(3).plan().outputOptions()).doesNotContain("-t");
+        assertThat(plan.segments().get(3).outputFile()).isEqualTo(new File(segmentDirectory, "segment-003.mp4"));
+
+        assertThat(plan.inputOptions()).containsExactly("-f", "concat", "-safe", "0", "-i",
+                new File(segmentDirectory, "segments.txt").getAbsolutePath());
+        assertThat(plan.outputOptions()).containsExactly("-map", "0:v:0", "-map", "1:1", "-c:v", "copy",
+                "-c:a", "aac", "-b:a", "192k", "-ac", "2", "-af", "loudnorm=I=-16:TP=-1.5:LRA=7");
+    }
+
+    @Test
+    void encodesShortInputsAndRemuxesInOneJob() throws Exception {
+        serviceConfig.getConversionService().getSegmentation().setEnabled(true);
+        when(conversionExecutor.supportsSegments()).thenReturn(true);
+        File segmentDirectory = new File("/media/Movies/Avatar.mp4.segments~");
+
+        probeReturnsWithDuration("1800.000000", videoStream(0, "hevc", "Main", 120, "yuv420p"), audioStream(1, "aac", 2));
+        assertThat(planner.plan(INPUT_FILE, segmentDirectory).isSegmented()).isFalse();
+
+        probeReturnsWithDuration("10800.000000", videoStream(0, "h264", "High", 41, "yuv420p"), audioStream(1, "aac", 2));
+        assertThat(planner.plan(INPUT_FILE, segmentDirectory).isSegmented()).isFalse();
+
+        verify(conversionExecutor, never()).analyze(any(), argThat(args -> args.contains("-read_intervals")), any());
+    }
+
+    @Test
+    void cutsAnalysesShortToMeetTheDeadline() throws Exception {
+        serviceConfig.getConversionService().getActiveProfile().setLoudnorm(ServiceConfig.LoudnormMode.TWO_PASS);
+        probeReturns(videoStream(0, "h264", "High", 41, "yuv420p"), audioStream(1, "dts", 6));
+
+        planner.plan(INPUT_FILE, null, Instant.now().plusSeconds(60));
+
+        verify(conversionExecutor, times(2)).analyze(any(), any(), argThat(timeout -> timeout.compareTo(Duration.ofSeconds(60)) <= 0));
+    }
+
+    private void probeReturns(String... streams) throws IOException {
+        when(conversionExecutor.analyze(eq(ConversionExecutor.AnalysisTool.FFPROBE), any(), any()))
+                .thenReturn("{\"streams\": [" + String.join(",", streams) + "]}");
+    }
+
+    private void probeReturnsWithDuration(String duration, String... streams) throws IOException {
+        when(conversionExecutor.analyze(eq(ConversionExecutor.AnalysisTool.FFPROBE), any(), any()))
+                .thenReturn("{\"streams\": [" + String.join(",", streams) + "], \"format\": {\"duration\": \"" + duration + "\"}}");
+    }
+
+    private static String videoStream(int index, String codec, String profile, int level, String pixelFormat) {
+        return """
+                {"index": %d, "codec_type": "video", "codec_name": "%s", "profile": "%s", "level": %d, "pix_fmt": "%s",
+                 "disposition": {"attached_pic": 0}}""".formatted(index, codec, profile, level, pixelFormat);
+    }
+
+    private static String audioStream(int index, String codec, int channels) {
+        return """
+                {"index": %d, "codec_type": "audio", "codec_name": "%s", "channels": %d}""".formatted(index, codec, channels);
+    }
+}
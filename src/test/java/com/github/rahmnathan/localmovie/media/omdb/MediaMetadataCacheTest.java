@@ -0,0 +1,119 @@
+package com.github.rahmnathan.localmovie.media.omdb;
+
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.persistence.entity.Media;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaImage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MediaMetadataCacheTest {
+
+    @Mock
+    private MediaProvider mediaProvider;
+
+    private final ServiceConfig serviceConfig = new ServiceConfig();
+    private MediaMetadataCache metadataCache;
+
+    @BeforeEach
+    void setUp() {
+        metadataCache = new MediaMetadataCache(mediaProvider, serviceConfig, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void coalescesConcurrentLookups() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(mediaProvider.getSeries("Lost", null)).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return series();
+        });
+
+        List<Future<Media>> lookups = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 10; i++) {
+                lookups.add(executor.submit(() -> metadataCache.getSeries("Lost", null)));
+            }
+            release.countDown();
+
+            for (Future<Media> lookup : lookups) {
+                assertEquals("tt0411008", lookup.get().getImdbId());
+            }
+        }
+
+        verify(mediaProvider, times(1)).getSeries("Lost", null);
+    }
+
+    @Test
+    void returnsIndependentCopiesSharingThePoster() throws Exception {
+        when(mediaProvider.getSeries("Lost", null)).thenReturn(series());
+
+        Media first = metadataCache.getSeries("Lost", null);
+        first.setTitle("Season 1");
+        Media second = metadataCache.getSeries("lost ", null);
+
+        assertEquals("Lost", second.getTitle());
+        assertNotSame(first, second);
+        assertSame(first.getImage(), second.getImage());
+        verify(mediaProvider, times(1)).getSeries(anyString(), isNull());
+    }
+
+    @Test
+    void remembersMediaThatWasNotFound() throws Exception {
+        when(mediaProvider.getMovie("Unknown", "2020")).thenThrow(new MediaNotFoundException("Media not found."));
+
+        assertThrows(MediaNotFoundException.class, () -> metadataCache.getMovie("Unknown", "2020"));
+        assertThrows(MediaNotFoundException.class, () -> metadataCache.getMovie("Unknown", "2020"));
+
+        verify(mediaProvider, times(1)).getMovie("Unknown", "2020");
+    }
+
+    @Test
+    void retriesFailedLookups() throws Exception {
+        when(mediaProvider.getEpisode("Lost", 1, 1))
+                .thenThrow(new MediaProviderException("Timed out waiting for an OMDb rate limit permit."))
+                .thenReturn(Media.builder().title("Pilot").number(1).build());
+
+        assertThrows(MediaProviderException.class, () -> metadataCache.getEpisode("Lost", 1, 1));
+        Media episode = metadataCache.getEpisode("Lost", 1, 1);
+
+        assertEquals("Pilot", episode.getTitle());
+        assertEquals(1, episode.getNumber());
+    }
+
+    @Test
+    void callsProviderWhenDisabled() throws Exception {
+        serviceConfig.getMetadataCache().setEnabled(false);
+        metadataCache = new MediaMetadataCache(mediaProvider, serviceConfig, new SimpleMeterRegistry());
+        when(mediaProvider.getSeries("Lost", null)).thenAnswer(invocation -> series());
+
+        metadataCache.getSeries("Lost", null);
+        metadataCache.getSeries("Lost", null);
+
+        verify(mediaProvider, times(2)).getSeries("Lost", null);
+    }
+
+    private static Media series() {
+        Media media = Media.builder()
+                .title("Lost")
+                .imdbId("tt0411008")
+                .mediaType(MediaType.SERIES)
+                .build();
+        media.setImage(new MediaImage("hash", new byte[]{1, 2, 3}));
+        return media;
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.rahmnathan.localmovie.media.poster;
+
+import com.github.rahmnathan.localmovie.data.PosterSize;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaImage;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaImageRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PosterRenditionServiceTest {
+
+    @Mock
+    private MediaImageRepository mediaImageRepository;
+
+    @Test
+    void resizeKeepsAspectRatioWithinSize() throws IOException {
+        byte[] resized = service().resize(jpeg(1000, 1500), PosterSize.THUMBNAIL);
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(resized));
+        assertEquals(185, image.getWidth());
+        assertEquals(277, image.getHeight());
+    }
+
+    @Test
+    void resizeReturnsSmallImagesUnchanged() throws IOException {
+        byte[] original = jpeg(100, 150);
+
+        assertSame(original, service().resize(original, PosterSize.MEDIUM));
+    }
+
+    @Test
+    void applyRenditionsStoresSmallerSizes() throws IOException {
+        MediaImage mediaImage = new MediaImage("hash", jpeg(500, 750));
+
+        service().applyRenditions(mediaImage);
+
+        assertEquals(342, ImageIO.read(new ByteArrayInputStream(mediaImage.getMedium())).getWidth());
+        assertEquals(185, ImageIO.read(new ByteArrayInputStream(mediaImage.getThumbnail())).getWidth());
+    }
+
+    @Test
+    void applyRenditionsFallsBackToStoredImageWhenUnreadable() {
+        byte[] unreadable = new byte[]{1, 2, 3};
+        MediaImage mediaImage = new MediaImage("hash", unreadable);
+
+        service().applyRenditions(mediaImage);
+
+        assertArrayEquals(unreadable, mediaImage.getThumbnail());
+        assertArrayEquals(unreadable, mediaImage.getMedium());
+    }
+
+    @Test
+    void backfillRendersStoredImages() throws IOException {
+        MediaImage mediaImage = new MediaImage("hash", jpeg(500, 750));
+        when(mediaImageRepository.findTop50ByThumbnailIsNullAndImageIsNotNull()).thenReturn(List.of(mediaImage));
+
+        service().backfillRenditions();
+
+        assertNotNull(mediaImage.getThumbnail());
+        verify(mediaImageRepository).saveAll(List.of(mediaImage));
+    }
+
+    private PosterRenditionService service() {
+        return new PosterRenditionService(mediaImageRepository);
+    }
+
+    private static byte[] jpeg(int width, int height) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "jpg", output);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.rahmnathan.localmovie.media.poster;
+
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaImage;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaImageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PosterStoreTest {
+    private static final byte[] POSTER = new byte[]{1, 2, 3};
+
+    @Mock
+    private MediaImageRepository mediaImageRepository;
+    @Mock
+    private PosterRenditionService posterRenditionService;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final ServiceConfig serviceConfig = new ServiceConfig();
+    private PosterStore posterStore;
+
+    @BeforeEach
+    void setUp() {
+        posterStore = new PosterStore(mediaImageRepository, posterRenditionService, serviceConfig, transactionManager);
+    }
+
+    @Test
+    void storesNewImagesWithRenditions() {
+        when(mediaImageRepository.findByContentHash(PosterStore.contentHash(POSTER))).thenReturn(Optional.empty());
+        when(mediaImageRepository.save(any(MediaImage.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        MediaImage stored = posterStore.store(POSTER);
+
+        assertEquals(PosterStore.contentHash(POSTER), stored.getContentHash());
+        assertSame(POSTER, stored.getImage());
+        verify(posterRenditionService).applyRenditions(stored);
+    }
+
+    @Test
+    void reusesImagesWithTheSameContent() {
+        MediaImage existing = new MediaImage(PosterStore.contentHash(POSTER), POSTER);
+        existing.setId(7L);
+        when(mediaImageRepository.findByContentHash(PosterStore.contentHash(POSTER))).thenReturn(Optional.of(existing));
+
+        MediaImage stored = posterStore.store(new byte[]{1, 2, 3});
+
+        assertSame(existing, stored);
+        verify(mediaImageRepository).touch(eq(7L), any(LocalDateTime.class));
+        verify(mediaImageRepository, never()).save(any());
+        verifyNoInteractions(posterRenditionService);
+    }
+
+    @Test
+    void readsImageStoredConcurrently() {
+        MediaImage concurrent = new MediaImage(PosterStore.contentHash(POSTER), POSTER);
+        when(mediaImageRepository.findByContentHash(PosterStore.contentHash(POSTER)))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(concurrent));
+        when(mediaImageRepository.save(any(MediaImage.class))).thenThrow(new DataIntegrityViolationException("duplicate key"));
+
+        assertSame(concurrent, posterStore.store(POSTER));
+    }
+
+    @Test
+    void deletesUnreferencedImagesPastTheGracePeriod() {
+        serviceConfig.getPosterStore().setOrphanGraceMinutes(60);
+
+        posterStore.deleteUnreferencedPosters();
+
+        ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(mediaImageRepository).deleteUnreferencedBefore(cutoff.capture());
+        assertTrue(cutoff.getValue().isBefore(LocalDateTime.now().minusMinutes(59)));
+        assertTrue(cutoff.getValue().isAfter(LocalDateTime.now().minusMinutes(61)));
+    }
+
+    @Test
+    void hashesContent() {
+        assertEquals("039058c6f2c0cb492c533b0a4d14ef77cc0f78abccced5287d84a1a2011cfb81", PosterStore.contentHash(POSTER));
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.rahmnathan.localmovie.persistence;
+
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.MediaFileDto;
+import com.github.rahmnathan.localmovie.data.MediaRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogCacheTest {
+    private final AtomicInteger loads = new AtomicInteger();
+    private CatalogCache catalogCache;
+
+    @BeforeEach
+    void setUp() {
+        catalogCache = new CatalogCache(new ServiceConfig(), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void servesRepeatedRequestsFromCache() {
+        MediaRequest request = new MediaRequest("Movies", null, 0, 50, "title", null, null, "movies");
+
+        catalogCache.getPage(request, this::loadPage);
+        List<MediaFileDto> page = catalogCache.getPage(request, this::loadPage);
+
+        assertEquals(1, loads.get());
+        assertEquals("id-1", page.getFirst().getMediaFileId());
+    }
+
+    @Test
+    void normalizesEquivalentRequests() {
+        catalogCache.getPage(new MediaRequest("Movies", "", 0, 50, "added", "Batman", "Action", "MOVIES"), this::loadPage);
+        catalogCache.getPage(new MediaRequest("Movies", null, 0, 50, "added", "batman", "action", "movies"), this::loadPage);
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void distinguishesDifferentPages() {
+        catalogCache.getPage(new MediaRequest("Movies", null, 0, 50, null, null, null, "movies"), this::loadPage);
+        catalogCache.getPage(new MediaRequest("Movies", null, 1, 50, null, null, null, "movies"), this::loadPage);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void returnsCopiesSoUserOverlaysDoNotLeak() {
+        MediaRequest request = new MediaRequest("Movies", null, 0, 50, null, null, null, "movies");
+
+        catalogCache.getPage(request, this::loadPage).getFirst().setFavorite(true);
+
+        assertFalse(catalogCache.getPage(request, this::loadPage).getFirst().isFavorite());
+    }
+
+    @Test
+    void invalidateDropsPagesAndCounts() {
+        MediaRequest request = new MediaRequest("Movies", null, 0, 50, null, null, null, "movies");
+        catalogCache.getPage(request, this::loadPage);
+        assertEquals(5, catalogCache.getCount(request, () -> 5));
+
+        catalogCache.invalidate();
+
+        catalogCache.getPage(request, this::loadPage);
+        assertEquals(2, loads.get());
+        assertEquals(6, catalogCache.getCount(request, () -> 6));
+    }
+
+    private List<MediaFileDto> loadPage() {
+        loads.incrementAndGet();
+        return List.of(MediaFileDto.builder().mediaFileId("id-1").build());
+    }
+}
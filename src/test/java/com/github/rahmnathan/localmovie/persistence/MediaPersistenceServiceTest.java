@@ -1,30 +1,59 @@
 package com.github.rahmnathan.localmovie.persistence;
 
 import com.github.rahmnathan.localmovie.BaseIntegrationTest;
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.MediaFileDto;
+import com.github.rahmnathan.localmovie.data.MediaPage;
 import com.github.rahmnathan.localmovie.data.MediaPath;
+import com.github.rahmnathan.localmovie.data.PosterSize;
 import com.github.rahmnathan.localmovie.media.MediaInitializer;
+import com.github.rahmnathan.localmovie.media.exception.InvalidCursorException;
 import com.github.rahmnathan.localmovie.media.exception.InvalidMediaException;
+import com.github.rahmnathan.localmovie.media.omdb.MediaMetadataCache;
+import com.github.rahmnathan.localmovie.media.omdb.MediaProvider;
+import com.github.rahmnathan.localmovie.media.poster.PosterStore;
+import com.github.rahmnathan.localmovie.persistence.entity.Media;
 import com.github.rahmnathan.localmovie.persistence.entity.MediaFile;
 import com.github.rahmnathan.localmovie.persistence.entity.MediaFileEvent;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaImage;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaView;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaFileRepository;
+import com.github.rahmnathan.localmovie.persistence.repository.MediaViewRepository;
 import com.github.rahmnathan.localmovie.data.MediaRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Pageable;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
 
 class MediaPersistenceServiceTest extends BaseIntegrationTest {
 
     private final MediaPersistenceService mediaPersistenceService;
+    private final PositionBuffer positionBuffer;
+    private final MediaViewRepository mediaViewRepository;
+    private final MediaFileRepository mediaFileRepository;
+    private final PosterStore posterStore;
+    private final PosterCache posterCache;
 
     @Autowired
-    MediaPersistenceServiceTest(MediaPersistenceService mediaPersistenceService, MediaInitializer initializer) {
+    MediaPersistenceServiceTest(MediaPersistenceService mediaPersistenceService, PositionBuffer positionBuffer,
+                                MediaViewRepository mediaViewRepository, MediaFileRepository mediaFileRepository,
+                                PosterStore posterStore, PosterCache posterCache, MediaInitializer initializer) {
         this.mediaPersistenceService = mediaPersistenceService;
+        this.positionBuffer = positionBuffer;
+        this.mediaViewRepository = mediaViewRepository;
+        this.mediaFileRepository = mediaFileRepository;
+        this.posterStore = posterStore;
+        this.posterCache = posterCache;
 
         try {
             initializer.getInitializationFuture().get();
@@ -40,6 +69,35 @@ class MediaPersistenceServiceTest extends BaseIntegrationTest {
         assertFalse(mediaFiles.isEmpty());
     }
 
+    @Test
+    void testMediaFilesFromOneCachedLookupAreSavedTogether() throws Exception {
+        MediaImage poster = posterStore.store(mediaPersistenceService.getMediaImage("Movies/300.mkv"));
+        Media movie = new Media("Cached Lookup");
+        movie.setImdbId("tt0000001");
+        movie.setImage(poster);
+        MediaProvider mediaProvider = mock(MediaProvider.class);
+        when(mediaProvider.getMovie("Cached Lookup", null)).thenReturn(movie);
+        MediaMetadataCache metadataCache = new MediaMetadataCache(mediaProvider, new ServiceConfig(), new SimpleMeterRegistry());
+
+        List<String> paths = List.of("Movies/Cached Lookup.mkv", "Movies/Cached Lookup.mp4");
+        try {
+            for (String path : paths) {
+                mediaPersistenceService.saveMediaFile(MediaFile.forPath(MediaPath.parse(path))
+                        .media(metadataCache.getMovie("Cached Lookup", null))
+                        .build());
+            }
+
+            for (String path : paths) {
+                MediaFile saved = mediaFileRepository.findByPath(path).orElseThrow();
+                assertEquals("tt0000001", saved.getMedia().getImdbId());
+                assertEquals(poster.getId(), saved.getMedia().getImage().getId());
+            }
+            verify(mediaProvider, times(1)).getMovie("Cached Lookup", null);
+        } finally {
+            paths.forEach(path -> mediaFileRepository.findByPath(path).ifPresent(mediaFileRepository::delete));
+        }
+    }
+
     @Test
     void getMediaFileByPathTest() throws InvalidMediaException {
         Optional<com.github.rahmnathan.localmovie.persistence.entity.MediaFile> resultMediaFile = mediaPersistenceService.getMediaFileByPath(MediaPath.parse("Movies/300.mkv"));
@@ -96,6 +154,59 @@ class MediaPersistenceServiceTest extends BaseIntegrationTest {
         assertTrue(count >= 0);
     }
 
+    @Test
+    void testSearchMatchesTitlePrefix() {
+        MediaRequest request = new MediaRequest(null, "", 0, 100, "relevance", "30", null, "movies");
+        List<MediaFile> mediaFiles = mediaPersistenceService.getMediaFiles(request);
+
+        assertTrue(mediaFiles.stream().anyMatch(mediaFile -> "Movies/300.mkv".equals(mediaFile.getPath())));
+        assertEquals(mediaFiles.size(), mediaPersistenceService.countMediaFiles(request));
+    }
+
+    @Test
+    void testSearchWithExplicitOrder() {
+        MediaRequest request = new MediaRequest(null, "", 0, 100, "added", "300", null, "movies");
+        List<MediaFile> mediaFiles = mediaPersistenceService.getMediaFiles(request);
+
+        assertTrue(mediaFiles.stream().anyMatch(mediaFile -> "Movies/300.mkv".equals(mediaFile.getPath())));
+    }
+
+    @Test
+    void testSearchRanksMatchesAndAppliesFilters() throws InvalidMediaException {
+        List<String> paths = List.of("Movies/Quixotic Harbor.mkv", "Movies/Quixotic Harbor Returns.mkv", "Movies/Quixotik Harbour.mkv");
+        try {
+            saveMovie(paths.get(0), "Quixotic Harbor", "Drama");
+            saveMovie(paths.get(1), "Quixotic Harbor Returns", "Comedy");
+            saveMovie(paths.get(2), "Quixotik Harbour", "Drama");
+
+            // The misspelled title only matches by trigram similarity, so it ranks below both token matches
+            MediaRequest ranked = new MediaRequest(null, "", 0, 100, "relevance", "quixotic harbor", null, "movies");
+            List<String> rankedPaths = paths(mediaPersistenceService.getMediaFiles(ranked));
+            assertEquals(3, rankedPaths.size());
+            assertTrue(rankedPaths.subList(0, 2).containsAll(paths.subList(0, 2)));
+            assertEquals(paths.get(2), rankedPaths.get(2));
+            assertEquals(3, mediaPersistenceService.countMediaFiles(ranked));
+
+            MediaRequest filtered = new MediaRequest(null, "", 0, 100, "relevance", "quixotic harbor", "Drama", "movies");
+            assertEquals(List.of(paths.get(0), paths.get(2)), paths(mediaPersistenceService.getMediaFiles(filtered)));
+            assertEquals(2, mediaPersistenceService.countMediaFiles(filtered));
+
+            // Every token matches as a prefix, so the only title with both ranks first
+            MediaRequest prefix = new MediaRequest(null, "", 0, 100, "relevance", "quix ret", null, "movies");
+            assertEquals(paths.get(1), paths(mediaPersistenceService.getMediaFiles(prefix)).getFirst());
+        } finally {
+            paths.forEach(path -> mediaFileRepository.findByPath(path).ifPresent(mediaFileRepository::delete));
+        }
+    }
+
+    @Test
+    void testSearchWithoutMatches() {
+        MediaRequest request = new MediaRequest(null, "", 0, 100, null, "qqqqqq", null, "movies");
+
+        assertTrue(mediaPersistenceService.getMediaFiles(request).isEmpty());
+        assertEquals(0, mediaPersistenceService.countMediaFiles(request));
+    }
+
     @Test
     @Transactional
     void testAddViewCreatesNewView() throws InvalidMediaException {
@@ -117,6 +228,43 @@ class MediaPersistenceServiceTest extends BaseIntegrationTest {
         mediaPersistenceService.addView("non-existent-id", 10.0, 1000.0);
     }
 
+    @Test
+    void testBufferedPositionsAreReadBeforeTheyAreWritten() throws InvalidMediaException {
+        MediaFile mediaFile = mediaPersistenceService.getMediaFileByPath(MediaPath.parse("Movies/300.mkv")).orElseThrow();
+        String mediaFileId = mediaFile.getMediaFileId();
+
+        mediaPersistenceService.addView(mediaFileId, 30.0, 1000.0);
+        mediaPersistenceService.addView(mediaFileId, 40.0, null);
+
+        MediaFileDto.MediaViewDto view = mediaPersistenceService.getMediaFileDtoById(mediaFileId).orElseThrow()
+                .getMediaViews().iterator().next();
+        assertEquals(40.0, view.getPosition());
+        assertEquals(1000.0, view.getDuration());
+
+        positionBuffer.flush();
+
+        MediaView written = mediaViewRepository.findByMediaFileIdsAndUserId(List.of(mediaFileId), "movieuser").getFirst();
+        assertEquals(40.0, written.getPosition());
+        assertEquals(1000.0, written.getDuration());
+        // Positions are written to the view alone, the media file isn't touched
+        assertEquals(mediaFile.getVersion(), mediaFileRepository.findByMediaFileId(mediaFileId).orElseThrow().getVersion());
+    }
+
+    @Test
+    void testBufferedPositionsUpdateTheUsersOneView() throws InvalidMediaException {
+        String mediaFileId = mediaPersistenceService.getMediaFileByPath(MediaPath.parse("Movies/300.mkv")).orElseThrow().getMediaFileId();
+
+        mediaPersistenceService.addView(mediaFileId, 30.0, 1000.0);
+        positionBuffer.flush();
+        mediaPersistenceService.addView(mediaFileId, 50.0, null);
+        positionBuffer.flush();
+
+        List<MediaView> views = mediaViewRepository.findByMediaFileIdsAndUserId(List.of(mediaFileId), "movieuser");
+        assertEquals(1, views.size());
+        assertEquals(50.0, views.getFirst().getPosition());
+        assertEquals(1000.0, views.getFirst().getDuration());
+    }
+
     @Test
     void testFindByMediaFileIdExists() throws InvalidMediaException {
         Optional<MediaFile> mediaFileOpt = mediaPersistenceService.getMediaFileByPath(MediaPath.parse("Movies/300.mkv"));
@@ -225,4 +373,99 @@ class MediaPersistenceServiceTest extends BaseIntegrationTest {
         assertFalse(dtos.isEmpty());
     }
 
+    @Test
+    void testCursorPagesMatchOffsetPages() {
+        for (String order : List.of("title", "added", "year", "season-episode")) {
+            List<String> expected = mediaPersistenceService.getMediaFileDtos(new MediaRequest(null, "", 0, 100, order, null, null, null))
+                    .stream().map(MediaFileDto::getMediaFileId).toList();
+
+            assertEquals(expected, collectCursorPages(order), "Cursor pages differ for order " + order);
+        }
+    }
+
+    @Test
+    void testCursorModeRejectsCursorOfOtherOrder() {
+        MediaRequest request = new MediaRequest(null, "", 0, 1, "title", null, null, null);
+        request.setCursor("");
+        String cursor = mediaPersistenceService.getMediaPage(request).nextCursor().orElseThrow();
+
+        MediaRequest otherOrder = new MediaRequest(null, "", 0, 1, "added", null, null, null);
+        otherOrder.setCursor(cursor);
+
+        assertThrows(InvalidCursorException.class, () -> mediaPersistenceService.getMediaFileDtos(otherOrder));
+    }
+
+    @Test
+    void testHistoryCursorPages() throws InvalidMediaException {
+        mediaPersistenceService.addView(mediaPersistenceService.getMediaFileByPath(MediaPath.parse("Movies/300.mkv")).orElseThrow().getMediaFileId(), 10.0, 1000.0);
+        mediaPersistenceService.addView(mediaPersistenceService.getMediaFileByPath(MediaPath.parse("Series/Game of Thrones/Season 1/Episode 1.mkv")).orElseThrow().getMediaFileId(), 10.0, 1000.0);
+
+        List<String> expected = mediaPersistenceService.getMediaFileDtos(new MediaRequest(null, "", 0, 100, null, null, null, "history"))
+                .stream().map(MediaFileDto::getMediaFileId).toList();
+
+        assertTrue(expected.size() >= 2);
+        assertEquals(expected, collectCursorPages(null, "history"));
+    }
+
+    @Test
+    void testDeletingMediaFilesOnlyDropsTheirPosters() throws InvalidMediaException {
+        saveMovie("Movies/Poster Kept.mkv", "Poster Kept", null);
+        saveMovie("Movies/Poster Dropped.mkv", "Poster Dropped", null);
+        String kept = mediaPersistenceService.getMediaFileByPath(MediaPath.parse("Movies/Poster Kept.mkv")).orElseThrow().getMediaFileId();
+        String dropped = mediaPersistenceService.getMediaFileByPath(MediaPath.parse("Movies/Poster Dropped.mkv")).orElseThrow().getMediaFileId();
+        AtomicInteger hashLoads = new AtomicInteger();
+        try {
+            for (String mediaFileId : List.of(kept, dropped)) {
+                loadPoster(mediaFileId, hashLoads);
+            }
+
+            mediaPersistenceService.deleteAllByRelativePath("Movies/Poster Dropped.mkv");
+            hashLoads.set(0);
+
+            loadPoster(kept, hashLoads);
+            assertEquals(0, hashLoads.get());
+            loadPoster(dropped, hashLoads);
+            assertEquals(1, hashLoads.get());
+        } finally {
+            mediaPersistenceService.deleteAllByRelativePath("Movies/Poster Kept.mkv");
+        }
+    }
+
+    private void loadPoster(String mediaFileId, AtomicInteger hashLoads) {
+        posterCache.getPoster(mediaFileId, PosterSize.FULL, () -> {
+            hashLoads.incrementAndGet();
+            return "hash-" + mediaFileId;
+        }, hash -> new byte[]{1});
+    }
+
+    private void saveMovie(String path, String title, String genre) throws InvalidMediaException {
+        Media media = new Media(title);
+        media.setGenre(genre);
+        mediaPersistenceService.saveMediaFile(MediaFile.forPath(MediaPath.parse(path))
+                .media(media)
+                .build());
+    }
+
+    private static List<String> paths(List<MediaFile> mediaFiles) {
+        return mediaFiles.stream()
+                .map(MediaFile::getPath)
+                .toList();
+    }
+
+    private List<String> collectCursorPages(String order) {
+        return collectCursorPages(order, null);
+    }
+
+    private List<String> collectCursorPages(String order, String type) {
+        List<String> ids = new ArrayList<>();
+        String cursor = "";
+        while (cursor != null) {
+            MediaRequest request = new MediaRequest(null, "", 0, 1, order, null, null, type);
+            request.setCursor(cursor);
+            MediaPage page = mediaPersistenceService.getMediaPage(request);
+            page.mediaFiles().forEach(dto -> ids.add(dto.getMediaFileId()));
+            cursor = page.nextCursor().orElse(null);
+        }
+        return ids;
+    }
 }
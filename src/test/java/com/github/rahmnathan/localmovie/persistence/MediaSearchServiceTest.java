@@ -0,0 +1,29 @@
+package com.github.rahmnathan.localmovie.persistence;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MediaSearchServiceTest {
+
+    @Test
+    void prefixesEveryToken() {
+        assertEquals("game:* & of:* & thr:*", MediaSearchService.toPrefixTsQuery("Game of Thr"));
+    }
+
+    @Test
+    void dropsTsQuerySyntax() {
+        assertEquals("x:* & men:*", MediaSearchService.toPrefixTsQuery("  X-Men & (!'"));
+    }
+
+    @Test
+    void keepsNonLatinLettersAndDigits() {
+        assertEquals("amélie:* & 2001:*", MediaSearchService.toPrefixTsQuery("Amélie 2001"));
+    }
+
+    @Test
+    void returnsEmptyQueryWithoutTokens() {
+        assertEquals("", MediaSearchService.toPrefixTsQuery("!?"));
+        assertEquals("", MediaSearchService.toPrefixTsQuery(null));
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.rahmnathan.localmovie.persistence;
+
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.PosterSize;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PosterCacheTest {
+    private final AtomicInteger hashLoads = new AtomicInteger();
+    private final AtomicInteger loads = new AtomicInteger();
+    private PosterCache posterCache;
+
+    @BeforeEach
+    void setUp() {
+        posterCache = new PosterCache(new ServiceConfig(), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void servesRepeatedRequestsFromCache() {
+        get("id-1", "hash-1", PosterSize.FULL, new byte[]{1, 2, 3});
+        Optional<PosterCache.Poster> poster = get("id-1", "hash-1", PosterSize.FULL, new byte[]{1, 2, 3});
+
+        assertEquals(1, hashLoads.get());
+        assertEquals(1, loads.get());
+        assertTrue(poster.isPresent());
+        assertArrayEquals(new byte[]{1, 2, 3}, poster.get().bytes());
+        assertTrue(poster.get().image().isDirect());
+    }
+
+    @Test
+    void sharesPosterBetweenMediaFilesWithTheSameImage() {
+        PosterCache.Poster series = get("series", "hash-1", PosterSize.FULL, new byte[]{1, 2, 3}).orElseThrow();
+        PosterCache.Poster season = get("season", "hash-1", PosterSize.FULL, new byte[]{1, 2, 3}).orElseThrow();
+
+        assertEquals(2, hashLoads.get());
+        assertEquals(1, loads.get());
+        assertSame(series, season);
+    }
+
+    @Test
+    void doesNotCacheMissingPosters() {
+        assertTrue(get("id-1", null, PosterSize.FULL, new byte[]{1}).isEmpty());
+        assertTrue(get("id-1", "hash-1", PosterSize.FULL, null).isEmpty());
+        assertTrue(get("id-1", "hash-1", PosterSize.FULL, new byte[]{1}).isPresent());
+
+        assertEquals(2, hashLoads.get());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void eTagFollowsContent() {
+        String first = PosterCache.Poster.of(new byte[]{1, 2, 3}).eTag();
+
+        assertEquals(first, PosterCache.Poster.of(new byte[]{1, 2, 3}).eTag());
+        assertNotEquals(first, PosterCache.Poster.of(new byte[]{3, 2, 1}).eTag());
+        assertTrue(first.startsWith("\"") && first.endsWith("\""));
+    }
+
+    @Test
+    void invalidateReloadsPoster() {
+        get("id-1", "hash-1", PosterSize.FULL, new byte[]{1});
+
+        posterCache.invalidate("id-1");
+        Optional<PosterCache.Poster> poster = get("id-1", "hash-2", PosterSize.FULL, new byte[]{2});
+
+        assertEquals(2, hashLoads.get());
+        assertEquals(2, loads.get());
+        assertArrayEquals(new byte[]{2}, poster.orElseThrow().bytes());
+    }
+
+    @Test
+    void cachesSizesSeparately() {
+        get("id-1", "hash-1", PosterSize.FULL, new byte[]{1, 2, 3});
+        Optional<PosterCache.Poster> thumbnail = get("id-1", "hash-1", PosterSize.THUMBNAIL, new byte[]{1});
+
+        assertEquals(1, hashLoads.get());
+        assertEquals(2, loads.get());
+        assertArrayEquals(new byte[]{1}, thumbnail.orElseThrow().bytes());
+    }
+
+    @Test
+    void invalidateDropsEverySize() {
+        get("id-1", "hash-1", PosterSize.FULL, new byte[]{1, 2, 3});
+        get("id-1", "hash-1", PosterSize.THUMBNAIL, new byte[]{1});
+
+        posterCache.invalidate("id-1");
+        Optional<PosterCache.Poster> full = get("id-1", "hash-2", PosterSize.FULL, new byte[]{4, 5, 6});
+        Optional<PosterCache.Poster> thumbnail = get("id-1", "hash-2", PosterSize.THUMBNAIL, new byte[]{4});
+
+        assertEquals(4, loads.get());
+        assertArrayEquals(new byte[]{4, 5, 6}, full.orElseThrow().bytes());
+        assertArrayEquals(new byte[]{4}, thumbnail.orElseThrow().bytes());
+    }
+
+    @Test
+    void bytesDoNotConsumeCachedBuffer() {
+        PosterCache.Poster poster = get("id-1", "hash-1", PosterSize.FULL, new byte[]{1, 2}).orElseThrow();
+
+        poster.bytes();
+
+        assertArrayEquals(new byte[]{1, 2}, poster.bytes());
+    }
+
+    private Optional<PosterCache.Poster> get(String mediaFileId, String contentHash, PosterSize size, byte[] image) {
+        return posterCache.getPoster(mediaFileId, size, () -> {
+            hashLoads.incrementAndGet();
+            return contentHash;
+        }, hash -> {
+            loads.incrementAndGet();
+            return image;
+        });
+    }
+}
@@ -0,0 +1,155 @@
+package com.github.rahmnathan.localmovie.web;
+
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.MediaEventDto;
+import com.github.rahmnathan.localmovie.media.event.MediaFileEventSaved;
+import com.github.rahmnathan.localmovie.persistence.MediaPersistenceService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MediaEventStreamTest {
+    private static final LocalDateTime SINCE = LocalDateTime.of(2026, 10, 1, 12, 0);
+
+    private final MediaPersistenceService persistenceService = mock(MediaPersistenceService.class);
+    private final ServiceConfig serviceConfig = new ServiceConfig();
+    private final List<RecordingEmitter> emitters = new ArrayList<>();
+    private Executor sender = Runnable::run;
+    private MediaEventStream eventStream;
+
+    @BeforeEach
+    void setUp() {
+        eventStream = new MediaEventStream(persistenceService, mock(SecurityService.class), serviceConfig, new SimpleMeterRegistry()) {
+            @Override
+            SseEmitter newEmitter(long timeoutMillis) {
+                RecordingEmitter emitter = new RecordingEmitter();
+                emitters.add(emitter);
+                return emitter;
+            }
+
+            @Override
+            Executor newSender() {
+                return sender;
+            }
+        };
+    }
+
+    @Test
+    void replaysEventsSinceTheCursorThenStreamsNewOnes() {
+        when(persistenceService.getMediaEventDtos(eq(SINCE), any(Pageable.class)))
+                .thenReturn(List.of(event(1L, "DELETE", "Movies/Old.mkv")));
+
+        eventStream.subscribe(SINCE);
+        eventStream.onMediaFileEvent(new MediaFileEventSaved(event(51L, "CREATE", "Movies/New.mkv")));
+
+        assertEquals(List.of("Movies/Old.mkv", "Movies/New.mkv"), emitters.getFirst().relativePaths());
+        assertTrue(emitters.getFirst().text().contains("event:CREATE"));
+    }
+
+    @Test
+    void eventsFromThePollAreSentOnce() {
+        MediaEventDto created = event(51L, "CREATE", "Movies/New.mkv");
+        when(persistenceService.getMediaEventDtos(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(created, event(101L, "CREATE", "Movies/Other.mkv")));
+
+        eventStream.subscribe(null);
+        eventStream.onMediaFileEvent(new MediaFileEventSaved(created));
+        eventStream.poll();
+
+        assertEquals(List.of("Movies/New.mkv", "Movies/Other.mkv"), emitters.getFirst().relativePaths());
+    }
+
+    @Test
+    void replayedEventsAreNotSentAgainByThePoll() {
+        MediaEventDto deleted = event(1L, "DELETE", "Movies/Old.mkv");
+        when(persistenceService.getMediaEventDtos(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(deleted));
+
+        eventStream.subscribe(SINCE);
+        eventStream.poll();
+
+        assertEquals(List.of("Movies/Old.mkv"), emitters.getFirst().relativePaths());
+    }
+
+    @Test
+    void clientsThatFallBehindAreDisconnected() {
+        eventStream.subscribe(null);
+        sender = task -> {
+            throw new RejectedExecutionException();
+        };
+        eventStream.subscribe(null);
+
+        eventStream.onMediaFileEvent(new MediaFileEventSaved(event(51L, "CREATE", "Movies/New.mkv")));
+        eventStream.onMediaFileEvent(new MediaFileEventSaved(event(101L, "CREATE", "Movies/Other.mkv")));
+
+        assertEquals(List.of("Movies/New.mkv", "Movies/Other.mkv"), emitters.getFirst().relativePaths());
+        assertFalse(emitters.getFirst().completed);
+        assertTrue(emitters.get(1).completed);
+    }
+
+    @Test
+    void clientsTooFarBehindAreToldToReload() {
+        serviceConfig.getEventStream().setMaxReplayEvents(1);
+        when(persistenceService.getMediaEventDtos(eq(SINCE), any(Pageable.class)))
+                .thenReturn(List.of(event(1L, "CREATE", "Movies/A.mkv"), event(51L, "CREATE", "Movies/B.mkv")));
+
+        eventStream.subscribe(SINCE);
+
+        assertTrue(emitters.getFirst().relativePaths().isEmpty());
+        assertTrue(emitters.getFirst().text().contains("event:" + MediaEventStream.RESYNC_EVENT));
+    }
+
+    private static MediaEventDto event(Long id, String event, String relativePath) {
+        return MediaEventDto.builder()
+                .id(id)
+                .timestamp(SINCE.plusMinutes(id))
+                .event(event)
+                .relativePath(relativePath)
+                .build();
+    }
+
+    private static class RecordingEmitter extends SseEmitter {
+        private final List<Object> sent = new ArrayList<>();
+        private boolean completed;
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            builder.build().forEach(data -> sent.add(data.getData()));
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+
+        List<String> relativePaths() {
+            return sent.stream()
+                    .filter(MediaEventDto.class::isInstance)
+                    .map(data -> ((MediaEventDto) data).getRelativePath())
+                    .toList();
+        }
+
+        String text() {
+            return sent.stream()
+                    .filter(String.class::isInstance)
+                    .map(String.class::cast)
+                    .reduce("", String::concat);
+        }
+    }
+}
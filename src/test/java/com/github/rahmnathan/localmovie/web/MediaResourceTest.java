@@ -3,7 +3,11 @@ package com.github.rahmnathan.localmovie.web;
 import com.github.rahmnathan.localmovie.BaseIntegrationTest;
 import com.github.rahmnathan.localmovie.media.MediaInitializer;
 import com.github.rahmnathan.localmovie.data.MediaFileDto;
+import com.github.rahmnathan.localmovie.data.MediaPath;
 import com.github.rahmnathan.localmovie.data.MediaRequest;
+import com.github.rahmnathan.localmovie.data.MediaSyncDto;
+import com.github.rahmnathan.localmovie.media.event.MediaEventService;
+import com.github.rahmnathan.localmovie.media.exception.InvalidCursorException;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.mock.web.MockHttpServletResponse;
@@ -14,10 +18,12 @@ import static org.junit.jupiter.api.Assertions.*;
 
 class MediaResourceTest extends BaseIntegrationTest {
     private final MediaResource mediaResource;
+    private final MediaEventService mediaEventService;
 
     @Autowired
-    MediaResourceTest(MediaResource mediaResource, MediaInitializer initializer) {
+    MediaResourceTest(MediaResource mediaResource, MediaEventService mediaEventService, MediaInitializer initializer) {
         this.mediaResource = mediaResource;
+        this.mediaEventService = mediaEventService;
         try {
             initializer.getInitializationFuture().get();
         } catch (Exception e) {
@@ -35,6 +41,17 @@ class MediaResourceTest extends BaseIntegrationTest {
         assertTrue(mediaFileList.get(0).getSignedUrls().getPoster().contains("sig="));
     }
 
+    @Test
+    void listPostersAreFullSizeUnlessRequested() {
+        MediaRequest request = buildRequest();
+        String poster = mediaResource.getMedia(request, new MockHttpServletResponse()).get(0).getSignedUrls().getPoster();
+        assertFalse(poster.contains("size="));
+
+        request.setPosterSize("thumbnail");
+        poster = mediaResource.getMedia(request, new MockHttpServletResponse()).get(0).getSignedUrls().getPoster();
+        assertTrue(poster.endsWith("&size=thumbnail"));
+    }
+
     @Test
     void getMediaCountTest() {
         MockHttpServletResponse response = new MockHttpServletResponse();
@@ -47,11 +64,49 @@ class MediaResourceTest extends BaseIntegrationTest {
     void getPosterTest() throws Exception {
         List<MediaFileDto> mediaFileList = mediaResource.getMedia(buildRequest(), new MockHttpServletResponse());
 
-        var response = mediaResource.getPoster(mediaFileList.get(0).getMediaFileId());
+        var response = mediaResource.getPoster(mediaFileList.get(0).getMediaFileId(), null);
         assertTrue(response.getStatusCode().is2xxSuccessful());
         assertNotNull(response.getBody());
     }
 
+    @Test
+    void getPosterThumbnailTest() throws Exception {
+        List<MediaFileDto> mediaFileList = mediaResource.getMedia(buildRequest(), new MockHttpServletResponse());
+        String mediaFileId = mediaFileList.get(0).getMediaFileId();
+
+        var full = mediaResource.getPoster(mediaFileId, null);
+        var thumbnail = mediaResource.getPoster(mediaFileId, "thumbnail");
+        assertTrue(thumbnail.getStatusCode().is2xxSuccessful());
+        assertNotNull(thumbnail.getBody());
+        assertTrue(thumbnail.getBody().length <= full.getBody().length);
+    }
+
+    @Test
+    void syncReturnsRemovedThenReaddedMedia() throws Exception {
+        MediaSyncDto initial = mediaResource.getSync(null, true, null);
+        assertTrue(initial.isResync());
+
+        mediaEventService.handleDeleteEvent(MediaPath.parse("src/test/resources/LocalMedia/Movies/300.mkv"));
+        MediaSyncDto afterDelete = mediaResource.getSync(initial.getToken(), true, null);
+        assertFalse(afterDelete.isResync());
+        assertTrue(afterDelete.getDeletes().contains("Movies/300.mkv"));
+
+        mediaEventService.handleCreateEvent(MediaPath.parse("src/test/resources/LocalMedia/Movies/300.mkv"));
+        MediaSyncDto afterCreate = mediaResource.getSync(afterDelete.getToken(), false, null);
+        assertFalse(afterCreate.getDeletes().contains("Movies/300.mkv"));
+        MediaFileDto readded = afterCreate.getUpserts().stream()
+                .filter(mediaFile -> "Movies/300.mkv".equals(mediaFile.getPath()))
+                .findFirst()
+                .orElseThrow();
+        assertNotNull(readded.getSignedUrls());
+        assertNull(readded.getMedia().getPlot());
+    }
+
+    @Test
+    void syncRejectsMalformedTokens() {
+        assertThrows(InvalidCursorException.class, () -> mediaResource.getSync("yesterday", true, null));
+    }
+
     private MediaRequest buildRequest() {
         return new MediaRequest("Movies", "", 0, 100, null, null, null, "movies");
     }
@@ -0,0 +1,208 @@
+package com.github.rahmnathan.localmovie.web;
+
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaFile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MediaStreamingServiceTest {
+    private static final String CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+    @TempDir
+    Path tempDir;
+
+    private ServiceConfig serviceConfig;
+    private SimpleMeterRegistry registry;
+    private MediaStreamingService streamingService;
+    private MediaFile mediaFile;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path video = tempDir.resolve("movie.mp4");
+        Files.writeString(video, CONTENT);
+
+        mediaFile = new MediaFile();
+        mediaFile.setPath("Movies/movie.mp4");
+        mediaFile.setAbsolutePath(video.toString());
+
+        serviceConfig = new ServiceConfig();
+        serviceConfig.getStream().setMode(ServiceConfig.StreamMode.FULL_RANGE);
+        registry = new SimpleMeterRegistry();
+        streamingService = new MediaStreamingService(registry, serviceConfig, new StreamThroughputTracker(serviceConfig, registry));
+    }
+
+    @Test
+    void sendsWholeFileWithValidatorsWhenNoRangeRequested() throws Exception {
+        MockHttpServletResponse response = transfer(new MockHttpServletRequest("GET", "/stream"));
+
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString());
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertNotNull(response.getHeader(HttpHeaders.ETAG));
+        assertNotNull(response.getHeader(HttpHeaders.LAST_MODIFIED));
+    }
+
+    @Test
+    void sendsEntireRequestedRangeWithoutChunking() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/stream");
+        request.addHeader(HttpHeaders.RANGE, "bytes=10-");
+
+        MockHttpServletResponse response = transfer(request);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT.value(), response.getStatus());
+        assertEquals("bytes 10-35/36", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(CONTENT.substring(10), response.getContentAsString());
+    }
+
+    @Test
+    void sendsMultipartByteRangesForMultipleRanges() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/stream");
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1,30-31");
+
+        MockHttpServletResponse response = transfer(request);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT.value(), response.getStatus());
+        assertTrue(response.getContentType().startsWith("multipart/byteranges; boundary="));
+        String body = response.getContentAsString(StandardCharsets.US_ASCII);
+        assertTrue(body.contains("Content-Range: bytes 0-1/36\r\n\r\n01"));
+        assertTrue(body.contains("Content-Range: bytes 30-31/36\r\n\r\nuv"));
+        assertEquals(body.length(), response.getContentLengthLong());
+    }
+
+    @Test
+    void ignoresRangeWhenIfRangeDoesNotMatch() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/stream");
+        request.addHeader(HttpHeaders.RANGE, "bytes=10-");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"stale\"");
+
+        MockHttpServletResponse response = transfer(request);
+
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString());
+    }
+
+    @Test
+    void honorsRangeWhenIfRangeMatchesETag() throws Exception {
+        String eTag = transfer(new MockHttpServletRequest("HEAD", "/stream")).getHeader(HttpHeaders.ETAG);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/stream");
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-3");
+        request.addHeader(HttpHeaders.IF_RANGE, eTag);
+
+        MockHttpServletResponse response = transfer(request);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT.value(), response.getStatus());
+        assertEquals("0123", response.getContentAsString());
+    }
+
+    @Test
+    void returnsNotModifiedForMatchingETag() throws Exception {
+        String eTag = transfer(new MockHttpServletRequest("HEAD", "/stream")).getHeader(HttpHeaders.ETAG);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/stream");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+
+        MockHttpServletResponse response = transfer(request);
+
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void rejectsUnsatisfiableRange() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/stream");
+        request.addHeader(HttpHeaders.RANGE, "bytes=100-200");
+
+        MockHttpServletResponse response = transfer(request);
+
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value(), response.getStatus());
+        assertEquals("bytes */36", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void sendsWholeFileForMalformedRange() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/stream");
+        request.addHeader(HttpHeaders.RANGE, "bytes=abc-");
+
+        MockHttpServletResponse response = transfer(request);
+
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(CONTENT, response.getContentAsString());
+    }
+
+    @Test
+    void handsSingleRangeToSendfileWhenSupported() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/stream");
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        request.addHeader(HttpHeaders.RANGE, "bytes=4-9");
+
+        MockHttpServletResponse response = transfer(request);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT.value(), response.getStatus());
+        assertEquals(6, response.getContentLengthLong());
+        assertEquals(4L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(10L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void chunkedStreamsSampleTheBytesWritten() throws Exception {
+        serviceConfig.getStream().setMinChunkBytes(1);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/stream");
+        request.addHeader(HttpHeaders.RANGE, "bytes=10-");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        streamingService.streamMediaFile(mediaFile, request, response, "session");
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT.value(), response.getStatus());
+        assertEquals("bytes 10-35/36", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(CONTENT.substring(10), response.getContentAsString());
+        assertEquals(1, registry.get("localmovies.streams.throughput").summary().count());
+    }
+
+    @Test
+    void chunkedStreamsIgnoreMalformedRange() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/stream");
+        request.addHeader(HttpHeaders.RANGE, "bytes=abc");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        streamingService.streamMediaFile(mediaFile, request, response, "session");
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT.value(), response.getStatus());
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertEquals("bytes 0-35/36", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(CONTENT, response.getContentAsString());
+    }
+
+    @Test
+    void chunkedStreamsAnswerEmptyFilesWhole() throws Exception {
+        Files.writeString(Path.of(mediaFile.getAbsolutePath()), "");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/stream");
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        streamingService.streamMediaFile(mediaFile, request, response, "session");
+
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(0, response.getContentLengthLong());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    private MockHttpServletResponse transfer(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        streamingService.transferMediaFile(mediaFile, request, response);
+        return response;
+    }
+}
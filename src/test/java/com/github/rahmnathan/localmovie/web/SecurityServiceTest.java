@@ -2,6 +2,7 @@ package com.github.rahmnathan.localmovie.web;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.rahmnathan.localmovie.data.PosterSize;
 import com.github.rahmnathan.localmovie.data.SignedUrls;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -187,6 +188,17 @@ class SecurityServiceTest {
         assertNull(urls.getUpdatePosition());
     }
 
+    @Test
+    void testGenerateSignedPosterUrlWithSize() {
+        String mediaFileId = "test-media-poster";
+
+        String thumbnail = securityService.generateSignedPosterUrl(mediaFileId, PosterSize.THUMBNAIL).getPoster();
+        String full = securityService.generateSignedPosterUrl(mediaFileId, PosterSize.FULL).getPoster();
+
+        assertTrue(thumbnail.endsWith("&size=thumbnail"));
+        assertFalse(full.contains("size="));
+    }
+
     @Test
     void testGenerateSignedUrlsExpirationDay() throws JsonProcessingException {
         String mediaFileId = "test-media-expiration";
@@ -1,16 +1,26 @@
 package com.github.rahmnathan.localmovie.web;
 
+import com.github.rahmnathan.localmovie.data.PosterSize;
 import com.github.rahmnathan.localmovie.persistence.MediaPersistenceService;
+import com.github.rahmnathan.localmovie.persistence.PosterCache;
 import com.github.rahmnathan.localmovie.persistence.repository.MediaSubtitleRepository;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(MockitoExtension.class)
 class SignedMediaResourceTest {
@@ -29,7 +39,7 @@ class SignedMediaResourceTest {
         SignedMediaResource resource = resource();
         when(securityService.authorizedRequest("media-id", 123L, "bad-signature")).thenReturn(false);
 
-        var response = resource.getPoster("media-id", 123L, "bad-signature");
+        var response = resource.getPoster("media-id", 123L, "bad-signature", null);
 
         assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
         verifyNoInteractions(persistenceService);
@@ -40,12 +50,51 @@ class SignedMediaResourceTest {
         SignedMediaResource resource = resource();
         byte[] poster = new byte[]{1, 2, 3};
         when(securityService.authorizedRequest("media-id", 123L, "valid-signature")).thenReturn(true);
-        when(persistenceService.getMediaImageById("media-id")).thenReturn(poster);
+        when(persistenceService.getPoster("media-id", PosterSize.FULL)).thenReturn(Optional.of(PosterCache.Poster.of(poster)));
 
-        var response = resource.getPoster("media-id", 123L, "valid-signature");
+        var response = resource.getPoster("media-id", 123L, "valid-signature", null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertArrayEquals(poster, response.getBody());
+        assertEquals(PosterCache.Poster.of(poster).eTag(), response.getHeaders().getETag());
+    }
+
+    @Test
+    void getPosterServesRequestedSize() {
+        SignedMediaResource resource = resource();
+        byte[] thumbnail = new byte[]{1};
+        when(securityService.authorizedRequest("media-id", 123L, "valid-signature")).thenReturn(true);
+        when(persistenceService.getPoster("media-id", PosterSize.THUMBNAIL)).thenReturn(Optional.of(PosterCache.Poster.of(thumbnail)));
+
+        var response = resource.getPoster("media-id", 123L, "valid-signature", "thumbnail");
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertArrayEquals(thumbnail, response.getBody());
+    }
+
+    @Test
+    void getPosterReturnsNotFoundWithoutImage() {
+        SignedMediaResource resource = resource();
+        when(securityService.authorizedRequest("media-id", 123L, "valid-signature")).thenReturn(true);
+        when(persistenceService.getPoster("media-id", PosterSize.FULL)).thenReturn(Optional.empty());
+
+        var response = resource.getPoster("media-id", 123L, "valid-signature", null);
+
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    @Test
+    void getPosterReturnsNotModifiedForMatchingETag() throws Exception {
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(resource()).build();
+        PosterCache.Poster poster = PosterCache.Poster.of(new byte[]{1, 2, 3});
+        when(securityService.authorizedRequest("media-id", 123L, "valid-signature")).thenReturn(true);
+        when(persistenceService.getPoster("media-id", PosterSize.FULL)).thenReturn(Optional.of(poster));
+
+        mockMvc.perform(get("/localmovie/v1/signed/media/media-id/poster?expires=123&sig=valid-signature")
+                        .header("If-None-Match", poster.eTag()))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", poster.eTag()))
+                .andExpect(content().bytes(new byte[0]));
     }
 
     private SignedMediaResource resource() {
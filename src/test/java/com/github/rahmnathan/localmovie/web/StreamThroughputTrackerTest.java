@@ -0,0 +1,80 @@
+package com.github.rahmnathan.localmovie.web;
+
+import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StreamThroughputTrackerTest {
+    private static final long MIB = 1024 * 1024;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private StreamThroughputTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new StreamThroughputTracker(new ServiceConfig(), registry);
+    }
+
+    @Test
+    void firstRequestUsesInitialChunkSize() {
+        assertEquals(4 * MIB, tracker.nextChunkSize("session"));
+    }
+
+    @Test
+    void fastClientsGrowToMaximumChunkSize() {
+        long chunkSize = tracker.nextChunkSize("session");
+        for (int i = 0; i < 10; i++) {
+            // Writing each chunk in 50ms is a LAN client doing >80 MiB/s.
+            tracker.recordTransfer("session", chunkSize, TimeUnit.MILLISECONDS.toNanos(50));
+            chunkSize = tracker.nextChunkSize("session");
+        }
+
+        assertEquals(32 * MIB, chunkSize);
+    }
+
+    @Test
+    void slowClientsShrinkToMinimumChunkSize() {
+        long chunkSize = tracker.nextChunkSize("session");
+        for (int i = 0; i < 10; i++) {
+            tracker.recordTransfer("session", chunkSize, TimeUnit.SECONDS.toNanos(20));
+            chunkSize = tracker.nextChunkSize("session");
+        }
+
+        assertEquals(MIB, chunkSize);
+    }
+
+    @Test
+    void samplesUseTheBytesActuallyWritten() {
+        // A transfer aborted after 1 MiB in 4 seconds is 256 KiB/s, however large the planned chunk was
+        tracker.nextChunkSize("session");
+        tracker.recordTransfer("session", MIB, TimeUnit.SECONDS.toNanos(4));
+
+        assertEquals(MIB, tracker.nextChunkSize("session"));
+        assertEquals(256 * 1024, registry.get("localmovies.streams.throughput").summary().max());
+    }
+
+    @Test
+    void smallWritesAreNotSampled() {
+        // A short final chunk lands in the socket buffers, so its write time says nothing about the link
+        tracker.nextChunkSize("session");
+        tracker.recordTransfer("session", 1024, 1);
+
+        assertEquals(4 * MIB, tracker.nextChunkSize("session"));
+        assertEquals(0, registry.get("localmovies.streams.throughput").summary().count());
+    }
+
+    @Test
+    void sessionsAreSizedIndependently() {
+        tracker.nextChunkSize("fast");
+        tracker.recordTransfer("fast", 4 * MIB, TimeUnit.MILLISECONDS.toNanos(50));
+        tracker.nextChunkSize("fast");
+
+        assertEquals(4 * MIB, tracker.nextChunkSize("other"));
+        assertEquals(3, registry.get("localmovies.streams.chunk-size").summary().count());
+    }
+}
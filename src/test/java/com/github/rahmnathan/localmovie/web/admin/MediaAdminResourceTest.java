@@ -1,12 +1,18 @@
 package com.github.rahmnathan.localmovie.web.admin;
 
 import com.github.rahmnathan.localmovie.config.ServiceConfig;
+import com.github.rahmnathan.localmovie.data.MediaJobPriority;
+import com.github.rahmnathan.localmovie.data.MediaJobStatus;
 import com.github.rahmnathan.localmovie.media.MediaUpdateService;
+import com.github.rahmnathan.localmovie.media.job.ConversionProgressTracker;
+import com.github.rahmnathan.localmovie.media.poster.PosterRenditionService;
+import com.github.rahmnathan.localmovie.media.poster.PosterStore;
 import com.github.rahmnathan.localmovie.media.recommendation.RecommendationJobService;
 import com.github.rahmnathan.localmovie.media.subtitle.SubtitleJobService;
 import com.github.rahmnathan.localmovie.persistence.MediaPersistenceService;
 import com.github.rahmnathan.localmovie.persistence.entity.Media;
 import com.github.rahmnathan.localmovie.persistence.entity.MediaFile;
+import com.github.rahmnathan.localmovie.persistence.entity.MediaJob;
 import com.github.rahmnathan.localmovie.persistence.repository.MediaJobRepository;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -17,6 +23,8 @@ import org.springframework.http.HttpStatus;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -35,6 +43,12 @@ class MediaAdminResourceTest {
     private SubtitleJobService subtitleJobService;
     @Mock
     private MediaJobRepository mediaJobRepository;
+    @Mock
+    private PosterRenditionService posterRenditionService;
+    @Mock
+    private PosterStore posterStore;
+    @Mock
+    private ConversionProgressTracker progressTracker;
 
     @Test
     void syncSubtitlesQueuesForcedSubtitleJob() {
@@ -62,6 +76,53 @@ class MediaAdminResourceTest {
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
     }
 
+    @Test
+    void queueReconversionRaisesPriorityOfQueuedJob() {
+        MediaFile mediaFile = MediaFile.builder()
+                .mediaFileId("media-123")
+                .streamable(true)
+                .absolutePath("/media/LocalMedia/Movies/Avatar.mkv")
+                .build();
+        MediaJob queuedJob = MediaJob.builder()
+                .jobId("Movies-Avatar-mkv")
+                .status(MediaJobStatus.QUEUED.name())
+                .priority(MediaJobPriority.NEW_ARRIVAL)
+                .build();
+        when(persistenceService.findByMediaFileId("media-123")).thenReturn(Optional.of(mediaFile));
+        when(mediaJobRepository.findFirstByInputFileAndStatus("/media/LocalMedia/Movies/Avatar.mkv", MediaJobStatus.QUEUED.name()))
+                .thenReturn(Optional.of(queuedJob));
+
+        var response = resource().queueReconversion("media-123", MediaJobPriority.REQUESTED);
+
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertEquals(MediaJobPriority.REQUESTED, queuedJob.getPriority());
+        verify(mediaJobRepository).save(queuedJob);
+    }
+
+    @Test
+    void queueReconversionRejectsLowerPriorityForQueuedJob() {
+        MediaFile mediaFile = MediaFile.builder()
+                .mediaFileId("media-123")
+                .streamable(true)
+                .absolutePath("/media/LocalMedia/Movies/Avatar.mkv")
+                .build();
+        MediaJob queuedJob = MediaJob.builder()
+                .jobId("Movies-Avatar-mkv")
+                .status(MediaJobStatus.QUEUED.name())
+                .priority(MediaJobPriority.NEW_ARRIVAL)
+                .build();
+        when(persistenceService.findByMediaFileId("media-123")).thenReturn(Optional.of(mediaFile));
+        when(mediaJobRepository.findFirstByInputFileAndStatus("/media/LocalMedia/Movies/Avatar.mkv", MediaJobStatus.QUEUED.name()))
+                .thenReturn(Optional.of(queuedJob));
+        when(mediaJobRepository.existsByInputFileAndStatusIn(eq("/media/LocalMedia/Movies/Avatar.mkv"), anySet())).thenReturn(true);
+
+        var response = resource().queueReconversion("media-123", MediaJobPriority.RECONVERSION);
+
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        assertEquals(MediaJobPriority.NEW_ARRIVAL, queuedJob.getPriority());
+        verify(mediaJobRepository, never()).save(any());
+    }
+
     private MediaAdminResource resource() {
         return new MediaAdminResource(
                 updateService,
@@ -69,6 +130,9 @@ class MediaAdminResourceTest {
                 recommendationJobService,
                 persistenceService,
                 subtitleJobService,
-                mediaJobRepository);
+                mediaJobRepository,
+                posterRenditionService,
+                posterStore,
+                progressTracker);
     }
 }